@@ -0,0 +1,147 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.jena.atlas.lib.FileOps;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.tdb.TDB;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+import edu.washington.sig.gleen.util.ContextUtil;
+
+/**
+ * A generated graph, held either in memory or in a TDB database in a temporary directory
+ * (deleted by close).
+ */
+class BenchmarkGraph
+{
+	static final String MEMORY = "memory";
+	static final String TDB_STORE = "tdb";
+	
+	private final Model model;
+	private final DatasetGraph dataset;
+	private final File directory;
+	
+	/**
+	 * @param shape the shape of the graph
+	 * @param size number of nodes
+	 * @param store MEMORY or TDB_STORE
+	 * @throws IOException if the TDB directory cannot be created
+	 */
+	BenchmarkGraph(GraphShape shape, int size, String store) throws IOException
+	{
+		Graph g;
+		if(TDB_STORE.equals(store))
+		{
+			directory = Files.createTempDirectory("gleen-bench").toFile();
+			dataset = TDBFactory.createDatasetGraph(directory.getPath());
+			g = dataset.getDefaultGraph();
+		}
+		else if(MEMORY.equals(store))
+		{
+			directory = null;
+			dataset = null;
+			g = Factory.createDefaultGraph();
+		}
+		else
+			throw new IllegalArgumentException("unknown store "+store);
+		
+		shape.generate(g, size);
+		if(dataset!=null)
+			TDB.sync(dataset);
+		model = ModelFactory.createModelForGraph(g);
+	}
+	
+	/**
+	 * Run a SELECT query and consume all of its results
+	 * @param query the query
+	 * @param engine the GLEEN engine (see ContextUtil)
+	 * @return number of results
+	 */
+	int select(Query query, String engine)
+	{
+		QueryExecution qe = QueryExecutionFactory.create(query, model);
+		try
+		{
+			ContextUtil.setEngine(qe, engine);
+			ResultSet results = qe.execSelect();
+			int count = 0;
+			while(results.hasNext())
+			{
+				results.next();
+				count++;
+			}
+			return count;
+		}
+		finally
+		{
+			qe.close();
+		}
+	}
+	
+	/**
+	 * Run an ASK query
+	 * @param query the query
+	 * @param engine the GLEEN engine (see ContextUtil)
+	 * @return the answer
+	 */
+	boolean ask(Query query, String engine)
+	{
+		QueryExecution qe = QueryExecutionFactory.create(query, model);
+		try
+		{
+			ContextUtil.setEngine(qe, engine);
+			return qe.execAsk();
+		}
+		finally
+		{
+			qe.close();
+		}
+	}
+	
+	/**
+	 * @return the query, with the prefixes used by the generated graphs
+	 */
+	static Query parse(String queryBody)
+	{
+		return QueryFactory.create(GraphShape.PREFIXES+queryBody);
+	}
+	
+	void close()
+	{
+		if(dataset!=null)
+		{
+			TDBFactory.release(dataset);
+			FileOps.clearDirectory(directory.getPath());
+			directory.delete();
+		}
+	}
+}
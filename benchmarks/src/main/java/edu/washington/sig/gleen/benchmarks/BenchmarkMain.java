@@ -0,0 +1,48 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the standard JMH command line, adding the GC profiler (which 
+ * reports allocation rate and bytes allocated per operation) unless other profilers are
+ * requested.
+ */
+public class BenchmarkMain
+{
+	public static void main(String[] args) throws Exception
+	{
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		if(cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListWithParams() ||
+				cmdOptions.shouldListProfilers() || cmdOptions.shouldListResultFormats())
+		{
+			Main.main(args);
+			return;
+		}
+		
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+		if(cmdOptions.getProfilers().isEmpty())
+			options.addProfiler(GCProfiler.class);
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Synthetic graph shapes used by the benchmarks. Every shape is made of [ex:p] edges, all
+ * reachable from the root node ex:n0, plus [ex:q] edges from every third node to a random
+ * node, so that concatenations and alternations of p and q have work to do. Graphs are
+ * generated from a fixed seed, so every run sees the same graph.
+ */
+public enum GraphShape
+{
+	/** n0 -p-> n1 -p-> ... a single path, as deep as possible */
+	CHAIN
+	{
+		@Override
+		void addEdges(Graph g, int size, Random random)
+		{
+			for (int i = 1; i < size; i++)
+			{
+				addEdge(g, i-1, P, i);
+			}
+		}
+	},
+	/** a tree with fan out ten, as wide as possible */
+	TREE
+	{
+		@Override
+		void addEdges(Graph g, int size, Random random)
+		{
+			for (int i = 1; i < size; i++)
+			{
+				addEdge(g, (i-1)/10, P, i);
+			}
+		}
+	},
+	/** random DAG, every node has one to three parents among the nodes before it */
+	DAG
+	{
+		@Override
+		void addEdges(Graph g, int size, Random random)
+		{
+			for (int i = 1; i < size; i++)
+			{
+				int parents = 1+random.nextInt(3);
+				for (int j = 0; j < parents; j++)
+				{
+					addEdge(g, random.nextInt(i), P, i);
+				}
+			}
+		}
+	},
+	/** a ring plus four random edges per node, one big strongly connected component */
+	CYCLIC
+	{
+		@Override
+		void addEdges(Graph g, int size, Random random)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				addEdge(g, i, P, (i+1)%size);
+				for (int j = 0; j < 4; j++)
+				{
+					addEdge(g, i, P, random.nextInt(size));
+				}
+			}
+		}
+	},
+	/** Barabasi-Albert preferential attachment (three edges per new node), pointing from 
+	 * older to newer nodes so hubs have large out degree */
+	SCALEFREE
+	{
+		@Override
+		void addEdges(Graph g, int size, Random random)
+		{
+			// every edge end point, so picking a random entry is degree-proportional
+			List<Integer> endPoints = new ArrayList<Integer>();
+			for (int i = 1; i < Math.min(size, 4); i++)
+			{
+				addEdge(g, 0, P, i);
+				endPoints.add(0);
+				endPoints.add(i);
+			}
+			for (int i = 4; i < size; i++)
+			{
+				for (int j = 0; j < 3; j++)
+				{
+					int target = endPoints.get(random.nextInt(endPoints.size()));
+					addEdge(g, target, P, i);
+					endPoints.add(target);
+					endPoints.add(i);
+				}
+			}
+		}
+	};
+	
+	static final String NS = "http://example.org/bench/";
+	static final Node P = NodeFactory.createURI(NS+"p");
+	static final Node Q = NodeFactory.createURI(NS+"q");
+	
+	/** query prefixes matching the generated graphs */
+	static final String PREFIXES = "PREFIX gleen: <java:edu.washington.sig.gleen.> "+
+		"PREFIX ex: <"+NS+"> ";
+	
+	abstract void addEdges(Graph g, int size, Random random);
+	
+	/**
+	 * Fill a graph
+	 * @param g the (empty) graph
+	 * @param size number of nodes
+	 */
+	void generate(Graph g, int size)
+	{
+		Random random = new Random(42);
+		addEdges(g, size, random);
+		for (int i = 0; i < size; i += 3)
+		{
+			addEdge(g, i, Q, random.nextInt(size));
+		}
+	}
+	
+	/**
+	 * @return the node with the given number
+	 */
+	static Node node(int i)
+	{
+		return NodeFactory.createURI(NS+"n"+i);
+	}
+	
+	private static void addEdge(Graph g, int from, Node property, int to)
+	{
+		g.add(Triple.create(node(from), property, node(to)));
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.benchmarks;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.graph.Triple;
+
+import edu.washington.sig.gleen.path.Path;
+import edu.washington.sig.gleen.util.PathUtils;
+
+/**
+ * PathUtils.joinPaths, the inner loop of the recursive Subgraph engine. Head paths end at,
+ * and tail paths start from, a pool of junction nodes, so every head joins with several 
+ * tails.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PathJoinBenchmark
+{
+	@Param({"100", "1000"})
+	public int paths;
+	
+	@Param({"2", "8", "32"})
+	public int length;
+	
+	private Set<Path> heads;
+	private Set<Path> tails;
+	
+	@Setup
+	public void setUp()
+	{
+		int junctions = Math.max(1, paths/10);
+		heads = new HashSet<Path>();
+		tails = new HashSet<Path>();
+		int node = junctions;
+		for (int i = 0; i < paths; i++)
+		{
+			int junction = i%junctions;
+			heads.add(path(node, junction, true));
+			node += length;
+			tails.add(path(node, junction, false));
+			node += length;
+		}
+	}
+	
+	/**
+	 * @return a path of the current length through fresh nodes first..first+length-2, 
+	 * ending at (or starting from) the junction node
+	 */
+	private Path path(int first, int junction, boolean endsAtJunction)
+	{
+		Path path = Path.empty();
+		for (int i = 0; i < length; i++)
+		{
+			int from = first+i;
+			int to = i==length-1 ? junction : first+i+1;
+			if(!endsAtJunction)
+			{
+				from = i==0 ? junction : first+i-1;
+				to = first+i;
+			}
+			path = path.append(Triple.create(GraphShape.node(from), GraphShape.P, GraphShape.node(to)));
+		}
+		return path;
+	}
+	
+	@Benchmark
+	public Set<Path> join()
+	{
+		return PathUtils.joinPaths(heads, tails);
+	}
+}
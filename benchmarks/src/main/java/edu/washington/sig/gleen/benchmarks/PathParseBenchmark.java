@@ -0,0 +1,84 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+import edu.washington.sig.gleen.plan.PathExpressionCache;
+
+/**
+ * Cost of turning a path expression string into something that can be evaluated: parsing
+ * and planning, building the automaton, and a lookup in the compiled expression cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathParseBenchmark
+{
+	@Param({"[ex:p]+", 
+		"([ex:p]/[ex:q])*|[ex:r]?", 
+		"([ex:a]|[ex:b]|[ex:c])/([ex:d]/[ex:e]+)*/[ex:f]?/([ex:g]|([ex:h]/[ex:i])+)*/[ex:j]"})
+	public String expression;
+	
+	private Map<String, String> prefixes;
+	
+	@Setup
+	public void setUp() throws ParseException
+	{
+		prefixes = new HashMap<String, String>();
+		prefixes.put("ex", GraphShape.NS);
+		PathExpressionCache.getDefault().get(expression, prefixes);
+	}
+	
+	@Benchmark
+	public CompiledPathExpression compile() throws ParseException
+	{
+		return CompiledPathExpression.compile(expression, prefixes);
+	}
+	
+	@Benchmark
+	public PathAutomaton compileAutomaton() throws ParseException
+	{
+		return PathAutomaton.compile(CompiledPathExpression.compile(expression, prefixes).getPlan());
+	}
+	
+	@Benchmark
+	public CompiledPathExpression cached() throws ParseException
+	{
+		return PathExpressionCache.getDefault().get(expression, prefixes);
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.query.Query;
+
+/**
+ * Subgraph extraction from the root. The recursive engine enumerates every matching path,
+ * which is exponential on DAGs and cyclic graphs, so it is left out by default; select it
+ * with -p engine=recursive (and small sizes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SubgraphBenchmark
+{
+	@Param({"CHAIN", "TREE", "DAG", "CYCLIC", "SCALEFREE"})
+	public GraphShape shape;
+	
+	@Param({"1000", "10000", "100000"})
+	public int size;
+	
+	@Param({"memory", "tdb"})
+	public String store;
+	
+	@Param({"[ex:p]+", "[ex:p]/[ex:p]/[ex:q]", "([ex:p]|[ex:q])+"})
+	public String expression;
+	
+	@Param({"automaton"})
+	public String engine;
+	
+	private BenchmarkGraph graph;
+	private Query fromRoot;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		graph = new BenchmarkGraph(shape, size, store);
+		fromRoot = BenchmarkGraph.parse("SELECT ?s ?p ?o WHERE { (ex:n0 \""+expression+
+				"\" ?end) gleen:Subgraph (?s ?p ?o) }");
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		graph.close();
+	}
+	
+	@Benchmark
+	public int fromRoot()
+	{
+		return graph.select(fromRoot, engine);
+	}
+}
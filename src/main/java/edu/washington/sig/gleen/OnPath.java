@@ -16,12 +16,23 @@
 
 package edu.washington.sig.gleen;
 
-import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,42 +40,73 @@ import org.apache.commons.logging.LogFactory;
 import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
-import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryBuildException;
-import com.hp.hpl.jena.shared.PrefixMapping;
-import com.hp.hpl.jena.sparql.ARQConstants;
 import com.hp.hpl.jena.sparql.core.Substitute;
 import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter1;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterExtendByVar;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterNullIterator;
 import com.hp.hpl.jena.sparql.pfunction.PropFuncArg;
 import com.hp.hpl.jena.sparql.pfunction.PropFuncArgType;
 import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase;
 import com.hp.hpl.jena.sparql.util.IterLib;
-import com.hp.hpl.jena.sparql.util.Context;
-import com.hp.hpl.jena.sparql.util.Symbol;
 import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 
+import edu.washington.sig.gleen.automaton.ClosureSearch;
+import edu.washington.sig.gleen.automaton.MultiSourceSearch;
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.automaton.ProductSearch;
+import edu.washington.sig.gleen.index.ReachabilityIndex;
+import edu.washington.sig.gleen.iterator.QueryIterReachableNodes;
 import edu.washington.sig.gleen.javacc.grammar.ParseException;
-import edu.washington.sig.gleen.javacc.grammar.PathExpression;
 import edu.washington.sig.gleen.javacc.grammar.PathExpressionConstants;
-import edu.washington.sig.gleen.javacc.grammar.SimpleNode;
-import edu.washington.sig.gleen.javacc.grammar.TokenMgrError;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+import edu.washington.sig.gleen.plan.DirectionPlan;
+import edu.washington.sig.gleen.plan.DirectionPlanner;
+import edu.washington.sig.gleen.plan.PathExpressionCache;
+import edu.washington.sig.gleen.plan.PlanNode;
+import edu.washington.sig.gleen.util.ClosureMemo;
 import edu.washington.sig.gleen.util.ContextUtil;
+import edu.washington.sig.gleen.util.EvaluationContext;
+import edu.washington.sig.gleen.util.MultiPropertyFind;
 
 /**
  * @author Todd Detwiler
  * @date Apr 1, 2008
  *
+ * OnPath keeps no per-query state: everything an evaluation needs is gathered into an 
+ * EvaluationContext at the start of each call. A single registered instance can therefore
+ * be shared by any number of concurrently executing queries.
  */
 public class OnPath extends PropertyFunctionBase
 {
-	private Log log = LogFactory.getLog(this.getClass());
-	private Graph g;
-	private PrefixMapping queryPrefMap = null;
+	/** largest number of workers in one closure pool */
+	private static final int MAX_PARALLELISM = 256;
+	
+	/** 
+	 * pools that expand large closure levels in parallel, one per parallelism asked for, see 
+	 * ContextUtil.setParallelThreshold and ContextUtil.setParallelism. A pool is created on 
+	 * first use and kept for the life of the JVM; its workers are daemon threads, so they 
+	 * never hold the JVM open, and idle workers exit on their own.
+	 */
+	private static final ConcurrentHashMap<Integer, ForkJoinPool> pools = 
+		new ConcurrentHashMap<Integer, ForkJoinPool>();
+	
+	/** creates daemon closure workers */
+	private static final ForkJoinWorkerThreadFactory workerFactory = new ForkJoinWorkerThreadFactory()
+	{
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+		{
+			ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			worker.setDaemon(true);
+			return worker;
+		}
+	};
+	
+	private final Log log = LogFactory.getLog(this.getClass());
 	
 	public OnPath()
 	{
@@ -84,22 +126,31 @@ public class OnPath extends PropertyFunctionBase
 		if(!argObject.isList()||argObject.getArgList().size()!=2)
 			throw new QueryBuildException(this.getClass()+" object must be list of two elements");
 		
-		// get query prefix map
-		Context cxt = execCxt.getContext();
-		if(cxt.isDefined(ARQConstants.sysCurrentQuery))
-		{
-			Query query = (Query)cxt.get(ARQConstants.sysCurrentQuery);
-			queryPrefMap = query.getPrefixMapping();
-		}
-		else if(cxt.isDefined(ContextUtil.getQueryPrefMapSymbol()))
-		{
-			queryPrefMap = (PrefixMapping)cxt.get(ContextUtil.getQueryPrefMapSymbol());
-		}
-
-		if(queryPrefMap==null)
+		// check for query prefix map (it is looked up again by each exec, as this instance
+		// may be shared between queries)
+		if(EvaluationContext.getQueryPrefixMapping(execCxt.getContext())==null)
 			throw new QueryBuildException(this.getClass()+" query prefix mapping is null");
 	}
 	
+	/**
+	 * Evaluate the whole input binding stream. When a batch size is configured (see 
+	 * ContextUtil.setBatchSize) the input is consumed a batch at a time, and all bindings in
+	 * a batch that share a path expression and direction are answered together: by a 
+	 * single multi-source search with the automaton engine, and by one evaluation per 
+	 * distinct bound end with the recursive engine. Otherwise every binding is passed to 
+	 * exec(Binding, ...) in turn.
+	 */
+	@Override
+	public QueryIterator exec(QueryIterator input, PropFuncArg argSubject, Node predicate,
+			PropFuncArg argObject, ExecutionContext execCxt)
+	{
+		int batchSize = ContextUtil.getBatchSize(execCxt.getContext());
+		EvaluationContext evalCxt = EvaluationContext.create(execCxt);
+		if(batchSize<=0||evalCxt==null)
+			return super.exec(input, argSubject, predicate, argObject, execCxt);
+		return new QueryIterBatch(input, argSubject, argObject, batchSize, evalCxt, execCxt);
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase#exec(com.hp.hpl.jena.sparql.engine.binding.Binding, com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.graph.Node, com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.sparql.engine.ExecutionContext)
 	 */
@@ -107,9 +158,27 @@ public class OnPath extends PropertyFunctionBase
 	public QueryIterator exec(Binding binding, PropFuncArg argSubject, Node predicate,
 			PropFuncArg argObject, ExecutionContext execCxt)
 	{
-		// get graph
-		g = execCxt.getActiveGraph();
-		
+		EvaluationContext evalCxt = EvaluationContext.create(execCxt);
+		if(evalCxt==null)
+		{
+			log.warn(this.getClass()+" query prefix mapping is null");
+			return IterLib.noResults(execCxt);
+		}
+		return exec(binding, argSubject, argObject, evalCxt, execCxt);
+	}
+	
+	/**
+	 * Evaluate a single binding within the given evaluation context
+	 * @param binding the input binding
+	 * @param argSubject the subject argument
+	 * @param argObject the object argument (path expression and object)
+	 * @param evalCxt the evaluation context for this call
+	 * @param execCxt the current execution context
+	 * @return QueryIterator over the result bindings
+	 */
+	private QueryIterator exec(Binding binding, PropFuncArg argSubject, PropFuncArg argObject, 
+			EvaluationContext evalCxt, ExecutionContext execCxt)
+	{
 		// evaluate the subject and object given the binding
 		PropFuncArg evalArgSubject = Substitute.substitute(argSubject, binding);
 		PropFuncArg evalArgObject = Substitute.substitute(argObject, binding);
@@ -122,13 +191,12 @@ public class OnPath extends PropertyFunctionBase
 			return new QueryIterNullIterator(execCxt);
 		}
 		
-		// generate parse tree for path expression
+		// get (cached) plan for path expression
 		String pathExprString = pathExprNode.getLiteralLexicalForm();
-		PathExpression pathExpr = new PathExpression(new StringReader(pathExprString));
-		SimpleNode rootNode;
+		CompiledPathExpression compiledExpr;
 		try
 		{
-			rootNode = pathExpr.Start();
+			compiledExpr = PathExpressionCache.getDefault().get(pathExprString, evalCxt.getPrefixes());
 		}
 		catch (ParseException e)
 		{
@@ -136,14 +204,6 @@ public class OnPath extends PropertyFunctionBase
 			return IterLib.noResults(execCxt);
 		}
 		
-		// start node can have only one child
-		if(rootNode.jjtGetNumChildren()!=1)
-		{
-			log.warn(this.getClass()+" improperly formed AST!");
-			return IterLib.noResults(execCxt);
-		}
-		SimpleNode firstOp = (SimpleNode)rootNode.jjtGetChild(0);
-		
 		// get subject and object after bindings have been evaluated
 		Node sub = evalArgSubject.getArg();
 		Node obj = evalArgObject.getArg(1);
@@ -152,13 +212,33 @@ public class OnPath extends PropertyFunctionBase
 			log.warn(this.getClass()+" neither subject or object can be a literal!");
 			return IterLib.noResults(execCxt);
 		}
+		
+		// [p]+ and [p]* may be answered from a reachability index without touching the graph
+		ReachabilityIndex index = getClosureIndex(compiledExpr, evalCxt);
+		if(index!=null && !(sub.isVariable()&&obj.isVariable()))
+		{
+			boolean reflexive = compiledExpr.getPlan().getOperatorType()==PathExpressionConstants.STAR;
+			if(!sub.isVariable()&&obj.isVariable())
+				return new QueryIterExtendByVar(binding,(Var)obj,index.forward(sub,reflexive),execCxt);
+			else if(sub.isVariable()&&!obj.isVariable())
+				return new QueryIterExtendByVar(binding,(Var)sub,index.backward(obj,reflexive),execCxt);
+			else if(index.reaches(sub, obj, reflexive))
+				return IterLib.result(binding, execCxt);
+			else
+				return new QueryIterNullIterator(execCxt);
+		}
 	
 		if(!sub.isVariable()&&obj.isVariable())
 		{
 			Var objVar = (Var)obj;
 			Set<Node> subjects = new HashSet<Node>();
 			subjects.add(sub);
-			Set<Node> reachableNodes = processParseTree(subjects,firstOp);
+			if(evalCxt.isAutomatonEngine())
+			{
+				ProductSearch search = createSearch(compiledExpr, evalCxt);
+				return new QueryIterReachableNodes(binding,objVar,search.forwardIterator(subjects),execCxt);
+			}
+			Set<Node> reachableNodes = evaluate(subjects,compiledExpr,evalCxt);
 			return new QueryIterExtendByVar(binding,objVar,reachableNodes.iterator(),execCxt);
 		}
 		else if(sub.isVariable()&&!obj.isVariable())
@@ -166,57 +246,21 @@ public class OnPath extends PropertyFunctionBase
 			Var subVar = (Var)sub;
 			Set<Node> objects = new HashSet<Node>();
 			objects.add(obj);
-			Set<Node> reachableNodes = processParseTreeInv(objects,firstOp);
+			if(evalCxt.isAutomatonEngine())
+			{
+				ProductSearch search = createSearch(compiledExpr, evalCxt);
+				return new QueryIterReachableNodes(binding,subVar,search.backwardIterator(objects),execCxt);
+			}
+			Set<Node> reachableNodes = evaluateInv(objects,compiledExpr,evalCxt);
 			return new QueryIterExtendByVar(binding,subVar,reachableNodes.iterator(),execCxt);
 		}
 		else if(!sub.isVariable()&&!obj.isVariable())
 		{
-			/*
-			 * NOTE: implementation here is inefficient (no early exit if result is found).
-			 */
-			
-			// either sub or obj or both must be a bound variable
-			if(argSubject.getArg().isVariable())
-			{
-				Set<Node> objects = new HashSet<Node>();
-				objects.add(obj);
-				
-				Set<Node> reachableNodes = processParseTreeInv(objects,firstOp);
-				if(reachableNodes.contains(sub))
-				{
-					Set<Node> subjects = new HashSet<Node>();
-					subjects.add(sub);
-					return new QueryIterExtendByVar(binding,(Var)argSubject.getArg(),
-							subjects.iterator(),execCxt);
-				}
-				else
-				{
-					return new QueryIterNullIterator(execCxt);
-				}
-			}
-			else if(argObject.getArg(1).isVariable())
-			{
-				Set<Node> subjects = new HashSet<Node>();
-				subjects.add(sub);
-				
-				Set<Node> reachableNodes = processParseTree(subjects,firstOp);
-				if(reachableNodes.contains(obj))
-				{
-					Set<Node> objects = new HashSet<Node>();
-					objects.add(obj);
-					return new QueryIterExtendByVar(binding,(Var)argObject.getArg(1),
-							objects.iterator(),execCxt);
-				}
-				else
-				{
-					return new QueryIterNullIterator(execCxt);
-				}
-			}
+			// both ends are known, this is a pure reachability check
+			if(connects(sub, obj, compiledExpr, evalCxt))
+				return IterLib.result(binding, execCxt);
 			else
-			{
-				log.warn(this.getClass()+" either subject or object must be a variable!");
-				return IterLib.noResults(execCxt);
-			}
+				return new QueryIterNullIterator(execCxt);
 		}
 		else
 		{
@@ -225,29 +269,127 @@ public class OnPath extends PropertyFunctionBase
 		}
 	}
 	
+	/**
+	 * @param compiledExpr the compiled path expression
+	 * @param evalCxt the evaluation context for this call
+	 * @return the reachability index that answers the expression, if it is the closure 
+	 * ([p]+ or [p]*) of a single property with a registered index, otherwise null
+	 */
+	private ReachabilityIndex getClosureIndex(CompiledPathExpression compiledExpr, 
+			EvaluationContext evalCxt)
+	{
+		PlanNode plan = compiledExpr.getPlan();
+		int op = plan.getOperatorType();
+		if((op!=PathExpressionConstants.PLUS && op!=PathExpressionConstants.STAR) || 
+				!plan.getChild(0).isProperty())
+			return null;
+		return evalCxt.getReachabilityIndex(plan.getChild(0).getProperty());
+	}
+	
+	/**
+	 * Evaluate a path expression with the engine selected in the execution context
+	 * @param subjects set of subject resources
+	 * @param compiledExpr the compiled path expression
+	 * @param evalCxt the evaluation context for this call
+	 * @return set of resources reachable, from subjects, via paths matching the expression
+	 */
+	private Set<Node> evaluate(Set<Node> subjects, CompiledPathExpression compiledExpr, 
+			EvaluationContext evalCxt)
+	{
+		if(evalCxt.isAutomatonEngine())
+			return createSearch(compiledExpr, evalCxt).forward(subjects);
+		return processParseTree(subjects, compiledExpr.getPlan(), evalCxt);
+	}
+	
+	/**
+	 * Check whether the object can be reached from the subject, searching in the direction
+	 * chosen by the DirectionPlanner: from the end with the clearly smaller estimated 
+	 * fan-out, or else from both ends until the searches meet
+	 * @param sub the subject resource
+	 * @param obj the object resource
+	 * @param compiledExpr the compiled path expression
+	 * @param evalCxt the evaluation context for this call
+	 * @return true if a path matching the expression leads from sub to obj
+	 */
+	private boolean connects(Node sub, Node obj, CompiledPathExpression compiledExpr, 
+			EvaluationContext evalCxt)
+	{
+		Graph g = evalCxt.getGraph();
+		DirectionPlan plan = DirectionPlanner.getInstance(g).plan(g, compiledExpr.getAutomaton(), sub, obj);
+		if(log.isDebugEnabled())
+			log.debug("checking "+sub+" "+compiledExpr.getExpression()+" "+obj+": "+plan);
+		
+		ProductSearch search = createSearch(compiledExpr, evalCxt);
+		switch(plan.getDirection())
+		{
+			case FORWARD:
+				return search.connectsForward(sub, obj);
+			case BACKWARD:
+				return search.connectsBackward(sub, obj);
+			default:
+				return search.connects(sub, obj);
+		}
+	}
+	
+	/**
+	 * @param compiledExpr the compiled path expression
+	 * @param evalCxt the evaluation context for this call
+	 * @return a product search for the expression over the graph of the evaluation context
+	 */
+	private static ProductSearch createSearch(CompiledPathExpression compiledExpr, EvaluationContext evalCxt)
+	{
+		PathAutomaton automaton = compiledExpr.getAutomaton();
+		return new ProductSearch(evalCxt.createAdjacency(automaton), automaton);
+	}
+	
+	/**
+	 * like evaluate, but objects are defined rather than subjects
+	 * @param objects set of object resources
+	 * @param compiledExpr the compiled path expression
+	 * @param evalCxt the evaluation context for this call
+	 * @return set of resources from which a resource in objects can be reached via paths 
+	 * matching the expression
+	 */
+	private Set<Node> evaluateInv(Set<Node> objects, CompiledPathExpression compiledExpr, 
+			EvaluationContext evalCxt)
+	{
+		if(evalCxt.isAutomatonEngine())
+			return createSearch(compiledExpr, evalCxt).backward(objects);
+		return processParseTreeInv(objects, compiledExpr.getPlan(), evalCxt);
+	}
+	
 	/**
 	 * Process a parse tree or subtree by calling the appropriate method depending on the root
 	 * @param subjects current set of subject resources
 	 * @param root the root of the current parse (sub)tree
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources reachable, from subjects, via paths matching the pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Node> processParseTree(Set<Node> subjects, SimpleNode root)
+	private Set<Node> processParseTree(Set<Node> subjects, PlanNode root, EvaluationContext evalCxt)
 	{
+		ClosureMemo memo = evalCxt.getClosureMemo();
+		if(memo!=null)
+		{
+			subjects = memo.retainUnexpanded(root, subjects);
+			if(subjects.isEmpty())
+				return new HashSet<Node>();
+		}
+		
 		switch (root.getOperatorType())
 		{
 			case PathExpressionConstants.OPT:
-				return processOpt(subjects,root);
+				return processOpt(subjects,root, evalCxt);
 			case PathExpressionConstants.STAR:
-				return processKleeneStar(subjects, root);
+				return processKleeneStar(subjects, root, evalCxt);
 			case PathExpressionConstants.PLUS:
-				return processKleenePlus(subjects, root);
+				return processKleenePlus(subjects, root, evalCxt);
 			case PathExpressionConstants.ALT:
-				return processAlt(subjects, root);
+				return processAlt(subjects, root, evalCxt);
 			case PathExpressionConstants.CONCAT:
-				return processConcat(subjects, root);
+				return processConcat(subjects, root, evalCxt);
 			case PathExpressionConstants.PROPERTY:
-				return processRelNode(subjects, root);
+				return processRelNode(subjects, root, evalCxt);
 			default:
 				System.err.println("invalid operator type = "+root.getOperatorType());
 				break;
@@ -260,25 +402,34 @@ public class OnPath extends PropertyFunctionBase
 	 * Like processParseTree, but now the object is defined rather than the subject
 	 * @param objects current set of object resources
 	 * @param root root of the current parse (sub)tree
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources from which given objects can be reached via paths 
 	 * matching the pattern represented by this parse (sub)tree
 	 */
-	private Set<Node> processParseTreeInv(Set<Node> objects, SimpleNode root)
+	private Set<Node> processParseTreeInv(Set<Node> objects, PlanNode root, EvaluationContext evalCxt)
 	{	
+		ClosureMemo memo = evalCxt.getClosureMemo();
+		if(memo!=null)
+		{
+			objects = memo.retainUnexpanded(root, objects);
+			if(objects.isEmpty())
+				return new HashSet<Node>();
+		}
+		
 		switch (root.getOperatorType())
 		{
 			case PathExpressionConstants.OPT:
-				return processOptInv(objects,root);
+				return processOptInv(objects,root, evalCxt);
 			case PathExpressionConstants.STAR:
-				return processKleeneStarInv(objects, root);
+				return processKleeneStarInv(objects, root, evalCxt);
 			case PathExpressionConstants.PLUS:
-				return processKleenePlusInv(objects, root);
+				return processKleenePlusInv(objects, root, evalCxt);
 			case PathExpressionConstants.ALT:
-				return processAltInv(objects, root);
+				return processAltInv(objects, root, evalCxt);
 			case PathExpressionConstants.CONCAT:
-				return processConcatInv(objects, root);
+				return processConcatInv(objects, root, evalCxt);
 			case PathExpressionConstants.PROPERTY:
-				return processRelNodeInv(objects, root);
+				return processRelNodeInv(objects, root, evalCxt);
 			default:
 				System.err.println("invalid operator type = "+root.getOperatorType());
 				break;
@@ -291,17 +442,18 @@ public class OnPath extends PropertyFunctionBase
 	 * process a concatenation of path elements
 	 * @param subjectSet the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this concatenation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources reachable via this concatenation of path elements
 	 */
-	private Set<Node> processConcat(Set<Node> subjectSet, SimpleNode node)
+	private Set<Node> processConcat(Set<Node> subjectSet, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Node> results = new HashSet<Node>(subjectSet);
 		
 		// iterate over concatenated sub-expressions
 		// feed results of each as subjects of next
-		for (int i = 0; i < node.jjtGetNumChildren(); i++)
+		for (int i = 0; i < node.getNumChildren(); i++)
 		{
-			results = processParseTree(results,(SimpleNode)node.jjtGetChild(i));
+			results = processParseTree(results,node.getChild(i), evalCxt);
 		}
 		
 		return results;
@@ -311,18 +463,19 @@ public class OnPath extends PropertyFunctionBase
 	 * like processConcat, but now objects are defined rather than subjects
 	 * @param objectSet the current set of object resources
 	 * @param node the root of the parse (sub)tree for this concatenation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources from which a resource in objectSet can be reached 
 	 * via this concatenation of path elements
 	 */
-	private Set<Node> processConcatInv(Set<Node> objectSet, SimpleNode node)
+	private Set<Node> processConcatInv(Set<Node> objectSet, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Node> results = new HashSet<Node>(objectSet);
 		
 		// iterate over concatenated sub-expressions (in reverse order)
 		// feed results of each as objects of next
-		for (int i = node.jjtGetNumChildren()-1; i >= 0; i--)
+		for (int i = node.getNumChildren()-1; i >= 0; i--)
 		{
-			results = processParseTreeInv(results,(SimpleNode)node.jjtGetChild(i));
+			results = processParseTreeInv(results,node.getChild(i), evalCxt);
 		}
 		
 		return results;
@@ -332,16 +485,17 @@ public class OnPath extends PropertyFunctionBase
 	 * process optional operator (zero or one)
 	 * @param subjects the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this opt
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources reachable via the path pattern represented
 	 * by this parse tree
 	 */
-	private Set<Node> processOpt(Set<Node> subjects, SimpleNode node)
+	private Set<Node> processOpt(Set<Node> subjects, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Node> reachableNodes = new HashSet<Node>();
 		reachableNodes.addAll(subjects);
 		
-		SimpleNode child = (SimpleNode)node.jjtGetChild(0);
-		reachableNodes.addAll(processParseTree(subjects, child));
+		PlanNode child = node.getChild(0);
+		reachableNodes.addAll(processParseTree(subjects, child, evalCxt));
 		return reachableNodes;
 	}
 	
@@ -349,16 +503,17 @@ public class OnPath extends PropertyFunctionBase
 	 * like processOpt, but objects defined rather than subject
 	 * @param objects the current set of object resources
 	 * @param node the root of the parse (sub)tree for this opt
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources from which a resource in objects can be reached 
 	 * via the path pattern represented by this parse tree
 	 */
-	private Set<Node> processOptInv(Set<Node> objects, SimpleNode node)
+	private Set<Node> processOptInv(Set<Node> objects, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Node> reachableNodes = new HashSet<Node>();
 		reachableNodes.addAll(objects);
 		
-		SimpleNode child = (SimpleNode)node.jjtGetChild(0);
-		reachableNodes.addAll(processParseTreeInv(objects,child));
+		PlanNode child = node.getChild(0);
+		reachableNodes.addAll(processParseTreeInv(objects,child, evalCxt));
 		return reachableNodes;
 	}
 	
@@ -366,14 +521,15 @@ public class OnPath extends PropertyFunctionBase
 	 * process Kleene star operator (zero or more)
 	 * @param subjects the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources reachable via the path pattern represented
 	 * by this parse tree
 	 */
-	private Set<Node> processKleeneStar(Set<Node> subjects, SimpleNode node)
+	private Set<Node> processKleeneStar(Set<Node> subjects, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Node> reachableNodes = new HashSet<Node>();
 		reachableNodes.addAll(subjects);
-		reachableNodes.addAll(processKleenePlus(subjects,node));
+		reachableNodes.addAll(processKleenePlus(subjects,node, evalCxt));
 		return reachableNodes;
 	}
 	
@@ -381,14 +537,15 @@ public class OnPath extends PropertyFunctionBase
 	 * like processKleeneStar, but objects are defined rather than subjects
 	 * @param objects the current set of object resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources from which a resource in objects can be reached 
 	 * via the path pattern represented by this parse tree
 	 */
-	private Set<Node> processKleeneStarInv(Set<Node> objects, SimpleNode node)
+	private Set<Node> processKleeneStarInv(Set<Node> objects, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Node> reachableNodes = new HashSet<Node>();
 		reachableNodes.addAll(objects);
-		reachableNodes.addAll(processKleenePlusInv(objects,node));
+		reachableNodes.addAll(processKleenePlusInv(objects,node, evalCxt));
 		return reachableNodes;
 	}
 	
@@ -396,19 +553,47 @@ public class OnPath extends PropertyFunctionBase
 	 * process Kleene plus operator (one or more)
 	 * @param subjects the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources reachable via the path pattern represented
 	 * by this parse tree
 	 */
-	private Set<Node> processKleenePlus(Set<Node> subjects, SimpleNode node)
+	private Set<Node> processKleenePlus(Set<Node> subjects, PlanNode node, EvaluationContext evalCxt)
 	{
-		Set<Node> reachableNodes = new HashSet<Node>();
+		int parallelThreshold = ContextUtil.getParallelThreshold(evalCxt.getContext());
+		if(parallelThreshold>0)
+			return processKleenePlusParallel(subjects, node, false, parallelThreshold, evalCxt);
 		
-		SimpleNode child = (SimpleNode)node.jjtGetChild(0);
+		PlanNode child = node.getChild(0);
+		ClosureMemo memo = evalCxt.getClosureMemo();
+		boolean outermost = memo==null;
+		if(outermost)
+		{
+			if(child.isProperty())
+				return createClosureSearch(child.getProperty(), evalCxt).forward(subjects);
+			
+			// within this closure every sub-expression, nested closures included, is
+			// evaluated from each node at most once (see ClosureMemo)
+			memo = new ClosureMemo();
+			evalCxt = evalCxt.withClosureMemo(memo);
+		}
+		else if(child.isProperty())
+		{
+			// nodes reached in earlier rounds of the enclosing closure are not expanded again
+			ClosureSearch search = memo.getClosureSearch(node);
+			if(search==null)
+			{
+				search = createClosureSearch(child.getProperty(), evalCxt);
+				memo.putClosureSearch(node, search);
+			}
+			return search.forwardIncremental(subjects);
+		}
+		
+		Set<Node> reachableNodes = new HashSet<Node>();
 
 		Set<Node> currLevelResults = new HashSet<Node>(subjects);
 		while(!currLevelResults.isEmpty())
 		{
-			currLevelResults = processParseTree(currLevelResults, child);
+			currLevelResults = processParseTree(currLevelResults, child, evalCxt);
 			
 			// test to deal with cycles, may be inefficient
 			Iterator<Node> resultsIt = currLevelResults.iterator();
@@ -425,6 +610,8 @@ public class OnPath extends PropertyFunctionBase
 			reachableNodes.addAll(currLevelResults);
 		} 
 		
+		if(outermost && log.isDebugEnabled())
+			log.debug("closure "+node+": "+memo);
 		return reachableNodes;
 	}
 	
@@ -432,19 +619,47 @@ public class OnPath extends PropertyFunctionBase
 	 * like processKleenePlus, but objects are defined rather than subjects
 	 * @param objects the current set of object resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources from which a resource in objects can be reached 
 	 * via the path pattern represented by this parse tree
 	 */
-	private Set<Node> processKleenePlusInv(Set<Node> objects, SimpleNode node)
+	private Set<Node> processKleenePlusInv(Set<Node> objects, PlanNode node, EvaluationContext evalCxt)
 	{
-		Set<Node> reachableNodes = new HashSet<Node>();
+		int parallelThreshold = ContextUtil.getParallelThreshold(evalCxt.getContext());
+		if(parallelThreshold>0)
+			return processKleenePlusParallel(objects, node, true, parallelThreshold, evalCxt);
+		
+		PlanNode child = node.getChild(0);
+		ClosureMemo memo = evalCxt.getClosureMemo();
+		boolean outermost = memo==null;
+		if(outermost)
+		{
+			if(child.isProperty())
+				return createClosureSearch(child.getProperty(), evalCxt).backward(objects);
+			
+			// within this closure every sub-expression, nested closures included, is
+			// evaluated from each node at most once (see ClosureMemo)
+			memo = new ClosureMemo();
+			evalCxt = evalCxt.withClosureMemo(memo);
+		}
+		else if(child.isProperty())
+		{
+			// nodes reached in earlier rounds of the enclosing closure are not expanded again
+			ClosureSearch search = memo.getClosureSearch(node);
+			if(search==null)
+			{
+				search = createClosureSearch(child.getProperty(), evalCxt);
+				memo.putClosureSearch(node, search);
+			}
+			return search.backwardIncremental(objects);
+		}
 		
-		SimpleNode child = (SimpleNode)node.jjtGetChild(0);
+		Set<Node> reachableNodes = new HashSet<Node>();
 
 		Set<Node> currLevelResults = new HashSet<Node>(objects);
 		while(!currLevelResults.isEmpty())
 		{
-			currLevelResults = processParseTreeInv(currLevelResults, child);
+			currLevelResults = processParseTreeInv(currLevelResults, child, evalCxt);
 			
 			// test to deal with cycles, may be inefficient
 			Iterator<Node> resultsIt = currLevelResults.iterator();
@@ -461,27 +676,160 @@ public class OnPath extends PropertyFunctionBase
 			reachableNodes.addAll(currLevelResults);
 		} 
 		
+		if(outermost && log.isDebugEnabled())
+			log.debug("closure "+node+": "+memo);
 		return reachableNodes;
 	}
 	
+	/**
+	 * @param property a property
+	 * @param evalCxt the evaluation context for this call
+	 * @return a direction optimizing search for the closure of the property
+	 */
+	private static ClosureSearch createClosureSearch(Node property, EvaluationContext evalCxt)
+	{
+		return new ClosureSearch(evalCxt.createAdjacency(Collections.singleton(property)), property);
+	}
+	
+	/**
+	 * Level synchronous evaluation of a Kleene plus in which each level holding at least 
+	 * parallelThreshold nodes is split across the shared pool for the query's parallelism.
+	 * Every task evaluates the closed sub-expression for its share of the level and keeps 
+	 * the results not yet in the shared (concurrent) visited set as its part of the next level.
+	 * @param starts the current set of subject (or object) resources
+	 * @param node the root of the parse (sub)tree for this operation
+	 * @param inverse true if objects are defined rather than subjects
+	 * @param parallelThreshold smallest level expanded in parallel
+	 * @param evalCxt the evaluation context for this call
+	 * @return set of resources reachable from (or reaching) starts via the path pattern 
+	 * represented by this parse tree
+	 */
+	private Set<Node> processKleenePlusParallel(Set<Node> starts, PlanNode node, boolean inverse,
+			int parallelThreshold, EvaluationContext evalCxt)
+	{
+		Set<Node> reachableNodes = Collections.newSetFromMap(new ConcurrentHashMap<Node, Boolean>());
+		PlanNode child = node.getChild(0);
+		ForkJoinPool pool = getPool(ContextUtil.getParallelism(evalCxt.getContext()));
+		
+		List<Node> currLevel = new ArrayList<Node>(starts);
+		while(!currLevel.isEmpty())
+		{
+			if(currLevel.size()<parallelThreshold)
+			{
+				currLevel = expandLevel(currLevel, child, inverse, reachableNodes, evalCxt);
+				continue;
+			}
+			
+			int grain = Math.max(currLevel.size()/(pool.getParallelism()*4), 64);
+			LevelTask task = new LevelTask(currLevel, child, inverse, reachableNodes, grain, evalCxt);
+			// closures nested in the sub-expression run on a worker already
+			currLevel = ForkJoinTask.inForkJoinPool() ? task.invoke() : pool.invoke(task);
+		}
+		return reachableNodes;
+	}
+	
+	/**
+	 * @param parallelism the number of workers asked for, clamped to 1..MAX_PARALLELISM
+	 * @return the shared pool with that many workers, created on first use
+	 */
+	private static ForkJoinPool getPool(int parallelism)
+	{
+		Integer key = Math.max(1, Math.min(parallelism, MAX_PARALLELISM));
+		ForkJoinPool pool = pools.get(key);
+		if(pool==null)
+		{
+			ForkJoinPool created = new ForkJoinPool(key, workerFactory, null, false);
+			pool = pools.putIfAbsent(key, created);
+			if(pool==null)
+				pool = created;
+			else
+				created.shutdown();
+		}
+		return pool;
+	}
+	
+	/**
+	 * evaluate a closed sub-expression for part of a level
+	 * @return the results that were not already visited
+	 */
+	private List<Node> expandLevel(List<Node> level, PlanNode child, boolean inverse, 
+			Set<Node> visited, EvaluationContext evalCxt)
+	{
+		Set<Node> levelNodes = new HashSet<Node>(level);
+		Set<Node> results = inverse ? processParseTreeInv(levelNodes, child, evalCxt) 
+				: processParseTree(levelNodes, child, evalCxt);
+		List<Node> nextLevel = new ArrayList<Node>();
+		for(Node result : results)
+		{
+			if(visited.add(result))
+				nextLevel.add(result);
+		}
+		return nextLevel;
+	}
+	
+	/**
+	 * expands a slice of a closure level, splitting it in two until it is no bigger than
+	 * the grain
+	 */
+	private class LevelTask extends RecursiveTask<List<Node>>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final List<Node> level;
+		private final PlanNode child;
+		private final boolean inverse;
+		private final Set<Node> visited;
+		private final int grain;
+		private final EvaluationContext evalCxt;
+		
+		LevelTask(List<Node> level, PlanNode child, boolean inverse, Set<Node> visited, 
+				int grain, EvaluationContext evalCxt)
+		{
+			this.level = level;
+			this.child = child;
+			this.inverse = inverse;
+			this.visited = visited;
+			this.grain = grain;
+			this.evalCxt = evalCxt;
+		}
+		
+		@Override
+		protected List<Node> compute()
+		{
+			if(level.size()<=grain)
+				return expandLevel(level, child, inverse, visited, evalCxt);
+			
+			int middle = level.size()/2;
+			LevelTask right = new LevelTask(level.subList(middle, level.size()), child, inverse, 
+					visited, grain, evalCxt);
+			right.fork();
+			List<Node> nextLevel = new LevelTask(level.subList(0, middle), child, inverse, 
+					visited, grain, evalCxt).compute();
+			nextLevel.addAll(right.join());
+			return nextLevel;
+		}
+	}
+	
 	/**
 	 * process single relationship link (single property)
 	 * @param subjects the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources reachable via the path pattern represented
 	 * by this parse tree
 	 */
-	private Set<Node> processRelNode(Set<Node> subjects, SimpleNode node)
+	private Set<Node> processRelNode(Set<Node> subjects, PlanNode node, EvaluationContext evalCxt)
 	{
-		Node relNode = getRelNode(node);
+		Graph g = evalCxt.getGraph();
+		Node relNode = node.getProperty();
 		Set<Node> reachableNodes = new HashSet<Node>();
 		
 		for(Node subject : subjects)
 		{
-			ExtendedIterator ei = g.find(subject, relNode, Node.ANY);
+			ExtendedIterator<Triple> ei = g.find(subject, relNode, Node.ANY);
 			while(ei.hasNext())
 			{
-				Triple currTriple = (Triple)ei.next();
+				Triple currTriple = ei.next();
 				Node currNode = currTriple.getObject();
 				reachableNodes.add(currNode);
 			}
@@ -493,20 +841,22 @@ public class OnPath extends PropertyFunctionBase
 	 * like processRelNode, but objects are defined rather than subjects
 	 * @param objects the current set of object resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources from which a resource in objects can be reached 
 	 * via the path pattern represented by this parse tree
 	 */
-	private Set<Node> processRelNodeInv(Set<Node> objects, SimpleNode node)
+	private Set<Node> processRelNodeInv(Set<Node> objects, PlanNode node, EvaluationContext evalCxt)
 	{
-		Node relNode = getRelNode(node);
+		Graph g = evalCxt.getGraph();
+		Node relNode = node.getProperty();
 		Set<Node> reachableNodes = new HashSet<Node>();
 		
 		for(Node object : objects)
 		{
-			ExtendedIterator ei = g.find(Node.ANY, relNode, object);
+			ExtendedIterator<Triple> ei = g.find(Node.ANY, relNode, object);
 			while(ei.hasNext())
 			{
-				Triple currTriple = (Triple)ei.next();
+				Triple currTriple = ei.next();
 				Node currNode = currTriple.getSubject();
 				reachableNodes.add(currNode);
 			}
@@ -518,35 +868,38 @@ public class OnPath extends PropertyFunctionBase
 	 * Process alternation operator (logical OR)
 	 * @param subjects the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources reachable via the path pattern represented
 	 * by this parse tree
 	 */
-	private Set<Node> processAlt(Set<Node> subjects, SimpleNode node)
+	private Set<Node> processAlt(Set<Node> subjects, PlanNode node, EvaluationContext evalCxt)
 	{
-		//Set<Node> relNodes = getAltRelNodes(node);
 		Set<Node> reachableNodes = new HashSet<Node>();
 		
-		for (int i = 0; i < node.jjtGetNumChildren(); i++)
+		if(node.isPropertyAlternation())
 		{
-			SimpleNode child = (SimpleNode)node.jjtGetChild(i);
-
-			reachableNodes.addAll(processParseTree(subjects, child));
-		}
-		/*
-		for(Node subject : subjects)
-		{
-			for(Node relNode : relNodes)
+			// a single step over all the properties
+			Graph g = evalCxt.getGraph();
+			Set<Node> relNodes = getAltRelNodes(node);
+			for(Node subject : subjects)
 			{
-				ExtendedIterator ei = g.find(subject, relNode, Node.ANY);
+				ExtendedIterator<Triple> ei = MultiPropertyFind.find(g, subject, relNodes, true);
 				while(ei.hasNext())
 				{
-					Triple currTriple = (Triple)ei.next();
+					Triple currTriple = ei.next();
 					Node currNode = currTriple.getObject();
 					reachableNodes.add(currNode);
 				}
 			}
+			return reachableNodes;
+		}
+		
+		for (int i = 0; i < node.getNumChildren(); i++)
+		{
+			PlanNode child = node.getChild(i);
+
+			reachableNodes.addAll(processParseTree(subjects, child, evalCxt));
 		}
-		*/
 		return reachableNodes;
 	}
 	
@@ -554,155 +907,267 @@ public class OnPath extends PropertyFunctionBase
 	 * like processAlt, but objects are defined rather than subjects
 	 * @param objects the current set of object resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of resources from which a resource in objects can be reached 
 	 * via the path pattern represented by this parse tree
 	 */
-	private Set<Node> processAltInv(Set<Node> objects, SimpleNode node)
+	private Set<Node> processAltInv(Set<Node> objects, PlanNode node, EvaluationContext evalCxt)
 	{
-		//Set<Node> relNodes = getAltRelNodes(node);
 		Set<Node> reachableNodes = new HashSet<Node>();
 		
-		for (int i = 0; i < node.jjtGetNumChildren(); i++)
-		{
-			SimpleNode child = (SimpleNode)node.jjtGetChild(i);
-
-			reachableNodes.addAll(processParseTreeInv(objects, child));
-		}
-		/*
-		for(Node object : objects)
+		if(node.isPropertyAlternation())
 		{
-			for(Node relNode : relNodes)
+			// a single step over all the properties
+			Graph g = evalCxt.getGraph();
+			Set<Node> relNodes = getAltRelNodes(node);
+			for(Node object : objects)
 			{
-				ExtendedIterator ei = g.find(Node.ANY, relNode, object);
+				ExtendedIterator<Triple> ei = MultiPropertyFind.find(g, object, relNodes, false);
 				while(ei.hasNext())
 				{
-					Triple currTriple = (Triple)ei.next();
+					Triple currTriple = ei.next();
 					Node currNode = currTriple.getSubject();
 					reachableNodes.add(currNode);
 				}
 			}
+			return reachableNodes;
+		}
+		
+		for (int i = 0; i < node.getNumChildren(); i++)
+		{
+			PlanNode child = node.getChild(i);
+
+			reachableNodes.addAll(processParseTreeInv(objects, child, evalCxt));
 		}
-		*/
 		return reachableNodes;
 	}
 	
 	/**
-	 * get the property node for a given property string
-	 * @param node the root of a parse tree containing a property string
-	 * @return the property node for the given string
+	 * get the set of property nodes for a given alternation
+	 * (separated by alternation operators)
+	 * @param node the root of a plan tree containing an alternation of properties
+	 * @return set of property nodes for the alternation
 	 */
-	private Node getRelNode(SimpleNode node)
+	private Set<Node> getAltRelNodes(PlanNode node)
 	{
-		String relText = node.getOperator();
+		Set<Node> altNodeList = new HashSet<Node>();
 		
-		// get query prefix mapping if possible, if not use graph (which may not work)
-		PrefixMapping prefixMapping = null;
-		if(queryPrefMap!=null)
+		for (int i = 0; i < node.getNumChildren(); i++)
 		{
-			prefixMapping = queryPrefMap;
-		}
-		else
-		{
-			prefixMapping = g.getPrefixMapping();
+			PlanNode child = node.getChild(i);
+			if(child.isProperty())
+				altNodeList.add(child.getProperty());
+			else
+				altNodeList.addAll(getAltRelNodes(child));
 		}
 		
-		String expandedRelName = prefixMapping.expandPrefix(relText);
-
-		Node relNode = Node.createURI(expandedRelName);
-		
-		return relNode;
+		return altNodeList;
 	}
 	
 	/**
-	 * get the set of property nodes for a given set of string
-	 * (separated by alternation operators)
-	 * @param node the root of a parse tree containing an alternation of property strings
-	 * @return set of property nodes for input strings
+	 * Evaluates input bindings a batch at a time (see exec(QueryIterator, ...)). Bindings with 
+	 * exactly one bound end are grouped by path expression and direction, each group is 
+	 * evaluated by one MultiSourceSearch (or, with the recursive engine, once per distinct
+	 * bound end), and any other binding is handed to exec(Binding, ...) unchanged. Results 
+	 * are produced in input binding order.
 	 */
-	private Set<Node> getAltRelNodes(SimpleNode node)
+	private class QueryIterBatch extends QueryIter1
 	{
-		Set<Node> altNodeList = new HashSet<Node>();
+		private final PropFuncArg argSubject;
+		private final PropFuncArg argObject;
+		private final int batchSize;
+		private final EvaluationContext evalCxt;
+		private final Queue<QueryIterator> stages = new LinkedList<QueryIterator>();
+		private QueryIterator currStage = null;
 		
-		// get query prefix mapping if possible, if not use graph (which may not work)
-		PrefixMapping prefixMapping = null;
-		if(queryPrefMap!=null)
+		QueryIterBatch(QueryIterator input, PropFuncArg argSubject, PropFuncArg argObject, 
+				int batchSize, EvaluationContext evalCxt, ExecutionContext execCxt)
 		{
-			prefixMapping = queryPrefMap;
+			super(input, execCxt);
+			this.argSubject = argSubject;
+			this.argObject = argObject;
+			this.batchSize = batchSize;
+			this.evalCxt = evalCxt;
 		}
-		else
+		
+		@Override
+		protected boolean hasNextBinding()
 		{
-			prefixMapping = g.getPrefixMapping();
+			while(true)
+			{
+				if(currStage!=null)
+				{
+					if(currStage.hasNext())
+						return true;
+					currStage.close();
+					currStage = null;
+				}
+				if(stages.isEmpty())
+				{
+					if(!getInput().hasNext())
+						return false;
+					nextBatch();
+				}
+				currStage = stages.poll();
+			}
 		}
 		
-		for (int i = 0; i < node.jjtGetNumChildren(); i++)
+		@Override
+		protected Binding moveToNextBinding()
 		{
-			SimpleNode child = (SimpleNode)node.jjtGetChild(i);
-			
-			String relText = child.getOperator();
-						
-			String expandedRelName = prefixMapping.expandPrefix(relText);
-
-			Node relNode = Node.createURI(expandedRelName);
-			altNodeList.add(relNode);
+			return currStage.nextBinding();
 		}
 		
-		return altNodeList;
-	}
-	
-	void test(String pathExpression)
-	{
-		StringReader queryReader = new StringReader(pathExpression);
+		@Override
+		protected void closeSubIterator()
+		{
+			if(currStage!=null)
+				currStage.close();
+			for(QueryIterator stage : stages)
+			{
+				stage.close();
+			}
+			stages.clear();
+		}
 		
-		PathExpression parser = new PathExpression(queryReader);
-
-		try
+		@Override
+		protected void requestSubCancel()
 		{
-			System.out.println("pathExpression = " + pathExpression);
-			System.out.println();
-
-			SimpleNode root = parser.Start();
+			if(currStage!=null)
+				currStage.cancel();
+		}
+		
+		/**
+		 * read up to batchSize input bindings and evaluate them
+		 */
+		private void nextBatch()
+		{
+			ExecutionContext execCxt = getExecContext();
 			
-			Queue nodeQueue = new LinkedList<SimpleNode>();
-			nodeQueue.offer(root);
-			SimpleNode currNode;
+			List<Binding> bindings = new ArrayList<Binding>();
+			List<BatchRequest> requests = new ArrayList<BatchRequest>();
+			Map<CompiledPathExpression, Set<Node>> forwardStarts = new LinkedHashMap<CompiledPathExpression, Set<Node>>();
+			Map<CompiledPathExpression, Set<Node>> backwardStarts = new LinkedHashMap<CompiledPathExpression, Set<Node>>();
 			
-			while(( currNode = (SimpleNode)nodeQueue.poll())!=null)
+			while(bindings.size()<batchSize && getInput().hasNext())
 			{
-				for(int childCount=0; childCount<currNode.jjtGetNumChildren(); childCount++)
+				Binding binding = getInput().nextBinding();
+				bindings.add(binding);
+				
+				PropFuncArg evalArgSubject = Substitute.substitute(argSubject, binding);
+				PropFuncArg evalArgObject = Substitute.substitute(argObject, binding);
+				Node pathExprNode = evalArgObject.getArg(0);
+				Node sub = evalArgSubject.getArg();
+				Node obj = evalArgObject.getArg(1);
+				
+				// only single-ended, well formed calls not answered by an index are batched
+				CompiledPathExpression compiledExpr = null;
+				if(pathExprNode.isLiteral() && !sub.isLiteral() && !obj.isLiteral() && 
+						sub.isVariable()!=obj.isVariable())
+				{
+					try
+					{
+						compiledExpr = PathExpressionCache.getDefault().get(
+								pathExprNode.getLiteralLexicalForm(), evalCxt.getPrefixes());
+					}
+					catch (ParseException e)
+					{
+						// exec will report it
+					}
+				}
+				if(compiledExpr==null || getClosureIndex(compiledExpr, evalCxt)!=null)
+				{
+					requests.add(null);
+					continue;
+				}
+				
+				boolean forward = obj.isVariable();
+				Node start = forward ? sub : obj;
+				Map<CompiledPathExpression, Set<Node>> startsByExpr = forward ? forwardStarts : backwardStarts;
+				Set<Node> starts = startsByExpr.get(compiledExpr);
+				if(starts==null)
 				{
-					SimpleNode nextNode = (SimpleNode)currNode.jjtGetChild(childCount);
-					nodeQueue.offer(nextNode);
-					processParseTree(new HashSet<Node>(),nextNode);
+					starts = new HashSet<Node>();
+					startsByExpr.put(compiledExpr, starts);
 				}
+				starts.add(start);
+				requests.add(new BatchRequest(compiledExpr, forward, start, (Var)(forward ? obj : sub)));
 			}
-			//root.dump("");
 			
-			/*
-			for(int i=0; i<root.jjtGetNumChildren(); i++)
+			Map<CompiledPathExpression, Map<Node, Set<Node>>> forwardResults = new HashMap<CompiledPathExpression, Map<Node, Set<Node>>>();
+			for(Map.Entry<CompiledPathExpression, Set<Node>> entry : forwardStarts.entrySet())
 			{
-				System.err.println("child class = "+root.jjtGetChild(i).getClass());
+				forwardResults.put(entry.getKey(), evaluateStarts(entry.getKey(), entry.getValue(), true));
+			}
+			Map<CompiledPathExpression, Map<Node, Set<Node>>> backwardResults = new HashMap<CompiledPathExpression, Map<Node, Set<Node>>>();
+			for(Map.Entry<CompiledPathExpression, Set<Node>> entry : backwardStarts.entrySet())
+			{
+				backwardResults.put(entry.getKey(), evaluateStarts(entry.getKey(), entry.getValue(), false));
+			}
+			
+			for (int i = 0; i < bindings.size(); i++)
+			{
+				Binding binding = bindings.get(i);
+				BatchRequest request = requests.get(i);
+				if(request==null)
+				{
+					stages.add(exec(binding, argSubject, argObject, evalCxt, execCxt));
+					continue;
+				}
+				
+				Map<Node, Set<Node>> results = request.forward ? forwardResults.get(request.compiledExpr) : 
+					backwardResults.get(request.compiledExpr);
+				Set<Node> reachableNodes = results.get(request.start);
+				stages.add(new QueryIterExtendByVar(binding, request.var, reachableNodes.iterator(), execCxt));
 			}
-			*/
-		}
-		catch (ParseException e)
-		{
-			System.out.print(e.getMessage());
-			System.out.println();
 		}
-		catch (TokenMgrError tke)
+		
+		/**
+		 * evaluate a path expression from each of a batch's bound ends with the selected 
+		 * engine
+		 * @param forward true if the starts are subjects, false if they are objects
+		 * @return the nodes reached, by start
+		 */
+		private Map<Node, Set<Node>> evaluateStarts(CompiledPathExpression compiledExpr, 
+				Set<Node> starts, boolean forward)
 		{
-			System.out.print(tke.getMessage());
-			System.out.println();
+			if(evalCxt.isAutomatonEngine())
+			{
+				PathAutomaton automaton = compiledExpr.getAutomaton();
+				MultiSourceSearch search = new MultiSourceSearch(evalCxt.createAdjacency(automaton), automaton);
+				return forward ? search.forward(starts) : search.backward(starts);
+			}
+			
+			// the recursive engine has no multi-source evaluation, so each distinct start is
+			// evaluated once for all the bindings that share it
+			Map<Node, Set<Node>> results = new HashMap<Node, Set<Node>>();
+			for(Node start : starts)
+			{
+				Set<Node> single = new HashSet<Node>();
+				single.add(start);
+				results.put(start, forward ? evaluate(single, compiledExpr, evalCxt) 
+						: evaluateInv(single, compiledExpr, evalCxt));
+			}
+			return results;
 		}
 	}
-
+	
 	/**
-	 * @param args
+	 * a batched binding with exactly one bound end
 	 */
-	public static void main(String[] args)
+	private static final class BatchRequest
 	{
-		OnPath subgraph = new OnPath();
-		subgraph.test(args[0]);
+		final CompiledPathExpression compiledExpr;
+		final boolean forward;
+		final Node start;
+		final Var var;
+		
+		BatchRequest(CompiledPathExpression compiledExpr, boolean forward, Node start, Var var)
+		{
+			this.compiledExpr = compiledExpr;
+			this.forward = forward;
+			this.start = start;
+			this.var = var;
+		}
 	}
-
 }
@@ -0,0 +1,206 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QueryBuildException;
+import com.hp.hpl.jena.sparql.core.Substitute;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
+import com.hp.hpl.jena.sparql.pfunction.PropFuncArg;
+import com.hp.hpl.jena.sparql.pfunction.PropFuncArgType;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase;
+import com.hp.hpl.jena.sparql.util.IterLib;
+
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.automaton.PathEnumerator;
+import edu.washington.sig.gleen.iterator.QueryIterPaths;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+import edu.washington.sig.gleen.plan.PathExpressionCache;
+import edu.washington.sig.gleen.util.ContextUtil;
+import edu.washington.sig.gleen.util.EvaluationContext;
+
+/**
+ * Binds the triples of the paths matching a path expression from a bound start node,
+ * shortest first, optionally only up to a number of paths k and a path length:
+ * <pre>
+ * (ex:a "([part_of]|[branch_of])+" ex:b 10 6) gleen:Paths (?path ?step ?s ?p ?o)
+ * </pre>
+ * binds the triples of the 10 shortest paths from ex:a to ex:b of at most 6 triples, each
+ * with the number of its path and its position on it. The end may be an unbound variable,
+ * to take paths ending anywhere. Paths are simple (see PathEnumerator) and found as the
+ * bindings are consumed, whichever engine is selected.
+ * <p>
+ * The number of paths is also capped by ContextUtil.getPathLimit, and a call stops, with a
+ * warning, once it holds ContextUtil.getPathQueueLimit partial paths.
+ * <p>
+ * Like OnPath and Subgraph, Paths keeps no per-query state and a single registered
+ * instance can be shared by concurrently executing queries.
+ */
+public class Paths extends PropertyFunctionBase
+{
+	private final Log log = LogFactory.getLog(this.getClass());
+
+	public Paths()
+	{
+		super(PropFuncArgType.PF_ARG_LIST, PropFuncArgType.PF_ARG_LIST);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase#build(com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.graph.Node, com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.sparql.engine.ExecutionContext)
+	 */
+	@Override
+	public void build(PropFuncArg argSubject, Node predicate,
+			PropFuncArg argObject, ExecutionContext execCxt)
+	{
+		// these checks must be passed before exec
+		if(!argSubject.isList()||argSubject.getArgList().size()<3||argSubject.getArgList().size()>5)
+			throw new QueryBuildException(this.getClass()+" subject must be list of three to five elements");
+		if(!argObject.isList()||argObject.getArgList().size()!=5)
+			throw new QueryBuildException(this.getClass()+" object must be list of five elements");
+
+		// check that the output path, position, subject, predicate and object are distinct variables
+		Set<Node> outputVars = new HashSet<Node>();
+		for(Node arg : argObject.getArgList())
+		{
+			if(!arg.isVariable())
+				throw new QueryBuildException(this.getClass()+" output path position subject predicate object must all be variable");
+			if(!outputVars.add(arg))
+				throw new QueryBuildException(this.getClass()+" output variables must be distinct");
+		}
+
+		// check that input pathExpression is a literal
+		if(!argSubject.getArg(1).isLiteral())
+			throw new QueryBuildException(this.getClass()+" input path expression must be a literal");
+
+		// check for query prefix map (it is looked up again by each exec, as this instance
+		// may be shared between queries)
+		if(EvaluationContext.getQueryPrefixMapping(execCxt.getContext())==null)
+			throw new QueryBuildException(this.getClass()+" query prefix mapping is null");
+	}
+
+	/* (non-Javadoc)
+	 * @see com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase#exec(com.hp.hpl.jena.sparql.engine.binding.Binding, com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.graph.Node, com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.sparql.engine.ExecutionContext)
+	 */
+	@Override
+	public QueryIterator exec(Binding binding, PropFuncArg argSubject, Node predicate,
+			PropFuncArg argObject, ExecutionContext execCxt)
+	{
+		// gather graph, prefixes and options for this call
+		EvaluationContext evalCxt = EvaluationContext.create(execCxt);
+		if(evalCxt==null)
+		{
+			log.warn(this.getClass()+" query prefix mapping is null");
+			return IterLib.noResults(execCxt);
+		}
+
+		// evaluate the subject and object given the binding
+		PropFuncArg evalArgSubject = Substitute.substitute(argSubject, binding);
+
+		// ensure all output vars are unbound
+		List<Node> outputVars = argObject.getArgList();
+		for(Node var : outputVars)
+		{
+			if(binding.contains((Var)var))
+			{
+				log.warn(this.getClass()+" output "+var+" must be an unbound variable!");
+				return IterLib.noResults(execCxt);
+			}
+		}
+
+		// get input subject and object after bindings have been evaluated
+		Node sub = evalArgSubject.getArg(0);
+		Node obj = evalArgSubject.getArg(2);
+		if(sub.isVariable())
+		{
+			log.warn(this.getClass()+" subject must be bound!");
+			return IterLib.noResults(execCxt);
+		}
+		if(sub.isLiteral()||obj.isLiteral())
+		{
+			log.warn(this.getClass()+" neither subject or object can be a literal!");
+			return IterLib.noResults(execCxt);
+		}
+
+		// get the number of paths and their length, if given
+		int maxPaths = ContextUtil.getPathLimit(evalCxt.getContext());
+		int maxLength = Integer.MAX_VALUE;
+		if(evalArgSubject.getArgListSize()>3)
+		{
+			int k = getLimit(evalArgSubject.getArg(3), "number of paths");
+			if(k<0)
+				return IterLib.noResults(execCxt);
+			maxPaths = Math.min(maxPaths, k);
+		}
+		if(evalArgSubject.getArgListSize()>4)
+		{
+			maxLength = getLimit(evalArgSubject.getArg(4), "path length");
+			if(maxLength<0)
+				return IterLib.noResults(execCxt);
+		}
+
+		// get (cached) plan for path expression
+		String pathExprString = evalArgSubject.getArg(1).getLiteralLexicalForm();
+		CompiledPathExpression compiledExpr;
+		try
+		{
+			compiledExpr = PathExpressionCache.getDefault().get(pathExprString, evalCxt.getPrefixes());
+		}
+		catch (ParseException e)
+		{
+			log.warn(this.getClass()+" parseException! "+e.getMessage());
+			return IterLib.noResults(execCxt);
+		}
+
+		PathAutomaton automaton = compiledExpr.getAutomaton();
+		PathEnumerator paths = new PathEnumerator(evalCxt.createAdjacency(automaton), automaton,
+				sub, obj.isVariable() ? null : obj, maxLength,
+				ContextUtil.getPathQueueLimit(evalCxt.getContext()));
+		return new QueryIterPaths(binding, (Var)outputVars.get(0), (Var)outputVars.get(1),
+				(Var)outputVars.get(2), (Var)outputVars.get(3), (Var)outputVars.get(4),
+				paths, maxPaths, execCxt);
+	}
+
+	/**
+	 * @param arg the (evaluated) argument giving a limit
+	 * @param name what the limit is, for warnings
+	 * @return the limit, or -1 if arg is not a non-negative integer
+	 */
+	private int getLimit(Node arg, String name)
+	{
+		if(arg.isLiteral())
+		{
+			NodeValue value = NodeValue.makeNode(arg);
+			if(value.isInteger() && value.getInteger().signum()>=0)
+				return value.getInteger().min(BigInteger.valueOf(Integer.MAX_VALUE)).intValue();
+		}
+		log.warn(this.getClass()+" "+name+" must be a non-negative integer, not "+arg);
+		return -1;
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QueryBuildException;
+import com.hp.hpl.jena.sparql.core.Substitute;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.pfunction.PropFuncArg;
+import com.hp.hpl.jena.sparql.pfunction.PropFuncArgType;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase;
+import com.hp.hpl.jena.sparql.util.IterLib;
+
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.automaton.ShortestPathSearch;
+import edu.washington.sig.gleen.iterator.QueryIterSteps;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+import edu.washington.sig.gleen.plan.PathExpressionCache;
+import edu.washington.sig.gleen.util.EvaluationContext;
+
+/**
+ * Binds the triples of one shortest path matching a path expression between two bound
+ * nodes, each with its position on the path (1 for the triple leaving the start node):
+ * <pre>
+ * (ex:a "([part_of]|[branch_of])+" ex:b) gleen:ShortestPath (?step ?s ?p ?o)
+ * </pre>
+ * The path is found by a bidirectional search over the expression's automaton (see
+ * ShortestPathSearch), whichever engine is selected, so unlike Subgraph no other matching
+ * path is enumerated. There are no results when no path matches, nor when the expression
+ * matches the empty path from a node to itself.
+ * <p>
+ * Like OnPath and Subgraph, ShortestPath keeps no per-query state and a single registered
+ * instance can be shared by concurrently executing queries.
+ */
+public class ShortestPath extends PropertyFunctionBase
+{
+	private final Log log = LogFactory.getLog(this.getClass());
+
+	public ShortestPath()
+	{
+		super(PropFuncArgType.PF_ARG_LIST, PropFuncArgType.PF_ARG_LIST);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase#build(com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.graph.Node, com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.sparql.engine.ExecutionContext)
+	 */
+	@Override
+	public void build(PropFuncArg argSubject, Node predicate,
+			PropFuncArg argObject, ExecutionContext execCxt)
+	{
+		// these checks must be passed before exec
+		if(!argSubject.isList()||argSubject.getArgList().size()!=3)
+			throw new QueryBuildException(this.getClass()+" subject must be list of three elements");
+		if(!argObject.isList()||argObject.getArgList().size()!=4)
+			throw new QueryBuildException(this.getClass()+" object must be list of four elements");
+
+		// check that the output position, subject, predicate and object are distinct variables
+		Set<Node> outputVars = new HashSet<Node>();
+		for(Node arg : argObject.getArgList())
+		{
+			if(!arg.isVariable())
+				throw new QueryBuildException(this.getClass()+" output position subject predicate object must all be variable");
+			if(!outputVars.add(arg))
+				throw new QueryBuildException(this.getClass()+" output variables must be distinct");
+		}
+
+		// check that input pathExpression is a literal
+		if(!argSubject.getArg(1).isLiteral())
+			throw new QueryBuildException(this.getClass()+" input path expression must be a literal");
+
+		// check for query prefix map (it is looked up again by each exec, as this instance
+		// may be shared between queries)
+		if(EvaluationContext.getQueryPrefixMapping(execCxt.getContext())==null)
+			throw new QueryBuildException(this.getClass()+" query prefix mapping is null");
+	}
+
+	/* (non-Javadoc)
+	 * @see com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase#exec(com.hp.hpl.jena.sparql.engine.binding.Binding, com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.graph.Node, com.hp.hpl.jena.sparql.pfunction.PropFuncArg, com.hp.hpl.jena.sparql.engine.ExecutionContext)
+	 */
+	@Override
+	public QueryIterator exec(Binding binding, PropFuncArg argSubject, Node predicate,
+			PropFuncArg argObject, ExecutionContext execCxt)
+	{
+		// gather graph, prefixes and options for this call
+		EvaluationContext evalCxt = EvaluationContext.create(execCxt);
+		if(evalCxt==null)
+		{
+			log.warn(this.getClass()+" query prefix mapping is null");
+			return IterLib.noResults(execCxt);
+		}
+
+		// evaluate the subject and object given the binding
+		PropFuncArg evalArgSubject = Substitute.substitute(argSubject, binding);
+
+		// get output variables, which must all be unbound
+		List<Var> outputVars = new ArrayList<Var>(4);
+		for(Node arg : argObject.getArgList())
+		{
+			Var var = (Var)arg;
+			if(binding.contains(var))
+			{
+				log.warn(this.getClass()+" output "+var+" must be an unbound variable!");
+				return IterLib.noResults(execCxt);
+			}
+			outputVars.add(var);
+		}
+
+		// get input subject and object after bindings have been evaluated
+		Node sub = evalArgSubject.getArg(0);
+		Node obj = evalArgSubject.getArg(2);
+		if(sub.isVariable()||obj.isVariable())
+		{
+			log.warn(this.getClass()+" subject and object must both be bound!");
+			return IterLib.noResults(execCxt);
+		}
+		if(sub.isLiteral()||obj.isLiteral())
+		{
+			log.warn(this.getClass()+" neither subject or object can be a literal!");
+			return IterLib.noResults(execCxt);
+		}
+
+		// get (cached) plan for path expression
+		String pathExprString = evalArgSubject.getArg(1).getLiteralLexicalForm();
+		CompiledPathExpression compiledExpr;
+		try
+		{
+			compiledExpr = PathExpressionCache.getDefault().get(pathExprString, evalCxt.getPrefixes());
+		}
+		catch (ParseException e)
+		{
+			log.warn(this.getClass()+" parseException! "+e.getMessage());
+			return IterLib.noResults(execCxt);
+		}
+
+		PathAutomaton automaton = compiledExpr.getAutomaton();
+		ShortestPathSearch search = new ShortestPathSearch(evalCxt.createAdjacency(automaton), automaton);
+		List<Triple> path = search.find(sub, obj);
+		if(path==null)
+			return IterLib.noResults(execCxt);
+		return genPathBindings(binding, outputVars, path, execCxt);
+	}
+
+	/**
+	 * Create a QueryIterator binding each triple of the path with its position, as the
+	 * bindings are pulled
+	 * @param binding previous bindings
+	 * @param outputVars the position, subject, predicate and object variables
+	 * @param path the triples of the path, in order
+	 * @param execCxt the current execution context
+	 * @return QueryIterator for new bindings, one per triple
+	 */
+	private QueryIterator genPathBindings(Binding binding, List<Var> outputVars,
+			List<Triple> path, ExecutionContext execCxt)
+	{
+		return new QueryIterSteps(binding, outputVars.get(0), outputVars.get(1), 
+				outputVars.get(2), outputVars.get(3), path.iterator(), execCxt);
+	}
+}
@@ -16,9 +16,9 @@
 
 package edu.washington.sig.gleen;
 
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -28,44 +28,42 @@ import org.apache.commons.logging.LogFactory;
 import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
-import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryBuildException;
-import com.hp.hpl.jena.shared.PrefixMapping;
-import com.hp.hpl.jena.sparql.ARQConstants;
 import com.hp.hpl.jena.sparql.core.Substitute;
 import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
-import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
-import com.hp.hpl.jena.sparql.engine.binding.BindingHashMap;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterNullIterator;
-import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
 import com.hp.hpl.jena.sparql.pfunction.PropFuncArg;
 import com.hp.hpl.jena.sparql.pfunction.PropFuncArgType;
 import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionBase;
 import com.hp.hpl.jena.sparql.util.IterLib;
-import com.hp.hpl.jena.sparql.util.Context;
 import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.automaton.SubgraphSearch;
+import edu.washington.sig.gleen.iterator.QueryIterTriples;
 import edu.washington.sig.gleen.javacc.grammar.ParseException;
-import edu.washington.sig.gleen.javacc.grammar.PathExpression;
 import edu.washington.sig.gleen.javacc.grammar.PathExpressionConstants;
-import edu.washington.sig.gleen.javacc.grammar.SimpleNode;
 import edu.washington.sig.gleen.path.Path;
-import edu.washington.sig.gleen.util.ContextUtil;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+import edu.washington.sig.gleen.plan.PathExpressionCache;
+import edu.washington.sig.gleen.plan.PlanNode;
+import edu.washington.sig.gleen.util.EvaluationContext;
+import edu.washington.sig.gleen.util.MultiPropertyFind;
 import edu.washington.sig.gleen.util.PathUtils;
 
 /**
  * @author Todd Detwiler
  * @date Apr 1, 2008
  *
+ * Like OnPath, Subgraph keeps no per-query state (see EvaluationContext), so a single 
+ * registered instance can be shared by concurrently executing queries.
  */
 public class Subgraph extends PropertyFunctionBase
 {
-	Log log = LogFactory.getLog(this.getClass());
-	Graph g;
-	PrefixMapping queryPrefMap = null;
+	final Log log = LogFactory.getLog(this.getClass());
 	
 	public Subgraph()
 	{
@@ -99,19 +97,9 @@ public class Subgraph extends PropertyFunctionBase
 			throw new QueryBuildException(this.getClass()+" input path expression must be a literal");
 		
 		
-		// get query prefix map
-		Context cxt = execCxt.getContext();
-		if(cxt.isDefined(ARQConstants.sysCurrentQuery))
-		{
-			Query query = (Query)cxt.get(ARQConstants.sysCurrentQuery);
-			queryPrefMap = query.getPrefixMapping();
-		}
-		else if(cxt.isDefined(ContextUtil.getQueryPrefMapSymbol()))
-		{
-			queryPrefMap = (PrefixMapping)cxt.get(ContextUtil.getQueryPrefMapSymbol());
-		}
-
-		if(queryPrefMap==null)
+		// check for query prefix map (it is looked up again by each exec, as this instance
+		// may be shared between queries)
+		if(EvaluationContext.getQueryPrefixMapping(execCxt.getContext())==null)
 			throw new QueryBuildException(this.getClass()+" query prefix mapping is null");
 	}
 	
@@ -122,8 +110,13 @@ public class Subgraph extends PropertyFunctionBase
 	public QueryIterator exec(Binding binding, PropFuncArg argSubject, Node predicate,
 			PropFuncArg argObject, ExecutionContext execCxt)
 	{
-		// get graph
-		g = execCxt.getActiveGraph();
+		// gather graph, prefixes and options for this call
+		EvaluationContext evalCxt = EvaluationContext.create(execCxt);
+		if(evalCxt==null)
+		{
+			log.warn(this.getClass()+" query prefix mapping is null");
+			return IterLib.noResults(execCxt);
+		}
 		
 		// evaluate the subject and object given the binding
 		PropFuncArg evalArgSubject = Substitute.substitute(argSubject, binding);
@@ -165,129 +158,122 @@ public class Subgraph extends PropertyFunctionBase
 		// get path expression
 		Node pathExprNode = evalArgSubject.getArg(1);
 		
-		// generate parse tree for path expression
+		// get (cached) plan for path expression
 		String pathExprString = pathExprNode.getLiteralLexicalForm();
-		PathExpression pathExpr = new PathExpression(new StringReader(pathExprString));
-		SimpleNode rootNode;
+		CompiledPathExpression compiledExpr;
 		try
 		{
-			rootNode = pathExpr.Start();
+			compiledExpr = PathExpressionCache.getDefault().get(pathExprString, evalCxt.getPrefixes());
 		}
 		catch (ParseException e)
 		{
 			log.warn(this.getClass()+" parseException! "+e.getMessage());
 			return IterLib.noResults(execCxt);
 		}
+		if(sub.isVariable()&&obj.isVariable())
+		{
+			log.warn(this.getClass()+" subject and object cannot both be unbound variables!");
+			return new QueryIterNullIterator(execCxt);
+		}
 		
-		// start node can have only one child
-		if(rootNode.jjtGetNumChildren()!=1)
+		Iterator<Triple> triples = findTriples(sub.isVariable() ? null : sub, 
+				obj.isVariable() ? null : obj, compiledExpr, evalCxt);
+		return genSubgraphProperties(binding, subVar, predVar, objVar, triples, execCxt);
+	}
+	
+	/**
+	 * Find the triples on paths matching the expression between the given ends, with the
+	 * engine selected in the evaluation context (also used by SubgraphExtractor)
+	 * @param sub the start of the paths, or null if any node may start a path
+	 * @param obj the end of the paths, or null if any node may end a path
+	 * @param compiledExpr the compiled path expression
+	 * @param evalCxt the evaluation context for this call
+	 * @return iterator over the distinct triples on at least one matching path
+	 */
+	Iterator<Triple> findTriples(Node sub, Node obj, CompiledPathExpression compiledExpr, 
+			EvaluationContext evalCxt)
+	{
+		if(evalCxt.isAutomatonEngine())
 		{
-			log.warn(this.getClass()+" improperly formed AST!");
-			return IterLib.noResults(execCxt);
+			// collect triples on matching paths directly, without enumerating the paths
+			PathAutomaton automaton = compiledExpr.getAutomaton();
+			SubgraphSearch search = new SubgraphSearch(evalCxt.createAdjacency(automaton), automaton);
+			return search.iterator(sub, obj);
 		}
-		SimpleNode firstOp = (SimpleNode)rootNode.jjtGetChild(0);
 		
-		if(!sub.isVariable()&&obj.isVariable())
+		// paths are enumerated along the expression as written
+		PlanNode firstOp = compiledExpr.getWrittenPlan();
+		if(obj==null)
 		{
 			Set<Node> subjects = new HashSet<Node>();
 			subjects.add(sub);
-			Set<Path> paths = processParseTree(subjects,firstOp);
-			Set<Triple> triples = new HashSet<Triple>();
-			for(Path path : paths)
-			{
-				triples.addAll(path);
-			}
-			return genSubgraphProperties(binding, subVar, predVar, objVar, triples, execCxt);
+			Set<Path> paths = processParseTree(subjects,firstOp, evalCxt);
+			return Path.getTriples(paths).iterator();
 		}
-		else if(sub.isVariable()&&!obj.isVariable())
+		else if(sub==null)
 		{
 			Set<Node> objects = new HashSet<Node>();
 			objects.add(obj);
-			Set<Path> paths = processParseTreeInv(objects,firstOp);
-			Set<Triple> triples = new HashSet<Triple>();
-			for(Path path : paths)
-			{
-				triples.addAll(path);
-			}
-			return genSubgraphProperties(binding, subVar, predVar, objVar, triples, execCxt);
+			Set<Path> paths = processParseTreeInv(objects,firstOp, evalCxt);
+			return Path.getTriples(paths).iterator();
 		}
-		else if(!sub.isVariable()&&!obj.isVariable())
+		else
 		{
 			Set<Node> subjects = new HashSet<Node>();
 			subjects.add(sub);
-			Set<Path> paths = processParseTree(subjects,firstOp);
-			Set<Triple> triples = new HashSet<Triple>();
+			Set<Path> paths = processParseTree(subjects,firstOp, evalCxt);
+			List<Path> matchingPaths = new ArrayList<Path>();
 			for(Path path : paths)
 			{
 				// TODO figure out why path is sometimes empty!
 				if(!path.isEmpty()&&path.getPathTail().equals(obj))
-					triples.addAll(path);
-			}
-			return genSubgraphProperties(binding, subVar, predVar, objVar, triples, execCxt);
+					matchingPaths.add(path);
 			}
-		else
-		{
-			log.warn(this.getClass()+" subject and object cannot both be unbound variables!");
-			return new QueryIterNullIterator(execCxt);
+			return Path.getTriples(matchingPaths).iterator();
 		}
-		
 	}
 	
 	/**
-	 * Create a QueryIterator for all new bindings representing the result subgraph
+	 * Create a QueryIterator for all new bindings representing the result subgraph. The 
+	 * bindings are made as they are consumed, one per triple
 	 * @param binding previous bindings
 	 * @param subVar the subject variable
 	 * @param predVar the predicate variable
 	 * @param objVar the object variable
-	 * @param triples set of triples in the result subgraph
+	 * @param triples the (distinct) triples in the result subgraph
 	 * @param execCxt the current execution context
 	 * @return QueryIterator for new triple bindings
 	 */
 	private QueryIterator genSubgraphProperties(Binding binding, Var subVar, Var predVar, 
-			Var objVar, Set<Triple> triples, ExecutionContext execCxt)
+			Var objVar, Iterator<Triple> triples, ExecutionContext execCxt)
 	{
-		// Iterate over triples and generate new bindings
-		List<Binding> bindings = new ArrayList<Binding>();
-		
-		for (Triple currTriple : triples)
-		{
-			Node subject = currTriple.getSubject();
-			Node property = currTriple.getPredicate();
-			Node object = currTriple.getObject();
-			
-			BindingMap tripleBinding = new BindingHashMap(binding);
-			tripleBinding.add(subVar, subject);
-			tripleBinding.add(predVar, property);
-			tripleBinding.add(objVar, object);
-			
-			bindings.add(tripleBinding);
-		}
-		return new QueryIterPlainWrapper(bindings.iterator(), execCxt);
+		return new QueryIterTriples(binding, subVar, predVar, objVar, triples, execCxt);
 	}
 	
 	/**
 	 * Process a parse tree or subtree by calling the appropriate method depending on the root
 	 * @param subjectNodes current set subject resources
 	 * @param root the root of the current parse (sub)tree
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processParseTree(Set<Node> subjectNodes, SimpleNode root)
+	private Set<Path> processParseTree(Set<Node> subjectNodes, PlanNode root, EvaluationContext evalCxt)
 	{
 		switch (root.getOperatorType())
 		{
 			case PathExpressionConstants.OPT:
-				return processOpt(subjectNodes,root);
+				return processOpt(subjectNodes,root, evalCxt);
 			case PathExpressionConstants.STAR:
-				return processKleeneStar(subjectNodes, root);
+				return processKleeneStar(subjectNodes, root, evalCxt);
 			case PathExpressionConstants.PLUS:
-				return processKleenePlus(subjectNodes, root);
+				return processKleenePlus(subjectNodes, root, evalCxt);
 			case PathExpressionConstants.ALT:
-				return processAlt(subjectNodes, root);
+				return processAlt(subjectNodes, root, evalCxt);
 			case PathExpressionConstants.CONCAT:
-				return processConcat(subjectNodes, root);
+				return processConcat(subjectNodes, root, evalCxt);
 			case PathExpressionConstants.PROPERTY:
-				return processProperty(subjectNodes, root);
+				return processProperty(subjectNodes, root, evalCxt);
 			default:
 				System.err.println("invalid operator type = "+root.getOperatorType());
 				break;
@@ -300,25 +286,26 @@ public class Subgraph extends PropertyFunctionBase
 	 * Like processParseTree, but now the objects are defined rather than the subjects
 	 * @param objectNodes current set of  object resources
 	 * @param root the root of the current parse (sub)tree
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processParseTreeInv(Set<Node> objectNodes, SimpleNode root)
+	private Set<Path> processParseTreeInv(Set<Node> objectNodes, PlanNode root, EvaluationContext evalCxt)
 	{	
 		switch (root.getOperatorType())
 		{
 			case PathExpressionConstants.OPT:
-				return processOptInv(objectNodes,root);
+				return processOptInv(objectNodes,root, evalCxt);
 			case PathExpressionConstants.STAR:
-				return processKleeneStarInv(objectNodes, root);
+				return processKleeneStarInv(objectNodes, root, evalCxt);
 			case PathExpressionConstants.PLUS:
-				return processKleenePlusInv(objectNodes, root);
+				return processKleenePlusInv(objectNodes, root, evalCxt);
 			case PathExpressionConstants.ALT:
-				return processAltInv(objectNodes, root);
+				return processAltInv(objectNodes, root, evalCxt);
 			case PathExpressionConstants.CONCAT:
-				return processConcatInv(objectNodes, root);
+				return processConcatInv(objectNodes, root, evalCxt);
 			case PathExpressionConstants.PROPERTY:
-				return processPropertyInv(objectNodes, root);
+				return processPropertyInv(objectNodes, root, evalCxt);
 			default:
 				System.err.println("invalid operator type = "+root.getOperatorType());
 				break;
@@ -331,21 +318,20 @@ public class Subgraph extends PropertyFunctionBase
 	 * process a concatenation of path elements
 	 * @param subjectNodes the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this concatenation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processConcat(Set<Node> subjectNodes, SimpleNode node)
+	private Set<Path> processConcat(Set<Node> subjectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Path> resultPaths = new HashSet<Path>();
-		Path emptyPath = new Path();
-		emptyPath.setMatchesAny(true);
-		resultPaths.add(emptyPath);
+		resultPaths.add(Path.matchesAny());
 		
 		// iterate over concatenated sub-expressions
 		// feed results of each as subjects of next
-		for (int i = 0; i < node.jjtGetNumChildren(); i++)
+		for (int i = 0; i < node.getNumChildren(); i++)
 		{
-			Set<Path> currLevelPaths = processParseTree(subjectNodes,(SimpleNode)node.jjtGetChild(i));
+			Set<Path> currLevelPaths = processParseTree(subjectNodes,node.getChild(i), evalCxt);
 			resultPaths = PathUtils.joinPaths(resultPaths, 
 					currLevelPaths); 
 			
@@ -364,21 +350,20 @@ public class Subgraph extends PropertyFunctionBase
 	 * like processConcat, but now objects are defined rather than subjects
 	 * @param objectNodes the current set of object resources
 	 * @param node the root of the parse (sub)tree for this concatenation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processConcatInv(Set<Node> objectNodes, SimpleNode node)
+	private Set<Path> processConcatInv(Set<Node> objectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Path> resultPaths = new HashSet<Path>();
-		Path emptyPath = new Path();
-		emptyPath.setMatchesAny(true);
-		resultPaths.add(emptyPath);
+		resultPaths.add(Path.matchesAny());
 		
 		// iterate over concatenated sub-expressions (in reverse order)
 		// feed results of each as objects of next
-		for (int i = node.jjtGetNumChildren()-1; i >= 0; i--)
+		for (int i = node.getNumChildren()-1; i >= 0; i--)
 		{
-			Set<Path> currLevelPaths = processParseTreeInv(objectNodes,(SimpleNode)node.jjtGetChild(i));
+			Set<Path> currLevelPaths = processParseTreeInv(objectNodes,node.getChild(i), evalCxt);
 			resultPaths = PathUtils.joinPaths(currLevelPaths,resultPaths); 
 			
 			// reset subject nodes (this could probably be handled more efficiently)
@@ -396,20 +381,19 @@ public class Subgraph extends PropertyFunctionBase
 	 * process optional operator (zero or one)
 	 * @param subjectNodes the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this opt
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processOpt(Set<Node> subjectNodes, SimpleNode node)
+	private Set<Path> processOpt(Set<Node> subjectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Path> matchingPaths = new HashSet<Path>();
 		
 		// include special path to handle case of optional predicate not present
-		Path flagPath = new Path();
-		flagPath.setMatchesAny(true);
-		matchingPaths.add(flagPath);
+		matchingPaths.add(Path.matchesAny());
 				
-		SimpleNode child = (SimpleNode)node.jjtGetChild(0);
-		matchingPaths.addAll(processParseTree(subjectNodes, child));
+		PlanNode child = node.getChild(0);
+		matchingPaths.addAll(processParseTree(subjectNodes, child, evalCxt));
 		return matchingPaths;
 	}
 	
@@ -417,20 +401,19 @@ public class Subgraph extends PropertyFunctionBase
 	 * like processOpt, but objects defined rather than subject
 	 * @param objectNodes the current set of object resources
 	 * @param node the root of the parse (sub)tree for this opt
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processOptInv(Set<Node> objectNodes, SimpleNode node)
+	private Set<Path> processOptInv(Set<Node> objectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Path> matchingPaths = new HashSet<Path>();
 		
 		// include special path to handle case of optional predicate not present
-		Path flagPath = new Path();
-		flagPath.setMatchesAny(true);
-		matchingPaths.add(flagPath);
+		matchingPaths.add(Path.matchesAny());
 		
-		SimpleNode child = (SimpleNode)node.jjtGetChild(0);
-		matchingPaths.addAll(processParseTreeInv(objectNodes,child));
+		PlanNode child = node.getChild(0);
+		matchingPaths.addAll(processParseTreeInv(objectNodes,child, evalCxt));
 		return matchingPaths;
 	}
 	
@@ -438,19 +421,17 @@ public class Subgraph extends PropertyFunctionBase
 	 * process Kleene star operator (zero or more)
 	 * @param subjectNodes the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processKleeneStar(Set<Node> subjectNodes, SimpleNode node)
+	private Set<Path> processKleeneStar(Set<Node> subjectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Path> matchingPaths = new HashSet<Path>();
 
 		// include special path to handle case of optional predicate not present
-		Path flagPath = new Path();
-		flagPath.setMatchesAny(true);
-		
-		matchingPaths.add(flagPath);
-		matchingPaths.addAll(processKleenePlus(subjectNodes,node));
+		matchingPaths.add(Path.matchesAny());
+		matchingPaths.addAll(processKleenePlus(subjectNodes,node, evalCxt));
 		return matchingPaths;
 	}
 	
@@ -458,19 +439,17 @@ public class Subgraph extends PropertyFunctionBase
 	 * like processKleeneStar, but objects are defined rather than subjects
 	 * @param objectNodes the current set of object resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processKleeneStarInv(Set<Node>  objectNodes, SimpleNode node)
+	private Set<Path> processKleeneStarInv(Set<Node>  objectNodes, PlanNode node, EvaluationContext evalCxt)
 	{	
 		Set<Path> matchingPaths = new HashSet<Path>();
 
 		// include special path to handle case of optional predicate not present
-		Path flagPath = new Path();
-		flagPath.setMatchesAny(true);
-		
-		matchingPaths.add(flagPath);
-		matchingPaths.addAll(processKleenePlusInv(objectNodes,node));
+		matchingPaths.add(Path.matchesAny());
+		matchingPaths.addAll(processKleenePlusInv(objectNodes,node, evalCxt));
 		return matchingPaths;
 	}
 	
@@ -478,22 +457,23 @@ public class Subgraph extends PropertyFunctionBase
 	 * process Kleene plus operator (one or more)
 	 * @param subjectNodes the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processKleenePlus(Set<Node> subjectNodes, SimpleNode node)
+	private Set<Path> processKleenePlus(Set<Node> subjectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Path> matchingPaths = new HashSet<Path>();
 		boolean firstPass = true;
 		
 		Set<Path> resultPaths = new HashSet<Path>();
-		SimpleNode child = (SimpleNode)node.jjtGetChild(0);
+		PlanNode child = node.getChild(0);
 		
 		Set<Node> nodesSeen = new HashSet<Node>(subjectNodes);
 		
 		while(!subjectNodes.isEmpty())
 		{
-			Set<Path> currLevelPaths = processParseTree(subjectNodes,child);
+			Set<Path> currLevelPaths = processParseTree(subjectNodes,child, evalCxt);
 			if(firstPass)
 			{
 				resultPaths = currLevelPaths;
@@ -523,22 +503,23 @@ public class Subgraph extends PropertyFunctionBase
 	 * like processKleenePlus, but objects are defined rather than subjects
 	 * @param objectNodes the current set of object resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processKleenePlusInv(Set<Node> objectNodes, SimpleNode node)
+	private Set<Path> processKleenePlusInv(Set<Node> objectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
 		Set<Path> matchingPaths = new HashSet<Path>();
 		boolean firstPass = true;
 		
 		Set<Path> resultPaths = new HashSet<Path>();
-		SimpleNode child = (SimpleNode)node.jjtGetChild(0);
+		PlanNode child = node.getChild(0);
 		
 		Set<Node> nodesSeen = new HashSet<Node>(objectNodes);
 		
 		while(!objectNodes.isEmpty())
 		{
-			Set<Path> currLevelPaths = processParseTreeInv(objectNodes,child);
+			Set<Path> currLevelPaths = processParseTreeInv(objectNodes,child, evalCxt);
 			if(firstPass)
 			{
 				resultPaths = currLevelPaths;
@@ -568,23 +549,23 @@ public class Subgraph extends PropertyFunctionBase
 	 * process single relationship link (single property)
 	 * @param subjectNodes the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processProperty(Set<Node> subjectNodes, SimpleNode node)
+	private Set<Path> processProperty(Set<Node> subjectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
-		Node propertyNode = getProperty(node);
+		Graph g = evalCxt.getGraph();
+		Node propertyNode = node.getProperty();
 		Set<Path> matchingPaths = new HashSet<Path>();
 		
 		for(Node subject : subjectNodes)
 		{
-			ExtendedIterator ei = g.find(subject, propertyNode, Node.ANY);
+			ExtendedIterator<Triple> ei = g.find(subject, propertyNode, Node.ANY);
 			while(ei.hasNext())
 			{
-				Triple currTriple = (Triple)ei.next();
-				Path newPath = new Path();
-				newPath.add(currTriple);
-				matchingPaths.add(newPath);
+				Triple currTriple = ei.next();
+				matchingPaths.add(new Path(currTriple));
 			}
 		}
 		return matchingPaths;
@@ -594,23 +575,23 @@ public class Subgraph extends PropertyFunctionBase
 	 * like processRelNode, but objects are defined rather than subjects
 	 * @param objectNodes the current set of object resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processPropertyInv(Set<Node> objectNodes, SimpleNode node)
+	private Set<Path> processPropertyInv(Set<Node> objectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
-		Node propertyNode = getProperty(node);
+		Graph g = evalCxt.getGraph();
+		Node propertyNode = node.getProperty();
 		Set<Path> matchingPaths = new HashSet<Path>();
 		
 		for(Node object : objectNodes)
 		{
-			ExtendedIterator ei = g.find(Node.ANY, propertyNode, object);
+			ExtendedIterator<Triple> ei = g.find(Node.ANY, propertyNode, object);
 			while(ei.hasNext())
 			{
-				Triple currTriple = (Triple)ei.next();
-				Path newPath = new Path();
-				newPath.add(currTriple);
-				matchingPaths.add(newPath);
+				Triple currTriple = ei.next();
+				matchingPaths.add(new Path(currTriple));
 			}
 		}
 		return matchingPaths;
@@ -618,39 +599,39 @@ public class Subgraph extends PropertyFunctionBase
 	
 	/**
 	 * Process alternation operator (logical OR)
-	 * This currently assumes alternation over simple rels
 	 * @param subjectNodes the current set of subject resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processAlt(Set<Node> subjectNodes, SimpleNode node)
+	private Set<Path> processAlt(Set<Node> subjectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
-		//Set<Node> propertyNodes = getAltProperties(node);
 		Set<Path> matchingPaths = new HashSet<Path>();
 		
-		for (int i = 0; i < node.jjtGetNumChildren(); i++)
-		{
-			SimpleNode child = (SimpleNode)node.jjtGetChild(i);
-
-			matchingPaths.addAll(processParseTree(subjectNodes, child));
-		}
-		/*
-		for(Node subject : subjectNodes)
+		if(node.isPropertyAlternation())
 		{
-			for(Node propertyNode : propertyNodes)
+			// a single step over all the properties
+			Graph g = evalCxt.getGraph();
+			Set<Node> propertyNodes = getAltProperties(node);
+			for(Node subject : subjectNodes)
 			{
-				ExtendedIterator ei = g.find(subject, propertyNode, Node.ANY);
+				ExtendedIterator<Triple> ei = MultiPropertyFind.find(g, subject, propertyNodes, true);
 				while(ei.hasNext())
 				{
-					Triple currTriple = (Triple)ei.next();
-					Path newPath = new Path();
-					newPath.add(currTriple);
-					matchingPaths.add(newPath);
+					Triple currTriple = ei.next();
+					matchingPaths.add(new Path(currTriple));
 				}
 			}
+			return matchingPaths;
+		}
+		
+		for (int i = 0; i < node.getNumChildren(); i++)
+		{
+			PlanNode child = node.getChild(i);
+
+			matchingPaths.addAll(processParseTree(subjectNodes, child, evalCxt));
 		}
-		*/
 		return matchingPaths;
 	}
 	
@@ -658,97 +639,57 @@ public class Subgraph extends PropertyFunctionBase
 	 * like processAlt, but objects are defined rather than subjects
 	 * @param objectNodes the current set of object resources
 	 * @param node the root of the parse (sub)tree for this operation
+	 * @param evalCxt the evaluation context for this call
 	 * @return set of graph paths consistent with the path pattern 
 	 * represented by the given parse (sub)tree
 	 */
-	private Set<Path> processAltInv(Set<Node> objectNodes, SimpleNode node)
+	private Set<Path> processAltInv(Set<Node> objectNodes, PlanNode node, EvaluationContext evalCxt)
 	{
-		//Set<Node> propertyNodes = getAltProperties(node);
 		Set<Path> matchingPaths = new HashSet<Path>();
 		
-		for (int i = 0; i < node.jjtGetNumChildren(); i++)
+		if(node.isPropertyAlternation())
 		{
-			SimpleNode child = (SimpleNode)node.jjtGetChild(i);
-
-			matchingPaths.addAll(processParseTreeInv(objectNodes, child));
-		}
-		/*
-		for(Node object : objectNodes)
-		{
-			for(Node propertyNode : propertyNodes)
+			// a single step over all the properties
+			Graph g = evalCxt.getGraph();
+			Set<Node> propertyNodes = getAltProperties(node);
+			for(Node object : objectNodes)
 			{
-				ExtendedIterator ei = g.find(Node.ANY, propertyNode, object);
+				ExtendedIterator<Triple> ei = MultiPropertyFind.find(g, object, propertyNodes, false);
 				while(ei.hasNext())
 				{
-					Triple currTriple = (Triple)ei.next();
-					Path newPath = new Path();
-					newPath.add(currTriple);
-					matchingPaths.add(newPath);
+					Triple currTriple = ei.next();
+					matchingPaths.add(new Path(currTriple));
 				}
 			}
+			return matchingPaths;
 		}
-		*/
-		return matchingPaths;
-	}
-	
-	/**
-	 * get the property node for a given property string
-	 * @param node the root of a parse tree containing a property string
-	 * @return the property node for the given string
-	 */
-	private Node getProperty(SimpleNode node)
-	{
-		String propertyText = node.getOperator();
 		
-		// get query prefix mapping if possible, if not use graph (which may not work)
-		PrefixMapping prefixMapping = null;
-		if(queryPrefMap!=null)
+		for (int i = 0; i < node.getNumChildren(); i++)
 		{
-			prefixMapping = queryPrefMap;
-		}
-		else
-		{
-			prefixMapping = g.getPrefixMapping();
-		}
-		
-		String expandedPropName = prefixMapping.expandPrefix(propertyText);
+			PlanNode child = node.getChild(i);
 
-		Node propertyNode = Node.createURI(expandedPropName);
-		
-		return propertyNode;
+			matchingPaths.addAll(processParseTreeInv(objectNodes, child, evalCxt));
+		}
+		return matchingPaths;
 	}
 	
 	/**
-	 * get the set of property nodes for a given set of string
+	 * get the set of property nodes for a given alternation
 	 * (separated by alternation operators)
-	 * @param node the root of a parse tree containing an alternation of property strings
-	 * @return set of property nodes for input strings
+	 * @param node the root of a plan tree containing an alternation of properties
+	 * @return set of property nodes for the alternation
 	 */
-	private Set<Node> getAltProperties(SimpleNode node)
+	private Set<Node> getAltProperties(PlanNode node)
 	{
 		Set<Node> altNodeList = new HashSet<Node>();
 		
-		// get query prefix mapping if possible, if not use graph (which may not work)
-		PrefixMapping prefixMapping = null;
-		if(queryPrefMap!=null)
+		for (int i = 0; i < node.getNumChildren(); i++)
 		{
-			prefixMapping = queryPrefMap;
-		}
-		else
-		{
-			prefixMapping = g.getPrefixMapping();
-		}
-		
-		for (int i = 0; i < node.jjtGetNumChildren(); i++)
-		{
-			SimpleNode child = (SimpleNode)node.jjtGetChild(i);
-			
-			String propertyText = child.getOperator();
-						
-			String expandedPropName = prefixMapping.expandPrefix(propertyText);
-
-			Node propertyNode = Node.createURI(expandedPropName);
-			altNodeList.add(propertyNode);
+			PlanNode child = node.getChild(i);
+			if(child.isProperty())
+				altNodeList.add(child.getProperty());
+			else
+				altNodeList.addAll(getAltProperties(child));
 		}
 		
 		return altNodeList;
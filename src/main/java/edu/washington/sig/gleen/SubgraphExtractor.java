@@ -0,0 +1,156 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen;
+
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.sparql.util.Context;
+
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+import edu.washington.sig.gleen.plan.PathExpressionCache;
+import edu.washington.sig.gleen.util.EvaluationContext;
+
+/**
+ * Extracts the subgraph Subgraph would bind, the triples on paths matching a path 
+ * expression, straight into a Graph or a StreamRDF sink, without going through SPARQL 
+ * bindings. It runs Subgraph's engines, chosen by the same options (set them on the 
+ * context with the ContextUtil symbols, e.g. ContextUtil.getEngineSymbol()). With the 
+ * automaton engine triples reach the sink as they are found, so writing a large
+ * extraction in a streaming format (RDFFormat.NTRIPLES, RDFFormat.RDF_THRIFT) does not 
+ * hold it in memory:
+ * <pre>
+ * SubgraphExtractor extractor = new SubgraphExtractor(graph, prefixMapping);
+ * extractor.write(start, "[rdfs:subClassOf]+", null, out, RDFFormat.RDF_THRIFT);
+ * </pre>
+ * Like the property functions, an extractor holds no per-call state and may be shared 
+ * between threads.
+ */
+public class SubgraphExtractor
+{
+	private final Subgraph subgraph = new Subgraph();
+	private final Graph graph;
+	private final Map<String, String> prefixes;
+	private final Context context;
+	
+	/**
+	 * @param graph the graph to extract from
+	 * @param prefixes the prefixes used to expand property names in path expressions
+	 */
+	public SubgraphExtractor(Graph graph, PrefixMapping prefixes)
+	{
+		this(graph, prefixes, ARQ.getContext().copy());
+	}
+	
+	/**
+	 * @param graph the graph to extract from
+	 * @param prefixes the prefixes used to expand property names in path expressions
+	 * @param context the context carrying evaluation options (see ContextUtil)
+	 */
+	public SubgraphExtractor(Graph graph, PrefixMapping prefixes, Context context)
+	{
+		this.graph = graph;
+		this.prefixes = prefixes.getNsPrefixMap();
+		this.context = context;
+	}
+	
+	/**
+	 * Send the triples on paths matching the expression to a sink, between sink.start() 
+	 * and sink.finish()
+	 * @param subject the start of the paths, or null if any node may start a path
+	 * @param pathExpression the path expression
+	 * @param object the end of the paths, or null if any node may end a path
+	 * @param sink the sink receiving each triple once
+	 * @return the number of triples sent
+	 * @throws ParseException if the expression is not consistent with the path expression grammar
+	 */
+	public long extract(Node subject, String pathExpression, Node object, StreamRDF sink)
+		throws ParseException
+	{
+		if(subject==null && object==null)
+			throw new IllegalArgumentException("at least one end of the paths must be given");
+		if((subject!=null && subject.isLiteral()) || (object!=null && object.isLiteral()))
+			throw new IllegalArgumentException("neither end of the paths can be a literal");
+		
+		EvaluationContext evalCxt = new EvaluationContext(graph, prefixes, context);
+		CompiledPathExpression compiledExpr = 
+			PathExpressionCache.getDefault().get(pathExpression, evalCxt.getPrefixes());
+		Iterator<Triple> triples = subgraph.findTriples(subject, object, compiledExpr, evalCxt);
+		
+		long count = 0;
+		sink.start();
+		try
+		{
+			while(triples.hasNext())
+			{
+				sink.triple(triples.next());
+				count++;
+			}
+		}
+		finally
+		{
+			sink.finish();
+		}
+		return count;
+	}
+	
+	/**
+	 * Add the triples on paths matching the expression to a graph
+	 * @param subject the start of the paths, or null if any node may start a path
+	 * @param pathExpression the path expression
+	 * @param object the end of the paths, or null if any node may end a path
+	 * @param target the graph to add the triples to
+	 * @return the number of triples found (some may have been in target already)
+	 * @throws ParseException if the expression is not consistent with the path expression grammar
+	 */
+	public long extract(Node subject, String pathExpression, Node object, Graph target)
+		throws ParseException
+	{
+		return extract(subject, pathExpression, object, StreamRDFLib.graph(target));
+	}
+	
+	/**
+	 * Write the triples on paths matching the expression to a stream
+	 * @param subject the start of the paths, or null if any node may start a path
+	 * @param pathExpression the path expression
+	 * @param object the end of the paths, or null if any node may end a path
+	 * @param out the stream to write to, left open
+	 * @param format a streaming format, e.g. RDFFormat.NTRIPLES or RDFFormat.RDF_THRIFT
+	 * @return the number of triples written
+	 * @throws ParseException if the expression is not consistent with the path expression grammar
+	 */
+	public long write(Node subject, String pathExpression, Node object, OutputStream out, 
+			RDFFormat format) throws ParseException
+	{
+		if(!StreamRDFWriter.registered(format))
+			throw new IllegalArgumentException(format+" is not a streaming format");
+		return extract(subject, pathExpression, object, StreamRDFWriter.getWriterStream(out, format));
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+import edu.washington.sig.gleen.util.IntList;
+
+/**
+ * An immutable in-memory copy of the triples of some properties of a graph: a node 
+ * dictionary shared by all the properties, plus a PropertyAdjacency (forward and reverse
+ * CSR arrays) for each property. Snapshots are extended and trimmed by copying, so a 
+ * search keeps a consistent view for as long as it runs and any number of searches may 
+ * share one snapshot.
+ * <p>
+ * Snapshots are normally obtained from the AdjacencySnapshotCache of a graph, which keeps
+ * them up to date.
+ */
+public final class AdjacencySnapshot
+{
+	/** the snapshot with no properties */
+	public static final AdjacencySnapshot EMPTY = new AdjacencySnapshot(new HashMap<Node, Integer>(), 
+			new Node[0], new HashMap<Node, PropertyAdjacency>());
+	
+	private final Map<Node, Integer> ids;
+	private final Node[] nodes;
+	private final Map<Node, PropertyAdjacency> properties;
+	
+	private AdjacencySnapshot(Map<Node, Integer> ids, Node[] nodes, Map<Node, PropertyAdjacency> properties)
+	{
+		this.ids = ids;
+		this.nodes = nodes;
+		this.properties = properties;
+	}
+	
+	/**
+	 * @param properties some properties
+	 * @return true if this snapshot holds the triples of all the properties
+	 */
+	public boolean covers(Collection<Node> properties)
+	{
+		return this.properties.keySet().containsAll(properties);
+	}
+	
+	/**
+	 * @param property a property
+	 * @return true if this snapshot holds the triples of the property
+	 */
+	public boolean covers(Node property)
+	{
+		return properties.containsKey(property);
+	}
+	
+	/**
+	 * @return number of nodes in the dictionary
+	 */
+	public int getNumNodes()
+	{
+		return nodes.length;
+	}
+	
+	/**
+	 * @return number of triples held
+	 */
+	public long getNumTriples()
+	{
+		long numTriples = 0;
+		for(PropertyAdjacency adjacency : properties.values())
+		{
+			numTriples += adjacency.size();
+		}
+		return numTriples;
+	}
+	
+	/**
+	 * Copy this snapshot, adding the properties it does not cover yet
+	 * @param g the graph to read the triples from
+	 * @param newProperties the properties to add
+	 * @return the extended snapshot
+	 */
+	public AdjacencySnapshot withProperties(Graph g, Collection<Node> newProperties)
+	{
+		DictionaryBuilder dictionary = new DictionaryBuilder();
+		Map<Node, IntList[]> triples = new HashMap<Node, IntList[]>();
+		for(Node property : newProperties)
+		{
+			if(properties.containsKey(property) || triples.containsKey(property))
+				continue;
+			
+			IntList subjects = new IntList();
+			IntList objects = new IntList();
+			ExtendedIterator<Triple> ei = g.find(Node.ANY, property, Node.ANY);
+			try
+			{
+				while(ei.hasNext())
+				{
+					Triple triple = ei.next();
+					subjects.add(dictionary.encode(triple.getSubject()));
+					objects.add(dictionary.encode(triple.getObject()));
+				}
+			}
+			finally
+			{
+				ei.close();
+			}
+			triples.put(property, new IntList[]{subjects, objects});
+		}
+		
+		Map<Node, PropertyAdjacency> extended = new HashMap<Node, PropertyAdjacency>(properties);
+		for(Map.Entry<Node, IntList[]> entry : triples.entrySet())
+		{
+			IntList[] pairs = entry.getValue();
+			extended.put(entry.getKey(), new PropertyAdjacency(dictionary.size, pairs[0], pairs[1]));
+		}
+		return new AdjacencySnapshot(dictionary.ids, Arrays.copyOf(dictionary.nodes, dictionary.size), extended);
+	}
+	
+	/**
+	 * Copy this snapshot, dropping one property (the dictionary is kept)
+	 * @param property the property to drop
+	 * @return the trimmed snapshot, or this snapshot if it does not cover the property
+	 */
+	public AdjacencySnapshot without(Node property)
+	{
+		if(!properties.containsKey(property))
+			return this;
+		Map<Node, PropertyAdjacency> newProperties = new HashMap<Node, PropertyAdjacency>(properties);
+		newProperties.remove(property);
+		return new AdjacencySnapshot(ids, nodes, newProperties);
+	}
+	
+	/**
+	 * Create an adjacency source for one search over this snapshot. Neighbour lookups for 
+	 * properties the snapshot does not cover find nothing, so callers should check covers
+	 * first.
+	 * @return a new adjacency source
+	 */
+	public AdjacencySource createSource()
+	{
+		return new Source();
+	}
+	
+	public String toString()
+	{
+		return "AdjacencySnapshot[properties="+properties.size()+", nodes="+nodes.length+
+				", triples="+getNumTriples()+"]";
+	}
+	
+	/**
+	 * a copy of the dictionary, extended as new nodes are met
+	 */
+	private class DictionaryBuilder
+	{
+		final Map<Node, Integer> ids = new HashMap<Node, Integer>(AdjacencySnapshot.this.ids);
+		Node[] nodes = Arrays.copyOf(AdjacencySnapshot.this.nodes, Math.max(AdjacencySnapshot.this.nodes.length*2, 64));
+		int size = AdjacencySnapshot.this.nodes.length;
+		
+		int encode(Node node)
+		{
+			Integer id = ids.get(node);
+			if(id!=null)
+				return id;
+			if(size==nodes.length)
+				nodes = Arrays.copyOf(nodes, size*2);
+			nodes[size] = node;
+			ids.put(node, size);
+			return size++;
+		}
+	}
+	
+	/**
+	 * ids below the snapshot's dictionary size are the snapshot's own, nodes the snapshot
+	 * does not know (e.g. a start node without triples) are numbered after them
+	 */
+	private class Source implements IndexedAdjacency
+	{
+		private final NodeDictionary extra = new NodeDictionary();
+		/** the properties looked up by this search, by id */
+		private int[] propertyIds = new int[0];
+		private PropertyAdjacency[] adjacencies = new PropertyAdjacency[0];
+		
+		@Override
+		public int encode(Node node)
+		{
+			Integer id = ids.get(node);
+			if(id!=null)
+				return id;
+			return nodes.length+extra.encode(node);
+		}
+		
+		@Override
+		public Node decode(int id)
+		{
+			return id<nodes.length ? nodes[id] : extra.decode(id-nodes.length);
+		}
+		
+		@Override
+		public void getObjects(int subject, int property, IntList objects)
+		{
+			PropertyAdjacency adjacency = getAdjacency(property);
+			if(adjacency!=null)
+				adjacency.getObjects(subject, objects);
+		}
+		
+		@Override
+		public void getSubjects(int object, int property, IntList subjects)
+		{
+			PropertyAdjacency adjacency = getAdjacency(property);
+			if(adjacency!=null)
+				adjacency.getSubjects(object, subjects);
+		}
+		
+		@Override
+		public int getNumNodes()
+		{
+			return nodes.length;
+		}
+		
+		@Override
+		public long getEdgeCount(int property)
+		{
+			PropertyAdjacency adjacency = getAdjacency(property);
+			return adjacency==null ? 0 : adjacency.size();
+		}
+		
+		private PropertyAdjacency getAdjacency(int property)
+		{
+			// a search only ever uses a handful of properties
+			for (int i = 0; i < propertyIds.length; i++)
+			{
+				if(propertyIds[i]==property)
+					return adjacencies[i];
+			}
+			PropertyAdjacency adjacency = properties.get(decode(property));
+			propertyIds = Arrays.copyOf(propertyIds, propertyIds.length+1);
+			adjacencies = Arrays.copyOf(adjacencies, adjacencies.length+1);
+			propertyIds[propertyIds.length-1] = property;
+			adjacencies[adjacencies.length-1] = adjacency;
+			return adjacency;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.util.graph.GraphListenerBase;
+
+/**
+ * Keeps the AdjacencySnapshot of one graph. The snapshot is built lazily, a property's 
+ * triples being copied the first time a search needs them, and a change to the triples of
+ * a property (made through the Graph API) drops that property from the snapshot so it is
+ * copied again on next use. Searches already running keep the snapshot they started with.
+ * <p>
+ * There is one cache per graph (see getInstance), held only as long as the graph is 
+ * reachable. Changes made to the underlying store behind the graph's back are not seen,
+ * so snapshots are meant for read-mostly in-memory graphs.
+ */
+public final class AdjacencySnapshotCache
+{
+	private static final Log log = LogFactory.getLog(AdjacencySnapshotCache.class);
+	private static final Map<Graph, AdjacencySnapshotCache> caches = 
+			Collections.synchronizedMap(new WeakHashMap<Graph, AdjacencySnapshotCache>());
+	
+	private final AtomicReference<AdjacencySnapshot> snapshot = 
+			new AtomicReference<AdjacencySnapshot>(AdjacencySnapshot.EMPTY);
+	/** incremented on every change, so a snapshot built during a change is not kept */
+	private final AtomicLong version = new AtomicLong();
+	
+	private AdjacencySnapshotCache()
+	{
+	}
+	
+	/**
+	 * @param g a graph
+	 * @return the snapshot cache for the graph, created (and registered with the graph's 
+	 * event manager) on first use
+	 */
+	public static AdjacencySnapshotCache getInstance(Graph g)
+	{
+		synchronized(caches)
+		{
+			AdjacencySnapshotCache cache = caches.get(g);
+			if(cache==null)
+			{
+				cache = new AdjacencySnapshotCache();
+				g.getEventManager().register(cache.new Invalidator());
+				caches.put(g, cache);
+			}
+			return cache;
+		}
+	}
+	
+	/**
+	 * @param g the graph this cache is for
+	 * @param properties the properties a search needs
+	 * @return a snapshot covering at least the given properties
+	 */
+	public AdjacencySnapshot getSnapshot(Graph g, Collection<Node> properties)
+	{
+		AdjacencySnapshot current = snapshot.get();
+		if(current.covers(properties))
+			return current;
+		
+		// one build at a time, the next caller then finds the properties already there
+		synchronized(this)
+		{
+			long before = version.get();
+			current = snapshot.get();
+			if(current.covers(properties))
+				return current;
+			
+			AdjacencySnapshot extended = current.withProperties(g, properties);
+			if(version.get()==before && snapshot.compareAndSet(current, extended))
+				log.debug("extended "+extended);
+			return extended;
+		}
+	}
+	
+	/**
+	 * @return the current snapshot, which may not cover every property
+	 */
+	public AdjacencySnapshot getSnapshot()
+	{
+		return snapshot.get();
+	}
+	
+	/**
+	 * drop the whole snapshot
+	 */
+	public void clear()
+	{
+		version.incrementAndGet();
+		snapshot.set(AdjacencySnapshot.EMPTY);
+	}
+	
+	private void invalidate(Node property)
+	{
+		version.incrementAndGet();
+		AdjacencySnapshot current;
+		do
+		{
+			current = snapshot.get();
+			if(!current.covers(property))
+				return;
+		}
+		while(!snapshot.compareAndSet(current, current.without(property)));
+		log.debug("triples of "+property+" changed, dropped them from the adjacency snapshot");
+	}
+	
+	/**
+	 * drops properties touched by a change to the graph
+	 */
+	private class Invalidator extends GraphListenerBase
+	{
+		@Override
+		protected void addEvent(Triple t)
+		{
+			invalidate(t.getPredicate());
+		}
+		
+		@Override
+		protected void deleteEvent(Triple t)
+		{
+			invalidate(t.getPredicate());
+		}
+		
+		@Override
+		public void notifyEvent(Graph source, Object value)
+		{
+			super.notifyEvent(source, value);
+			if(value instanceof GraphEvents && value!=GraphEvents.startRead && 
+					value!=GraphEvents.finishRead)
+			{
+				// removeAll or remove(s, p, o), the removed triples are not listed
+				Triple pattern = ((GraphEvents)value).getTriple();
+				if(pattern!=null && pattern.getPredicate().isConcrete())
+					invalidate(pattern.getPredicate());
+				else
+					clear();
+			}
+		}
+	}
+}
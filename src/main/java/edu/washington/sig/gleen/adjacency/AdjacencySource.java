@@ -0,0 +1,59 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import com.hp.hpl.jena.graph.Node;
+
+import edu.washington.sig.gleen.util.IntList;
+
+/**
+ * The view of a graph used by the traversal core. Nodes (including properties) are known
+ * by dense int ids, so frontiers and visited sets can be primitive int lists and bit sets,
+ * and Nodes only need to be decoded for the results. Ids are only meaningful within one 
+ * AdjacencySource.
+ */
+public interface AdjacencySource
+{
+	/**
+	 * @param node a node
+	 * @return the id of the node, which is assigned if the node has none yet (it need not 
+	 * occur in the graph)
+	 */
+	public int encode(Node node);
+	
+	/**
+	 * @param id a node id
+	 * @return the node with the given id
+	 */
+	public Node decode(int id);
+	
+	/**
+	 * Find the objects of the triples with the given subject and property
+	 * @param subject subject id
+	 * @param property property id
+	 * @param objects object ids are appended to this list
+	 */
+	public void getObjects(int subject, int property, IntList objects);
+	
+	/**
+	 * Find the subjects of the triples with the given property and object
+	 * @param object object id
+	 * @param property property id
+	 * @param subjects subject ids are appended to this list
+	 */
+	public void getSubjects(int object, int property, IntList subjects);
+}
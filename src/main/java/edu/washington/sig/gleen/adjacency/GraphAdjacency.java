@@ -0,0 +1,88 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+import edu.washington.sig.gleen.util.IntList;
+
+/**
+ * AdjacencySource over any Jena Graph, answering every lookup with Graph.find and
+ * numbering nodes with its own NodeDictionary as they are met.
+ */
+public class GraphAdjacency implements AdjacencySource
+{
+	private final Graph g;
+	private final NodeDictionary dictionary = new NodeDictionary();
+	
+	/**
+	 * @param g the graph
+	 */
+	public GraphAdjacency(Graph g)
+	{
+		this.g = g;
+	}
+	
+	@Override
+	public int encode(Node node)
+	{
+		return dictionary.encode(node);
+	}
+	
+	@Override
+	public Node decode(int id)
+	{
+		return dictionary.decode(id);
+	}
+	
+	@Override
+	public void getObjects(int subject, int property, IntList objects)
+	{
+		ExtendedIterator<Triple> ei = g.find(dictionary.decode(subject), dictionary.decode(property), Node.ANY);
+		try
+		{
+			while(ei.hasNext())
+			{
+				objects.add(dictionary.encode(ei.next().getObject()));
+			}
+		}
+		finally
+		{
+			ei.close();
+		}
+	}
+	
+	@Override
+	public void getSubjects(int object, int property, IntList subjects)
+	{
+		ExtendedIterator<Triple> ei = g.find(Node.ANY, dictionary.decode(property), dictionary.decode(object));
+		try
+		{
+			while(ei.hasNext())
+			{
+				subjects.add(dictionary.encode(ei.next().getSubject()));
+			}
+		}
+		finally
+		{
+			ei.close();
+		}
+	}
+}
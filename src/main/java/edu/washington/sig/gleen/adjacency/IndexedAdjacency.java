@@ -0,0 +1,38 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.adjacency;
+
+/**
+ * An AdjacencySource that holds whole properties as compressed sparse rows, such as an
+ * adjacency snapshot or file. It knows how many edges a property has and which ids can
+ * have edges at all, so searches can afford to scan the nodes rather than the frontier
+ * (see ClosureSearch).
+ */
+public interface IndexedAdjacency extends AdjacencySource
+{
+	/**
+	 * @return the number of ids covered by the index, nodes with higher ids have no edges
+	 */
+	public int getNumNodes();
+	
+	/**
+	 * @param property property id
+	 * @return the number of triples with the property
+	 */
+	public long getEdgeCount(int property);
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+
+/**
+ * Maps nodes to dense int ids (0, 1, 2, ...) in the order they are first seen, and back.
+ * Not thread safe, a dictionary normally lives as long as one query evaluation.
+ */
+public final class NodeDictionary
+{
+	private final Map<Node, Integer> ids = new HashMap<Node, Integer>();
+	private Node[] nodes = new Node[64];
+	private int size = 0;
+	
+	/**
+	 * @param node a node
+	 * @return the id of the node, assigning the next free id if it has none
+	 */
+	public int encode(Node node)
+	{
+		Integer id = ids.get(node);
+		if(id!=null)
+			return id;
+		
+		if(size==nodes.length)
+			nodes = Arrays.copyOf(nodes, size*2);
+		nodes[size] = node;
+		ids.put(node, size);
+		return size++;
+	}
+	
+	/**
+	 * @param node a node
+	 * @return the id of the node, or -1 if it has none
+	 */
+	public int lookup(Node node)
+	{
+		Integer id = ids.get(node);
+		return id==null ? -1 : id;
+	}
+	
+	/**
+	 * @param id a node id
+	 * @return the node with that id
+	 */
+	public Node decode(int id)
+	{
+		if(id>=size)
+			throw new IllegalArgumentException("unknown node id "+id);
+		return nodes[id];
+	}
+	
+	/**
+	 * @return number of nodes in the dictionary
+	 */
+	public int size()
+	{
+		return size;
+	}
+}
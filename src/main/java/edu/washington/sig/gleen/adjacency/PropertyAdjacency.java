@@ -0,0 +1,96 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import edu.washington.sig.gleen.util.IntList;
+
+/**
+ * The triples of one property in compressed sparse row form: for every node id, the 
+ * objects of its triples (forward) and the subjects of the triples it is the object of 
+ * (reverse) are stored contiguously, so finding the neighbours of a node is a copy out of
+ * an array.
+ */
+final class PropertyAdjacency
+{
+	private final int[] forwardOffsets;
+	private final int[] forwardTargets;
+	private final int[] reverseOffsets;
+	private final int[] reverseTargets;
+	
+	/**
+	 * @param numNodes number of node ids, all subjects and objects must be below this
+	 * @param subjects subject of every triple
+	 * @param objects object of every triple, parallel to subjects
+	 */
+	PropertyAdjacency(int numNodes, IntList subjects, IntList objects)
+	{
+		forwardOffsets = new int[numNodes+1];
+		forwardTargets = new int[subjects.size()];
+		fill(subjects, objects, forwardOffsets, forwardTargets);
+		reverseOffsets = new int[numNodes+1];
+		reverseTargets = new int[subjects.size()];
+		fill(objects, subjects, reverseOffsets, reverseTargets);
+	}
+	
+	/**
+	 * counting sort of the (from, to) pairs by from
+	 */
+	private static void fill(IntList from, IntList to, int[] offsets, int[] targets)
+	{
+		for (int e = 0; e < from.size(); e++)
+		{
+			offsets[from.get(e)+1]++;
+		}
+		for (int node = 0; node+1 < offsets.length; node++)
+		{
+			offsets[node+1] += offsets[node];
+		}
+		int[] next = offsets.clone();
+		for (int e = 0; e < from.size(); e++)
+		{
+			targets[next[from.get(e)]++] = to.get(e);
+		}
+	}
+	
+	/**
+	 * @param subject subject id
+	 * @param objects the objects of subject's triples are appended to this list
+	 */
+	void getObjects(int subject, IntList objects)
+	{
+		if(subject+1<forwardOffsets.length)
+			objects.addAll(forwardTargets, forwardOffsets[subject], forwardOffsets[subject+1]);
+	}
+	
+	/**
+	 * @param object object id
+	 * @param subjects the subjects of the triples with this object are appended to this list
+	 */
+	void getSubjects(int object, IntList subjects)
+	{
+		if(object+1<reverseOffsets.length)
+			subjects.addAll(reverseTargets, reverseOffsets[object], reverseOffsets[object+1]);
+	}
+	
+	/**
+	 * @return number of triples
+	 */
+	int size()
+	{
+		return forwardTargets.length;
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.jena.atlas.lib.Tuple;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.tdb.store.GraphTDB;
+import com.hp.hpl.jena.tdb.store.NodeId;
+import com.hp.hpl.jena.tdb.store.nodetable.NodeTable;
+import com.hp.hpl.jena.tdb.store.nodetupletable.NodeTupleTable;
+
+import edu.washington.sig.gleen.util.IntList;
+import edu.washington.sig.gleen.util.LongIntMap;
+
+/**
+ * AdjacencySource over a TDB graph that works on TDB NodeIds. Neighbour lookups go
+ * straight to the tuple indexes (SPO for objects, POS/OSP for subjects, or their quad
+ * equivalents for a named graph) and return NodeIds, which are numbered as they are met.
+ * The node table is only used to find the ids of the nodes a search starts from and to 
+ * decode the nodes it returns, so a deep closure no longer turns every intermediate 
+ * NodeId into a Node and back.
+ * <p>
+ * The NodeIds are those of the dataset (or transaction) the graph belongs to, so an 
+ * instance must not outlive the query it was created for.
+ */
+public class TDBAdjacency implements AdjacencySource
+{
+	/** NodeId value of nodes that are not in the store */
+	private static final long ABSENT = NodeId.NodeDoesNotExist.getId();
+	
+	private final NodeTupleTable tuples;
+	private final NodeTable nodeTable;
+	/** id of the named graph, or null for the default graph */
+	private final NodeId graphId;
+	/** true if the named graph is not in the store */
+	private final boolean empty;
+	
+	private final LongIntMap ids = new LongIntMap();
+	private final Map<Node, Integer> absentIds = new HashMap<Node, Integer>();
+	private long[] nodeIds = new long[64];
+	/** decoded (or given) nodes by id, filled in lazily */
+	private Node[] nodes = new Node[64];
+	private int size = 0;
+	
+	/**
+	 * @param g a TDB graph, either the default graph or a named graph (see isSupported)
+	 */
+	public TDBAdjacency(GraphTDB g)
+	{
+		if(!isSupported(g))
+			throw new IllegalArgumentException("graph is not a TDB default or named graph");
+		
+		tuples = g.getNodeTupleTable();
+		nodeTable = tuples.getNodeTable();
+		Node graphName = g.getGraphName();
+		if(graphName==null || Quad.isDefaultGraph(graphName))
+		{
+			graphId = null;
+			empty = false;
+		}
+		else
+		{
+			graphId = nodeTable.getNodeIdForNode(graphName);
+			empty = NodeId.isDoesNotExist(graphId);
+		}
+	}
+	
+	/**
+	 * @param g a graph
+	 * @return true if g is a TDB default or named graph; the union graph is not supported
+	 * as its tuples repeat once per named graph
+	 */
+	public static boolean isSupported(Graph g)
+	{
+		if(!(g instanceof GraphTDB))
+			return false;
+		Node graphName = ((GraphTDB)g).getGraphName();
+		return graphName==null || !Quad.isUnionGraph(graphName);
+	}
+	
+	@Override
+	public int encode(Node node)
+	{
+		NodeId nodeId = nodeTable.getNodeIdForNode(node);
+		if(!NodeId.isDoesNotExist(nodeId))
+		{
+			int id = encode(nodeId.getId());
+			if(nodes[id]==null)
+				nodes[id] = node;
+			return id;
+		}
+		
+		// not in the store, it still needs an id but has no neighbours
+		Integer id = absentIds.get(node);
+		if(id==null)
+		{
+			id = newId(ABSENT, node);
+			absentIds.put(node, id);
+		}
+		return id;
+	}
+	
+	private int encode(long nodeId)
+	{
+		int id = ids.get(nodeId);
+		if(id<0)
+		{
+			id = newId(nodeId, null);
+			ids.put(nodeId, id);
+		}
+		return id;
+	}
+	
+	private int newId(long nodeId, Node node)
+	{
+		if(size==nodeIds.length)
+		{
+			nodeIds = Arrays.copyOf(nodeIds, size*2);
+			nodes = Arrays.copyOf(nodes, size*2);
+		}
+		nodeIds[size] = nodeId;
+		nodes[size] = node;
+		return size++;
+	}
+	
+	@Override
+	public Node decode(int id)
+	{
+		if(id>=size)
+			throw new IllegalArgumentException("unknown node id "+id);
+		Node node = nodes[id];
+		if(node==null)
+		{
+			node = nodeTable.getNodeForNodeId(NodeId.create(nodeIds[id]));
+			nodes[id] = node;
+		}
+		return node;
+	}
+	
+	@Override
+	public void getObjects(int subject, int property, IntList objects)
+	{
+		find(subject, property, -1, objects);
+	}
+	
+	@Override
+	public void getSubjects(int object, int property, IntList subjects)
+	{
+		find(-1, property, object, subjects);
+	}
+	
+	/**
+	 * find the tuples matching a pattern with one unbound position (-1) and add the ids in 
+	 * that position to result
+	 */
+	private void find(int subject, int property, int object, IntList result)
+	{
+		if(empty)
+			return;
+		NodeId s = toNodeId(subject);
+		NodeId p = toNodeId(property);
+		NodeId o = toNodeId(object);
+		if(s==null || p==null || o==null)
+			return;
+		
+		int column = subject<0 ? 0 : 2;
+		Iterator<Tuple<NodeId>> it;
+		if(graphId==null)
+		{
+			it = tuples.find(s, p, o);
+		}
+		else
+		{
+			it = tuples.find(graphId, s, p, o);
+			column++;
+		}
+		while(it.hasNext())
+		{
+			result.add(encode(it.next().get(column).getId()));
+		}
+	}
+	
+	/**
+	 * @return the NodeId for id, NodeIdAny for -1, or null if the node is not in the store
+	 */
+	private NodeId toNodeId(int id)
+	{
+		if(id<0)
+			return NodeId.NodeIdAny;
+		long nodeId = nodeIds[id];
+		return nodeId==ABSENT ? null : NodeId.create(nodeId);
+	}
+}
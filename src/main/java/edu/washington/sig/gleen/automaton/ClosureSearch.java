@@ -0,0 +1,241 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.automaton;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Node;
+
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+import edu.washington.sig.gleen.adjacency.IndexedAdjacency;
+import edu.washington.sig.gleen.util.IntList;
+
+/**
+ * Evaluates the closure ([p]+) of a single property by direction optimizing breadth first
+ * search. While the frontier is small each level is pushed: the edges leaving the frontier
+ * are followed. Once the edges leaving the frontier outweigh the edges left to explore 
+ * (by a factor ALPHA) the search pulls instead: every node that has not been visited yet
+ * looks for a predecessor in the frontier, and stops at the first one. When the frontier 
+ * shrinks below 1/BETA of the nodes the search pushes again. Both modes set bits in the 
+ * same visited bitmap.
+ * <p>
+ * Pulling scans every node id, which only pays off when neighbours are an array lookup,
+ * so it is limited to IndexedAdjacency sources (snapshots and adjacency files). Searches
+ * through Graph.find or TDB are always pushed.
+ * <p>
+ * The incremental searches keep their visited bitmap from one call to the next, so a node 
+ * is expanded and returned by the first call that reaches it only.
+ */
+public class ClosureSearch
+{
+	/** pull once the frontier's edges exceed 1/ALPHA of the unexplored edges */
+	private static final int ALPHA = 14;
+	/** push again once the frontier holds fewer than 1/BETA of the nodes */
+	private static final int BETA = 24;
+	
+	private final AdjacencySource adjacency;
+	private final int propertyId;
+	/** the number of nodes and triples if levels can be pulled, otherwise 0 */
+	private final int numNodes;
+	private final long edgeCount;
+	/** the nodes reached by earlier incremental searches */
+	private final BitSet reachedForward = new BitSet();
+	private final BitSet reachedBackward = new BitSet();
+	
+	/**
+	 * @param adjacency the graph to search
+	 * @param property the closed property
+	 */
+	public ClosureSearch(AdjacencySource adjacency, Node property)
+	{
+		this.adjacency = adjacency;
+		this.propertyId = adjacency.encode(property);
+		if(adjacency instanceof IndexedAdjacency)
+		{
+			IndexedAdjacency indexed = (IndexedAdjacency)adjacency;
+			numNodes = indexed.getNumNodes();
+			edgeCount = indexed.getEdgeCount(propertyId);
+		}
+		else
+		{
+			numNodes = 0;
+			edgeCount = 0;
+		}
+	}
+	
+	/**
+	 * Find nodes reachable from the given subjects via one or more property edges
+	 * @param subjects the set of subject resources
+	 * @return set of resources reachable, from subjects, via the closure
+	 */
+	public Set<Node> forward(Set<Node> subjects)
+	{
+		return search(subjects, true, new BitSet());
+	}
+	
+	/**
+	 * Find nodes from which the given objects can be reached via one or more property edges
+	 * @param objects the set of object resources
+	 * @return set of resources from which a resource in objects can be reached via the 
+	 * closure
+	 */
+	public Set<Node> backward(Set<Node> objects)
+	{
+		return search(objects, false, new BitSet());
+	}
+	
+	/**
+	 * Like forward, but the nodes reached by earlier calls are neither expanded nor 
+	 * returned again
+	 * @param subjects the set of subject resources
+	 * @return set of resources reachable, from subjects, via the closure and not reached 
+	 * by an earlier call
+	 */
+	public Set<Node> forwardIncremental(Set<Node> subjects)
+	{
+		return search(subjects, true, reachedForward);
+	}
+	
+	/**
+	 * Like backward, but the nodes reached by earlier calls are neither expanded nor 
+	 * returned again
+	 * @param objects the set of object resources
+	 * @return set of resources from which a resource in objects can be reached via the 
+	 * closure, and not reached by an earlier call
+	 */
+	public Set<Node> backwardIncremental(Set<Node> objects)
+	{
+		return search(objects, false, reachedBackward);
+	}
+	
+	private Set<Node> search(Set<Node> starts, boolean forward, BitSet visited)
+	{
+		IntList frontier = new IntList();
+		IntList nextFrontier = new IntList();
+		IntList neighbours = new IntList();
+		// every node visited by this search passes through a frontier
+		Set<Node> reachableNodes = new HashSet<Node>();
+		for(Node start : starts)
+		{
+			int id = adjacency.encode(start);
+			// a start reached before has already been expanded
+			if(!visited.get(id))
+				frontier.add(id);
+		}
+		
+		BitSet frontierSet = new BitSet();
+		// edges followed from the nodes expanded so far, to estimate the frontier's edges
+		long exploredEdges = 0;
+		long expandedNodes = 0;
+		boolean pull = false;
+		while(!frontier.isEmpty())
+		{
+			double degree = expandedNodes==0 ? 1 : (double)exploredEdges/expandedNodes;
+			if(pull)
+				pull = (long)frontier.size()*BETA>=numNodes;
+			else if(edgeCount>0)
+				pull = frontier.size()*degree*ALPHA>edgeCount-exploredEdges;
+			
+			nextFrontier.clear();
+			if(pull)
+			{
+				pullLevel(frontier, forward, visited, frontierSet, nextFrontier, neighbours);
+				// the frontier is not expanded, so assume it has the average degree
+				exploredEdges += (long)(frontier.size()*degree);
+			}
+			else
+			{
+				exploredEdges += pushLevel(frontier, forward, visited, nextFrontier, neighbours);
+			}
+			expandedNodes += frontier.size();
+			for (int i = 0; i < nextFrontier.size(); i++)
+			{
+				reachableNodes.add(adjacency.decode(nextFrontier.get(i)));
+			}
+			
+			IntList swap = frontier;
+			frontier = nextFrontier;
+			nextFrontier = swap;
+		}
+		
+		return reachableNodes;
+	}
+	
+	/**
+	 * follow the edges leaving the frontier
+	 * @return the number of edges followed
+	 */
+	private long pushLevel(IntList frontier, boolean forward, BitSet visited, 
+			IntList nextFrontier, IntList neighbours)
+	{
+		long edges = 0;
+		for (int i = 0; i < frontier.size(); i++)
+		{
+			neighbours.clear();
+			if(forward)
+				adjacency.getObjects(frontier.get(i), propertyId, neighbours);
+			else
+				adjacency.getSubjects(frontier.get(i), propertyId, neighbours);
+			edges += neighbours.size();
+			for (int j = 0; j < neighbours.size(); j++)
+			{
+				int neighbour = neighbours.get(j);
+				if(!visited.get(neighbour))
+				{
+					visited.set(neighbour);
+					nextFrontier.add(neighbour);
+				}
+			}
+		}
+		return edges;
+	}
+	
+	/**
+	 * visit every unvisited node with an edge from the frontier
+	 */
+	private void pullLevel(IntList frontier, boolean forward, BitSet visited, 
+			BitSet frontierSet, IntList nextFrontier, IntList neighbours)
+	{
+		frontierSet.clear();
+		for (int i = 0; i < frontier.size(); i++)
+		{
+			frontierSet.set(frontier.get(i));
+		}
+		for (int candidate = 0; candidate < numNodes; candidate++)
+		{
+			if(visited.get(candidate))
+				continue;
+			neighbours.clear();
+			if(forward)
+				adjacency.getSubjects(candidate, propertyId, neighbours);
+			else
+				adjacency.getObjects(candidate, propertyId, neighbours);
+			for (int j = 0; j < neighbours.size(); j++)
+			{
+				if(frontierSet.get(neighbours.get(j)))
+				{
+					visited.set(candidate);
+					nextFrontier.add(candidate);
+					break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import com.hp.hpl.jena.graph.Node;
+
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+
+/**
+ * The properties of a PathAutomaton, encoded as node ids of one AdjacencySource
+ */
+final class EncodedAutomaton
+{
+	/** property id labelling the transitions into each state (-1 for the start state) */
+	final int[] stateProperties;
+	/** property ids of the transitions out of each state, parallel to getOutProperties */
+	final int[][] outProperties;
+	
+	EncodedAutomaton(PathAutomaton automaton, AdjacencySource adjacency)
+	{
+		int numStates = automaton.getNumStates();
+		stateProperties = new int[numStates];
+		outProperties = new int[numStates][];
+		for (int state = 0; state < numStates; state++)
+		{
+			Node property = automaton.getStateProperty(state);
+			stateProperties[state] = property==null ? -1 : adjacency.encode(property);
+			
+			Node[] properties = automaton.getOutProperties(state);
+			outProperties[state] = new int[properties.length];
+			for (int i = 0; i < properties.length; i++)
+			{
+				outProperties[state][i] = adjacency.encode(properties[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+import edu.washington.sig.gleen.adjacency.GraphAdjacency;
+import edu.washington.sig.gleen.util.IntList;
+import edu.washington.sig.gleen.util.StronglyConnectedComponents;
+
+/**
+ * Evaluates a path expression from many start nodes (origins) with a single search over
+ * the product graph. The search runs in two phases:
+ * <ol>
+ * <li>the part of the product graph reachable from any origin is discovered once, so each
+ * (graph node, automaton state) pair is expanded, and queried against the graph, once no
+ * matter how many origins reach it</li>
+ * <li>origin sets are propagated over the discovered edges one strongly connected 
+ * component at a time, in topological order, so the origins reaching a shared region 
+ * (e.g. common ancestors in a hierarchy) are combined once and reused by everything 
+ * beyond it</li>
+ * </ol>
+ * Origin sets are bitmaps with one bit per origin, so memory grows with the number of
+ * origins times the size of the reached product graph; callers should bound the number of
+ * origins per search.
+ * <p>
+ * Graph nodes are handled as ids (see AdjacencySource) and only decoded for the results.
+ */
+public class MultiSourceSearch
+{
+	private final AdjacencySource adjacency;
+	private final PathAutomaton automaton;
+	private final EncodedAutomaton encoded;
+	
+	/**
+	 * @param g the graph to search
+	 * @param automaton the automaton for the path expression
+	 */
+	public MultiSourceSearch(Graph g, PathAutomaton automaton)
+	{
+		this(new GraphAdjacency(g), automaton);
+	}
+	
+	/**
+	 * @param adjacency the graph to search
+	 * @param automaton the automaton for the path expression
+	 */
+	public MultiSourceSearch(AdjacencySource adjacency, PathAutomaton automaton)
+	{
+		this.adjacency = adjacency;
+		this.automaton = automaton;
+		this.encoded = new EncodedAutomaton(automaton, adjacency);
+	}
+	
+	/**
+	 * Find, for every subject, the nodes reachable from it via paths matching the expression
+	 * @param subjects the subject resources
+	 * @return map from each subject to the set of resources reachable from it
+	 */
+	public Map<Node, Set<Node>> forward(Set<Node> subjects)
+	{
+		return search(subjects, true);
+	}
+	
+	/**
+	 * Find, for every object, the nodes from which it can be reached via paths matching the
+	 * expression
+	 * @param objects the object resources
+	 * @return map from each object to the set of resources from which it can be reached
+	 */
+	public Map<Node, Set<Node>> backward(Set<Node> objects)
+	{
+		return search(objects, false);
+	}
+	
+	private Map<Node, Set<Node>> search(Set<Node> origins, boolean forward)
+	{
+		ProductGraph product = new ProductGraph();
+		
+		// phase 1, discover the reachable product graph
+		List<BitSet> seedOrigins = new ArrayList<BitSet>();
+		int origin = 0;
+		for(Node node : origins)
+		{
+			int nodeId = adjacency.encode(node);
+			for (int state = 0; state < automaton.getNumStates(); state++)
+			{
+				boolean seed = forward ? state==PathAutomaton.START_STATE : automaton.isAccepting(state);
+				if(!seed)
+					continue;
+				int id = product.getId(nodeId, state);
+				while(seedOrigins.size()<=id)
+				{
+					seedOrigins.add(null);
+				}
+				if(seedOrigins.get(id)==null)
+					seedOrigins.set(id, new BitSet());
+				seedOrigins.get(id).set(origin);
+			}
+			origin++;
+		}
+		IntList neighbours = new IntList();
+		for (int id = 0; id < product.size(); id++)
+		{
+			if(forward)
+				expandForward(product, id, neighbours);
+			else
+				expandBackward(product, id, neighbours);
+		}
+		
+		// phase 2, propagate origins component by component
+		int numIds = product.size();
+		int[][] successors = product.successors();
+		int[] component = new int[numIds];
+		List<int[]> components = StronglyConnectedComponents.compute(successors, component);
+		
+		BitSet[] componentOrigins = new BitSet[components.size()];
+		List<Set<Node>> results = new ArrayList<Set<Node>>();
+		Map<Node, Set<Node>> resultMap = new LinkedHashMap<Node, Set<Node>>();
+		for(Node node : origins)
+		{
+			Set<Node> originResults = new HashSet<Node>();
+			results.add(originResults);
+			resultMap.put(node, originResults);
+		}
+		
+		// components are listed sinks first, so walk the list backwards
+		for (int c = components.size()-1; c >= 0; c--)
+		{
+			BitSet reaching = componentOrigins[c];
+			if(reaching==null)
+				reaching = new BitSet();
+			for (int id : components.get(c))
+			{
+				if(id<seedOrigins.size() && seedOrigins.get(id)!=null)
+					reaching.or(seedOrigins.get(id));
+			}
+			componentOrigins[c] = null;
+			if(reaching.isEmpty())
+				continue;
+			
+			for (int id : components.get(c))
+			{
+				int state = product.getState(id);
+				boolean result = forward ? automaton.isAccepting(state) : state==PathAutomaton.START_STATE;
+				if(result)
+					record(product.getNode(id), reaching, results);
+				
+				for (int next : successors[id])
+				{
+					int nextComponent = component[next];
+					if(nextComponent==c)
+						continue;
+					if(componentOrigins[nextComponent]==null)
+						componentOrigins[nextComponent] = (BitSet)reaching.clone();
+					else
+						componentOrigins[nextComponent].or(reaching);
+				}
+			}
+		}
+		return resultMap;
+	}
+	
+	private void expandForward(ProductGraph product, int id, IntList neighbours)
+	{
+		int node = product.getNode(id);
+		int state = product.getState(id);
+		int[] properties = encoded.outProperties[state];
+		for (int i = 0; i < properties.length; i++)
+		{
+			int[] targets = automaton.getOutTargets(state, i);
+			neighbours.clear();
+			adjacency.getObjects(node, properties[i], neighbours);
+			for (int n = 0; n < neighbours.size(); n++)
+			{
+				int next = neighbours.get(n);
+				for (int target : targets)
+				{
+					product.addEdge(id, product.getId(next, target));
+				}
+			}
+		}
+	}
+	
+	private void expandBackward(ProductGraph product, int id, IntList neighbours)
+	{
+		int node = product.getNode(id);
+		int state = product.getState(id);
+		if(state==PathAutomaton.START_STATE)
+			return;
+		
+		int[] sources = automaton.getPredecessors(state);
+		neighbours.clear();
+		adjacency.getSubjects(node, encoded.stateProperties[state], neighbours);
+		for (int n = 0; n < neighbours.size(); n++)
+		{
+			int prev = neighbours.get(n);
+			for (int source : sources)
+			{
+				product.addEdge(id, product.getId(prev, source));
+			}
+		}
+	}
+	
+	private void record(int nodeId, BitSet origins, List<Set<Node>> results)
+	{
+		Node node = adjacency.decode(nodeId);
+		for (int origin = origins.nextSetBit(0); origin >= 0; origin = origins.nextSetBit(origin+1))
+		{
+			results.get(origin).add(node);
+		}
+	}
+	
+	/**
+	 * The discovered part of the product graph, with product states numbered in discovery
+	 * order
+	 */
+	private class ProductGraph
+	{
+		/** product ids of every graph node id, one per automaton state */
+		private int[][] ids = new int[16][];
+		private int size = 0;
+		private int[] nodes = new int[16];
+		private int[] states = new int[16];
+		private int[][] edges = new int[16][];
+		private int[] edgeCounts = new int[16];
+		
+		int size()
+		{
+			return size;
+		}
+		
+		int getNode(int id)
+		{
+			return nodes[id];
+		}
+		
+		int getState(int id)
+		{
+			return states[id];
+		}
+		
+		/**
+		 * @return the id of a product state, numbering it if it has not been seen before
+		 */
+		int getId(int node, int state)
+		{
+			if(node>=ids.length)
+				ids = Arrays.copyOf(ids, Math.max(ids.length*2, node+1));
+			int[] nodeIds = ids[node];
+			if(nodeIds==null)
+			{
+				nodeIds = new int[automaton.getNumStates()];
+				Arrays.fill(nodeIds, -1);
+				ids[node] = nodeIds;
+			}
+			if(nodeIds[state]<0)
+			{
+				int id = size++;
+				if(id==states.length)
+				{
+					nodes = Arrays.copyOf(nodes, id*2);
+					states = Arrays.copyOf(states, id*2);
+					edges = Arrays.copyOf(edges, id*2);
+					edgeCounts = Arrays.copyOf(edgeCounts, id*2);
+				}
+				nodes[id] = node;
+				states[id] = state;
+				nodeIds[state] = id;
+			}
+			return nodeIds[state];
+		}
+		
+		void addEdge(int from, int to)
+		{
+			int[] fromEdges = edges[from];
+			if(fromEdges==null)
+			{
+				fromEdges = new int[4];
+				edges[from] = fromEdges;
+			}
+			else if(edgeCounts[from]==fromEdges.length)
+			{
+				fromEdges = Arrays.copyOf(fromEdges, fromEdges.length*2);
+				edges[from] = fromEdges;
+			}
+			fromEdges[edgeCounts[from]++] = to;
+		}
+		
+		int[][] successors()
+		{
+			int[][] result = new int[size()][];
+			for (int id = 0; id < result.length; id++)
+			{
+				result[id] = edges[id]==null ? new int[0] : Arrays.copyOf(edges[id], edgeCounts[id]);
+			}
+			return result;
+		}
+	}
+}
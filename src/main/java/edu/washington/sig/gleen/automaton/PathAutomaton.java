@@ -0,0 +1,315 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Node;
+
+import edu.washington.sig.gleen.javacc.grammar.PathExpressionConstants;
+import edu.washington.sig.gleen.plan.PlanNode;
+
+/**
+ * A PathAutomaton is an epsilon-free NFA recognising the property sequences matched by a
+ * path expression. It is built with the Glushkov (position automaton) construction:
+ * state 0 is the start state and every other state corresponds to one property
+ * occurrence in the expression, so the automaton has exactly one more state than the
+ * expression has properties and every transition into a state is labelled with that
+ * state's property.
+ * 
+ * Automata are immutable and may be shared between threads.
+ */
+public final class PathAutomaton
+{
+	public static final int START_STATE = 0;
+	
+	private static final int[] NO_STATES = new int[0];
+	private static final Node[] NO_PROPERTIES = new Node[0];
+	
+	/** property labelling transitions into each state (null for the start state) */
+	private final Node[] stateProperty;
+	/** for each state, the distinct properties on its outgoing transitions */
+	private final Node[][] outProperties;
+	/** for each state and outgoing property, the target states */
+	private final int[][][] outTargets;
+	/** for each state, the states with a transition into it */
+	private final int[][] predecessors;
+	private final boolean[] accepting;
+	
+	private PathAutomaton(Node[] stateProperty, List<BitSet> follow, BitSet acceptingStates)
+	{
+		int numStates = stateProperty.length;
+		this.stateProperty = stateProperty;
+		this.outProperties = new Node[numStates][];
+		this.outTargets = new int[numStates][][];
+		this.predecessors = new int[numStates][];
+		this.accepting = new boolean[numStates];
+		
+		List<List<Integer>> preds = new ArrayList<List<Integer>>();
+		for (int state = 0; state < numStates; state++)
+		{
+			preds.add(new ArrayList<Integer>());
+			accepting[state] = acceptingStates.get(state);
+		}
+		
+		for (int state = 0; state < numStates; state++)
+		{
+			// group targets by property so each property is looked up once per state
+			Map<Node, List<Integer>> byProperty = new LinkedHashMap<Node, List<Integer>>();
+			BitSet targets = follow.get(state);
+			for (int target = targets.nextSetBit(0); target >= 0; target = targets.nextSetBit(target+1))
+			{
+				List<Integer> sameProperty = byProperty.get(stateProperty[target]);
+				if(sameProperty==null)
+				{
+					sameProperty = new ArrayList<Integer>();
+					byProperty.put(stateProperty[target], sameProperty);
+				}
+				sameProperty.add(target);
+				preds.get(target).add(state);
+			}
+			
+			outProperties[state] = byProperty.isEmpty() ? NO_PROPERTIES : 
+				byProperty.keySet().toArray(new Node[byProperty.size()]);
+			outTargets[state] = new int[outProperties[state].length][];
+			int i = 0;
+			for (List<Integer> sameProperty : byProperty.values())
+			{
+				outTargets[state][i++] = toArray(sameProperty);
+			}
+		}
+		
+		for (int state = 0; state < numStates; state++)
+		{
+			predecessors[state] = preds.get(state).isEmpty() ? NO_STATES : toArray(preds.get(state));
+		}
+	}
+	
+	/**
+	 * Build the automaton for a compiled path expression
+	 * @param plan the root of the plan tree
+	 * @return the equivalent automaton
+	 */
+	public static PathAutomaton compile(PlanNode plan)
+	{
+		Glushkov builder = new Glushkov();
+		Glushkov.Info root = builder.visit(plan);
+		
+		BitSet startFollow = builder.follow.get(START_STATE);
+		startFollow.or(root.first);
+		
+		BitSet acceptingStates = (BitSet)root.last.clone();
+		if(root.nullable)
+			acceptingStates.set(START_STATE);
+		
+		Node[] stateProperty = builder.properties.toArray(new Node[builder.properties.size()]);
+		return new PathAutomaton(stateProperty, builder.follow, acceptingStates);
+	}
+	
+	/**
+	 * @return number of states, states are numbered 0 to getNumStates()-1
+	 */
+	public int getNumStates()
+	{
+		return stateProperty.length;
+	}
+	
+	/**
+	 * @param state an automaton state
+	 * @return true if the path expression matches when the automaton is in this state
+	 */
+	public boolean isAccepting(int state)
+	{
+		return accepting[state];
+	}
+	
+	/**
+	 * @param state an automaton state
+	 * @return the property labelling every transition into this state (null for the start state)
+	 */
+	public Node getStateProperty(int state)
+	{
+		return stateProperty[state];
+	}
+	
+	/**
+	 * @param state an automaton state
+	 * @return the distinct properties labelling transitions out of this state
+	 */
+	public Node[] getOutProperties(int state)
+	{
+		return outProperties[state];
+	}
+	
+	/**
+	 * @param state an automaton state
+	 * @param propertyIndex index into getOutProperties(state)
+	 * @return the states reached from state via that property
+	 */
+	public int[] getOutTargets(int state, int propertyIndex)
+	{
+		return outTargets[state][propertyIndex];
+	}
+	
+	/**
+	 * @param state an automaton state
+	 * @return the states having a transition into this state
+	 */
+	public int[] getPredecessors(int state)
+	{
+		return predecessors[state];
+	}
+	
+	/**
+	 * @return the distinct properties labelling any transition
+	 */
+	public Set<Node> getProperties()
+	{
+		Set<Node> properties = new LinkedHashSet<Node>();
+		for (int state = 0; state < getNumStates(); state++)
+		{
+			if(stateProperty[state]!=null)
+				properties.add(stateProperty[state]);
+		}
+		return properties;
+	}
+	
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int state = 0; state < getNumStates(); state++)
+		{
+			sb.append(state).append(accepting[state] ? " (accept)" : "").append(":");
+			for (int i = 0; i < outProperties[state].length; i++)
+			{
+				for (int target : outTargets[state][i])
+				{
+					sb.append(" -").append(outProperties[state][i]).append("-> ").append(target);
+				}
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+	
+	private static int[] toArray(List<Integer> values)
+	{
+		int[] result = new int[values.size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = values.get(i);
+		}
+		return result;
+	}
+	
+	/**
+	 * Computes the nullable, first, last and follow sets of the Glushkov construction
+	 */
+	private static class Glushkov
+	{
+		final List<Node> properties = new ArrayList<Node>();
+		final List<BitSet> follow = new ArrayList<BitSet>();
+		
+		Glushkov()
+		{
+			// the start state has no property
+			newPosition(null);
+		}
+		
+		static class Info
+		{
+			boolean nullable;
+			BitSet first = new BitSet();
+			BitSet last = new BitSet();
+		}
+		
+		int newPosition(Node property)
+		{
+			properties.add(property);
+			follow.add(new BitSet());
+			return properties.size()-1;
+		}
+		
+		void addFollow(BitSet from, BitSet to)
+		{
+			for (int pos = from.nextSetBit(0); pos >= 0; pos = from.nextSetBit(pos+1))
+			{
+				follow.get(pos).or(to);
+			}
+		}
+		
+		Info visit(PlanNode node)
+		{
+			Info info;
+			switch (node.getOperatorType())
+			{
+				case PathExpressionConstants.PROPERTY:
+					info = new Info();
+					int pos = newPosition(node.getProperty());
+					info.first.set(pos);
+					info.last.set(pos);
+					info.nullable = false;
+					return info;
+				case PathExpressionConstants.OPT:
+					info = visit(node.getChild(0));
+					info.nullable = true;
+					return info;
+				case PathExpressionConstants.STAR:
+					info = visit(node.getChild(0));
+					addFollow(info.last, info.first);
+					info.nullable = true;
+					return info;
+				case PathExpressionConstants.PLUS:
+					info = visit(node.getChild(0));
+					addFollow(info.last, info.first);
+					return info;
+				case PathExpressionConstants.ALT:
+					info = visit(node.getChild(0));
+					for (int i = 1; i < node.getNumChildren(); i++)
+					{
+						Info alt = visit(node.getChild(i));
+						info.first.or(alt.first);
+						info.last.or(alt.last);
+						info.nullable |= alt.nullable;
+					}
+					return info;
+				case PathExpressionConstants.CONCAT:
+					info = visit(node.getChild(0));
+					for (int i = 1; i < node.getNumChildren(); i++)
+					{
+						Info next = visit(node.getChild(i));
+						addFollow(info.last, next.first);
+						if(info.nullable)
+							info.first.or(next.first);
+						if(next.nullable)
+							next.last.or(info.last);
+						info.last = next.last;
+						info.nullable &= next.nullable;
+					}
+					return info;
+				default:
+					throw new IllegalArgumentException("invalid operator type = "+node.getOperatorType());
+			}
+		}
+	}
+}
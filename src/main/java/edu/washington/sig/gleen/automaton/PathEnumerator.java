@@ -0,0 +1,420 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+import edu.washington.sig.gleen.path.Path;
+import edu.washington.sig.gleen.util.IntList;
+import edu.washington.sig.gleen.util.IntQueue;
+import edu.washington.sig.gleen.util.LongIntMap;
+
+/**
+ * Enumerates the paths matching a path expression from a start node, shortest first, up
+ * to a maximum length. Paths are simple: no node occurs twice, except that a path may end
+ * at its start node. The empty path is never produced.
+ * <p>
+ * Partial paths are kept in a priority queue, each with its last node and the set of
+ * automaton states it may be in. Following states as a set (rather than one entry per
+ * state) means every sequence of triples is produced once, however ambiguous the
+ * expression. When the end node is given, a breadth first search backward from it over
+ * (node, state) pairs first finds the length of the shortest completion from each pair;
+ * partial paths are ordered by their length plus that distance, and those that cannot
+ * reach the end within the maximum length are never queued. Partial paths are persistent
+ * Paths, and the ids of their nodes a chain linked the same way, so one that extends
+ * another shares its triples and costs a constant amount.
+ * <p>
+ * Paths are produced as next() is called. The number of partial paths held (and of pairs
+ * in the distance table) is capped; when the cap is reached the enumeration stops early
+ * and isQueueLimitReached() returns true.
+ */
+public class PathEnumerator implements Iterator<Path>
+{
+	private static final int[] NO_STATES = new int[0];
+
+	private final AdjacencySource adjacency;
+	private final PathAutomaton automaton;
+	private final EncodedAutomaton encoded;
+	private final int subject;
+	/** id of the end of the paths, or -1 for any */
+	private final int object;
+	private final int maxLength;
+	private final int maxQueued;
+
+	/** distance to the end from each (node, state) pair, when the end is known */
+	private LongIntMap distances = null;
+	private final PriorityQueue<Partial> queue = new PriorityQueue<Partial>(64, new Comparator<Partial>()
+	{
+		public int compare(Partial a, Partial b)
+		{
+			if(a.bound!=b.bound)
+				return a.bound<b.bound ? -1 : 1;
+			return a.sequence<b.sequence ? -1 : (a.sequence==b.sequence ? 0 : 1);
+		}
+	});
+	private long sequence = 0;
+	private boolean started = false;
+	private boolean queueLimitReached = false;
+	private Path next = null;
+
+	/**
+	 * @param adjacency the graph to search
+	 * @param automaton the automaton for the path expression
+	 * @param subject the start of the paths
+	 * @param object the end of the paths, or null if any node may end a path
+	 * @param maxLength the largest number of triples on a path
+	 * @param maxQueued the largest number of partial paths held at once
+	 */
+	public PathEnumerator(AdjacencySource adjacency, PathAutomaton automaton, Node subject,
+			Node object, int maxLength, int maxQueued)
+	{
+		this.adjacency = adjacency;
+		this.automaton = automaton;
+		this.encoded = new EncodedAutomaton(automaton, adjacency);
+		this.subject = adjacency.encode(subject);
+		this.object = object==null ? -1 : adjacency.encode(object);
+		this.maxLength = maxLength;
+		this.maxQueued = maxQueued;
+	}
+
+	/**
+	 * @return true if the enumeration stopped because too many partial paths were held,
+	 * rather than because there were no more paths
+	 */
+	public boolean isQueueLimitReached()
+	{
+		return queueLimitReached;
+	}
+
+	public boolean hasNext()
+	{
+		if(!started)
+			start();
+		while(next==null && !queue.isEmpty())
+		{
+			Partial partial = queue.poll();
+			// a path that has come back to its start or reached the end can go no further
+			if(partial.path.isEmpty() || (partial.node!=subject && partial.node!=object))
+				expand(partial);
+			if(partial.complete)
+				next = partial.path;
+		}
+		return next!=null;
+	}
+
+	public Path next()
+	{
+		if(!hasNext())
+			throw new NoSuchElementException();
+		Path path = next;
+		next = null;
+		return path;
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	private void start()
+	{
+		started = true;
+		if(object>=0 && !computeDistances())
+			return;
+		int[] states = reachable(subject, new int[]{PathAutomaton.START_STATE}, 0);
+		if(states.length>0)
+			offer(new Partial(Path.empty(), new Visited(subject, null), states, 
+					bound(subject, states, 0), false));
+	}
+
+	/**
+	 * breadth first search backward from object in every accepting state, no further than
+	 * maxLength
+	 * @return false if the distance table outgrew the queue limit
+	 */
+	private boolean computeDistances()
+	{
+		distances = new LongIntMap();
+		int numStates = automaton.getNumStates();
+		IntQueue pairs = new IntQueue();
+		IntList neighbours = new IntList();
+		for (int state = 0; state < numStates; state++)
+		{
+			if(automaton.isAccepting(state))
+			{
+				distances.put(key(object, state), 0);
+				pairs.add(object);
+				pairs.add(state);
+			}
+		}
+
+		while(!pairs.isEmpty())
+		{
+			int node = pairs.poll();
+			int state = pairs.poll();
+			int distance = distances.get(key(node, state))+1;
+			if(state==PathAutomaton.START_STATE || distance>maxLength)
+				continue;
+
+			int[] sources = automaton.getPredecessors(state);
+			neighbours.clear();
+			adjacency.getSubjects(node, encoded.stateProperties[state], neighbours);
+			for (int n = 0; n < neighbours.size(); n++)
+			{
+				int prev = neighbours.get(n);
+				for (int source : sources)
+				{
+					long key = key(prev, source);
+					if(distances.get(key)<0)
+					{
+						distances.put(key, distance);
+						pairs.add(prev);
+						pairs.add(source);
+					}
+				}
+			}
+			if(distances.size()>maxQueued)
+			{
+				queueLimitReached = true;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * queue every simple extension of a partial path by one triple that can still be
+	 * completed within maxLength
+	 */
+	private void expand(Partial partial)
+	{
+		int length = partial.path.size()+1;
+		if(length>maxLength)
+			return;
+
+		int[] properties = outProperties(partial.states);
+		IntList neighbours = new IntList();
+		for (int property : properties)
+		{
+			int[] targets = targets(partial.states, property);
+			neighbours.clear();
+			adjacency.getObjects(partial.node, property, neighbours);
+			for (int n = 0; n < neighbours.size(); n++)
+			{
+				int next = neighbours.get(n);
+				int[] states = reachable(next, targets, length);
+				if(states.length==0)
+					continue;
+				boolean complete = (object<0 || next==object) && isAccepting(states);
+				if((next==subject || next==object) && !complete)
+					continue;
+				if(next!=subject && partial.visited.contains(next))
+					continue;
+
+				Triple triple = Triple.create(adjacency.decode(partial.node),
+						adjacency.decode(property), adjacency.decode(next));
+				offer(new Partial(partial.path.append(triple), new Visited(next, partial.visited), 
+						states, bound(next, states, length), complete));
+				if(queueLimitReached)
+					return;
+			}
+		}
+	}
+
+	private void offer(Partial partial)
+	{
+		partial.sequence = sequence++;
+		queue.add(partial);
+		if(queue.size()>maxQueued)
+		{
+			queueLimitReached = true;
+			queue.clear();
+		}
+	}
+
+	/**
+	 * @return the states, of those given, from which the end can be reached at node within
+	 * maxLength of a path already of the given length
+	 */
+	private int[] reachable(int node, int[] states, int length)
+	{
+		if(distances==null)
+			return states;
+		int count = 0;
+		int[] kept = new int[states.length];
+		for (int state : states)
+		{
+			int distance = distances.get(key(node, state));
+			if(distance>=0 && length+distance<=maxLength)
+				kept[count++] = state;
+		}
+		return count==states.length ? states : Arrays.copyOf(kept, count);
+	}
+
+	/**
+	 * @return length of the shortest complete path a partial path can be extended to
+	 */
+	private int bound(int node, int[] states, int length)
+	{
+		if(distances==null)
+			return length;
+		int min = Integer.MAX_VALUE;
+		for (int state : states)
+		{
+			min = Math.min(min, distances.get(key(node, state)));
+		}
+		return length+min;
+	}
+
+	private boolean isAccepting(int[] states)
+	{
+		for (int state : states)
+		{
+			if(automaton.isAccepting(state))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the distinct property ids on the transitions out of the given states
+	 */
+	private int[] outProperties(int[] states)
+	{
+		if(states.length==1)
+			return encoded.outProperties[states[0]];
+		IntList properties = new IntList();
+		for (int state : states)
+		{
+			for (int property : encoded.outProperties[state])
+			{
+				properties.add(property);
+			}
+		}
+		return distinct(properties.toArray());
+	}
+
+	/**
+	 * @return the distinct states reached from the given states via the given property
+	 */
+	private int[] targets(int[] states, int property)
+	{
+		IntList targets = new IntList();
+		for (int state : states)
+		{
+			int[] properties = encoded.outProperties[state];
+			for (int i = 0; i < properties.length; i++)
+			{
+				if(properties[i]==property)
+				{
+					int[] stateTargets = automaton.getOutTargets(state, i);
+					targets.addAll(stateTargets, 0, stateTargets.length);
+				}
+			}
+		}
+		return states.length==1 ? targets.toArray() : distinct(targets.toArray());
+	}
+
+	private static int[] distinct(int[] values)
+	{
+		if(values.length<2)
+			return values.length==0 ? NO_STATES : values;
+		Arrays.sort(values);
+		int count = 1;
+		for (int i = 1; i < values.length; i++)
+		{
+			if(values[i]!=values[count-1])
+				values[count++] = values[i];
+		}
+		return count==values.length ? values : Arrays.copyOf(values, count);
+	}
+
+	private long key(int node, int state)
+	{
+		return (long)node*automaton.getNumStates()+state;
+	}
+
+	/**
+	 * A partial path, the node it ends at and the automaton states it may be in there
+	 */
+	private static final class Partial
+	{
+		final Path path;
+		/** ids of the nodes on the path, last first */
+		final Visited visited;
+		final int node;
+		final int[] states;
+		/** length of the shortest complete path this one can be extended to */
+		final int bound;
+		/** true if this is itself a matching path */
+		final boolean complete;
+		/** order in which partial paths were queued, breaks ties between bounds */
+		long sequence;
+
+		Partial(Path path, Visited visited, int[] states, int bound, boolean complete)
+		{
+			this.path = path;
+			this.visited = visited;
+			this.node = visited.node;
+			this.states = states;
+			this.bound = bound;
+			this.complete = complete;
+		}
+	}
+
+	/**
+	 * The id of a node on a partial path, linked to the ids of the nodes before it, so 
+	 * paths extending a common prefix share its chain
+	 */
+	private static final class Visited
+	{
+		final int node;
+		final Visited parent;
+		/** bit (id mod 64) of every node on the chain, rules most nodes out without a walk */
+		final long mask;
+
+		Visited(int node, Visited parent)
+		{
+			this.node = node;
+			this.parent = parent;
+			this.mask = (parent==null ? 0 : parent.mask) | (1L<<node);
+		}
+
+		/**
+		 * @return true if the node is on the chain
+		 */
+		boolean contains(int node)
+		{
+			if((mask & (1L<<node))==0)
+				return false;
+			for(Visited visited = this; visited!=null; visited = visited.parent)
+			{
+				if(visited.node==node)
+					return true;
+			}
+			return false;
+		}
+	}
+}
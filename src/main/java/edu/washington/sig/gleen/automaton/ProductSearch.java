@@ -0,0 +1,443 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+import edu.washington.sig.gleen.adjacency.GraphAdjacency;
+import edu.washington.sig.gleen.util.IntList;
+import edu.washington.sig.gleen.util.IntQueue;
+
+/**
+ * Evaluates a path expression by breadth first search over the product of the graph and
+ * the expression's PathAutomaton. Every (graph node, automaton state) pair is expanded at
+ * most once, so nested closures never re-walk the same region of the graph and the cost
+ * is bounded by O(|V|*|Q| + |E|*|Q|).
+ * <p>
+ * The search runs on node ids (see AdjacencySource): queues and frontiers are int lists,
+ * visited pairs are one bit each, and Nodes are only decoded for the results.
+ */
+public class ProductSearch
+{
+	private final AdjacencySource adjacency;
+	private final PathAutomaton automaton;
+	private final EncodedAutomaton encoded;
+	
+	/**
+	 * @param g the graph to search
+	 * @param automaton the automaton for the path expression
+	 */
+	public ProductSearch(Graph g, PathAutomaton automaton)
+	{
+		this(new GraphAdjacency(g), automaton);
+	}
+	
+	/**
+	 * @param adjacency the graph to search
+	 * @param automaton the automaton for the path expression
+	 */
+	public ProductSearch(AdjacencySource adjacency, PathAutomaton automaton)
+	{
+		this.adjacency = adjacency;
+		this.automaton = automaton;
+		this.encoded = new EncodedAutomaton(automaton, adjacency);
+	}
+	
+	/**
+	 * Find nodes reachable from the given subjects via paths matching the expression
+	 * @param subjects the set of subject resources
+	 * @return set of resources reachable, from subjects, via matching paths
+	 */
+	public Set<Node> forward(Set<Node> subjects)
+	{
+		return drain(forwardIterator(subjects));
+	}
+	
+	/**
+	 * Find nodes from which the given objects can be reached via paths matching the expression
+	 * @param objects the set of object resources
+	 * @return set of resources from which a resource in objects can be reached via matching paths
+	 */
+	public Set<Node> backward(Set<Node> objects)
+	{
+		return drain(backwardIterator(objects));
+	}
+	
+	/**
+	 * Lazily find nodes reachable from the given subjects via paths matching the expression.
+	 * The search only advances as far as needed to produce the next result, and each
+	 * result is produced once.
+	 * @param subjects the set of subject resources
+	 * @return iterator over resources reachable, from subjects, via matching paths
+	 */
+	public Traversal forwardIterator(Set<Node> subjects)
+	{
+		Traversal traversal = new Traversal(true);
+		for(Node subject : subjects)
+		{
+			traversal.push(adjacency.encode(subject), PathAutomaton.START_STATE);
+		}
+		return traversal;
+	}
+	
+	/**
+	 * Lazily find nodes from which the given objects can be reached via paths matching the
+	 * expression (see forwardIterator)
+	 * @param objects the set of object resources
+	 * @return iterator over resources from which a resource in objects can be reached via 
+	 * matching paths
+	 */
+	public Traversal backwardIterator(Set<Node> objects)
+	{
+		Traversal traversal = new Traversal(false);
+		for(Node object : objects)
+		{
+			int objectId = adjacency.encode(object);
+			for (int state = 0; state < automaton.getNumStates(); state++)
+			{
+				if(automaton.isAccepting(state))
+					traversal.push(objectId, state);
+			}
+		}
+		return traversal;
+	}
+	
+	private static Set<Node> drain(Traversal traversal)
+	{
+		Set<Node> reachableNodes = new HashSet<Node>();
+		while(traversal.hasNext())
+		{
+			reachableNodes.add(traversal.next());
+		}
+		return reachableNodes;
+	}
+	
+	/**
+	 * Determine whether the object can be reached from the subject via a path matching the
+	 * expression. Forward search from the subject and backward search from the object are
+	 * advanced one level at a time (always expanding the smaller frontier) and the search
+	 * stops as soon as the two meet in a common (graph node, automaton state) pair.
+	 * @param subject the subject resource
+	 * @param object the object resource
+	 * @return true if a matching path from subject to object exists
+	 */
+	public boolean connects(Node subject, Node object)
+	{
+		int numStates = automaton.getNumStates();
+		int subjectId = adjacency.encode(subject);
+		int objectId = adjacency.encode(object);
+		ProductStateSet forwardVisited = new ProductStateSet(numStates);
+		ProductStateSet backwardVisited = new ProductStateSet(numStates);
+		// frontiers hold (node, state) pairs
+		IntList forwardFrontier = new IntList();
+		IntList backwardFrontier = new IntList();
+		
+		forwardVisited.add(subjectId, PathAutomaton.START_STATE);
+		forwardFrontier.add(subjectId);
+		forwardFrontier.add(PathAutomaton.START_STATE);
+		for (int state = 0; state < numStates; state++)
+		{
+			if(automaton.isAccepting(state))
+			{
+				// zero length match
+				if(state==PathAutomaton.START_STATE && subjectId==objectId)
+					return true;
+				backwardVisited.add(objectId, state);
+				backwardFrontier.add(objectId);
+				backwardFrontier.add(state);
+			}
+		}
+		
+		IntList nextFrontier = new IntList();
+		IntList neighbours = new IntList();
+		while(!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty())
+		{
+			nextFrontier.clear();
+			boolean met;
+			if(forwardFrontier.size()<=backwardFrontier.size())
+			{
+				met = expandForwardLevel(forwardFrontier, forwardVisited, backwardVisited, nextFrontier, neighbours);
+				IntList swap = forwardFrontier;
+				forwardFrontier = nextFrontier;
+				nextFrontier = swap;
+			}
+			else
+			{
+				met = expandBackwardLevel(backwardFrontier, backwardVisited, forwardVisited, nextFrontier, neighbours);
+				IntList swap = backwardFrontier;
+				backwardFrontier = nextFrontier;
+				nextFrontier = swap;
+			}
+			if(met)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * like connects, but only searches forward from the subject
+	 * @param subject the subject resource
+	 * @param object the object resource
+	 * @return true if a matching path from subject to object exists
+	 */
+	public boolean connectsForward(Node subject, Node object)
+	{
+		return contains(forwardIterator(Collections.singleton(subject)), object);
+	}
+	
+	/**
+	 * like connects, but only searches backward from the object
+	 * @param subject the subject resource
+	 * @param object the object resource
+	 * @return true if a matching path from subject to object exists
+	 */
+	public boolean connectsBackward(Node subject, Node object)
+	{
+		return contains(backwardIterator(Collections.singleton(object)), subject);
+	}
+	
+	private static boolean contains(Traversal traversal, Node node)
+	{
+		try
+		{
+			while(traversal.hasNext())
+			{
+				if(traversal.next().equals(node))
+					return true;
+			}
+			return false;
+		}
+		finally
+		{
+			traversal.close();
+		}
+	}
+	
+	/**
+	 * expand one level of the forward search
+	 * @return true if a newly reached product state was already reached by the other search
+	 */
+	private boolean expandForwardLevel(IntList frontier, ProductStateSet visited, 
+			ProductStateSet otherVisited, IntList nextFrontier, IntList neighbours)
+	{
+		for (int f = 0; f < frontier.size(); f += 2)
+		{
+			int node = frontier.get(f);
+			int state = frontier.get(f+1);
+			int[] properties = encoded.outProperties[state];
+			for (int i = 0; i < properties.length; i++)
+			{
+				int[] targets = automaton.getOutTargets(state, i);
+				neighbours.clear();
+				adjacency.getObjects(node, properties[i], neighbours);
+				for (int n = 0; n < neighbours.size(); n++)
+				{
+					int object = neighbours.get(n);
+					for (int target : targets)
+					{
+						if(visited.add(object, target))
+						{
+							if(otherVisited.contains(object, target))
+								return true;
+							nextFrontier.add(object);
+							nextFrontier.add(target);
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * expand one level of the backward search
+	 * @return true if a newly reached product state was already reached by the other search
+	 */
+	private boolean expandBackwardLevel(IntList frontier, ProductStateSet visited, 
+			ProductStateSet otherVisited, IntList nextFrontier, IntList neighbours)
+	{
+		for (int f = 0; f < frontier.size(); f += 2)
+		{
+			int node = frontier.get(f);
+			int state = frontier.get(f+1);
+			if(state==PathAutomaton.START_STATE)
+				continue;
+			
+			int[] sources = automaton.getPredecessors(state);
+			neighbours.clear();
+			adjacency.getSubjects(node, encoded.stateProperties[state], neighbours);
+			for (int n = 0; n < neighbours.size(); n++)
+			{
+				int subject = neighbours.get(n);
+				for (int source : sources)
+				{
+					if(visited.add(subject, source))
+					{
+						if(otherVisited.contains(subject, source))
+							return true;
+						nextFrontier.add(subject);
+						nextFrontier.add(source);
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * An incremental breadth first search over the product graph. Closing (or cancelling)
+	 * the traversal stops the search, after which hasNext returns false.
+	 */
+	public class Traversal implements ClosableIterator<Node>
+	{
+		private final boolean forward;
+		private final ProductStateSet visited = new ProductStateSet(automaton.getNumStates());
+		/** (node, state) pairs waiting to be expanded */
+		private final IntQueue queue = new IntQueue();
+		private final BitSet emitted = new BitSet();
+		private final IntList neighbours = new IntList();
+		private Node nextNode = null;
+		private volatile boolean stopped = false;
+		
+		private Traversal(boolean forward)
+		{
+			this.forward = forward;
+		}
+		
+		private void push(int node, int state)
+		{
+			if(visited.add(node, state))
+			{
+				queue.add(node);
+				queue.add(state);
+			}
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			while(nextNode==null && !stopped && !queue.isEmpty())
+			{
+				int node = queue.poll();
+				int state = queue.poll();
+				if(forward)
+				{
+					if(automaton.isAccepting(state))
+						emit(node);
+					expandForward(node, state);
+				}
+				else if(state==PathAutomaton.START_STATE)
+				{
+					emit(node);
+				}
+				else
+				{
+					expandBackward(node, state);
+				}
+			}
+			return nextNode!=null;
+		}
+		
+		private void emit(int node)
+		{
+			if(!emitted.get(node))
+			{
+				emitted.set(node);
+				nextNode = adjacency.decode(node);
+			}
+		}
+		
+		@Override
+		public Node next()
+		{
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Node result = nextNode;
+			nextNode = null;
+			return result;
+		}
+		
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		/**
+		 * stop the search and release its state
+		 */
+		@Override
+		public void close()
+		{
+			stopped = true;
+			nextNode = null;
+			queue.clear();
+		}
+		
+		/**
+		 * request that the search stops, may be called from another thread
+		 */
+		public void cancel()
+		{
+			stopped = true;
+		}
+		
+		private void expandForward(int node, int state)
+		{
+			int[] properties = encoded.outProperties[state];
+			for (int i = 0; i < properties.length; i++)
+			{
+				int[] targets = automaton.getOutTargets(state, i);
+				neighbours.clear();
+				adjacency.getObjects(node, properties[i], neighbours);
+				for (int n = 0; n < neighbours.size(); n++)
+				{
+					int object = neighbours.get(n);
+					for (int target : targets)
+					{
+						push(object, target);
+					}
+				}
+			}
+		}
+		
+		private void expandBackward(int node, int state)
+		{
+			// every transition into this state is labelled with the state's property
+			int[] sources = automaton.getPredecessors(state);
+			neighbours.clear();
+			adjacency.getSubjects(node, encoded.stateProperties[state], neighbours);
+			for (int n = 0; n < neighbours.size(); n++)
+			{
+				int subject = neighbours.get(n);
+				for (int source : sources)
+				{
+					push(subject, source);
+				}
+			}
+		}
+	}
+}
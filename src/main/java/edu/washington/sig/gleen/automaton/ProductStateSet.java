@@ -0,0 +1,54 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import java.util.BitSet;
+
+/**
+ * A set of (node id, automaton state) pairs, one bit per pair: a BitSet over node ids for
+ * every automaton state.
+ */
+final class ProductStateSet
+{
+	private final BitSet[] states;
+	
+	ProductStateSet(int numStates)
+	{
+		states = new BitSet[numStates];
+		for (int state = 0; state < numStates; state++)
+		{
+			states[state] = new BitSet();
+		}
+	}
+	
+	/**
+	 * @return true if the pair was not already in the set
+	 */
+	boolean add(int node, int state)
+	{
+		BitSet nodes = states[state];
+		if(nodes.get(node))
+			return false;
+		nodes.set(node);
+		return true;
+	}
+	
+	boolean contains(int node, int state)
+	{
+		return states[state].get(node);
+	}
+}
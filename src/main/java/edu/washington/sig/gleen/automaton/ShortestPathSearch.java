@@ -0,0 +1,278 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+import edu.washington.sig.gleen.adjacency.GraphAdjacency;
+import edu.washington.sig.gleen.util.IntList;
+import edu.washington.sig.gleen.util.LongIntMap;
+
+/**
+ * Finds one shortest path matching a path expression between two given nodes, by
+ * bidirectional breadth first search over the product of the graph and the expression's
+ * PathAutomaton: forward from (subject, start state), backward from object in every
+ * accepting state, a whole level at a time on whichever side has the smaller frontier.
+ * Every (node, state) pair is reached at most once on each side, and each remembers the
+ * pair it was reached from, so the path is read back from the pair where the searches
+ * meet. Unlike SubgraphSearch no other matching path is looked at.
+ * <p>
+ * Every transition into an automaton state carries the same property, so a pair and its
+ * parent are enough to recover the triple between them.
+ */
+public class ShortestPathSearch
+{
+	private final AdjacencySource adjacency;
+	private final PathAutomaton automaton;
+	private final EncodedAutomaton encoded;
+
+	/**
+	 * @param g the graph to search
+	 * @param automaton the automaton for the path expression
+	 */
+	public ShortestPathSearch(Graph g, PathAutomaton automaton)
+	{
+		this(new GraphAdjacency(g), automaton);
+	}
+
+	/**
+	 * @param adjacency the graph to search
+	 * @param automaton the automaton for the path expression
+	 */
+	public ShortestPathSearch(AdjacencySource adjacency, PathAutomaton automaton)
+	{
+		this.adjacency = adjacency;
+		this.automaton = automaton;
+		this.encoded = new EncodedAutomaton(automaton, adjacency);
+	}
+
+	/**
+	 * Find a shortest matching path from subject to object. When there are several, the
+	 * one returned depends only on the order in which the graph lists neighbours.
+	 * @param subject the start of the path
+	 * @param object the end of the path
+	 * @return the triples of the path in order (empty if the expression matches the empty
+	 * path and subject is object), or null if there is no matching path
+	 */
+	public List<Triple> find(Node subject, Node object)
+	{
+		int numStates = automaton.getNumStates();
+		Side forward = new Side(numStates);
+		Side backward = new Side(numStates);
+
+		forward.add(adjacency.encode(subject), PathAutomaton.START_STATE, -1);
+		int objectId = adjacency.encode(object);
+		for (int state = 0; state < numStates; state++)
+		{
+			if(automaton.isAccepting(state))
+				backward.add(objectId, state, -1);
+		}
+		forward.nextLevel();
+		backward.nextLevel();
+
+		int meet = backward.indexOf(forward.nodes.get(0), PathAutomaton.START_STATE);
+		if(meet>=0)
+			return Collections.emptyList();
+
+		while(forward.hasFrontier() && backward.hasFrontier())
+		{
+			if(forward.frontierSize()<=backward.frontierSize())
+			{
+				meet = expandForward(forward, backward);
+				if(meet>=0)
+					return path(forward, meet, backward,
+							backward.indexOf(forward.nodes.get(meet), forward.states.get(meet)));
+			}
+			else
+			{
+				meet = expandBackward(backward, forward);
+				if(meet>=0)
+					return path(forward, forward.indexOf(backward.nodes.get(meet),
+							backward.states.get(meet)), backward, meet);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * expand the forward frontier by one level, stopping at the first pair the backward
+	 * search has also reached. As the levels before did not meet, every such pair lies on
+	 * a path of the same, shortest, length.
+	 * @return the index of that pair on the forward side, or -1 if the searches did not meet
+	 */
+	private int expandForward(Side forward, Side backward)
+	{
+		IntList neighbours = new IntList();
+		for (int i = forward.levelStart; i < forward.levelEnd; i++)
+		{
+			int node = forward.nodes.get(i);
+			int state = forward.states.get(i);
+			int[] properties = encoded.outProperties[state];
+			for (int p = 0; p < properties.length; p++)
+			{
+				int[] targets = automaton.getOutTargets(state, p);
+				neighbours.clear();
+				adjacency.getObjects(node, properties[p], neighbours);
+				for (int n = 0; n < neighbours.size(); n++)
+				{
+					int next = neighbours.get(n);
+					for (int target : targets)
+					{
+						int added = forward.add(next, target, i);
+						if(added>=0 && backward.indexOf(next, target)>=0)
+							return added;
+					}
+				}
+			}
+		}
+		forward.nextLevel();
+		return -1;
+	}
+
+	/**
+	 * expand the backward frontier by one level, stopping at the first pair the forward
+	 * search has also reached
+	 * @return the index of that pair on the backward side, or -1 if the searches did not meet
+	 */
+	private int expandBackward(Side backward, Side forward)
+	{
+		IntList neighbours = new IntList();
+		for (int i = backward.levelStart; i < backward.levelEnd; i++)
+		{
+			int node = backward.nodes.get(i);
+			int state = backward.states.get(i);
+			if(state==PathAutomaton.START_STATE)
+				continue;
+
+			int[] sources = automaton.getPredecessors(state);
+			neighbours.clear();
+			adjacency.getSubjects(node, encoded.stateProperties[state], neighbours);
+			for (int n = 0; n < neighbours.size(); n++)
+			{
+				int prev = neighbours.get(n);
+				for (int source : sources)
+				{
+					int added = backward.add(prev, source, i);
+					if(added>=0 && forward.indexOf(prev, source)>=0)
+						return added;
+				}
+			}
+		}
+		backward.nextLevel();
+		return -1;
+	}
+
+	/**
+	 * read the path back from the pair where the searches met, at index forwardMeet on the
+	 * forward side and backwardMeet on the backward side
+	 */
+	private List<Triple> path(Side forward, int forwardMeet, Side backward, int backwardMeet)
+	{
+		List<Triple> triples = new ArrayList<Triple>();
+		for (int i = forwardMeet; forward.parents.get(i)>=0; i = forward.parents.get(i))
+		{
+			int parent = forward.parents.get(i);
+			triples.add(decode(forward.nodes.get(parent),
+					encoded.stateProperties[forward.states.get(i)], forward.nodes.get(i)));
+		}
+		Collections.reverse(triples);
+		for (int i = backwardMeet; backward.parents.get(i)>=0; i = backward.parents.get(i))
+		{
+			int parent = backward.parents.get(i);
+			triples.add(decode(backward.nodes.get(i),
+					encoded.stateProperties[backward.states.get(parent)], backward.nodes.get(parent)));
+		}
+		return triples;
+	}
+
+	private Triple decode(int subject, int property, int object)
+	{
+		return Triple.create(adjacency.decode(subject), adjacency.decode(property), adjacency.decode(object));
+	}
+
+	/**
+	 * The (node, state) pairs reached by one of the two searches, numbered in the order they
+	 * were reached, so each level is a range of indexes. For each pair it keeps the index of
+	 * the pair it was reached from (-1 for the seeds).
+	 */
+	private static final class Side
+	{
+		private final int numStates;
+		private final LongIntMap index = new LongIntMap();
+		final IntList nodes = new IntList();
+		final IntList states = new IntList();
+		final IntList parents = new IntList();
+		/** the current frontier, pairs levelStart (inclusive) to levelEnd (exclusive) */
+		int levelStart = 0;
+		int levelEnd = 0;
+
+		Side(int numStates)
+		{
+			this.numStates = numStates;
+		}
+
+		/**
+		 * @return the index of the pair, or -1 if it was already reached
+		 */
+		int add(int node, int state, int parent)
+		{
+			long key = (long)node*numStates+state;
+			if(index.get(key)>=0)
+				return -1;
+			int added = nodes.size();
+			index.put(key, added);
+			nodes.add(node);
+			states.add(state);
+			parents.add(parent);
+			return added;
+		}
+
+		/**
+		 * @return the index of the pair, or -1 if it has not been reached
+		 */
+		int indexOf(int node, int state)
+		{
+			return index.get((long)node*numStates+state);
+		}
+
+		/**
+		 * make the pairs reached since the last call the frontier
+		 */
+		void nextLevel()
+		{
+			levelStart = levelEnd;
+			levelEnd = nodes.size();
+		}
+
+		boolean hasFrontier()
+		{
+			return levelEnd>levelStart;
+		}
+
+		int frontierSize()
+		{
+			return levelEnd-levelStart;
+		}
+	}
+}
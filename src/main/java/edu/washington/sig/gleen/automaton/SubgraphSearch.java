@@ -0,0 +1,353 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+import edu.washington.sig.gleen.adjacency.GraphAdjacency;
+import edu.washington.sig.gleen.util.IntList;
+import edu.washington.sig.gleen.util.IntQueue;
+import edu.washington.sig.gleen.util.IntTripleSet;
+
+/**
+ * Computes the set of triples lying on at least one path that matches a path expression,
+ * without enumerating the paths themselves. A triple (u p v) is on a matching path exactly
+ * when the product graph has an edge (u,q) -p-> (v,q') such that (u,q) is reachable from
+ * a start node in the start state and an end node can be reached, in an accepting state,
+ * from (v,q'). Both sets are found with one breadth first search each, so the cost is
+ * linear in the size of the product graph regardless of how many paths there are.
+ * <p>
+ * Like ProductSearch the searches run on node ids, triples are only decoded as they are
+ * collected. iterator() produces them as the second search finds them, dropping repeats 
+ * with a set of id triples, so they need not all be held at once.
+ */
+public class SubgraphSearch
+{
+	private final AdjacencySource adjacency;
+	private final PathAutomaton automaton;
+	private final EncodedAutomaton encoded;
+	
+	/**
+	 * @param g the graph to search
+	 * @param automaton the automaton for the path expression
+	 */
+	public SubgraphSearch(Graph g, PathAutomaton automaton)
+	{
+		this(new GraphAdjacency(g), automaton);
+	}
+	
+	/**
+	 * @param adjacency the graph to search
+	 * @param automaton the automaton for the path expression
+	 */
+	public SubgraphSearch(AdjacencySource adjacency, PathAutomaton automaton)
+	{
+		this.adjacency = adjacency;
+		this.automaton = automaton;
+		this.encoded = new EncodedAutomaton(automaton, adjacency);
+	}
+	
+	/**
+	 * Find the triples on matching paths between the given ends
+	 * @param subject the start of the paths, or null if any node may start a path
+	 * @param object the end of the paths, or null if any node may end a path
+	 * @return set of triples on at least one matching path
+	 */
+	public Set<Triple> triples(Node subject, Node object)
+	{
+		Set<Triple> triples = new HashSet<Triple>();
+		Iterator<Triple> it = iterator(subject, object);
+		while(it.hasNext())
+		{
+			triples.add(it.next());
+		}
+		return triples;
+	}
+	
+	/**
+	 * Like triples, but the triples are produced as they are found: the first search runs
+	 * when the first triple is asked for, and the second only as far as the triples taken
+	 * @param subject the start of the paths, or null if any node may start a path
+	 * @param object the end of the paths, or null if any node may end a path
+	 * @return iterator over the triples on at least one matching path, each once
+	 */
+	public Iterator<Triple> iterator(Node subject, Node object)
+	{
+		if(subject==null && object==null)
+			throw new IllegalArgumentException("at least one end of the paths must be known");
+		return new TripleIterator(subject, object);
+	}
+	
+	/**
+	 * breadth first search forward from (subject, start state)
+	 * @param object id of the end of the paths, or -1 for any
+	 * @param ends filled with the accepting (node, state) pairs reached (at object, if given)
+	 */
+	private ProductStateSet forwardReach(int subject, int object, IntList ends)
+	{
+		ProductStateSet reached = new ProductStateSet(automaton.getNumStates());
+		IntQueue queue = new IntQueue();
+		IntList neighbours = new IntList();
+		reached.add(subject, PathAutomaton.START_STATE);
+		queue.add(subject);
+		queue.add(PathAutomaton.START_STATE);
+		
+		while(!queue.isEmpty())
+		{
+			int node = queue.poll();
+			int state = queue.poll();
+			if(automaton.isAccepting(state) && (object<0 || object==node))
+			{
+				ends.add(node);
+				ends.add(state);
+			}
+			
+			int[] properties = encoded.outProperties[state];
+			for (int i = 0; i < properties.length; i++)
+			{
+				int[] targets = automaton.getOutTargets(state, i);
+				neighbours.clear();
+				adjacency.getObjects(node, properties[i], neighbours);
+				for (int n = 0; n < neighbours.size(); n++)
+				{
+					int next = neighbours.get(n);
+					for (int target : targets)
+					{
+						if(reached.add(next, target))
+						{
+							queue.add(next);
+							queue.add(target);
+						}
+					}
+				}
+			}
+		}
+		return reached;
+	}
+	
+	/**
+	 * breadth first search backward from object in every accepting state
+	 * @param starts filled with the (node, state) pairs reached in the start state
+	 */
+	private ProductStateSet backwardReach(int object, IntList starts)
+	{
+		ProductStateSet reached = new ProductStateSet(automaton.getNumStates());
+		IntQueue queue = new IntQueue();
+		IntList neighbours = new IntList();
+		for (int state = 0; state < automaton.getNumStates(); state++)
+		{
+			if(automaton.isAccepting(state) && reached.add(object, state))
+			{
+				queue.add(object);
+				queue.add(state);
+			}
+		}
+		
+		while(!queue.isEmpty())
+		{
+			int node = queue.poll();
+			int state = queue.poll();
+			if(state==PathAutomaton.START_STATE)
+			{
+				starts.add(node);
+				starts.add(state);
+				continue;
+			}
+			
+			int[] sources = automaton.getPredecessors(state);
+			neighbours.clear();
+			adjacency.getSubjects(node, encoded.stateProperties[state], neighbours);
+			for (int n = 0; n < neighbours.size(); n++)
+			{
+				int prev = neighbours.get(n);
+				for (int source : sources)
+				{
+					if(reached.add(prev, source))
+					{
+						queue.add(prev);
+						queue.add(source);
+					}
+				}
+			}
+		}
+		return reached;
+	}
+	
+	/**
+	 * The second search, advanced one (node, state) pair at a time. With a subject it walks 
+	 * back from the path ends, collecting every edge whose source was reached forward; 
+	 * otherwise it walks forward from the path starts, collecting every edge whose target 
+	 * was reached backward.
+	 */
+	private final class TripleIterator implements Iterator<Triple>
+	{
+		private final Node subject;
+		private final Node object;
+		private boolean started = false;
+		/** the states reached by the first search */
+		private ProductStateSet reached;
+		private final ProductStateSet visited = new ProductStateSet(automaton.getNumStates());
+		private final IntQueue queue = new IntQueue();
+		private final IntList neighbours = new IntList();
+		private final IntTripleSet seen = new IntTripleSet();
+		/** id triples found and not yet returned */
+		private final IntList pending = new IntList();
+		private int pendingPos = 0;
+		
+		TripleIterator(Node subject, Node object)
+		{
+			this.subject = subject;
+			this.object = object;
+		}
+		
+		public boolean hasNext()
+		{
+			if(!started)
+				start();
+			while(pendingPos==pending.size())
+			{
+				if(queue.isEmpty())
+					return false;
+				pending.clear();
+				pendingPos = 0;
+				int node = queue.poll();
+				int state = queue.poll();
+				if(subject!=null)
+					expandBackward(node, state);
+				else
+					expandForward(node, state);
+			}
+			return true;
+		}
+		
+		public Triple next()
+		{
+			if(!hasNext())
+				throw new NoSuchElementException();
+			int s = pending.get(pendingPos++);
+			int p = pending.get(pendingPos++);
+			int o = pending.get(pendingPos++);
+			return decode(s, p, o);
+		}
+		
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		private void start()
+		{
+			started = true;
+			IntList seeds = new IntList();
+			if(subject!=null)
+			{
+				// forward pass finds the states reachable from the subject, the backward 
+				// pass then walks back from the ends, keeping only edges inside the forward set
+				int objectId = object==null ? -1 : adjacency.encode(object);
+				reached = forwardReach(adjacency.encode(subject), objectId, seeds);
+			}
+			else
+			{
+				// mirror image, walk back from the object then forward from the path starts
+				reached = backwardReach(adjacency.encode(object), seeds);
+			}
+			for (int i = 0; i < seeds.size(); i += 2)
+			{
+				if(visited.add(seeds.get(i), seeds.get(i+1)))
+				{
+					queue.add(seeds.get(i));
+					queue.add(seeds.get(i+1));
+				}
+			}
+		}
+		
+		private void expandBackward(int node, int state)
+		{
+			if(state==PathAutomaton.START_STATE)
+				return;
+			
+			int property = encoded.stateProperties[state];
+			int[] sources = automaton.getPredecessors(state);
+			neighbours.clear();
+			adjacency.getSubjects(node, property, neighbours);
+			for (int n = 0; n < neighbours.size(); n++)
+			{
+				int prev = neighbours.get(n);
+				for (int source : sources)
+				{
+					if(!reached.contains(prev, source))
+						continue;
+					found(prev, property, node);
+					if(visited.add(prev, source))
+					{
+						queue.add(prev);
+						queue.add(source);
+					}
+				}
+			}
+		}
+		
+		private void expandForward(int node, int state)
+		{
+			int[] properties = encoded.outProperties[state];
+			for (int i = 0; i < properties.length; i++)
+			{
+				int[] targets = automaton.getOutTargets(state, i);
+				neighbours.clear();
+				adjacency.getObjects(node, properties[i], neighbours);
+				for (int n = 0; n < neighbours.size(); n++)
+				{
+					int next = neighbours.get(n);
+					for (int target : targets)
+					{
+						if(!reached.contains(next, target))
+							continue;
+						found(node, properties[i], next);
+						if(visited.add(next, target))
+						{
+							queue.add(next);
+							queue.add(target);
+						}
+					}
+				}
+			}
+		}
+		
+		private void found(int s, int p, int o)
+		{
+			if(seen.add(s, p, o))
+			{
+				pending.add(s);
+				pending.add(p);
+				pending.add(o);
+			}
+		}
+	}
+	
+	private Triple decode(int subject, int property, int object)
+	{
+		return Triple.create(adjacency.decode(subject), adjacency.decode(property), adjacency.decode(object));
+	}
+}
@@ -0,0 +1,627 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+import edu.washington.sig.gleen.adjacency.IndexedAdjacency;
+import edu.washington.sig.gleen.adjacency.NodeDictionary;
+import edu.washington.sig.gleen.util.IntList;
+
+/**
+ * The triples of some properties of a graph, stored on disk in a form the automaton engine
+ * can traverse in place. The file holds a node dictionary and, for each property, forward
+ * and reverse compressed sparse row arrays; it is written once (see write, or the 
+ * BuildAdjacencyFile tool) and then opened with a read only memory mapping, so opening 
+ * costs no more than the mapping itself, neighbours are read straight from the page cache,
+ * and JVMs on the same host share the pages.
+ * <p>
+ * File layout, all numbers big endian:
+ * <pre>
+ * "GLEENADJ" version
+ * node records (see NodeCodec)
+ * long[numNodes+1] record offsets
+ * long[numNodes]   node hashes
+ * int[slots]       hash table of node id+1 (0 for an empty slot), linear probing
+ * per property: int[numNodes+1] forward offsets, int[triples] objects, 
+ *               int[numNodes+1] reverse offsets, int[triples] subjects
+ * table of contents
+ * long position of the table of contents, "GLEENADJ"
+ * </pre>
+ * Sections holding longs, and the final two longs, are padded to start at a multiple of 8
+ * bytes.
+ * Like a ReachabilityIndex, the file records the number and an order independent hash of 
+ * each property's triples so it can be checked against the graph (see isValidFor). A 
+ * file may hold at most MAX_NODES nodes, and a property at most 2^31-1 triples. Instances
+ * are immutable and may be shared between threads.
+ */
+public final class AdjacencyFile
+{
+	private static final long MAGIC = 0x474c45454e41444aL; // "GLEENADJ"
+	private static final int VERSION = 1;
+	/** 
+	 * most nodes a file may hold, as the hash table has four slots per node (rounded down 
+	 * to a power of two) and must fit in an int array
+	 */
+	public static final int MAX_NODES = (1<<29)-1;
+	
+	private final File file;
+	private final MappedFile mapped;
+	private final int numNodes;
+	private final long recordsPosition;
+	private final long recordOffsetsPosition;
+	private final long hashesPosition;
+	private final long slotsPosition;
+	private final int numSlots;
+	private final Map<Node, PropertySection> properties;
+	
+	private AdjacencyFile(File file, MappedFile mapped, int numNodes, long recordsPosition, 
+			long recordOffsetsPosition, long hashesPosition, long slotsPosition, int numSlots, 
+			Map<Node, PropertySection> properties)
+	{
+		this.file = file;
+		this.mapped = mapped;
+		this.numNodes = numNodes;
+		this.recordsPosition = recordsPosition;
+		this.recordOffsetsPosition = recordOffsetsPosition;
+		this.hashesPosition = hashesPosition;
+		this.slotsPosition = slotsPosition;
+		this.numSlots = numSlots;
+		this.properties = properties;
+	}
+	
+	/**
+	 * Write the triples of some properties of a graph to a file
+	 * @param g the graph
+	 * @param properties the properties to store
+	 * @param file the file, replaced if it exists
+	 * @throws IOException
+	 */
+	public static void write(Graph g, Collection<Node> properties, File file) throws IOException
+	{
+		Map<Node, Integer> ids = new HashMap<Node, Integer>();
+		List<Node> nodes = new ArrayList<Node>();
+		Map<Node, IntList[]> triples = new LinkedHashMap<Node, IntList[]>();
+		Map<Node, long[]> fingerprints = new HashMap<Node, long[]>();
+		for(Node property : new LinkedHashSet<Node>(properties))
+		{
+			IntList subjects = new IntList();
+			IntList objects = new IntList();
+			long tripleHash = 0;
+			ExtendedIterator<Triple> ei = g.find(Node.ANY, property, Node.ANY);
+			try
+			{
+				while(ei.hasNext())
+				{
+					Triple triple = ei.next();
+					subjects.add(getId(triple.getSubject(), ids, nodes));
+					objects.add(getId(triple.getObject(), ids, nodes));
+					tripleHash += NodeCodec.hash(triple);
+				}
+			}
+			finally
+			{
+				ei.close();
+			}
+			triples.put(property, new IntList[]{subjects, objects});
+			fingerprints.put(property, new long[]{subjects.size(), tripleHash});
+		}
+		int n = nodes.size();
+		int numSlots = getNumSlots(n);
+		
+		// write to a temporary file first, so that readers never see a partial file
+		File tmpFile = new File(file.getPath()+".tmp");
+		PositionOutputStream position = new PositionOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1<<16));
+		DataOutputStream out = new DataOutputStream(position);
+		try
+		{
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			
+			long recordsPosition = position.align(out, 8);
+			long[] recordOffsets = new long[n+1];
+			long[] hashes = new long[n];
+			for (int id = 0; id < n; id++)
+			{
+				recordOffsets[id] = position.get()-recordsPosition;
+				NodeCodec.writeNode(out, nodes.get(id));
+				hashes[id] = NodeCodec.hash(nodes.get(id));
+			}
+			recordOffsets[n] = position.get()-recordsPosition;
+			
+			long recordOffsetsPosition = position.align(out, 8);
+			for (long offset : recordOffsets)
+			{
+				out.writeLong(offset);
+			}
+			long hashesPosition = position.get();
+			for (long hash : hashes)
+			{
+				out.writeLong(hash);
+			}
+			int[] slots = new int[numSlots];
+			for (int id = 0; id < n; id++)
+			{
+				int slot = slot(hashes[id], numSlots);
+				while(slots[slot]!=0)
+				{
+					slot = (slot+1)&(numSlots-1);
+				}
+				slots[slot] = id+1;
+			}
+			long slotsPosition = position.get();
+			for (int slot : slots)
+			{
+				out.writeInt(slot);
+			}
+			
+			Map<Node, long[]> sections = new LinkedHashMap<Node, long[]>();
+			for(Map.Entry<Node, IntList[]> entry : triples.entrySet())
+			{
+				IntList subjects = entry.getValue()[0];
+				IntList objects = entry.getValue()[1];
+				long[] section = new long[4];
+				writeRows(out, position, n, subjects, objects, section, 0);
+				writeRows(out, position, n, objects, subjects, section, 2);
+				sections.put(entry.getKey(), section);
+			}
+			
+			long contentsPosition = position.align(out, 8);
+			out.writeInt(n);
+			out.writeLong(recordsPosition);
+			out.writeLong(recordOffsetsPosition);
+			out.writeLong(hashesPosition);
+			out.writeLong(slotsPosition);
+			out.writeInt(numSlots);
+			out.writeInt(sections.size());
+			for(Map.Entry<Node, long[]> entry : sections.entrySet())
+			{
+				NodeCodec.writeNode(out, entry.getKey());
+				long[] fingerprint = fingerprints.get(entry.getKey());
+				out.writeLong(fingerprint[0]);
+				out.writeLong(fingerprint[1]);
+				for (long sectionPosition : entry.getValue())
+				{
+					out.writeLong(sectionPosition);
+				}
+			}
+			position.align(out, 8);
+			out.writeLong(contentsPosition);
+			out.writeLong(MAGIC);
+		}
+		finally
+		{
+			out.close();
+		}
+		if(file.exists() && !file.delete())
+			throw new IOException("cannot replace "+file);
+		if(!tmpFile.renameTo(file))
+			throw new IOException("cannot rename "+tmpFile+" to "+file);
+	}
+	
+	/**
+	 * @param numNodes number of nodes in the file
+	 * @return the size of the node hash table, a power of two
+	 * @throws IOException if there are more than MAX_NODES nodes
+	 */
+	static int getNumSlots(int numNodes) throws IOException
+	{
+		long numSlots = Long.highestOneBit(Math.max(numNodes, 1))*4;
+		if(numNodes>MAX_NODES || numSlots>Integer.MAX_VALUE)
+			throw new IOException(numNodes+" nodes are too many for one adjacency file, which holds at most "+MAX_NODES);
+		return (int)numSlots;
+	}
+	
+	/**
+	 * write one direction of a property as CSR, recording the positions of the offsets and
+	 * targets in section[at] and section[at+1]
+	 */
+	private static void writeRows(DataOutputStream out, PositionOutputStream position, int n, 
+			IntList from, IntList to, long[] section, int at) throws IOException
+	{
+		int[] offsets = new int[n+1];
+		for (int e = 0; e < from.size(); e++)
+		{
+			offsets[from.get(e)+1]++;
+		}
+		for (int id = 0; id < n; id++)
+		{
+			offsets[id+1] += offsets[id];
+		}
+		int[] targets = new int[from.size()];
+		int[] next = offsets.clone();
+		for (int e = 0; e < from.size(); e++)
+		{
+			targets[next[from.get(e)]++] = to.get(e);
+		}
+		
+		section[at] = position.get();
+		for (int offset : offsets)
+		{
+			out.writeInt(offset);
+		}
+		section[at+1] = position.get();
+		for (int target : targets)
+		{
+			out.writeInt(target);
+		}
+	}
+	
+	/**
+	 * Open and map a file written by write
+	 * @param file the file
+	 * @return the mapped file
+	 * @throws IOException if the file cannot be read or is not an adjacency file
+	 */
+	public static AdjacencyFile open(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			MappedFile mapped = new MappedFile(channel);
+			long size = mapped.size();
+			if(size<32 || mapped.getLong(0)!=MAGIC || mapped.getLong(size-8)!=MAGIC)
+				throw new IOException(file+" is not an adjacency file");
+			int version = mapped.getInt(8);
+			if(version!=VERSION)
+				throw new IOException(file+" has unsupported adjacency file version "+version);
+			
+			DataInputStream in = new DataInputStream(Channels.newInputStream(channel.position(mapped.getLong(size-16))));
+			int numNodes = in.readInt();
+			long recordsPosition = in.readLong();
+			long recordOffsetsPosition = in.readLong();
+			long hashesPosition = in.readLong();
+			long slotsPosition = in.readLong();
+			int numSlots = in.readInt();
+			int numProperties = in.readInt();
+			Map<Node, PropertySection> properties = new LinkedHashMap<Node, PropertySection>();
+			for (int i = 0; i < numProperties; i++)
+			{
+				Node property = NodeCodec.readNode(in);
+				properties.put(property, new PropertySection(in.readLong(), in.readLong(), 
+						in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+			}
+			return new AdjacencyFile(file, mapped, numNodes, recordsPosition, recordOffsetsPosition, 
+					hashesPosition, slotsPosition, numSlots, properties);
+		}
+		finally
+		{
+			// the mapping stays valid after the channel is closed
+			raf.close();
+		}
+	}
+	
+	/**
+	 * @return the stored properties
+	 */
+	public Set<Node> getProperties()
+	{
+		return properties.keySet();
+	}
+	
+	/**
+	 * @param properties some properties
+	 * @return true if the file holds the triples of all the properties
+	 */
+	public boolean covers(Collection<Node> properties)
+	{
+		return this.properties.keySet().containsAll(properties);
+	}
+	
+	/**
+	 * @return number of nodes in the dictionary
+	 */
+	public int getNumNodes()
+	{
+		return numNodes;
+	}
+	
+	/**
+	 * @param property a stored property
+	 * @return number of triples stored for the property, or -1 if it is not stored
+	 */
+	public long getTripleCount(Node property)
+	{
+		PropertySection section = properties.get(property);
+		return section==null ? -1 : section.tripleCount;
+	}
+	
+	/**
+	 * Check that the graph still holds exactly the triples this file was written from. This
+	 * reads every triple of the stored properties.
+	 * @param g the graph
+	 * @return true if the file matches the graph
+	 */
+	public boolean isValidFor(Graph g)
+	{
+		for(Map.Entry<Node, PropertySection> entry : properties.entrySet())
+		{
+			long count = 0;
+			long hash = 0;
+			ExtendedIterator<Triple> ei = g.find(Node.ANY, entry.getKey(), Node.ANY);
+			try
+			{
+				while(ei.hasNext())
+				{
+					hash += NodeCodec.hash(ei.next());
+					count++;
+				}
+			}
+			finally
+			{
+				ei.close();
+			}
+			if(count!=entry.getValue().tripleCount || hash!=entry.getValue().tripleHash)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Create an adjacency source for one search over this file. Neighbour lookups for 
+	 * properties the file does not hold find nothing, so callers should check covers first.
+	 * @return a new adjacency source
+	 */
+	public AdjacencySource createSource()
+	{
+		return new Source();
+	}
+	
+	@Override
+	public String toString()
+	{
+		long triples = 0;
+		for(PropertySection section : properties.values())
+		{
+			triples += section.tripleCount;
+		}
+		return "AdjacencyFile["+file+": properties="+properties.size()+", nodes="+numNodes+
+				", triples="+triples+"]";
+	}
+	
+	/**
+	 * @return the id of the node, or -1 if the file does not hold it
+	 */
+	private int lookup(Node node)
+	{
+		if(numNodes==0)
+			return -1;
+		long hash = NodeCodec.hash(node);
+		for (int slot = slot(hash, numSlots); ; slot = (slot+1)&(numSlots-1))
+		{
+			int id = mapped.getInt(slotsPosition+4L*slot)-1;
+			if(id<0)
+				return -1;
+			if(mapped.getLong(hashesPosition+8L*id)==hash && node.equals(readNode(id)))
+				return id;
+		}
+	}
+	
+	private Node readNode(int id)
+	{
+		long start = mapped.getLong(recordOffsetsPosition+8L*id);
+		long end = mapped.getLong(recordOffsetsPosition+8L*(id+1));
+		byte[] record = mapped.getBytes(recordsPosition+start, (int)(end-start));
+		try
+		{
+			return NodeCodec.readNode(new DataInputStream(new ByteArrayInputStream(record)));
+		}
+		catch(IOException e)
+		{
+			throw new IllegalStateException(file+" is corrupt, cannot read node "+id, e);
+		}
+	}
+	
+	/**
+	 * append the targets of row id of a CSR array pair
+	 */
+	private void getRow(long offsetsPosition, long targetsPosition, int id, IntList targets)
+	{
+		long offsetPosition = offsetsPosition+4L*id;
+		int from = mapped.getInt(offsetPosition);
+		int to = mapped.getInt(offsetPosition+4);
+		for (long at = targetsPosition+4L*from, end = targetsPosition+4L*to; at < end; at += 4)
+		{
+			targets.add(mapped.getInt(at));
+		}
+	}
+	
+	private static int slot(long hash, int numSlots)
+	{
+		return (int)NodeCodec.mix(hash) & (numSlots-1);
+	}
+	
+	private static int getId(Node node, Map<Node, Integer> ids, List<Node> nodes)
+	{
+		Integer id = ids.get(node);
+		if(id==null)
+		{
+			id = nodes.size();
+			nodes.add(node);
+			ids.put(node, id);
+		}
+		return id;
+	}
+	
+	/**
+	 * where the arrays of one property are
+	 */
+	private static final class PropertySection
+	{
+		final long tripleCount;
+		final long tripleHash;
+		final long forwardOffsets;
+		final long forwardTargets;
+		final long reverseOffsets;
+		final long reverseTargets;
+		
+		PropertySection(long tripleCount, long tripleHash, long forwardOffsets, 
+				long forwardTargets, long reverseOffsets, long reverseTargets)
+		{
+			this.tripleCount = tripleCount;
+			this.tripleHash = tripleHash;
+			this.forwardOffsets = forwardOffsets;
+			this.forwardTargets = forwardTargets;
+			this.reverseOffsets = reverseOffsets;
+			this.reverseTargets = reverseTargets;
+		}
+	}
+	
+	/**
+	 * ids below the file's node count are the file's own, nodes the file does not hold 
+	 * (e.g. a start node without triples) are numbered after them
+	 */
+	private class Source implements IndexedAdjacency
+	{
+		private final NodeDictionary extra = new NodeDictionary();
+		/** the properties looked up by this search, by id */
+		private int[] propertyIds = new int[0];
+		private PropertySection[] sections = new PropertySection[0];
+		
+		@Override
+		public int encode(Node node)
+		{
+			int id = lookup(node);
+			if(id>=0)
+				return id;
+			return numNodes+extra.encode(node);
+		}
+		
+		@Override
+		public Node decode(int id)
+		{
+			return id<numNodes ? readNode(id) : extra.decode(id-numNodes);
+		}
+		
+		@Override
+		public void getObjects(int subject, int property, IntList objects)
+		{
+			PropertySection section = getSection(property);
+			if(section!=null && subject<numNodes)
+				getRow(section.forwardOffsets, section.forwardTargets, subject, objects);
+		}
+		
+		@Override
+		public void getSubjects(int object, int property, IntList subjects)
+		{
+			PropertySection section = getSection(property);
+			if(section!=null && object<numNodes)
+				getRow(section.reverseOffsets, section.reverseTargets, object, subjects);
+		}
+		
+		@Override
+		public int getNumNodes()
+		{
+			return numNodes;
+		}
+		
+		@Override
+		public long getEdgeCount(int property)
+		{
+			PropertySection section = getSection(property);
+			return section==null ? 0 : section.tripleCount;
+		}
+		
+		private PropertySection getSection(int property)
+		{
+			// a search only ever uses a handful of properties
+			for (int i = 0; i < propertyIds.length; i++)
+			{
+				if(propertyIds[i]==property)
+					return sections[i];
+			}
+			PropertySection section = properties.get(decode(property));
+			propertyIds = Arrays.copyOf(propertyIds, propertyIds.length+1);
+			sections = Arrays.copyOf(sections, sections.length+1);
+			propertyIds[propertyIds.length-1] = property;
+			sections[sections.length-1] = section;
+			return section;
+		}
+	}
+	
+	/**
+	 * counts the bytes written, so that array positions can be recorded
+	 */
+	private static final class PositionOutputStream extends FilterOutputStream
+	{
+		private long position = 0;
+		
+		PositionOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+		
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			position++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			position += len;
+		}
+		
+		long get()
+		{
+			return position;
+		}
+		
+		/**
+		 * pad with zeros to a multiple of alignment
+		 * @return the new position
+		 */
+		long align(DataOutputStream data, int alignment) throws IOException
+		{
+			while(position%alignment!=0)
+			{
+				data.writeByte(0);
+			}
+			return position;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+/**
+ * Command line tool that writes an adjacency file for some properties of a TDB dataset's
+ * default graph. Queries then use it via AdjacencyFile.open and ContextUtil.setAdjacencyFile.
+ * <pre>
+ * java edu.washington.sig.gleen.index.BuildAdjacencyFile &lt;tdb directory&gt; &lt;output file&gt; &lt;property URI&gt;...
+ * </pre>
+ */
+public class BuildAdjacencyFile
+{
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length<3)
+		{
+			System.err.println("usage: BuildAdjacencyFile <tdb directory> <output file> <property URI>...");
+			System.exit(1);
+		}
+		
+		Dataset dataset = TDBFactory.createDataset(args[0]);
+		try
+		{
+			Graph graph = dataset.asDatasetGraph().getDefaultGraph();
+			List<Node> properties = new ArrayList<Node>();
+			for (int i = 2; i < args.length; i++)
+			{
+				properties.add(NodeFactory.createURI(args[i]));
+			}
+			File file = new File(args[1]);
+			long start = System.currentTimeMillis();
+			AdjacencyFile.write(graph, properties, file);
+			System.out.println(AdjacencyFile.open(file)+" written in "+(System.currentTimeMillis()-start)+"ms");
+		}
+		finally
+		{
+			dataset.close();
+		}
+	}
+}
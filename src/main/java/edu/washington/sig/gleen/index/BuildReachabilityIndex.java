@@ -0,0 +1,62 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+/**
+ * Command line tool that builds reachability indexes for a TDB dataset and stores them in
+ * the dataset directory, where ReachabilityIndexRegistry.load and loadOrBuild find them.
+ * <pre>
+ * java edu.washington.sig.gleen.index.BuildReachabilityIndex &lt;tdb directory&gt; &lt;property URI&gt;...
+ * </pre>
+ */
+public class BuildReachabilityIndex
+{
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length<2)
+		{
+			System.err.println("usage: BuildReachabilityIndex <tdb directory> <property URI>...");
+			System.exit(1);
+		}
+		
+		File directory = new File(args[0]);
+		Dataset dataset = TDBFactory.createDataset(directory.getPath());
+		try
+		{
+			Graph graph = dataset.asDatasetGraph().getDefaultGraph();
+			ReachabilityIndexRegistry registry = new ReachabilityIndexRegistry(graph);
+			for (int i = 1; i < args.length; i++)
+			{
+				long start = System.currentTimeMillis();
+				ReachabilityIndex index = registry.build(NodeFactory.createURI(args[i]), directory);
+				System.out.println(index+" built in "+(System.currentTimeMillis()-start)+"ms");
+			}
+		}
+		finally
+		{
+			dataset.close();
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tree cover interval labeling of a DAG (Agrawal, Borgida and Jagadish, 1989). A spanning
+ * forest of the DAG is numbered in postorder, so every tree is a contiguous range of
+ * numbers. Each vertex is labeled with the set of disjoint number ranges covering all 
+ * vertices reachable from it (including itself); its own subtree contributes one range, 
+ * and non-tree edges contribute the ranges of their targets. Reachability is then a binary
+ * search over the source's ranges, and the reachable set is simply every vertex numbered 
+ * inside them.
+ * <p>
+ * For hierarchies (subclass, part of) most edges are tree edges and labels stay at one or
+ * a few ranges per vertex.
+ */
+final class IntervalLabeling
+{
+	/** postorder number of every vertex */
+	private final int[] post;
+	/** vertex with a given postorder number */
+	private final int[] vertexAt;
+	/** start of every vertex's ranges in bounds, indexed by vertex (length n+1) */
+	private final int[] offsets;
+	/** inclusive (low, high) pairs, sorted and disjoint within a vertex */
+	private final int[] bounds;
+	
+	private IntervalLabeling(int[] post, int[] offsets, int[] bounds)
+	{
+		this.post = post;
+		this.offsets = offsets;
+		this.bounds = bounds;
+		this.vertexAt = new int[post.length];
+		for (int v = 0; v < post.length; v++)
+		{
+			vertexAt[post[v]] = v;
+		}
+	}
+	
+	/**
+	 * Label a DAG
+	 * @param successors adjacency lists of the DAG
+	 * @param successorsFirst true if every vertex is numbered higher than its successors
+	 * (e.g. components as listed by StronglyConnectedComponents), false if every vertex is
+	 * numbered lower than its successors
+	 * @return the labeling
+	 */
+	static IntervalLabeling build(int[][] successors, boolean successorsFirst)
+	{
+		int n = successors.length;
+		int[] post = new int[n];
+		int[] low = new int[n];
+		boolean[] visited = new boolean[n];
+		
+		// spanning forest, rooted at the sources
+		int[] stack = new int[n];
+		int[] edgePos = new int[n];
+		int counter = 0;
+		for (int i = 0; i < n; i++)
+		{
+			int root = successorsFirst ? n-1-i : i;
+			if(visited[root])
+				continue;
+			
+			int depth = 0;
+			stack[0] = root;
+			edgePos[0] = 0;
+			visited[root] = true;
+			low[root] = counter;
+			while(depth>=0)
+			{
+				int v = stack[depth];
+				if(edgePos[depth]<successors[v].length)
+				{
+					int w = successors[v][edgePos[depth]++];
+					if(!visited[w])
+					{
+						visited[w] = true;
+						low[w] = counter;
+						depth++;
+						stack[depth] = w;
+						edgePos[depth] = 0;
+					}
+					continue;
+				}
+				post[v] = counter++;
+				depth--;
+			}
+		}
+		
+		// merge ranges, successors before predecessors
+		int[][] labels = new int[n][];
+		int total = 0;
+		int[] scratch = new int[16];
+		for (int i = 0; i < n; i++)
+		{
+			int v = successorsFirst ? i : n-1-i;
+			int size = 2;
+			for (int w : successors[v])
+			{
+				size += labels[w].length;
+			}
+			if(scratch.length<size)
+				scratch = new int[Math.max(size, scratch.length*2)];
+			
+			scratch[0] = low[v];
+			scratch[1] = post[v];
+			int pos = 2;
+			for (int w : successors[v])
+			{
+				System.arraycopy(labels[w], 0, scratch, pos, labels[w].length);
+				pos += labels[w].length;
+			}
+			labels[v] = merge(scratch, size);
+			total += labels[v].length;
+		}
+		
+		int[] offsets = new int[n+1];
+		int[] bounds = new int[total];
+		for (int v = 0; v < n; v++)
+		{
+			System.arraycopy(labels[v], 0, bounds, offsets[v], labels[v].length);
+			offsets[v+1] = offsets[v]+labels[v].length;
+		}
+		return new IntervalLabeling(post, offsets, bounds);
+	}
+	
+	/**
+	 * sort (low, high) pairs and merge overlapping or adjacent ones
+	 */
+	private static int[] merge(int[] pairs, int size)
+	{
+		int count = size/2;
+		long[] packed = new long[count];
+		for (int i = 0; i < count; i++)
+		{
+			packed[i] = ((long)pairs[2*i] << 32) | (pairs[2*i+1] & 0xffffffffL);
+		}
+		Arrays.sort(packed);
+		
+		int[] merged = new int[size];
+		int pos = 0;
+		for (int i = 0; i < count; i++)
+		{
+			int lo = (int)(packed[i] >>> 32);
+			int hi = (int)packed[i];
+			if(pos>0 && lo<=merged[pos-1]+1)
+			{
+				merged[pos-1] = Math.max(merged[pos-1], hi);
+			}
+			else
+			{
+				merged[pos++] = lo;
+				merged[pos++] = hi;
+			}
+		}
+		return Arrays.copyOf(merged, pos);
+	}
+	
+	/**
+	 * @return true if target is reachable from source (every vertex reaches itself)
+	 */
+	boolean reaches(int source, int target)
+	{
+		int number = post[target];
+		int lo = 0;
+		int hi = (offsets[source+1]-offsets[source])/2 - 1;
+		while(lo<=hi)
+		{
+			int mid = (lo+hi) >>> 1;
+			int pair = offsets[source]+2*mid;
+			if(number<bounds[pair])
+				hi = mid-1;
+			else if(number>bounds[pair+1])
+				lo = mid+1;
+			else
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return number of ranges in the label of a vertex
+	 */
+	int getNumRanges(int vertex)
+	{
+		return (offsets[vertex+1]-offsets[vertex])/2;
+	}
+	
+	/**
+	 * @return the first postorder number in a range of a vertex's label
+	 */
+	int getRangeLow(int vertex, int range)
+	{
+		return bounds[offsets[vertex]+2*range];
+	}
+	
+	/**
+	 * @return the last postorder number in a range of a vertex's label
+	 */
+	int getRangeHigh(int vertex, int range)
+	{
+		return bounds[offsets[vertex]+2*range+1];
+	}
+	
+	/**
+	 * @return the vertex with the given postorder number
+	 */
+	int getVertexAt(int number)
+	{
+		return vertexAt[number];
+	}
+	
+	/**
+	 * @return total number of ranges over all labels
+	 */
+	int getTotalRanges()
+	{
+		return bounds.length/2;
+	}
+	
+	void write(DataOutput out) throws IOException
+	{
+		writeInts(out, post);
+		writeInts(out, offsets);
+		writeInts(out, bounds);
+	}
+	
+	static IntervalLabeling read(DataInput in) throws IOException
+	{
+		int[] post = readInts(in);
+		int[] offsets = readInts(in);
+		int[] bounds = readInts(in);
+		if(offsets.length!=post.length+1 || offsets[post.length]!=bounds.length)
+			throw new IOException("corrupt interval labeling");
+		return new IntervalLabeling(post, offsets, bounds);
+	}
+	
+	static void writeInts(DataOutput out, int[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for (int value : values)
+		{
+			out.writeInt(value);
+		}
+	}
+	
+	static int[] readInts(DataInput in) throws IOException
+	{
+		int[] values = new int[in.readInt()];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read only memory mapping of a whole file. A single MappedByteBuffer cannot exceed 2GB,
+ * so the file is mapped in 1GB chunks; ints and longs are stored at aligned positions and
+ * so never straddle two chunks. Reads use absolute positions only, so one instance may be
+ * shared between threads.
+ */
+final class MappedFile
+{
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_SIZE = 1L<<CHUNK_BITS;
+	private static final int CHUNK_MASK = (int)(CHUNK_SIZE-1);
+	
+	private final MappedByteBuffer[] chunks;
+	private final long size;
+	
+	/**
+	 * @param channel an open channel, it may be closed once the mapping has been made
+	 * @throws IOException
+	 */
+	MappedFile(FileChannel channel) throws IOException
+	{
+		size = channel.size();
+		chunks = new MappedByteBuffer[(int)((size+CHUNK_SIZE-1)>>>CHUNK_BITS)];
+		for (int c = 0; c < chunks.length; c++)
+		{
+			long start = c*CHUNK_SIZE;
+			chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size-start));
+		}
+	}
+	
+	/**
+	 * @return size of the file in bytes
+	 */
+	long size()
+	{
+		return size;
+	}
+	
+	/**
+	 * @param position a multiple of 4
+	 */
+	int getInt(long position)
+	{
+		return chunks[(int)(position>>>CHUNK_BITS)].getInt((int)position & CHUNK_MASK);
+	}
+	
+	/**
+	 * @param position a multiple of 8
+	 */
+	long getLong(long position)
+	{
+		return chunks[(int)(position>>>CHUNK_BITS)].getLong((int)position & CHUNK_MASK);
+	}
+	
+	/**
+	 * @param position position of the first byte
+	 * @param length number of bytes
+	 * @return a copy of the bytes
+	 */
+	byte[] getBytes(long position, int length)
+	{
+		byte[] bytes = new byte[length];
+		int done = 0;
+		while(done<length)
+		{
+			long at = position+done;
+			MappedByteBuffer chunk = chunks[(int)(at>>>CHUNK_BITS)];
+			int offset = (int)at & CHUNK_MASK;
+			int count = Math.min(length-done, chunk.capacity()-offset);
+			for (int i = 0; i < count; i++)
+			{
+				bytes[done+i] = chunk.get(offset+i);
+			}
+			done += count;
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.AnonId;
+
+/**
+ * Reads and writes RDF nodes in GLEEN's binary index files, and computes the stable 64 bit
+ * node hashes used to fingerprint the indexed triples. Unlike Node.hashCode, these hashes
+ * do not change between JVMs, so they can be stored on disk.
+ */
+final class NodeCodec
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final byte URI = 'U';
+	private static final byte BLANK = 'B';
+	private static final byte LITERAL = 'L';
+	
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	
+	private NodeCodec()
+	{
+	}
+	
+	/**
+	 * @param out where to write the node
+	 * @param node a URI, blank or literal node
+	 * @throws IOException
+	 */
+	static void writeNode(DataOutput out, Node node) throws IOException
+	{
+		if(node.isURI())
+		{
+			out.writeByte(URI);
+			writeString(out, node.getURI());
+		}
+		else if(node.isBlank())
+		{
+			out.writeByte(BLANK);
+			writeString(out, node.getBlankNodeLabel());
+		}
+		else if(node.isLiteral())
+		{
+			out.writeByte(LITERAL);
+			writeString(out, node.getLiteralLexicalForm());
+			writeString(out, node.getLiteralLanguage());
+			String datatype = node.getLiteralDatatypeURI();
+			writeString(out, datatype==null ? "" : datatype);
+		}
+		else
+			throw new IllegalArgumentException("cannot store node "+node);
+	}
+	
+	/**
+	 * @param in where to read the node from
+	 * @return the node
+	 * @throws IOException
+	 */
+	static Node readNode(DataInput in) throws IOException
+	{
+		byte kind = in.readByte();
+		switch (kind)
+		{
+			case URI:
+				return NodeFactory.createURI(readString(in));
+			case BLANK:
+				return NodeFactory.createAnon(new AnonId(readString(in)));
+			case LITERAL:
+				String lexicalForm = readString(in);
+				String language = readString(in);
+				String datatype = readString(in);
+				if(datatype.length()==0)
+					return NodeFactory.createLiteral(lexicalForm, language, false);
+				return NodeFactory.createLiteral(lexicalForm, language, 
+						TypeMapper.getInstance().getSafeTypeByName(datatype));
+			default:
+				throw new IOException("unknown node kind "+kind);
+		}
+	}
+	
+	/**
+	 * @param node a URI, blank or literal node
+	 * @return a 64 bit hash of the node that is stable across JVMs
+	 */
+	static long hash(Node node)
+	{
+		long hash = FNV_OFFSET;
+		if(node.isURI())
+		{
+			hash = hash(hash, URI);
+			hash = hash(hash, node.getURI());
+		}
+		else if(node.isBlank())
+		{
+			hash = hash(hash, BLANK);
+			hash = hash(hash, node.getBlankNodeLabel());
+		}
+		else if(node.isLiteral())
+		{
+			hash = hash(hash, LITERAL);
+			hash = hash(hash, node.getLiteralLexicalForm());
+			hash = hash(hash, node.getLiteralLanguage());
+			String datatype = node.getLiteralDatatypeURI();
+			hash = hash(hash, datatype==null ? "" : datatype);
+		}
+		return hash;
+	}
+	
+	/**
+	 * @param triple a triple
+	 * @return a stable hash of the triple's subject and object, summed over the triples of a
+	 * property to fingerprint them independently of their order
+	 */
+	static long hash(Triple triple)
+	{
+		return mix(hash(triple.getSubject())*31 + hash(triple.getObject()));
+	}
+	
+	/**
+	 * finalizer from MurmurHash3, spreads hash bits so that sums of hashes stay well mixed
+	 */
+	static long mix(long hash)
+	{
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+	private static long hash(long hash, byte value)
+	{
+		return (hash ^ (value & 0xff)) * FNV_PRIME;
+	}
+	
+	private static long hash(long hash, String value)
+	{
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+		}
+		// terminate, so that consecutive strings cannot run together
+		return (hash ^ 0xff) * FNV_PRIME;
+	}
+	
+	private static void writeString(DataOutput out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static String readString(DataInput in) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+}
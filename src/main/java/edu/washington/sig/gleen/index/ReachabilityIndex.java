@@ -0,0 +1,530 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+import edu.washington.sig.gleen.util.StronglyConnectedComponents;
+
+/**
+ * A ReachabilityIndex answers [p]+ and [p]* queries for a single property p of a graph
+ * without touching the graph. The p edges are condensed into a DAG of strongly connected
+ * components, and the DAG is given interval labels in both directions (see 
+ * IntervalLabeling), so that
+ * <ul>
+ * <li>checking whether one node reaches another is a binary search over a few ranges</li>
+ * <li>the closure of a node is read directly from the ranges of its label</li>
+ * </ul>
+ * An index records the number of p triples it was built from, and an order independent
+ * hash of them, so an index saved to disk can be checked against the graph before it is
+ * used (see isValidFor). Instances are immutable and may be shared between threads.
+ */
+public final class ReachabilityIndex
+{
+	private static final long MAGIC = 0x474c45454e524958L; // "GLEENRIX"
+	private static final int VERSION = 1;
+	private static final String FILE_PREFIX = "gleen-reach-";
+	private static final String FILE_SUFFIX = ".idx";
+	
+	private final Node property;
+	private final long tripleCount;
+	private final long tripleHash;
+	
+	private final Node[] nodes;
+	private final Map<Node, Integer> ids;
+	/** component of every node */
+	private final int[] component;
+	/** members of every component, members[memberOffsets[c]..memberOffsets[c+1]) */
+	private final int[] memberOffsets;
+	private final int[] members;
+	/** components with a path of length one or more from each member to itself */
+	private final BitSet cyclic;
+	private final IntervalLabeling forward;
+	private final IntervalLabeling backward;
+	
+	private ReachabilityIndex(Node property, long tripleCount, long tripleHash, Node[] nodes, 
+			int[] component, BitSet cyclic, IntervalLabeling forward, IntervalLabeling backward)
+	{
+		this.property = property;
+		this.tripleCount = tripleCount;
+		this.tripleHash = tripleHash;
+		this.nodes = nodes;
+		this.component = component;
+		this.cyclic = cyclic;
+		this.forward = forward;
+		this.backward = backward;
+		
+		ids = new HashMap<Node, Integer>(nodes.length*2);
+		for (int id = 0; id < nodes.length; id++)
+		{
+			ids.put(nodes[id], id);
+		}
+		
+		int numComponents = getNumComponents(component);
+		memberOffsets = new int[numComponents+1];
+		for (int c : component)
+		{
+			memberOffsets[c+1]++;
+		}
+		for (int c = 0; c < numComponents; c++)
+		{
+			memberOffsets[c+1] += memberOffsets[c];
+		}
+		members = new int[nodes.length];
+		int[] fill = Arrays.copyOf(memberOffsets, numComponents);
+		for (int id = 0; id < component.length; id++)
+		{
+			members[fill[component[id]]++] = id;
+		}
+	}
+	
+	/**
+	 * Build the index for a property by reading all of its triples from the graph
+	 * @param g the graph
+	 * @param property the property to index
+	 * @return the index
+	 */
+	public static ReachabilityIndex build(Graph g, Node property)
+	{
+		Map<Node, Integer> ids = new HashMap<Node, Integer>();
+		List<Node> nodes = new ArrayList<Node>();
+		int[] sources = new int[1024];
+		int[] targets = new int[1024];
+		int numEdges = 0;
+		long tripleHash = 0;
+		
+		ExtendedIterator<Triple> ei = g.find(Node.ANY, property, Node.ANY);
+		try
+		{
+			while(ei.hasNext())
+			{
+				Triple triple = ei.next();
+				if(numEdges==sources.length)
+				{
+					sources = Arrays.copyOf(sources, numEdges*2);
+					targets = Arrays.copyOf(targets, numEdges*2);
+				}
+				sources[numEdges] = getId(triple.getSubject(), ids, nodes);
+				targets[numEdges] = getId(triple.getObject(), ids, nodes);
+				numEdges++;
+				tripleHash += NodeCodec.hash(triple);
+			}
+		}
+		finally
+		{
+			ei.close();
+		}
+		
+		// condense strongly connected components
+		int n = nodes.size();
+		int[][] successors = toAdjacency(n, sources, targets, numEdges);
+		int[] component = new int[n];
+		List<int[]> components = StronglyConnectedComponents.compute(successors, component);
+		int numComponents = components.size();
+		
+		BitSet cyclic = new BitSet(numComponents);
+		for (int c = 0; c < numComponents; c++)
+		{
+			if(components.get(c).length>1)
+				cyclic.set(c);
+		}
+		int[] componentSources = new int[numEdges];
+		int[] componentTargets = new int[numEdges];
+		int numComponentEdges = 0;
+		for (int e = 0; e < numEdges; e++)
+		{
+			int from = component[sources[e]];
+			int to = component[targets[e]];
+			if(from==to)
+			{
+				// self loops make single node components cyclic
+				cyclic.set(from);
+				continue;
+			}
+			componentSources[numComponentEdges] = from;
+			componentTargets[numComponentEdges] = to;
+			numComponentEdges++;
+		}
+		
+		// components are listed sinks first, so successors always come before predecessors
+		IntervalLabeling forward = IntervalLabeling.build(
+				toAdjacency(numComponents, componentSources, componentTargets, numComponentEdges), true);
+		IntervalLabeling backward = IntervalLabeling.build(
+				toAdjacency(numComponents, componentTargets, componentSources, numComponentEdges), false);
+		
+		return new ReachabilityIndex(property, numEdges, tripleHash, 
+				nodes.toArray(new Node[n]), component, cyclic, forward, backward);
+	}
+	
+	/**
+	 * @return the indexed property
+	 */
+	public Node getProperty()
+	{
+		return property;
+	}
+	
+	/**
+	 * @return number of nodes appearing as subject or object of the property
+	 */
+	public int getNumNodes()
+	{
+		return nodes.length;
+	}
+	
+	/**
+	 * @return number of triples the index was built from
+	 */
+	public long getTripleCount()
+	{
+		return tripleCount;
+	}
+	
+	/**
+	 * Check that the graph still holds exactly the triples this index was built from. This
+	 * reads every triple of the property (but does none of the reachability work).
+	 * @param g the graph
+	 * @return true if the index matches the graph
+	 */
+	public boolean isValidFor(Graph g)
+	{
+		long count = 0;
+		long hash = 0;
+		ExtendedIterator<Triple> ei = g.find(Node.ANY, property, Node.ANY);
+		try
+		{
+			while(ei.hasNext())
+			{
+				hash += NodeCodec.hash(ei.next());
+				count++;
+			}
+		}
+		finally
+		{
+			ei.close();
+		}
+		return count==tripleCount && hash==tripleHash;
+	}
+	
+	/**
+	 * @param subject the start node
+	 * @param object the end node
+	 * @param reflexive true for [p]*, false for [p]+
+	 * @return true if object can be reached from subject
+	 */
+	public boolean reaches(Node subject, Node object, boolean reflexive)
+	{
+		if(reflexive && subject.equals(object))
+			return true;
+		Integer subjectId = ids.get(subject);
+		Integer objectId = ids.get(object);
+		if(subjectId==null || objectId==null)
+			return false;
+		
+		int from = component[subjectId];
+		int to = component[objectId];
+		if(from==to)
+			return cyclic.get(from);
+		return forward.reaches(from, to);
+	}
+	
+	/**
+	 * @param subject the start node
+	 * @param reflexive true for [p]*, false for [p]+
+	 * @return the (distinct) nodes reachable from subject
+	 */
+	public Iterator<Node> forward(Node subject, boolean reflexive)
+	{
+		return new Closure(subject, reflexive, forward);
+	}
+	
+	/**
+	 * @param object the end node
+	 * @param reflexive true for [p]*, false for [p]+
+	 * @return the (distinct) nodes from which object can be reached
+	 */
+	public Iterator<Node> backward(Node object, boolean reflexive)
+	{
+		return new Closure(object, reflexive, backward);
+	}
+	
+	/**
+	 * @param property a property
+	 * @return the name of the file an index for the property is stored in, within the 
+	 * directory holding the indexes for a graph (for TDB, the dataset directory)
+	 */
+	public static String getFileName(Node property)
+	{
+		return FILE_PREFIX+Long.toHexString(NodeCodec.mix(NodeCodec.hash(property)))+FILE_SUFFIX;
+	}
+	
+	/**
+	 * Write the index to a file
+	 * @param file the file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException
+	{
+		// write to a temporary file first, so that readers never see a partial index
+		File tmpFile = new File(file.getPath()+".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try
+		{
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			NodeCodec.writeNode(out, property);
+			out.writeLong(tripleCount);
+			out.writeLong(tripleHash);
+			out.writeInt(nodes.length);
+			for (Node node : nodes)
+			{
+				NodeCodec.writeNode(out, node);
+			}
+			IntervalLabeling.writeInts(out, component);
+			int numComponents = memberOffsets.length-1;
+			out.writeInt(numComponents);
+			for (int c = cyclic.nextSetBit(0); c >= 0; c = cyclic.nextSetBit(c+1))
+			{
+				out.writeInt(c);
+			}
+			out.writeInt(-1);
+			forward.write(out);
+			backward.write(out);
+		}
+		finally
+		{
+			out.close();
+		}
+		if(file.exists() && !file.delete())
+			throw new IOException("cannot replace "+file);
+		if(!tmpFile.renameTo(file))
+			throw new IOException("cannot rename "+tmpFile+" to "+file);
+	}
+	
+	/**
+	 * Read an index from a file. The index is not checked against any graph, see isValidFor.
+	 * @param file the file
+	 * @return the index
+	 * @throws IOException if the file cannot be read or is not an index
+	 */
+	public static ReachabilityIndex load(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			if(in.readLong()!=MAGIC)
+				throw new IOException(file+" is not a reachability index");
+			int version = in.readInt();
+			if(version!=VERSION)
+				throw new IOException(file+" has unsupported index version "+version);
+			Node property = NodeCodec.readNode(in);
+			long tripleCount = in.readLong();
+			long tripleHash = in.readLong();
+			Node[] nodes = new Node[in.readInt()];
+			for (int id = 0; id < nodes.length; id++)
+			{
+				nodes[id] = NodeCodec.readNode(in);
+			}
+			int[] component = IntervalLabeling.readInts(in);
+			int numComponents = in.readInt();
+			BitSet cyclic = new BitSet(numComponents);
+			for (int c = in.readInt(); c >= 0; c = in.readInt())
+			{
+				cyclic.set(c);
+			}
+			IntervalLabeling forward = IntervalLabeling.read(in);
+			IntervalLabeling backward = IntervalLabeling.read(in);
+			if(component.length!=nodes.length || getNumComponents(component)!=numComponents)
+				throw new IOException(file+" is corrupt");
+			return new ReachabilityIndex(property, tripleCount, tripleHash, nodes, component, 
+					cyclic, forward, backward);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "ReachabilityIndex["+property+": triples="+tripleCount+", nodes="+nodes.length+
+			", components="+(memberOffsets.length-1)+", ranges="+
+			(forward.getTotalRanges()+backward.getTotalRanges())+"]";
+	}
+	
+	private static int getId(Node node, Map<Node, Integer> ids, List<Node> nodes)
+	{
+		Integer id = ids.get(node);
+		if(id==null)
+		{
+			id = nodes.size();
+			ids.put(node, id);
+			nodes.add(node);
+		}
+		return id;
+	}
+	
+	private static int getNumComponents(int[] component)
+	{
+		int max = -1;
+		for (int c : component)
+		{
+			max = Math.max(max, c);
+		}
+		return max+1;
+	}
+	
+	/**
+	 * @return adjacency lists, duplicate edges removed
+	 */
+	private static int[][] toAdjacency(int n, int[] sources, int[] targets, int numEdges)
+	{
+		int[] counts = new int[n];
+		for (int e = 0; e < numEdges; e++)
+		{
+			counts[sources[e]]++;
+		}
+		int[][] adjacency = new int[n][];
+		for (int v = 0; v < n; v++)
+		{
+			adjacency[v] = new int[counts[v]];
+			counts[v] = 0;
+		}
+		for (int e = 0; e < numEdges; e++)
+		{
+			adjacency[sources[e]][counts[sources[e]]++] = targets[e];
+		}
+		for (int v = 0; v < n; v++)
+		{
+			int[] list = adjacency[v];
+			if(list.length<2)
+				continue;
+			Arrays.sort(list);
+			int size = 1;
+			for (int i = 1; i < list.length; i++)
+			{
+				if(list[i]!=list[size-1])
+					list[size++] = list[i];
+			}
+			if(size<list.length)
+				adjacency[v] = Arrays.copyOf(list, size);
+		}
+		return adjacency;
+	}
+	
+	/**
+	 * Lazily walks the ranges of a component label, producing the members of every 
+	 * component numbered inside them
+	 */
+	private class Closure implements Iterator<Node>
+	{
+		private final IntervalLabeling labeling;
+		private final int startComponent;
+		private final boolean includeStart;
+		private Node start;
+		private int range = 0;
+		private int number;
+		private int member = 0;
+		private int memberEnd = 0;
+		private Node next = null;
+		
+		Closure(Node startNode, boolean reflexive, IntervalLabeling labeling)
+		{
+			this.labeling = labeling;
+			Integer startId = ids.get(startNode);
+			startComponent = startId==null ? -1 : component[startId];
+			includeStart = startComponent>=0 && cyclic.get(startComponent);
+			
+			// the start node itself is produced first when it is only reachable by the 
+			// empty path
+			start = reflexive && !includeStart ? startNode : null;
+			number = startComponent>=0 ? labeling.getRangeLow(startComponent, 0) : 0;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			if(next!=null)
+				return true;
+			if(start!=null)
+			{
+				next = start;
+				start = null;
+				return true;
+			}
+			if(startComponent<0)
+				return false;
+			
+			while(member==memberEnd)
+			{
+				if(range==labeling.getNumRanges(startComponent))
+					return false;
+				if(number>labeling.getRangeHigh(startComponent, range))
+				{
+					range++;
+					if(range<labeling.getNumRanges(startComponent))
+						number = labeling.getRangeLow(startComponent, range);
+					continue;
+				}
+				int c = labeling.getVertexAt(number++);
+				if(c==startComponent && !includeStart)
+					continue;
+				member = memberOffsets[c];
+				memberEnd = memberOffsets[c+1];
+			}
+			next = nodes[members[member++]];
+			return true;
+		}
+		
+		@Override
+		public Node next()
+		{
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Node result = next;
+			next = null;
+			return result;
+		}
+		
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.util.graph.GraphListenerBase;
+
+import edu.washington.sig.gleen.util.GraphViews;
+
+/**
+ * The reachability indexes available for one graph. A registry is made available to 
+ * OnPath through the query context (see ContextUtil.setReachabilityIndexes), and OnPath
+ * then answers [p]+ and [p]* for every indexed property p from the index instead of the 
+ * graph.
+ * <p>
+ * Indexes are only ever used for the graph they are registered with, and only while they
+ * match it: loading an index checks it against the graph, and any later change to the
+ * triples of an indexed property (made through the Graph API) drops that index. Changes
+ * made to a TDB store behind the graph's back, e.g. by a bulk load or through another 
+ * GraphTDB over the store, are caught the next time the index is loaded.
+ * <p>
+ * TDB gives every query, and every transaction, its own GraphTDB, so for TDB a graph is 
+ * matched by its store and graph name rather than by identity (see GraphViews).
+ */
+public class ReachabilityIndexRegistry
+{
+	private final Log log = LogFactory.getLog(this.getClass());
+	private final Graph graph;
+	private final ConcurrentMap<Node, ReachabilityIndex> indexes = new ConcurrentHashMap<Node, ReachabilityIndex>();
+	
+	/**
+	 * @param graph the graph the indexes are for, this must be the graph queries run 
+	 * against, or for TDB a GraphTDB over it (e.g. dataset.asDatasetGraph().getDefaultGraph())
+	 */
+	public ReachabilityIndexRegistry(Graph graph)
+	{
+		this.graph = graph;
+		graph.getEventManager().register(new Invalidator());
+	}
+	
+	/**
+	 * @return the graph the indexes are for
+	 */
+	public Graph getGraph()
+	{
+		return graph;
+	}
+	
+	/**
+	 * Build an index for a property and register it
+	 * @param property the property
+	 * @return the index
+	 */
+	public ReachabilityIndex build(Node property)
+	{
+		ReachabilityIndex index = ReachabilityIndex.build(graph, property);
+		indexes.put(property, index);
+		log.debug("built "+index);
+		return index;
+	}
+	
+	/**
+	 * Build an index for a property, save it in a directory and register it
+	 * @param property the property
+	 * @param directory the directory holding the indexes for this graph (for TDB, the 
+	 * dataset directory)
+	 * @return the index
+	 * @throws IOException if the index cannot be saved
+	 */
+	public ReachabilityIndex build(Node property, File directory) throws IOException
+	{
+		ReachabilityIndex index = build(property);
+		index.save(new File(directory, ReachabilityIndex.getFileName(property)));
+		return index;
+	}
+	
+	/**
+	 * Load a previously saved index for a property, and register it if it still matches the
+	 * graph
+	 * @param property the property
+	 * @param directory the directory holding the indexes for this graph
+	 * @return the index, or null if there is no saved index or it is out of date
+	 * @throws IOException if the index exists but cannot be read
+	 */
+	public ReachabilityIndex load(Node property, File directory) throws IOException
+	{
+		File file = new File(directory, ReachabilityIndex.getFileName(property));
+		if(!file.exists())
+			return null;
+		
+		ReachabilityIndex index = ReachabilityIndex.load(file);
+		if(!index.getProperty().equals(property))
+		{
+			log.warn(file+" indexes "+index.getProperty()+", not "+property);
+			return null;
+		}
+		if(!index.isValidFor(graph))
+		{
+			log.warn(file+" is out of date, ignoring it");
+			return null;
+		}
+		indexes.put(property, index);
+		return index;
+	}
+	
+	/**
+	 * Load the saved index for a property, or build (and save) a new one if there is no 
+	 * saved index or it is out of date
+	 * @param property the property
+	 * @param directory the directory holding the indexes for this graph
+	 * @return the index
+	 * @throws IOException if the index cannot be read or saved
+	 */
+	public ReachabilityIndex loadOrBuild(Node property, File directory) throws IOException
+	{
+		ReachabilityIndex index = load(property, directory);
+		if(index==null)
+			index = build(property, directory);
+		return index;
+	}
+	
+	/**
+	 * Stop using the index for a property
+	 * @param property the property
+	 */
+	public void remove(Node property)
+	{
+		indexes.remove(property);
+	}
+	
+	/**
+	 * @param g the graph being queried
+	 * @param property a property
+	 * @return the index for the property, or null if there is none or g is not the graph 
+	 * this registry is for (see isFor)
+	 */
+	public ReachabilityIndex get(Graph g, Node property)
+	{
+		if(!isFor(g))
+			return null;
+		return indexes.get(property);
+	}
+	
+	/**
+	 * @param g the graph being queried
+	 * @return true if g is the graph this registry is for, or for TDB a view of the same 
+	 * graph of the same store
+	 */
+	public boolean isFor(Graph g)
+	{
+		return GraphViews.isViewOf(g, graph);
+	}
+	
+	/**
+	 * drops indexes whose property is touched by a change to the graph
+	 */
+	private class Invalidator extends GraphListenerBase
+	{
+		@Override
+		protected void addEvent(Triple t)
+		{
+			invalidate(t.getPredicate());
+		}
+		
+		@Override
+		protected void deleteEvent(Triple t)
+		{
+			invalidate(t.getPredicate());
+		}
+		
+		@Override
+		public void notifyEvent(Graph source, Object value)
+		{
+			super.notifyEvent(source, value);
+			if(value instanceof GraphEvents && value!=GraphEvents.startRead && 
+					value!=GraphEvents.finishRead)
+			{
+				// removeAll or remove(s, p, o), the removed triples are not listed
+				Triple pattern = ((GraphEvents)value).getTriple();
+				if(pattern!=null && pattern.getPredicate().isConcrete())
+					invalidate(pattern.getPredicate());
+				else
+					indexes.clear();
+			}
+		}
+		
+		private void invalidate(Node property)
+		{
+			if(indexes.remove(property)!=null)
+				log.info("triples of "+property+" changed, dropped its reachability index");
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.iterator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingBase;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
+
+/**
+ * A binding of the position of a triple on a path, and optionally of the number of the
+ * path, over a parent binding (a BindingTriple of the triple itself, see QueryIterSteps 
+ * and QueryIterPaths). It holds only the two numbers and their variables, which must be
+ * distinct.
+ */
+final class BindingStep extends BindingBase
+{
+	private final Var pathVar;
+	private final int pathNum;
+	private final Var stepVar;
+	private final int stepNum;
+
+	/**
+	 * @param parent the binding to extend
+	 * @param pathVar the variable to bind to the number of the path, or null for none
+	 * @param pathNum the number of the path
+	 * @param stepVar the variable to bind to the position of the triple
+	 * @param stepNum the position of the triple
+	 */
+	BindingStep(Binding parent, Var pathVar, int pathNum, Var stepVar, int stepNum)
+	{
+		super(parent);
+		this.pathVar = pathVar;
+		this.pathNum = pathNum;
+		this.stepVar = stepVar;
+		this.stepNum = stepNum;
+	}
+
+	@Override
+	protected Iterator<Var> vars1()
+	{
+		List<Var> vars = new ArrayList<Var>(2);
+		if(pathVar!=null)
+			vars.add(pathVar);
+		vars.add(stepVar);
+		return vars.iterator();
+	}
+
+	@Override
+	protected int size1()
+	{
+		return pathVar==null ? 1 : 2;
+	}
+
+	@Override
+	protected boolean isEmpty1()
+	{
+		return false;
+	}
+
+	@Override
+	protected boolean contains1(Var var)
+	{
+		return var.equals(stepVar) || var.equals(pathVar);
+	}
+
+	@Override
+	protected Node get1(Var var)
+	{
+		if(var.equals(stepVar))
+			return NodeValue.makeInteger(stepNum).asNode();
+		if(var.equals(pathVar))
+			return NodeValue.makeInteger(pathNum).asNode();
+		return null;
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.iterator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingBase;
+
+/**
+ * A binding of three variables to the subject, predicate and object of a triple, over a
+ * parent binding. It holds only the triple and the variables, where a BindingHashMap would 
+ * hold a map. A variable may be given more than once, as long as the triple has equal 
+ * nodes in its positions (see QueryIterTriples).
+ */
+final class BindingTriple extends BindingBase
+{
+	private final Var subVar;
+	private final Var predVar;
+	private final Var objVar;
+	private final Triple triple;
+	
+	BindingTriple(Binding parent, Var subVar, Var predVar, Var objVar, Triple triple)
+	{
+		super(parent);
+		this.subVar = subVar;
+		this.predVar = predVar;
+		this.objVar = objVar;
+		this.triple = triple;
+	}
+	
+	@Override
+	protected Iterator<Var> vars1()
+	{
+		List<Var> vars = new ArrayList<Var>(3);
+		vars.add(subVar);
+		if(!vars.contains(predVar))
+			vars.add(predVar);
+		if(!vars.contains(objVar))
+			vars.add(objVar);
+		return vars.iterator();
+	}
+	
+	@Override
+	protected int size1()
+	{
+		int size = 1;
+		if(!predVar.equals(subVar))
+			size++;
+		if(!objVar.equals(subVar) && !objVar.equals(predVar))
+			size++;
+		return size;
+	}
+	
+	@Override
+	protected boolean isEmpty1()
+	{
+		return false;
+	}
+	
+	@Override
+	protected boolean contains1(Var var)
+	{
+		return var.equals(subVar) || var.equals(predVar) || var.equals(objVar);
+	}
+	
+	@Override
+	protected Node get1(Var var)
+	{
+		if(var.equals(objVar))
+			return triple.getObject();
+		if(var.equals(predVar))
+			return triple.getPredicate();
+		if(var.equals(subVar))
+			return triple.getSubject();
+		return null;
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.iterator;
+
+import java.util.Iterator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+
+import edu.washington.sig.gleen.automaton.PathEnumerator;
+import edu.washington.sig.gleen.path.Path;
+
+/**
+ * A QueryIterator that extends a parent binding once for every triple of every path
+ * produced by a PathEnumerator, with the number of the path, the position of the triple
+ * on it (both from 1) and the triple's subject, predicate and object. Paths are taken from
+ * the enumerator one at a time as their bindings are pulled, up to a given number, and
+ * each binding holds only the triple and the two numbers (see BindingStep). The variables
+ * must be distinct.
+ */
+public class QueryIterPaths extends QueryIter
+{
+	private final Log log = LogFactory.getLog(this.getClass());
+
+	private final Binding parent;
+	private final Var pathVar;
+	private final Var stepVar;
+	private final Var subVar;
+	private final Var predVar;
+	private final Var objVar;
+	private final PathEnumerator paths;
+	private final int maxPaths;
+	private int pathCount = 0;
+	/** the triples of the current path not yet bound */
+	private Iterator<Triple> steps = null;
+	private int stepCount = 0;
+
+	/**
+	 * @param parent the binding to extend
+	 * @param pathVar the variable to bind to the number of each path
+	 * @param stepVar the variable to bind to the position of each triple on its path
+	 * @param subVar the variable to bind to each triple's subject
+	 * @param predVar the variable to bind to each triple's predicate
+	 * @param objVar the variable to bind to each triple's object
+	 * @param paths the paths
+	 * @param maxPaths the largest number of paths to take
+	 * @param execCxt the current execution context
+	 */
+	public QueryIterPaths(Binding parent, Var pathVar, Var stepVar, Var subVar, Var predVar,
+			Var objVar, PathEnumerator paths, int maxPaths, ExecutionContext execCxt)
+	{
+		super(execCxt);
+		this.parent = parent;
+		this.pathVar = pathVar;
+		this.stepVar = stepVar;
+		this.subVar = subVar;
+		this.predVar = predVar;
+		this.objVar = objVar;
+		this.paths = paths;
+		this.maxPaths = maxPaths;
+	}
+
+	@Override
+	protected boolean hasNextBinding()
+	{
+		while(steps==null || !steps.hasNext())
+		{
+			if(pathCount>=maxPaths)
+				return false;
+			if(!paths.hasNext())
+			{
+				if(paths.isQueueLimitReached())
+				{
+					log.warn(this.getClass()+" too many partial paths, stopped after "+pathCount+" paths");
+				}
+				steps = null;
+				pathCount = maxPaths;
+				return false;
+			}
+			Path path = paths.next();
+			pathCount++;
+			steps = path.iterator();
+			stepCount = 0;
+		}
+		return true;
+	}
+
+	@Override
+	protected Binding moveToNextBinding()
+	{
+		Triple triple = steps.next();
+		stepCount++;
+		return new BindingStep(new BindingTriple(parent, subVar, predVar, objVar, triple),
+				pathVar, pathCount, stepVar, stepCount);
+	}
+
+	@Override
+	protected void closeIterator()
+	{
+	}
+
+	@Override
+	protected void requestCancel()
+	{
+	}
+}
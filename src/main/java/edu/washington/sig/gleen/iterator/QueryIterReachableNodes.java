@@ -0,0 +1,79 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.iterator;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+
+import edu.washington.sig.gleen.automaton.ProductSearch;
+
+/**
+ * A QueryIterator that extends a parent binding with each node produced by a product
+ * graph traversal. The traversal is advanced only as bindings are pulled, so a consumer
+ * that stops early (e.g. a query with a LIMIT) never pays for the rest of the search.
+ * Closing or cancelling the iterator stops the traversal.
+ */
+public class QueryIterReachableNodes extends QueryIter
+{
+	private final Binding parent;
+	private final Var var;
+	private final ProductSearch.Traversal traversal;
+	
+	/**
+	 * @param parent the binding to extend
+	 * @param var the variable to bind to each reachable node
+	 * @param traversal the (not yet advanced) traversal producing the nodes
+	 * @param execCxt the current execution context
+	 */
+	public QueryIterReachableNodes(Binding parent, Var var, ProductSearch.Traversal traversal, 
+			ExecutionContext execCxt)
+	{
+		super(execCxt);
+		this.parent = parent;
+		this.var = var;
+		this.traversal = traversal;
+	}
+
+	@Override
+	protected boolean hasNextBinding()
+	{
+		return traversal.hasNext();
+	}
+
+	@Override
+	protected Binding moveToNextBinding()
+	{
+		Node node = traversal.next();
+		return BindingFactory.binding(parent, var, node);
+	}
+
+	@Override
+	protected void closeIterator()
+	{
+		traversal.close();
+	}
+
+	@Override
+	protected void requestCancel()
+	{
+		traversal.cancel();
+	}
+}
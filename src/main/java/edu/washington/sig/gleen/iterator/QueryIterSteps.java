@@ -0,0 +1,88 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.iterator;
+
+import java.util.Iterator;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+
+/**
+ * A QueryIterator that extends a parent binding once for every triple of a single path,
+ * with the position of the triple on the path (from 1) and its subject, predicate and 
+ * object. Bindings are made as they are pulled, like those of QueryIterTriples and 
+ * QueryIterPaths. The variables must be distinct.
+ */
+public class QueryIterSteps extends QueryIter
+{
+	private final Binding parent;
+	private final Var stepVar;
+	private final Var subVar;
+	private final Var predVar;
+	private final Var objVar;
+	private final Iterator<Triple> steps;
+	private int stepCount = 0;
+
+	/**
+	 * @param parent the binding to extend
+	 * @param stepVar the variable to bind to the position of each triple on the path
+	 * @param subVar the variable to bind to each triple's subject
+	 * @param predVar the variable to bind to each triple's predicate
+	 * @param objVar the variable to bind to each triple's object
+	 * @param steps the triples of the path, in order
+	 * @param execCxt the current execution context
+	 */
+	public QueryIterSteps(Binding parent, Var stepVar, Var subVar, Var predVar, Var objVar,
+			Iterator<Triple> steps, ExecutionContext execCxt)
+	{
+		super(execCxt);
+		this.parent = parent;
+		this.stepVar = stepVar;
+		this.subVar = subVar;
+		this.predVar = predVar;
+		this.objVar = objVar;
+		this.steps = steps;
+	}
+
+	@Override
+	protected boolean hasNextBinding()
+	{
+		return steps.hasNext();
+	}
+
+	@Override
+	protected Binding moveToNextBinding()
+	{
+		Triple triple = steps.next();
+		stepCount++;
+		return new BindingStep(new BindingTriple(parent, subVar, predVar, objVar, triple),
+				null, 0, stepVar, stepCount);
+	}
+
+	@Override
+	protected void closeIterator()
+	{
+	}
+
+	@Override
+	protected void requestCancel()
+	{
+	}
+}
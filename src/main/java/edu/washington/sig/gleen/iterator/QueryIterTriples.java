@@ -0,0 +1,107 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.iterator;
+
+import java.util.Iterator;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+
+/**
+ * A QueryIterator that extends a parent binding with the subject, predicate and object of
+ * each triple produced by an iterator. Bindings are made as they are pulled, so only the
+ * triple source (e.g. a SubgraphSearch iterator) decides how much is held in memory.
+ * A variable given for more than one position only matches triples with equal nodes in
+ * those positions, like the variables of a triple pattern; other triples are skipped.
+ */
+public class QueryIterTriples extends QueryIter
+{
+	private final Binding parent;
+	private final Var subVar;
+	private final Var predVar;
+	private final Var objVar;
+	private final Iterator<Triple> triples;
+	/** the next triple to bind, if already taken from triples */
+	private Triple nextTriple = null;
+	
+	/**
+	 * @param parent the binding to extend
+	 * @param subVar the variable to bind to each triple's subject
+	 * @param predVar the variable to bind to each triple's predicate
+	 * @param objVar the variable to bind to each triple's object
+	 * @param triples the triples
+	 * @param execCxt the current execution context
+	 */
+	public QueryIterTriples(Binding parent, Var subVar, Var predVar, Var objVar, 
+			Iterator<Triple> triples, ExecutionContext execCxt)
+	{
+		super(execCxt);
+		this.parent = parent;
+		this.subVar = subVar;
+		this.predVar = predVar;
+		this.objVar = objVar;
+		this.triples = triples;
+	}
+
+	@Override
+	protected boolean hasNextBinding()
+	{
+		while(nextTriple==null && triples.hasNext())
+		{
+			Triple triple = triples.next();
+			if(matches(triple))
+				nextTriple = triple;
+		}
+		return nextTriple!=null;
+	}
+
+	@Override
+	protected Binding moveToNextBinding()
+	{
+		Triple triple = nextTriple;
+		nextTriple = null;
+		return new BindingTriple(parent, subVar, predVar, objVar, triple);
+	}
+	
+	/**
+	 * @return false if a repeated variable would be bound to different nodes
+	 */
+	private boolean matches(Triple triple)
+	{
+		if(subVar.equals(predVar) && !triple.getSubject().equals(triple.getPredicate()))
+			return false;
+		if(subVar.equals(objVar) && !triple.getSubject().equals(triple.getObject()))
+			return false;
+		if(predVar.equals(objVar) && !triple.getPredicate().equals(triple.getObject()))
+			return false;
+		return true;
+	}
+
+	@Override
+	protected void closeIterator()
+	{
+	}
+
+	@Override
+	protected void requestCancel()
+	{
+	}
+}
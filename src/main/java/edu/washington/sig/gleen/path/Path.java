@@ -15,7 +15,17 @@
  */
 package edu.washington.sig.gleen.path;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
@@ -24,24 +34,134 @@ import com.hp.hpl.jena.graph.Triple;
  * @author Todd Detwiler
  * @date Apr 24, 2008
  *
- * A Path is an ordered list of Triples
+ * A Path is an ordered list of Triples. Paths are immutable: appending to a path makes a
+ * new path that shares both parts (a rope of triples), so joining paths takes constant
+ * time and space however long they are. Length, head, tail and hash code are computed 
+ * once, when a path is made. Equality and hash code are those of the list of triples 
+ * (see toList), so paths with the same triples are equal however they were built.
  */
-public class Path extends ArrayList<Triple>
+public final class Path implements Iterable<Triple>
 {
+	private static final Path EMPTY = new Path(false);
+	private static final Path MATCHES_ANY = new Path(true);
+	
+	/** the triple of a single triple path, otherwise null */
+	private final Triple triple;
+	/** the two parts of a joined path, otherwise null */
+	private final Path first;
+	private final Path second;
+	
+	private final int size;
+	private final Node head;
+	private final Node tail;
+	/** 
+	 * the list hash code without its initial 1, and 31^size, which give the hash of a join:
+	 * hash(first+second) = hash(first)*31^size(second) + hash(second)
+	 */
+	private final int hash;
+	private final int power;
+	
 	/**
 	 * flag used in path joins (see PathUtils) that allows this path to be joined with any 
 	 * other path regardless of its head or tail
 	 */
-	private boolean matchesAny = false;
+	private final boolean matchesAny;
+	
+	private Path(boolean matchesAny)
+	{
+		this.triple = null;
+		this.first = null;
+		this.second = null;
+		this.size = 0;
+		this.head = null;
+		this.tail = null;
+		this.hash = 0;
+		this.power = 1;
+		this.matchesAny = matchesAny;
+	}
+	
+	/**
+	 * @param triple the one triple of the path
+	 */
+	public Path(Triple triple)
+	{
+		this.triple = triple;
+		this.first = null;
+		this.second = null;
+		this.size = 1;
+		this.head = triple.getSubject();
+		this.tail = triple.getObject();
+		this.hash = triple.hashCode();
+		this.power = 31;
+		this.matchesAny = false;
+	}
 	
-	public Path()
+	private Path(Path first, Path second)
 	{
-		super();
+		this.triple = null;
+		this.first = first;
+		this.second = second;
+		this.size = first.size+second.size;
+		this.head = first.head;
+		this.tail = second.tail;
+		this.hash = first.hash*second.power+second.hash;
+		this.power = first.power*second.power;
+		this.matchesAny = false;
 	}
 	
-	public Path(Path inPath)
+	/**
+	 * @return the empty path
+	 */
+	public static Path empty()
 	{
-		super(inPath);
+		return EMPTY;
+	}
+	
+	/**
+	 * @return the empty path that joins with any other path (see isMatchesAny)
+	 */
+	public static Path matchesAny()
+	{
+		return MATCHES_ANY;
+	}
+	
+	/**
+	 * Join this path and another, sharing both
+	 * @param tailPath the path to follow this one
+	 * @return the path made of this path's triples followed by tailPath's
+	 */
+	public Path append(Path tailPath)
+	{
+		if(tailPath.isEmpty())
+			return this;
+		if(this.isEmpty())
+			return tailPath;
+		return new Path(this, tailPath);
+	}
+	
+	/**
+	 * @param lastTriple the triple to follow this path
+	 * @return the path made of this path's triples followed by lastTriple
+	 */
+	public Path append(Triple lastTriple)
+	{
+		return append(new Path(lastTriple));
+	}
+	
+	/**
+	 * @return the number of triples on the path
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * @return true if the path has no triples
+	 */
+	public boolean isEmpty()
+	{
+		return size==0;
 	}
 	
 	/**
@@ -50,11 +170,6 @@ public class Path extends ArrayList<Triple>
 	 */
 	public Node getPathTail()
 	{
-		Node tail = null;
-		if(!this.isEmpty())
-		{
-			tail = this.get(this.size()-1).getObject();
-		}
 		return tail;
 	}
 	
@@ -64,11 +179,6 @@ public class Path extends ArrayList<Triple>
 	 */
 	public Node getPathHead()
 	{
-		Node head = null;
-		if(!this.isEmpty())
-		{
-			head = this.get(0).getSubject();
-		}
 		return head;
 	}
 
@@ -79,12 +189,123 @@ public class Path extends ArrayList<Triple>
 	{
 		return matchesAny;
 	}
-
+	
 	/**
-	 * @param matchesAny value to set this.matchesAny flag
+	 * @return a new list of the path's triples, in order
 	 */
-	public void setMatchesAny(boolean matchesAny)
+	public List<Triple> toList()
 	{
-		this.matchesAny = matchesAny;
+		List<Triple> triples = new ArrayList<Triple>(size);
+		for(Triple currTriple : this)
+		{
+			triples.add(currTriple);
+		}
+		return triples;
+	}
+	
+	/**
+	 * Collect the triples of a set of paths. Parts shared by several paths (e.g. the 
+	 * common prefixes of the paths found by a closure) are only walked once, so the cost 
+	 * is that of the distinct parts rather than of the sum of the path lengths.
+	 * @param paths the paths
+	 * @return the set of triples on any of the paths
+	 */
+	public static Set<Triple> getTriples(Collection<Path> paths)
+	{
+		Set<Triple> triples = new HashSet<Triple>();
+		Set<Path> walked = Collections.newSetFromMap(new IdentityHashMap<Path, Boolean>());
+		Deque<Path> pending = new ArrayDeque<Path>(paths);
+		while(!pending.isEmpty())
+		{
+			Path path = pending.pop();
+			if(path.triple!=null)
+				triples.add(path.triple);
+			else if(path.first!=null && walked.add(path))
+			{
+				pending.push(path.second);
+				pending.push(path.first);
+			}
+		}
+		return triples;
+	}
+	
+	/**
+	 * @return an iterator over the path's triples, in order
+	 */
+	public Iterator<Triple> iterator()
+	{
+		return new TripleIterator(this);
+	}
+	
+	@Override
+	public boolean equals(Object o)
+	{
+		if(this==o)
+			return true;
+		if(!(o instanceof Path))
+			return false;
+		Path other = (Path)o;
+		if(size!=other.size || hash!=other.hash)
+			return false;
+		
+		Iterator<Triple> it = iterator();
+		Iterator<Triple> otherIt = other.iterator();
+		while(it.hasNext())
+		{
+			if(!it.next().equals(otherIt.next()))
+				return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return power+hash;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return toList().toString();
+	}
+	
+	/**
+	 * Walks the single triple paths of a joined path from left to right, keeping the 
+	 * second parts still to be walked on a stack rather than recursing, since paths 
+	 * joined one triple at a time are as deep as they are long
+	 */
+	private static final class TripleIterator implements Iterator<Triple>
+	{
+		private final Deque<Path> pending = new ArrayDeque<Path>();
+		
+		TripleIterator(Path path)
+		{
+			if(!path.isEmpty())
+				pending.push(path);
+		}
+		
+		public boolean hasNext()
+		{
+			return !pending.isEmpty();
+		}
+		
+		public Triple next()
+		{
+			if(pending.isEmpty())
+				throw new NoSuchElementException();
+			Path path = pending.pop();
+			while(path.triple==null)
+			{
+				pending.push(path.second);
+				path = path.first;
+			}
+			return path.triple;
+		}
+		
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
 	}
 }
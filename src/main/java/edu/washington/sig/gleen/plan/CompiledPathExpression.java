@@ -0,0 +1,142 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.plan;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.hp.hpl.jena.shared.PrefixMapping;
+
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.javacc.grammar.PathExpression;
+import edu.washington.sig.gleen.javacc.grammar.SimpleNode;
+import edu.washington.sig.gleen.javacc.grammar.TokenMgrError;
+
+/**
+ * A CompiledPathExpression is the parsed and validated form of a path expression
+ * string, together with the prefix mapping it was compiled against and the resulting
+ * plan (see PlanNode), whose properties are already resolved against that mapping.
+ * Instances are never modified after construction, so a single instance may be shared
+ * by every binding (and every query) that evaluates the same expression.
+ */
+public final class CompiledPathExpression
+{
+	private final String expression;
+	private final Map<String, String> prefixes;
+	private final PlanNode writtenPlan;
+	private final PlanNode plan;
+	private volatile PathAutomaton automaton = null;
+	
+	private CompiledPathExpression(String expression, Map<String, String> prefixes, 
+			PlanNode writtenPlan)
+	{
+		this.expression = expression;
+		this.prefixes = prefixes;
+		this.writtenPlan = writtenPlan;
+		this.plan = PlanRewriter.rewrite(writtenPlan);
+	}
+	
+	/**
+	 * Parse a path expression string
+	 * @param expression the path expression string
+	 * @param prefixes the prefix mapping used to expand property names in the expression
+	 * @return the compiled path expression
+	 * @throws ParseException if the expression is not consistent with the path expression grammar
+	 */
+	public static CompiledPathExpression compile(String expression, Map<String, String> prefixes)
+		throws ParseException
+	{
+		PathExpression parser = new PathExpression(new StringReader(expression));
+		SimpleNode startNode;
+		try
+		{
+			startNode = parser.Start();
+		}
+		catch (TokenMgrError tke)
+		{
+			throw new ParseException(tke.getMessage());
+		}
+		
+		// start node can have only one child
+		if(startNode.jjtGetNumChildren()!=1)
+			throw new ParseException("improperly formed AST!");
+		
+		SimpleNode parseTree = (SimpleNode)startNode.jjtGetChild(0);
+		
+		Map<String, String> prefixCopy = Collections.unmodifiableMap(new HashMap<String, String>(prefixes));
+		PrefixMapping prefixMapping = PrefixMapping.Factory.create().setNsPrefixes(prefixCopy);
+		PlanNode plan = new PlanCompiler(prefixMapping).compile(parseTree);
+		
+		return new CompiledPathExpression(expression, prefixCopy, plan);
+	}
+
+	/**
+	 * @return the path expression string this was compiled from
+	 */
+	public String getExpression()
+	{
+		return expression;
+	}
+
+	/**
+	 * @return the (unmodifiable) prefix mapping this was compiled against
+	 */
+	public Map<String, String> getPrefixes()
+	{
+		return prefixes;
+	}
+
+	/**
+	 * @return the root of the compiled plan, simplified by PlanRewriter
+	 */
+	public PlanNode getPlan()
+	{
+		return plan;
+	}
+	
+	/**
+	 * @return the root of the plan exactly as the expression was written, before it was 
+	 * simplified, for evaluations whose results depend on the shape of the expression
+	 */
+	public PlanNode getWrittenPlan()
+	{
+		return writtenPlan;
+	}
+	
+	/**
+	 * @return the automaton for this expression, built on first use
+	 */
+	public PathAutomaton getAutomaton()
+	{
+		// racing threads may each build one, they are equivalent
+		PathAutomaton result = automaton;
+		if(result==null)
+		{
+			result = PathAutomaton.compile(plan);
+			automaton = result;
+		}
+		return result;
+	}
+	
+	public String toString()
+	{
+		return expression;
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.plan;
+
+/**
+ * The direction chosen for a reachability check between two known nodes, together with
+ * the estimates it was chosen on (see DirectionPlanner). toString() explains the choice.
+ */
+public final class DirectionPlan
+{
+	public enum Direction
+	{
+		/** search forward from the subject until the object is reached */
+		FORWARD,
+		/** search backward from the object until the subject is reached */
+		BACKWARD,
+		/** search from both ends until the searches meet */
+		BIDIRECTIONAL
+	}
+	
+	private final Direction direction;
+	private final long forwardDegree;
+	private final double forwardFanOut;
+	private final long backwardDegree;
+	private final double backwardFanOut;
+	
+	/**
+	 * @param direction the chosen direction
+	 * @param forwardDegree number of triples on the first step from the subject
+	 * @param forwardFanOut estimated forward fan-out of the expression's properties
+	 * @param backwardDegree number of triples on the last step into the object
+	 * @param backwardFanOut estimated backward fan-out of the expression's properties
+	 */
+	DirectionPlan(Direction direction, long forwardDegree, double forwardFanOut, 
+			long backwardDegree, double backwardFanOut)
+	{
+		this.direction = direction;
+		this.forwardDegree = forwardDegree;
+		this.forwardFanOut = forwardFanOut;
+		this.backwardDegree = backwardDegree;
+		this.backwardFanOut = backwardFanOut;
+	}
+	
+	/**
+	 * @return the chosen direction
+	 */
+	public Direction getDirection()
+	{
+		return direction;
+	}
+	
+	/**
+	 * @return estimated number of nodes met in the first two levels of a forward search
+	 */
+	public double getForwardCost()
+	{
+		return forwardDegree*(1+forwardFanOut);
+	}
+	
+	/**
+	 * @return estimated number of nodes met in the first two levels of a backward search
+	 */
+	public double getBackwardCost()
+	{
+		return backwardDegree*(1+backwardFanOut);
+	}
+	
+	public String toString()
+	{
+		return String.format("%s (forward: %d first step triples, fan-out %.1f, cost %.1f; " +
+				"backward: %d last step triples, fan-out %.1f, cost %.1f)", direction, 
+				forwardDegree, forwardFanOut, getForwardCost(), 
+				backwardDegree, backwardFanOut, getBackwardCost());
+	}
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.plan;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphStatisticsHandler;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.util.graph.GraphListenerBase;
+import com.hp.hpl.jena.tdb.base.file.Location;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB;
+import com.hp.hpl.jena.tdb.store.GraphTDB;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.plan.DirectionPlan.Direction;
+
+/**
+ * Chooses the direction of a reachability check between two known nodes. The cost of 
+ * each direction is estimated as the number of triples on the first step from the known
+ * node, times one plus the average fan-out of the expression's properties in that 
+ * direction. A direction that is RATIO times cheaper than the other is searched alone,
+ * otherwise both ends are searched until they meet.
+ * <p>
+ * Degrees are read from the graph's statistics handler where it has one, and otherwise 
+ * counted up to DEGREE_CAP, a small multiple of RATIO, so a hub at either end costs the
+ * planner a few dozen triples rather than a scan of its edges. The fan-out of a property 
+ * is the average degree of the subjects (or objects) of SAMPLE_SIZE of its triples; it is
+ * sampled once per graph and property and dropped when the property's triples change 
+ * through the Graph API. Changes to a TDB store are not reported (see getInstance), so 
+ * for TDB the fan-outs are kept per store and graph name and sampled again once they are
+ * TDB_FAN_OUT_AGE old. The estimates only ever choose a direction, all directions give 
+ * the same answer.
+ */
+public final class DirectionPlanner
+{
+	/** number of triples sampled to estimate the fan-out of a property */
+	private static final int SAMPLE_SIZE = 32;
+	/** how much cheaper a direction must look to be searched alone */
+	private static final double RATIO = 4;
+	/** 
+	 * degrees are counted up to this many triples; an end past it is only known to be
+	 * large, which at worst turns a one sided search into a bidirectional one
+	 */
+	private static final int DEGREE_CAP = (int)(16*RATIO);
+	/** nanoseconds after which the fan-out of a property of a TDB graph is sampled again */
+	private static final long TDB_FAN_OUT_AGE = TimeUnit.MINUTES.toNanos(1);
+	
+	private static final Map<Graph, DirectionPlanner> planners = 
+			Collections.synchronizedMap(new WeakHashMap<Graph, DirectionPlanner>());
+	/** 
+	 * planners for TDB graphs, by store (the on-disk location, or the dataset graph of an 
+	 * in-memory store) and then graph name
+	 */
+	private static final Map<Object, Map<Node, DirectionPlanner>> tdbPlanners = 
+			Collections.synchronizedMap(new WeakHashMap<Object, Map<Node, DirectionPlanner>>());
+	
+	/** forward and backward fan-out, by property */
+	private final Map<Node, FanOut> fanOuts = new ConcurrentHashMap<Node, FanOut>();
+	/** nanoseconds after which a fan-out is sampled again */
+	private final long maxAge;
+	
+	private DirectionPlanner(long maxAge)
+	{
+		this.maxAge = maxAge;
+	}
+	
+	/**
+	 * @param g a graph
+	 * @return the planner for the graph, created (and registered with the graph's event
+	 * manager) on first use; for a TDB graph, the planner shared by all graphs over the 
+	 * same store and graph name
+	 */
+	public static DirectionPlanner getInstance(Graph g)
+	{
+		// TDB hands out a new Graph for every query and transaction, and changes made to 
+		// the store by other means are never reported, so fan-outs are kept with the store
+		// and expire instead
+		if(g instanceof GraphTDB)
+			return getTDBInstance((GraphTDB)g);
+		
+		synchronized(planners)
+		{
+			DirectionPlanner planner = planners.get(g);
+			if(planner==null)
+			{
+				planner = new DirectionPlanner(Long.MAX_VALUE);
+				g.getEventManager().register(planner.new Invalidator());
+				planners.put(g, planner);
+			}
+			return planner;
+		}
+	}
+	
+	/**
+	 * @return the planner for the store and name of a TDB graph, created on first use
+	 */
+	private static DirectionPlanner getTDBInstance(GraphTDB g)
+	{
+		DatasetGraphTDB dsg = g.getDSG();
+		Location location = dsg.getLocation();
+		// every in-memory store has the same location
+		Object store = location.isMem() ? dsg : location;
+		Node graphName = g.getGraphName();
+		if(graphName==null || Quad.isDefaultGraph(graphName))
+			graphName = Quad.defaultGraphIRI;
+		synchronized(tdbPlanners)
+		{
+			Map<Node, DirectionPlanner> storePlanners = tdbPlanners.get(store);
+			if(storePlanners==null)
+			{
+				storePlanners = new HashMap<Node, DirectionPlanner>();
+				tdbPlanners.put(store, storePlanners);
+			}
+			DirectionPlanner planner = storePlanners.get(graphName);
+			if(planner==null)
+			{
+				planner = new DirectionPlanner(TDB_FAN_OUT_AGE);
+				storePlanners.put(graphName, planner);
+			}
+			return planner;
+		}
+	}
+	
+	/**
+	 * @param g the graph this planner is for
+	 * @param automaton the automaton of the path expression
+	 * @param subject the subject resource
+	 * @param object the object resource
+	 * @return the direction in which to check whether object can be reached from subject
+	 */
+	public DirectionPlan plan(Graph g, PathAutomaton automaton, Node subject, Node object)
+	{
+		long forwardDegree = 0;
+		for(Node property : automaton.getOutProperties(PathAutomaton.START_STATE))
+		{
+			forwardDegree += degree(g, subject, property, Node.ANY);
+		}
+		long backwardDegree = 0;
+		for(Node property : getLastProperties(automaton))
+		{
+			backwardDegree += degree(g, Node.ANY, property, object);
+		}
+		
+		double forwardFanOut = 0;
+		double backwardFanOut = 0;
+		Set<Node> properties = automaton.getProperties();
+		for(Node property : properties)
+		{
+			FanOut fanOut = getFanOut(g, property);
+			forwardFanOut += fanOut.forward/properties.size();
+			backwardFanOut += fanOut.backward/properties.size();
+		}
+		
+		double forwardCost = forwardDegree*(1+forwardFanOut);
+		double backwardCost = backwardDegree*(1+backwardFanOut);
+		Direction direction;
+		if(forwardCost*RATIO<=backwardCost)
+			direction = Direction.FORWARD;
+		else if(backwardCost*RATIO<=forwardCost)
+			direction = Direction.BACKWARD;
+		else
+			direction = Direction.BIDIRECTIONAL;
+		return new DirectionPlan(direction, forwardDegree, forwardFanOut, backwardDegree, backwardFanOut);
+	}
+	
+	/**
+	 * @return the properties labelling transitions into accepting states
+	 */
+	private static Set<Node> getLastProperties(PathAutomaton automaton)
+	{
+		Set<Node> properties = new HashSet<Node>();
+		for (int state = 0; state < automaton.getNumStates(); state++)
+		{
+			if(state!=PathAutomaton.START_STATE && automaton.isAccepting(state))
+				properties.add(automaton.getStateProperty(state));
+		}
+		return properties;
+	}
+	
+	private FanOut getFanOut(Graph g, Node property)
+	{
+		FanOut fanOut = fanOuts.get(property);
+		if(fanOut==null || System.nanoTime()-fanOut.sampled>maxAge)
+		{
+			fanOut = sampleFanOut(g, property);
+			fanOuts.put(property, fanOut);
+		}
+		return fanOut;
+	}
+	
+	/**
+	 * @return the average out-degree of the subjects and in-degree of the objects of the
+	 * first SAMPLE_SIZE triples with the property
+	 */
+	private static FanOut sampleFanOut(Graph g, Node property)
+	{
+		long forward = 0;
+		long backward = 0;
+		int samples = 0;
+		ExtendedIterator<Triple> ei = g.find(Node.ANY, property, Node.ANY);
+		try
+		{
+			while(samples<SAMPLE_SIZE && ei.hasNext())
+			{
+				Triple triple = ei.next();
+				forward += degree(g, triple.getSubject(), property, Node.ANY);
+				backward += degree(g, Node.ANY, property, triple.getObject());
+				samples++;
+			}
+		}
+		finally
+		{
+			ei.close();
+		}
+		if(samples==0)
+			return new FanOut(0, 0);
+		return new FanOut((double)forward/samples, (double)backward/samples);
+	}
+	
+	/**
+	 * @return the number of triples matching the pattern, counted up to DEGREE_CAP unless
+	 * the graph's statistics handler knows it
+	 */
+	private static long degree(Graph g, Node subject, Node property, Node object)
+	{
+		GraphStatisticsHandler statistics = g.getStatisticsHandler();
+		if(statistics!=null)
+		{
+			long count = statistics.getStatistic(subject, property, object);
+			if(count>=0)
+				return count;
+		}
+		long count = 0;
+		ExtendedIterator<Triple> ei = g.find(subject, property, object);
+		try
+		{
+			while(count<DEGREE_CAP && ei.hasNext())
+			{
+				ei.next();
+				count++;
+			}
+		}
+		finally
+		{
+			ei.close();
+		}
+		return count;
+	}
+	
+	/**
+	 * the sampled forward and backward fan-out of a property, and when it was sampled
+	 */
+	private static final class FanOut
+	{
+		final double forward;
+		final double backward;
+		final long sampled = System.nanoTime();
+		
+		FanOut(double forward, double backward)
+		{
+			this.forward = forward;
+			this.backward = backward;
+		}
+	}
+	
+	/**
+	 * drops the fan-out of properties touched by a change to the graph
+	 */
+	private class Invalidator extends GraphListenerBase
+	{
+		@Override
+		protected void addEvent(Triple t)
+		{
+			fanOuts.remove(t.getPredicate());
+		}
+		
+		@Override
+		protected void deleteEvent(Triple t)
+		{
+			fanOuts.remove(t.getPredicate());
+		}
+		
+		@Override
+		public void notifyEvent(Graph source, Object value)
+		{
+			super.notifyEvent(source, value);
+			if(value instanceof GraphEvents && value!=GraphEvents.startRead && 
+					value!=GraphEvents.finishRead)
+			{
+				// removeAll or remove(s, p, o), the removed triples are not listed
+				fanOuts.clear();
+			}
+		}
+	}
+}
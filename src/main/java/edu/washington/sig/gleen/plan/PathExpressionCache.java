@@ -0,0 +1,248 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.plan;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+
+/**
+ * A bounded, least-recently-used cache of compiled path expressions. Entries are keyed
+ * on the path expression string together with the prefix mapping it is compiled
+ * against, so the same string used under different prefix declarations is compiled
+ * separately.
+ * 
+ * The property functions share the default instance, so a path expression is parsed
+ * once and then reused by every binding and every query that evaluates it.
+ */
+public class PathExpressionCache
+{
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	
+	private static final PathExpressionCache defaultCache = new PathExpressionCache(DEFAULT_MAX_ENTRIES);
+	
+	private final LruMap entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	
+	/**
+	 * @param maxEntries the maximum number of compiled expressions to retain
+	 */
+	public PathExpressionCache(int maxEntries)
+	{
+		if(maxEntries<1)
+			throw new IllegalArgumentException("cache size must be positive: "+maxEntries);
+		entries = new LruMap(maxEntries, evictions);
+	}
+	
+	/**
+	 * @return the cache shared by the GLEEN property functions
+	 */
+	public static PathExpressionCache getDefault()
+	{
+		return defaultCache;
+	}
+	
+	/**
+	 * Get the compiled form of a path expression, compiling (and caching) it if necessary
+	 * @param expression the path expression string
+	 * @param prefixes the prefix mapping used to expand property names in the expression
+	 * @return the compiled path expression
+	 * @throws ParseException if the expression is not consistent with the path expression grammar
+	 */
+	public CompiledPathExpression get(String expression, Map<String, String> prefixes)
+		throws ParseException
+	{
+		Key key = new Key(expression, prefixes);
+		CompiledPathExpression compiled;
+		synchronized(entries)
+		{
+			compiled = entries.get(key);
+		}
+		if(compiled!=null)
+		{
+			hits.incrementAndGet();
+			return compiled;
+		}
+		
+		// compile outside of the lock, a concurrent miss on the same key just compiles twice
+		misses.incrementAndGet();
+		compiled = CompiledPathExpression.compile(expression, prefixes);
+		synchronized(entries)
+		{
+			CompiledPathExpression existing = entries.get(key);
+			if(existing!=null)
+				return existing;
+			entries.put(new Key(expression, compiled.getPrefixes()), compiled);
+		}
+		return compiled;
+	}
+	
+	/**
+	 * Remove all entries, counters are left untouched
+	 */
+	public void clear()
+	{
+		synchronized(entries)
+		{
+			entries.clear();
+		}
+	}
+	
+	/**
+	 * @return the number of compiled expressions currently cached
+	 */
+	public int size()
+	{
+		synchronized(entries)
+		{
+			return entries.size();
+		}
+	}
+	
+	/**
+	 * @return the maximum number of compiled expressions retained
+	 */
+	public int getMaxEntries()
+	{
+		synchronized(entries)
+		{
+			return entries.maxEntries;
+		}
+	}
+	
+	/**
+	 * Change the maximum number of entries, evicting least recently used entries if the
+	 * cache is shrunk
+	 * @param maxEntries the maximum number of compiled expressions to retain
+	 */
+	public void setMaxEntries(int maxEntries)
+	{
+		if(maxEntries<1)
+			throw new IllegalArgumentException("cache size must be positive: "+maxEntries);
+		synchronized(entries)
+		{
+			entries.maxEntries = maxEntries;
+			Iterator<Key> keyIt = entries.keySet().iterator();
+			while(entries.size()>maxEntries && keyIt.hasNext())
+			{
+				keyIt.next();
+				keyIt.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * @return number of lookups answered from the cache
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+	
+	/**
+	 * @return number of lookups that required compiling the expression
+	 */
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+	
+	/**
+	 * @return number of entries evicted to honour the size bound
+	 */
+	public long getEvictionCount()
+	{
+		return evictions.get();
+	}
+	
+	public String toString()
+	{
+		return "PathExpressionCache[size="+size()+", hits="+getHitCount()+", misses="+getMissCount()+
+			", evictions="+getEvictionCount()+"]";
+	}
+	
+	/**
+	 * access ordered map that drops its least recently used entry once full, counting the
+	 * entries it drops
+	 */
+	private static final class LruMap extends LinkedHashMap<Key, CompiledPathExpression>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int maxEntries;
+		private final AtomicLong evictions;
+		
+		LruMap(int maxEntries, AtomicLong evictions)
+		{
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+			this.evictions = evictions;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, CompiledPathExpression> eldest)
+		{
+			if(size()>maxEntries)
+			{
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * cache key, an expression string plus the prefixes it is resolved against
+	 */
+	private static final class Key
+	{
+		private final String expression;
+		private final Map<String, String> prefixes;
+		private final int hash;
+		
+		Key(String expression, Map<String, String> prefixes)
+		{
+			this.expression = expression;
+			this.prefixes = prefixes;
+			this.hash = 31*expression.hashCode()+prefixes.hashCode();
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this==o)
+				return true;
+			if(!(o instanceof Key))
+				return false;
+			Key other = (Key)o;
+			return hash==other.hash && expression.equals(other.expression) && 
+				prefixes.equals(other.prefixes);
+		}
+	}
+}
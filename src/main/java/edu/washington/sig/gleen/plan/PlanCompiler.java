@@ -0,0 +1,81 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.plan;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.javacc.grammar.PathExpressionConstants;
+import edu.washington.sig.gleen.javacc.grammar.SimpleNode;
+
+/**
+ * Turns a path expression parse tree into a tree of PlanNodes, expanding each property
+ * name against the prefix mapping exactly once.
+ */
+public class PlanCompiler
+{
+	private final PrefixMapping prefixMapping;
+	
+	/**
+	 * @param prefixMapping prefix mapping used to expand property names
+	 */
+	public PlanCompiler(PrefixMapping prefixMapping)
+	{
+		this.prefixMapping = prefixMapping;
+	}
+	
+	/**
+	 * Compile a parse (sub)tree
+	 * @param root the root of the parse (sub)tree
+	 * @return the equivalent plan tree
+	 * @throws ParseException if the parse tree contains an unknown operator
+	 */
+	public PlanNode compile(SimpleNode root) throws ParseException
+	{
+		switch (root.getOperatorType())
+		{
+			case PathExpressionConstants.PROPERTY:
+				return PlanNode.createProperty(resolveProperty(root.getOperator()));
+			case PathExpressionConstants.OPT:
+			case PathExpressionConstants.STAR:
+			case PathExpressionConstants.PLUS:
+			case PathExpressionConstants.ALT:
+			case PathExpressionConstants.CONCAT:
+				PlanNode[] children = new PlanNode[root.jjtGetNumChildren()];
+				for (int i = 0; i < children.length; i++)
+				{
+					children[i] = compile((SimpleNode)root.jjtGetChild(i));
+				}
+				return PlanNode.createOperator(root.getOperatorType(), children);
+			default:
+				throw new ParseException("invalid operator type = "+root.getOperatorType());
+		}
+	}
+	
+	/**
+	 * get the property node for a given property string
+	 * @param propertyText the (possibly prefixed) property name
+	 * @return the property node for the given string
+	 */
+	private Node resolveProperty(String propertyText)
+	{
+		String expandedPropName = prefixMapping.expandPrefix(propertyText);
+		return NodeFactory.createURI(expandedPropName);
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.plan;
+
+import java.util.Arrays;
+
+import com.hp.hpl.jena.graph.Node;
+
+import edu.washington.sig.gleen.javacc.grammar.PathExpressionConstants;
+
+/**
+ * A PlanNode is one operator of a compiled path expression. Plan trees mirror the
+ * parse tree produced by the path expression grammar (operator types are the
+ * PathExpressionConstants token kinds), but property leaves already hold the resolved
+ * property Node so evaluation never needs to expand prefixes or create URIs.
+ * 
+ * Plan nodes are immutable and may be shared between threads.
+ */
+public final class PlanNode
+{
+	private static final PlanNode[] NO_CHILDREN = new PlanNode[0];
+	
+	private final int operatorType;
+	private final PlanNode[] children;
+	private final Node property;
+	
+	private PlanNode(int operatorType, PlanNode[] children, Node property)
+	{
+		this.operatorType = operatorType;
+		this.children = children;
+		this.property = property;
+	}
+	
+	/**
+	 * Create a property (leaf) node
+	 * @param property the resolved property
+	 * @return new plan node
+	 */
+	public static PlanNode createProperty(Node property)
+	{
+		return new PlanNode(PathExpressionConstants.PROPERTY, NO_CHILDREN, property);
+	}
+	
+	/**
+	 * Create an operator node
+	 * @param operatorType one of the PathExpressionConstants operator kinds
+	 * @param children the operands of this operator
+	 * @return new plan node
+	 */
+	public static PlanNode createOperator(int operatorType, PlanNode... children)
+	{
+		return new PlanNode(operatorType, children.clone(), null);
+	}
+
+	/**
+	 * @return the operator type (one of the PathExpressionConstants token kinds)
+	 */
+	public int getOperatorType()
+	{
+		return operatorType;
+	}
+	
+	/**
+	 * @return the number of operands of this operator
+	 */
+	public int getNumChildren()
+	{
+		return children.length;
+	}
+	
+	/**
+	 * @param i operand index
+	 * @return the i-th operand of this operator
+	 */
+	public PlanNode getChild(int i)
+	{
+		return children[i];
+	}
+	
+	/**
+	 * @return a copy of the operands of this operator
+	 */
+	PlanNode[] getChildren()
+	{
+		return children.clone();
+	}
+	
+	/**
+	 * @return the resolved property for a property node, null for any other operator
+	 */
+	public Node getProperty()
+	{
+		return property;
+	}
+	
+	/**
+	 * @return true if this is a property (leaf) node
+	 */
+	public boolean isProperty()
+	{
+		return operatorType==PathExpressionConstants.PROPERTY;
+	}
+	
+	/**
+	 * @return true if this is an alternation (possibly of alternations) of property nodes 
+	 * only, i.e. a single step over any of several properties
+	 */
+	public boolean isPropertyAlternation()
+	{
+		if(operatorType!=PathExpressionConstants.ALT)
+			return false;
+		for(PlanNode child : children)
+		{
+			if(!child.isProperty() && !child.isPropertyAlternation())
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Plan nodes are equal if they have the same operator and equal operands, or are 
+	 * property nodes for the same property
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this==obj)
+			return true;
+		if(!(obj instanceof PlanNode))
+			return false;
+		PlanNode other = (PlanNode)obj;
+		return operatorType==other.operatorType && Arrays.equals(children, other.children) &&
+				(property==null ? other.property==null : property.equals(other.property));
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return 31*(31*operatorType+Arrays.hashCode(children))+(property==null ? 0 : property.hashCode());
+	}
+	
+	public String toString()
+	{
+		switch (operatorType)
+		{
+			case PathExpressionConstants.PROPERTY:
+				return "["+property.getURI()+"]";
+			case PathExpressionConstants.OPT:
+				return "("+children[0]+")?";
+			case PathExpressionConstants.STAR:
+				return "("+children[0]+")*";
+			case PathExpressionConstants.PLUS:
+				return "("+children[0]+")+";
+			case PathExpressionConstants.ALT:
+			case PathExpressionConstants.CONCAT:
+				StringBuilder sb = new StringBuilder("(");
+				for (int i = 0; i < children.length; i++)
+				{
+					if(i>0)
+						sb.append(operatorType==PathExpressionConstants.ALT ? "|" : "/");
+					sb.append(children[i]);
+				}
+				return sb.append(")").toString();
+			default:
+				return "invalid operator type = "+operatorType;
+		}
+	}
+}
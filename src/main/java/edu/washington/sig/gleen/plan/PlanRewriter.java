@@ -0,0 +1,280 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.plan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.washington.sig.gleen.javacc.grammar.PathExpressionConstants;
+
+/**
+ * Rewrites a plan into a simpler plan matching exactly the same paths, so that redundant
+ * forms written in (or produced by the grammar for) a path expression do not cost extra
+ * passes over the graph:
+ * <ul>
+ * <li>nested closures collapse: (x*)*, (x+)*, (x?)*, (x*)+, (x?)+, (x+)? and (x*)? are 
+ * all x*, (x+)+ is x+ and (x?)? is x?; x? and x+ of an expression that already matches 
+ * the empty path are that expression and its closure</li>
+ * <li>nested concatenations and alternations are flattened, single operand ones dropped, 
+ * and duplicate alternatives removed</li>
+ * <li>alternatives sharing a first (or last) step are factored: a/b|a/c is a/(b|c), 
+ * b/a|c/a is (b|c)/a and a|a/b is a/(b)?</li>
+ * <li>the plain properties among alternatives are gathered into one alternation of 
+ * properties (see PlanNode.isPropertyAlternation), a single step over several properties</li>
+ * </ul>
+ */
+public final class PlanRewriter
+{
+	private PlanRewriter()
+	{
+	}
+	
+	/**
+	 * @param plan the root of a plan tree
+	 * @return the root of an equivalent, simplified plan tree
+	 */
+	public static PlanNode rewrite(PlanNode plan)
+	{
+		if(plan.isProperty())
+			return plan;
+		
+		PlanNode[] children = new PlanNode[plan.getNumChildren()];
+		for (int i = 0; i < children.length; i++)
+		{
+			children[i] = rewrite(plan.getChild(i));
+		}
+		switch (plan.getOperatorType())
+		{
+			case PathExpressionConstants.OPT:
+			case PathExpressionConstants.STAR:
+			case PathExpressionConstants.PLUS:
+				return rewriteClosure(plan.getOperatorType(), children[0]);
+			case PathExpressionConstants.CONCAT:
+				return rewriteConcat(children);
+			case PathExpressionConstants.ALT:
+				return rewriteAlt(children);
+			default:
+				return PlanNode.createOperator(plan.getOperatorType(), children);
+		}
+	}
+	
+	/**
+	 * @param op OPT, STAR or PLUS
+	 * @param child the (rewritten) operand
+	 */
+	private static PlanNode rewriteClosure(int op, PlanNode child)
+	{
+		int childOp = child.getOperatorType();
+		boolean childClosure = childOp==PathExpressionConstants.OPT || 
+				childOp==PathExpressionConstants.STAR || childOp==PathExpressionConstants.PLUS;
+		if(childClosure)
+		{
+			if(childOp==op || childOp==PathExpressionConstants.STAR)
+				return child;
+			// any mix of ? and + closes over the operand's operand
+			return PlanNode.createOperator(PathExpressionConstants.STAR, child.getChild(0));
+		}
+		if(isNullable(child))
+		{
+			if(op==PathExpressionConstants.OPT)
+				return child;
+			if(op==PathExpressionConstants.PLUS)
+				op = PathExpressionConstants.STAR;
+		}
+		return PlanNode.createOperator(op, child);
+	}
+	
+	private static PlanNode rewriteConcat(PlanNode[] children)
+	{
+		List<PlanNode> steps = new ArrayList<PlanNode>();
+		for(PlanNode child : children)
+		{
+			addSteps(child, steps);
+		}
+		return createConcat(steps);
+	}
+	
+	private static PlanNode rewriteAlt(PlanNode[] children)
+	{
+		Set<PlanNode> alternatives = new LinkedHashSet<PlanNode>();
+		for(PlanNode child : children)
+		{
+			addAlternatives(child, alternatives);
+		}
+		if(alternatives.size()==1)
+			return alternatives.iterator().next();
+		
+		List<PlanNode> factored = factor(new ArrayList<PlanNode>(alternatives), true);
+		if(factored.size()==alternatives.size())
+			factored = factor(factored, false);
+		if(factored.size()<alternatives.size())
+		{
+			// factoring built new concatenations and alternations, simplify those in turn
+			return rewrite(PlanNode.createOperator(PathExpressionConstants.ALT, 
+					factored.toArray(new PlanNode[factored.size()])));
+		}
+		
+		// gather the plain properties into one alternation of properties
+		List<PlanNode> properties = new ArrayList<PlanNode>();
+		List<PlanNode> others = new ArrayList<PlanNode>();
+		for(PlanNode alternative : alternatives)
+		{
+			(alternative.isProperty() ? properties : others).add(alternative);
+		}
+		if(others.isEmpty() || properties.size()<2)
+			return PlanNode.createOperator(PathExpressionConstants.ALT, 
+					alternatives.toArray(new PlanNode[alternatives.size()]));
+		others.add(0, PlanNode.createOperator(PathExpressionConstants.ALT, 
+				properties.toArray(new PlanNode[properties.size()])));
+		return PlanNode.createOperator(PathExpressionConstants.ALT, 
+				others.toArray(new PlanNode[others.size()]));
+	}
+	
+	/**
+	 * Group alternatives on their first (or last) step, alternatives alone in their group 
+	 * are kept as they are
+	 * @param alternatives the alternatives
+	 * @param prefix true to group on the first step, false to group on the last
+	 * @return the new alternatives, fewer than before if anything was factored
+	 */
+	private static List<PlanNode> factor(List<PlanNode> alternatives, boolean prefix)
+	{
+		Map<PlanNode, List<List<PlanNode>>> groups = new LinkedHashMap<PlanNode, List<List<PlanNode>>>();
+		for(PlanNode alternative : alternatives)
+		{
+			List<PlanNode> steps = new ArrayList<PlanNode>();
+			addSteps(alternative, steps);
+			PlanNode shared = steps.get(prefix ? 0 : steps.size()-1);
+			List<List<PlanNode>> group = groups.get(shared);
+			if(group==null)
+			{
+				group = new ArrayList<List<PlanNode>>();
+				groups.put(shared, group);
+			}
+			group.add(prefix ? steps.subList(1, steps.size()) : steps.subList(0, steps.size()-1));
+		}
+		if(groups.size()==alternatives.size())
+			return alternatives;
+		
+		List<PlanNode> factored = new ArrayList<PlanNode>();
+		for(Map.Entry<PlanNode, List<List<PlanNode>>> group : groups.entrySet())
+		{
+			PlanNode shared = group.getKey();
+			List<List<PlanNode>> rests = group.getValue();
+			if(rests.size()==1)
+			{
+				List<PlanNode> steps = new ArrayList<PlanNode>(rests.get(0));
+				steps.add(prefix ? 0 : steps.size(), shared);
+				factored.add(createConcat(steps));
+				continue;
+			}
+			
+			// the rests are distinct, since duplicate alternatives were removed, so at 
+			// most one of them is empty
+			List<PlanNode> restAlternatives = new ArrayList<PlanNode>();
+			boolean emptyRest = false;
+			for(List<PlanNode> rest : rests)
+			{
+				if(rest.isEmpty())
+					emptyRest = true;
+				else
+					restAlternatives.add(createConcat(rest));
+			}
+			PlanNode rest = restAlternatives.size()==1 ? restAlternatives.get(0) : 
+				PlanNode.createOperator(PathExpressionConstants.ALT, 
+						restAlternatives.toArray(new PlanNode[restAlternatives.size()]));
+			if(emptyRest)
+				rest = PlanNode.createOperator(PathExpressionConstants.OPT, rest);
+			factored.add(prefix ? PlanNode.createOperator(PathExpressionConstants.CONCAT, shared, rest) : 
+				PlanNode.createOperator(PathExpressionConstants.CONCAT, rest, shared));
+		}
+		return factored;
+	}
+	
+	/**
+	 * add the steps of a concatenation (or the node itself if it is not one) to steps
+	 */
+	private static void addSteps(PlanNode node, List<PlanNode> steps)
+	{
+		if(node.getOperatorType()==PathExpressionConstants.CONCAT)
+			Collections.addAll(steps, node.getChildren());
+		else
+			steps.add(node);
+	}
+	
+	/**
+	 * add the alternatives of an alternation (or the node itself if it is not one) to
+	 * alternatives
+	 */
+	private static void addAlternatives(PlanNode node, Set<PlanNode> alternatives)
+	{
+		if(node.getOperatorType()==PathExpressionConstants.ALT)
+		{
+			for(PlanNode child : node.getChildren())
+			{
+				addAlternatives(child, alternatives);
+			}
+		}
+		else
+			alternatives.add(node);
+	}
+	
+	private static PlanNode createConcat(List<PlanNode> steps)
+	{
+		if(steps.size()==1)
+			return steps.get(0);
+		return PlanNode.createOperator(PathExpressionConstants.CONCAT, 
+				steps.toArray(new PlanNode[steps.size()]));
+	}
+	
+	/**
+	 * @return true if the plan matches the empty path
+	 */
+	private static boolean isNullable(PlanNode node)
+	{
+		switch (node.getOperatorType())
+		{
+			case PathExpressionConstants.OPT:
+			case PathExpressionConstants.STAR:
+				return true;
+			case PathExpressionConstants.PLUS:
+				return isNullable(node.getChild(0));
+			case PathExpressionConstants.CONCAT:
+				for(PlanNode child : node.getChildren())
+				{
+					if(!isNullable(child))
+						return false;
+				}
+				return true;
+			case PathExpressionConstants.ALT:
+				for(PlanNode child : node.getChildren())
+				{
+					if(isNullable(child))
+						return true;
+				}
+				return false;
+			default:
+				return false;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.util;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Node;
+
+import edu.washington.sig.gleen.automaton.ClosureSearch;
+import edu.washington.sig.gleen.plan.PlanNode;
+
+/**
+ * Records, for the evaluation of one closure, which nodes each sub-expression of its body
+ * has already been evaluated from. Everything reachable from a node through a 
+ * sub-expression, and through whatever follows the sub-expression up to the end of the 
+ * closure body, ends up in the closure's results the first time the node is evaluated. A
+ * later round of the closure that meets the node at the same sub-expression therefore 
+ * has nothing new to add and can drop it, so inner closures such as the [b]* of 
+ * ([a]/[b]*)+ are not walked again for nodes they have already expanded (semi-naive 
+ * evaluation). Closures of a single property nested in the body keep one incremental 
+ * ClosureSearch for the whole evaluation, which expands every node once across rounds.
+ * 
+ * Sub-expressions are told apart by identity rather than by structure, since equal 
+ * sub-expressions in different places are followed by different steps. A memo belongs to
+ * a single evaluation and is not thread safe.
+ */
+public final class ClosureMemo
+{
+	private final Map<PlanNode, Set<Node>> expanded = new IdentityHashMap<PlanNode, Set<Node>>();
+	private final Map<PlanNode, ClosureSearch> closureSearches = 
+		new IdentityHashMap<PlanNode, ClosureSearch>();
+	private long expansions = 0;
+	private long reuses = 0;
+	
+	/**
+	 * Record the given nodes as evaluated from subExpr
+	 * @param subExpr a sub-expression of the closure body
+	 * @param starts the nodes subExpr is about to be evaluated from
+	 * @return the nodes of starts subExpr has not been evaluated from before
+	 */
+	public Set<Node> retainUnexpanded(PlanNode subExpr, Set<Node> starts)
+	{
+		Set<Node> seen = expanded.get(subExpr);
+		if(seen==null)
+		{
+			seen = new HashSet<Node>();
+			expanded.put(subExpr, seen);
+		}
+		
+		Set<Node> unexpanded = new HashSet<Node>();
+		for(Node start : starts)
+		{
+			if(seen.add(start))
+				unexpanded.add(start);
+		}
+		expansions += unexpanded.size();
+		reuses += starts.size()-unexpanded.size();
+		return unexpanded;
+	}
+	
+	/**
+	 * @param closure a closure of a single property within the closure body
+	 * @return the incremental search kept for the closure, or null if there is none yet
+	 */
+	public ClosureSearch getClosureSearch(PlanNode closure)
+	{
+		return closureSearches.get(closure);
+	}
+	
+	/**
+	 * @param closure a closure of a single property within the closure body
+	 * @param search the incremental search to keep for the closure
+	 */
+	public void putClosureSearch(PlanNode closure, ClosureSearch search)
+	{
+		closureSearches.put(closure, search);
+	}
+	
+	/**
+	 * @return the number of (sub-expression, node) pairs evaluated
+	 */
+	public long getExpansions()
+	{
+		return expansions;
+	}
+	
+	/**
+	 * @return the number of times a (sub-expression, node) pair was met again and skipped
+	 */
+	public long getReuses()
+	{
+		return reuses;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return expansions+" expansions, "+reuses+" reuses over "+expanded.size()+" sub-expressions";
+	}
+}
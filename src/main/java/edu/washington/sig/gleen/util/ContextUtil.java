@@ -16,12 +16,16 @@
 
 package edu.washington.sig.gleen.util;
 
+import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.shared.PrefixMapping;
 import com.hp.hpl.jena.sparql.util.Context;
 import com.hp.hpl.jena.sparql.util.Symbol;
 
+import edu.washington.sig.gleen.index.AdjacencyFile;
+import edu.washington.sig.gleen.index.ReachabilityIndexRegistry;
+
 /**
  * @author Todd Detwiler
  * @date Dec 18, 2007
@@ -32,6 +36,26 @@ import com.hp.hpl.jena.sparql.util.Symbol;
 public class ContextUtil
 {
 	private static final String QUERY_PREF_MAP = "http://sig.biostr.washington.edu/gleen#queryPrefixMap" ;
+	private static final String ENGINE = "http://sig.biostr.washington.edu/gleen#engine" ;
+	private static final String BATCH_SIZE = "http://sig.biostr.washington.edu/gleen#batchSize" ;
+	private static final String REACHABILITY_INDEXES = "http://sig.biostr.washington.edu/gleen#reachabilityIndexes" ;
+	private static final String SNAPSHOT = "http://sig.biostr.washington.edu/gleen#snapshot" ;
+	private static final String ADJACENCY_FILE = "http://sig.biostr.washington.edu/gleen#adjacencyFile" ;
+	private static final String ADJACENCY_FILE_GRAPH = "http://sig.biostr.washington.edu/gleen#adjacencyFileGraph" ;
+	private static final String PARALLEL_THRESHOLD = "http://sig.biostr.washington.edu/gleen#parallelThreshold" ;
+	private static final String PARALLELISM = "http://sig.biostr.washington.edu/gleen#parallelism" ;
+	private static final String PATH_LIMIT = "http://sig.biostr.washington.edu/gleen#pathLimit" ;
+	private static final String PATH_QUEUE_LIMIT = "http://sig.biostr.washington.edu/gleen#pathQueueLimit" ;
+	
+	/** default for the largest number of paths Paths produces per call */
+	public static final int DEFAULT_PATH_LIMIT = 10000;
+	/** default for the largest number of partial paths Paths holds per call */
+	public static final int DEFAULT_PATH_QUEUE_LIMIT = 1000000;
+	
+	/** evaluate path expressions by recursive, set-at-a-time traversal of the parse tree (default) */
+	public static final String ENGINE_RECURSIVE = "recursive";
+	/** evaluate path expressions by search over the product of the graph and the expression automaton */
+	public static final String ENGINE_AUTOMATON = "automaton";
 	
 	/**
 	 * Adds all query prefix mappings to the QueryExecution
@@ -54,4 +78,323 @@ public class ContextUtil
 	{
 		return Symbol.create(QUERY_PREF_MAP);
 	}
+	
+	/**
+	 * Selects the path evaluation engine used by queries run through this QueryExecution
+	 * @param qe the QueryExecution to configure
+	 * @param engine either ENGINE_RECURSIVE or ENGINE_AUTOMATON
+	 */
+	public static void setEngine(QueryExecution qe, String engine)
+	{
+		qe.getContext().set(getEngineSymbol(), engine);
+	}
+	
+	/**
+	 * quick method for getting symbol for path evaluation engine lookup
+	 * @return Symbol to use to lookup the path evaluation engine
+	 */
+	public static Symbol getEngineSymbol()
+	{
+		return Symbol.create(ENGINE);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return true if the automaton engine has been selected for this context
+	 */
+	public static boolean isAutomatonEngine(Context cxt)
+	{
+		return ENGINE_AUTOMATON.equals(cxt.getAsString(getEngineSymbol(), ENGINE_RECURSIVE));
+	}
+	
+	/**
+	 * Makes OnPath evaluate its input bindings in batches of (up to) the given size rather
+	 * than one at a time. With the automaton engine the bindings of a batch that share a 
+	 * path expression and direction are answered by a single multi-source search; with the
+	 * recursive engine each distinct bound end of the batch is evaluated once.
+	 * @param qe the QueryExecution to configure
+	 * @param batchSize number of input bindings per batch, 0 to evaluate bindings one at a time
+	 */
+	public static void setBatchSize(QueryExecution qe, int batchSize)
+	{
+		qe.getContext().set(getBatchSizeSymbol(), batchSize);
+	}
+	
+	/**
+	 * quick method for getting symbol for batch size lookup
+	 * @return Symbol to use to lookup the OnPath batch size
+	 */
+	public static Symbol getBatchSizeSymbol()
+	{
+		return Symbol.create(BATCH_SIZE);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return the OnPath batch size for this context, 0 if bindings are evaluated one at a time
+	 */
+	public static int getBatchSize(Context cxt)
+	{
+		Object value = cxt.get(getBatchSizeSymbol());
+		if(value==null)
+			return 0;
+		if(value instanceof Number)
+			return ((Number)value).intValue();
+		return Integer.parseInt(value.toString());
+	}
+	
+	/**
+	 * Makes OnPath answer [p]+ and [p]* from the reachability indexes in the given registry,
+	 * for every property p indexed there. The same registry may be set on any number of 
+	 * QueryExecutions (or once, on the global ARQ context).
+	 * @param qe the QueryExecution to configure
+	 * @param registry the reachability indexes for the graph being queried
+	 */
+	public static void setReachabilityIndexes(QueryExecution qe, ReachabilityIndexRegistry registry)
+	{
+		qe.getContext().set(getReachabilityIndexesSymbol(), registry);
+	}
+	
+	/**
+	 * quick method for getting symbol for reachability index registry lookup
+	 * @return Symbol to use to lookup the reachability index registry
+	 */
+	public static Symbol getReachabilityIndexesSymbol()
+	{
+		return Symbol.create(REACHABILITY_INDEXES);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return the reachability index registry for this context, or null if there is none
+	 */
+	public static ReachabilityIndexRegistry getReachabilityIndexes(Context cxt)
+	{
+		return (ReachabilityIndexRegistry)cxt.get(getReachabilityIndexesSymbol());
+	}
+	
+	/**
+	 * Makes the automaton engine traverse an in-memory adjacency snapshot of the graph (see
+	 * AdjacencySnapshotCache) rather than calling Graph.find for every node it expands
+	 * @param qe the QueryExecution to configure
+	 * @param snapshot true to use adjacency snapshots
+	 */
+	public static void setSnapshot(QueryExecution qe, boolean snapshot)
+	{
+		qe.getContext().set(getSnapshotSymbol(), snapshot);
+	}
+	
+	/**
+	 * quick method for getting symbol for adjacency snapshot lookup
+	 * @return Symbol to use to lookup whether adjacency snapshots are used
+	 */
+	public static Symbol getSnapshotSymbol()
+	{
+		return Symbol.create(SNAPSHOT);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return true if adjacency snapshots have been enabled for this context
+	 */
+	public static boolean isSnapshot(Context cxt)
+	{
+		return cxt.isTrue(getSnapshotSymbol());
+	}
+	
+	/**
+	 * Makes the automaton engine traverse a memory mapped adjacency file rather than the 
+	 * graph, for every path expression whose properties are all stored in the file, when
+	 * the active graph is the graph the file was written from (see GraphViews). Other 
+	 * graphs, e.g. the named graphs of GRAPH patterns, are searched as usual. The file must
+	 * still match that graph (see AdjacencyFile.isValidFor).
+	 * @param qe the QueryExecution to configure
+	 * @param adjacencyFile the adjacency file
+	 * @param graph the graph the file was written from
+	 */
+	public static void setAdjacencyFile(QueryExecution qe, AdjacencyFile adjacencyFile, Graph graph)
+	{
+		qe.getContext().set(getAdjacencyFileSymbol(), adjacencyFile);
+		qe.getContext().set(getAdjacencyFileGraphSymbol(), graph);
+	}
+	
+	/**
+	 * quick method for getting symbol for adjacency file lookup
+	 * @return Symbol to use to lookup the adjacency file
+	 */
+	public static Symbol getAdjacencyFileSymbol()
+	{
+		return Symbol.create(ADJACENCY_FILE);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return the adjacency file for this context, or null if there is none
+	 */
+	public static AdjacencyFile getAdjacencyFile(Context cxt)
+	{
+		return (AdjacencyFile)cxt.get(getAdjacencyFileSymbol());
+	}
+	
+	/**
+	 * quick method for getting symbol for adjacency file graph lookup
+	 * @return Symbol to use to lookup the graph the adjacency file was written from
+	 */
+	public static Symbol getAdjacencyFileGraphSymbol()
+	{
+		return Symbol.create(ADJACENCY_FILE_GRAPH);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return the graph the adjacency file was written from, or null if there is none
+	 */
+	public static Graph getAdjacencyFileGraph(Context cxt)
+	{
+		return (Graph)cxt.get(getAdjacencyFileGraphSymbol());
+	}
+	
+	/**
+	 * Makes the recursive engine expand the levels of Kleene closures that hold at least the
+	 * given number of nodes in parallel. Only enable this for graphs that support concurrent 
+	 * readers, e.g. a TDB dataset read inside a read transaction, or an in-memory graph 
+	 * that is not modified while the query runs.
+	 * @param qe the QueryExecution to configure
+	 * @param parallelThreshold smallest level expanded in parallel, 0 to expand every level
+	 * serially
+	 */
+	public static void setParallelThreshold(QueryExecution qe, int parallelThreshold)
+	{
+		qe.getContext().set(getParallelThresholdSymbol(), parallelThreshold);
+	}
+	
+	/**
+	 * quick method for getting symbol for parallel threshold lookup
+	 * @return Symbol to use to lookup the parallel closure threshold
+	 */
+	public static Symbol getParallelThresholdSymbol()
+	{
+		return Symbol.create(PARALLEL_THRESHOLD);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return the smallest closure level expanded in parallel, 0 if closures are expanded
+	 * serially
+	 */
+	public static int getParallelThreshold(Context cxt)
+	{
+		Object value = cxt.get(getParallelThresholdSymbol());
+		if(value==null)
+			return 0;
+		if(value instanceof Number)
+			return ((Number)value).intValue();
+		return Integer.parseInt(value.toString());
+	}
+	
+	/**
+	 * Sets the number of worker threads that expand closure levels in parallel, see 
+	 * setParallelThreshold. Queries asking for the same parallelism share one pool of 
+	 * daemon workers, which is kept for the life of the JVM; idle workers exit on their own.
+	 * @param qe the QueryExecution to configure
+	 * @param parallelism number of worker threads, at least 1
+	 */
+	public static void setParallelism(QueryExecution qe, int parallelism)
+	{
+		qe.getContext().set(getParallelismSymbol(), parallelism);
+	}
+	
+	/**
+	 * quick method for getting symbol for parallelism lookup
+	 * @return Symbol to use to lookup the number of parallel closure workers
+	 */
+	public static Symbol getParallelismSymbol()
+	{
+		return Symbol.create(PARALLELISM);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return the number of worker threads that expand closure levels in parallel, the 
+	 * number of available processors if none is set
+	 */
+	public static int getParallelism(Context cxt)
+	{
+		Object value = cxt.get(getParallelismSymbol());
+		if(value==null)
+			return Runtime.getRuntime().availableProcessors();
+		if(value instanceof Number)
+			return ((Number)value).intValue();
+		return Integer.parseInt(value.toString());
+	}
+	
+	/**
+	 * Caps the number of paths the Paths property function produces for one call, whatever
+	 * number it is asked for
+	 * @param qe the QueryExecution to configure
+	 * @param pathLimit largest number of paths per call
+	 */
+	public static void setPathLimit(QueryExecution qe, int pathLimit)
+	{
+		qe.getContext().set(getPathLimitSymbol(), pathLimit);
+	}
+	
+	/**
+	 * quick method for getting symbol for path limit lookup
+	 * @return Symbol to use to lookup the largest number of paths per call
+	 */
+	public static Symbol getPathLimitSymbol()
+	{
+		return Symbol.create(PATH_LIMIT);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return the largest number of paths Paths produces per call, DEFAULT_PATH_LIMIT if 
+	 * none is set
+	 */
+	public static int getPathLimit(Context cxt)
+	{
+		Object value = cxt.get(getPathLimitSymbol());
+		if(value==null)
+			return DEFAULT_PATH_LIMIT;
+		if(value instanceof Number)
+			return ((Number)value).intValue();
+		return Integer.parseInt(value.toString());
+	}
+	
+	/**
+	 * Caps the number of partial paths the Paths property function holds for one call. A 
+	 * call that reaches the cap stops early (with a warning) after the paths it has produced.
+	 * @param qe the QueryExecution to configure
+	 * @param pathQueueLimit largest number of partial paths held per call
+	 */
+	public static void setPathQueueLimit(QueryExecution qe, int pathQueueLimit)
+	{
+		qe.getContext().set(getPathQueueLimitSymbol(), pathQueueLimit);
+	}
+	
+	/**
+	 * quick method for getting symbol for path queue limit lookup
+	 * @return Symbol to use to lookup the largest number of partial paths held per call
+	 */
+	public static Symbol getPathQueueLimitSymbol()
+	{
+		return Symbol.create(PATH_QUEUE_LIMIT);
+	}
+	
+	/**
+	 * @param cxt the query execution context
+	 * @return the largest number of partial paths Paths holds per call, 
+	 * DEFAULT_PATH_QUEUE_LIMIT if none is set
+	 */
+	public static int getPathQueueLimit(Context cxt)
+	{
+		Object value = cxt.get(getPathQueueLimitSymbol());
+		if(value==null)
+			return DEFAULT_PATH_QUEUE_LIMIT;
+		if(value instanceof Number)
+			return ((Number)value).intValue();
+		return Integer.parseInt(value.toString());
+	}
 }
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.util;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.sparql.ARQConstants;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.tdb.store.GraphTDB;
+
+import edu.washington.sig.gleen.adjacency.AdjacencySnapshotCache;
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+import edu.washington.sig.gleen.adjacency.GraphAdjacency;
+import edu.washington.sig.gleen.adjacency.TDBAdjacency;
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.index.AdjacencyFile;
+import edu.washington.sig.gleen.index.ReachabilityIndex;
+import edu.washington.sig.gleen.index.ReachabilityIndexRegistry;
+
+/**
+ * An EvaluationContext holds the state needed to evaluate one property function call: the
+ * active graph, a snapshot of the query prefixes, and the ARQ context carrying the GLEEN
+ * evaluation options (see ContextUtil). A new one is created for every call (or batch of
+ * calls) and handed down through the evaluation, so the property function instances 
+ * themselves hold no per-query state and a single instance may serve any number of 
+ * concurrent queries.
+ */
+public final class EvaluationContext
+{
+	private final Graph graph;
+	private final Map<String, String> prefixes;
+	private final Context context;
+	private final ClosureMemo closureMemo;
+	
+	/**
+	 * @param graph the graph to evaluate against
+	 * @param prefixes the prefixes used to expand property names in path expressions
+	 * @param context the ARQ context carrying evaluation options
+	 */
+	public EvaluationContext(Graph graph, Map<String, String> prefixes, Context context)
+	{
+		this(graph, prefixes, context, null);
+	}
+	
+	private EvaluationContext(Graph graph, Map<String, String> prefixes, Context context, 
+			ClosureMemo closureMemo)
+	{
+		this.graph = graph;
+		this.prefixes = prefixes;
+		this.context = context;
+		this.closureMemo = closureMemo;
+	}
+	
+	/**
+	 * Create the evaluation context for a property function call
+	 * @param execCxt the current execution context
+	 * @return the evaluation context, or null if no query prefix mapping is available
+	 */
+	public static EvaluationContext create(ExecutionContext execCxt)
+	{
+		PrefixMapping queryPrefMap = getQueryPrefixMapping(execCxt.getContext());
+		if(queryPrefMap==null)
+			return null;
+		return new EvaluationContext(execCxt.getActiveGraph(), queryPrefMap.getNsPrefixMap(), 
+				execCxt.getContext());
+	}
+	
+	/**
+	 * Find the query prefix mapping, either from the current query or, failing that, from 
+	 * the mapping stored with ContextUtil.setQueryPrefs
+	 * @param cxt the query execution context
+	 * @return the query prefix mapping, or null if there is none
+	 */
+	public static PrefixMapping getQueryPrefixMapping(Context cxt)
+	{
+		if(cxt.isDefined(ARQConstants.sysCurrentQuery))
+		{
+			Query query = (Query)cxt.get(ARQConstants.sysCurrentQuery);
+			return query.getPrefixMapping();
+		}
+		else if(cxt.isDefined(ContextUtil.getQueryPrefMapSymbol()))
+		{
+			return (PrefixMapping)cxt.get(ContextUtil.getQueryPrefMapSymbol());
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the graph to evaluate against
+	 */
+	public Graph getGraph()
+	{
+		return graph;
+	}
+	
+	/**
+	 * @return snapshot of the query prefixes, also used as part of the compiled path 
+	 * expression cache key
+	 */
+	public Map<String, String> getPrefixes()
+	{
+		return prefixes;
+	}
+	
+	/**
+	 * Create the adjacency source the automaton searches run on. Node ids are only 
+	 * meaningful within one source, so a search creates its own and never shares it.
+	 * An adjacency file set with ContextUtil.setAdjacencyFile is used if it was written from
+	 * this graph and holds all the automaton's properties. Otherwise TDB graphs are searched on TDB NodeIds (see 
+	 * TDBAdjacency), and other graphs through the graph's adjacency snapshot if snapshots 
+	 * are enabled (see ContextUtil.setSnapshot) or else through Graph.find.
+	 * @param automaton the automaton of the path expression to be searched
+	 * @return a new adjacency source over the graph
+	 */
+	public AdjacencySource createAdjacency(PathAutomaton automaton)
+	{
+		return createAdjacency(automaton.getProperties());
+	}
+	
+	/**
+	 * Create an adjacency source for searches that follow the given properties (see 
+	 * createAdjacency(PathAutomaton))
+	 * @param properties the properties to be searched
+	 * @return a new adjacency source over the graph
+	 */
+	public AdjacencySource createAdjacency(Collection<Node> properties)
+	{
+		AdjacencyFile adjacencyFile = ContextUtil.getAdjacencyFile(context);
+		if(adjacencyFile!=null && adjacencyFile.covers(properties) && 
+				GraphViews.isViewOf(graph, ContextUtil.getAdjacencyFileGraph(context)))
+			return adjacencyFile.createSource();
+		if(TDBAdjacency.isSupported(graph))
+			return new TDBAdjacency((GraphTDB)graph);
+		if(ContextUtil.isSnapshot(context))
+		{
+			AdjacencySnapshotCache cache = AdjacencySnapshotCache.getInstance(graph);
+			return cache.getSnapshot(graph, properties).createSource();
+		}
+		return new GraphAdjacency(graph);
+	}
+	
+	/**
+	 * @return the ARQ context carrying evaluation options
+	 */
+	public Context getContext()
+	{
+		return context;
+	}
+	
+	/**
+	 * @param closureMemo the memo for the evaluation of a closure body
+	 * @return a copy of this context carrying the memo
+	 */
+	public EvaluationContext withClosureMemo(ClosureMemo closureMemo)
+	{
+		return new EvaluationContext(graph, prefixes, context, closureMemo);
+	}
+	
+	/**
+	 * @return the memo of the closure being evaluated, or null outside of closures
+	 */
+	public ClosureMemo getClosureMemo()
+	{
+		return closureMemo;
+	}
+	
+	/**
+	 * @return true if the automaton engine has been selected (see ContextUtil)
+	 */
+	public boolean isAutomatonEngine()
+	{
+		return ContextUtil.isAutomatonEngine(context);
+	}
+	
+	/**
+	 * @param property a property
+	 * @return the reachability index for the property over this graph, or null if none 
+	 * has been registered (see ContextUtil.setReachabilityIndexes)
+	 */
+	public ReachabilityIndex getReachabilityIndex(Node property)
+	{
+		ReachabilityIndexRegistry registry = ContextUtil.getReachabilityIndexes(context);
+		if(registry==null)
+			return null;
+		return registry.get(graph, property);
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.util;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.tdb.base.file.Location;
+import com.hp.hpl.jena.tdb.store.GraphTDB;
+
+/**
+ * Tells whether the graph a query runs against is the graph an index or adjacency file was
+ * made for. TDB gives every query, and every transaction, its own GraphTDB, so TDB graphs 
+ * are matched by their store and graph name rather than by identity: the same dataset 
+ * graph outside transactions, or the same on-disk location inside them. An in-memory TDB
+ * dataset has no location of its own, and is only matched outside transactions.
+ */
+public final class GraphViews
+{
+	private GraphViews()
+	{
+	}
+	
+	/**
+	 * @param g the graph being queried
+	 * @param graph the graph something was made for, may be null
+	 * @return true if g is graph, or for TDB a view of the same graph of the same store
+	 */
+	public static boolean isViewOf(Graph g, Graph graph)
+	{
+		if(g==graph)
+			return graph!=null;
+		if(!(g instanceof GraphTDB) || !(graph instanceof GraphTDB))
+			return false;
+		GraphTDB view = (GraphTDB)g;
+		GraphTDB stored = (GraphTDB)graph;
+		if(!getGraphName(view).equals(getGraphName(stored)))
+			return false;
+		if(view.getDSG()==stored.getDSG())
+			return true;
+		// every in-memory dataset has the same location
+		Location location = stored.getDSG().getLocation();
+		return !location.isMem() && location.equals(view.getDSG().getLocation());
+	}
+	
+	/**
+	 * @param g a TDB graph
+	 * @return the name of the graph, Quad.defaultGraphIRI for the default graph
+	 */
+	public static Node getGraphName(GraphTDB g)
+	{
+		Node name = g.getGraphName();
+		if(name==null || Quad.isDefaultGraph(name))
+			return Quad.defaultGraphIRI;
+		return name;
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.util;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, used for frontiers and adjacency buffers so that
+ * traversals do not box every node id.
+ */
+public final class IntList
+{
+	private int[] values;
+	private int size = 0;
+	
+	public IntList()
+	{
+		this(16);
+	}
+	
+	/**
+	 * @param capacity initial capacity
+	 */
+	public IntList(int capacity)
+	{
+		values = new int[Math.max(capacity, 1)];
+	}
+	
+	/**
+	 * @param value the value to append
+	 */
+	public void add(int value)
+	{
+		if(size==values.length)
+			values = Arrays.copyOf(values, size*2);
+		values[size++] = value;
+	}
+	
+	/**
+	 * @param source values to append
+	 * @param from index of the first value in source
+	 * @param to index after the last value in source
+	 */
+	public void addAll(int[] source, int from, int to)
+	{
+		int count = to-from;
+		if(size+count>values.length)
+			values = Arrays.copyOf(values, Math.max(values.length*2, size+count));
+		System.arraycopy(source, from, values, size, count);
+		size += count;
+	}
+	
+	/**
+	 * @param index position in the list
+	 * @return the value at index
+	 */
+	public int get(int index)
+	{
+		if(index>=size)
+			throw new IndexOutOfBoundsException(index+" >= "+size);
+		return values[index];
+	}
+	
+	/**
+	 * @return number of values in the list
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * @return true if the list is empty
+	 */
+	public boolean isEmpty()
+	{
+		return size==0;
+	}
+	
+	/**
+	 * remove all values (the capacity is kept)
+	 */
+	public void clear()
+	{
+		size = 0;
+	}
+	
+	/**
+	 * @return a copy of the values
+	 */
+	public int[] toArray()
+	{
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.util;
+
+/**
+ * A first in, first out queue of primitive ints, backed by a growable ring buffer.
+ */
+public final class IntQueue
+{
+	private int[] values = new int[16];
+	private int head = 0;
+	private int size = 0;
+	
+	/**
+	 * @param value the value to add at the tail
+	 */
+	public void add(int value)
+	{
+		if(size==values.length)
+		{
+			int[] grown = new int[values.length*2];
+			int firstPart = Math.min(size, values.length-head);
+			System.arraycopy(values, head, grown, 0, firstPart);
+			System.arraycopy(values, 0, grown, firstPart, size-firstPart);
+			values = grown;
+			head = 0;
+		}
+		values[(head+size) & (values.length-1)] = value;
+		size++;
+	}
+	
+	/**
+	 * @return the value at the head, which is removed
+	 */
+	public int poll()
+	{
+		if(size==0)
+			throw new IllegalStateException("queue is empty");
+		int value = values[head];
+		head = (head+1) & (values.length-1);
+		size--;
+		return value;
+	}
+	
+	/**
+	 * @return number of values in the queue
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * @return true if the queue is empty
+	 */
+	public boolean isEmpty()
+	{
+		return size==0;
+	}
+	
+	/**
+	 * remove all values
+	 */
+	public void clear()
+	{
+		head = 0;
+		size = 0;
+	}
+}
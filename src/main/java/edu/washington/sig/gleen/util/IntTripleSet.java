@@ -0,0 +1,97 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.util;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash set of (subject, property, object) triples of non-negative node
+ * ids, stored three ints to a slot, used to drop repeated triples without keeping a Triple
+ * object (and hash set entry) for each.
+ */
+public final class IntTripleSet
+{
+	/** three ints per slot, a negative subject marks an empty slot */
+	private int[] slots;
+	private int size = 0;
+	
+	public IntTripleSet()
+	{
+		slots = new int[64*3];
+		Arrays.fill(slots, -1);
+	}
+	
+	/**
+	 * @param subject the subject id
+	 * @param property the property id
+	 * @param object the object id
+	 * @return true if the triple was not already in the set
+	 */
+	public boolean add(int subject, int property, int object)
+	{
+		if(subject<0)
+			throw new IllegalArgumentException("negative subject "+subject);
+		if((size+1)*2>slots.length/3)
+			rehash();
+		
+		int mask = slots.length/3-1;
+		int slot = slot(subject, property, object, mask);
+		while(slots[slot*3]>=0)
+		{
+			if(slots[slot*3]==subject && slots[slot*3+1]==property && slots[slot*3+2]==object)
+				return false;
+			slot = (slot+1)&mask;
+		}
+		slots[slot*3] = subject;
+		slots[slot*3+1] = property;
+		slots[slot*3+2] = object;
+		size++;
+		return true;
+	}
+	
+	/**
+	 * @return number of triples in the set
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	private void rehash()
+	{
+		int[] oldSlots = slots;
+		slots = new int[oldSlots.length*2];
+		Arrays.fill(slots, -1);
+		size = 0;
+		for (int i = 0; i < oldSlots.length; i += 3)
+		{
+			if(oldSlots[i]>=0)
+				add(oldSlots[i], oldSlots[i+1], oldSlots[i+2]);
+		}
+	}
+	
+	private static int slot(int subject, int property, int object, int mask)
+	{
+		// murmur3 finalizer over the packed ids
+		long key = (((long)subject<<32)|(object&0xffffffffL))*31+property;
+		key ^= key>>>33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key>>>33;
+		return (int)key & mask;
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.util;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from long keys to non-negative int values, used to number
+ * store-level node ids without boxing.
+ */
+public final class LongIntMap
+{
+	private long[] keys;
+	/** -1 marks an empty slot */
+	private int[] values;
+	private int size = 0;
+	
+	public LongIntMap()
+	{
+		keys = new long[64];
+		values = new int[64];
+		Arrays.fill(values, -1);
+	}
+	
+	/**
+	 * @param key the key
+	 * @return the value for key, or -1 if there is none
+	 */
+	public int get(long key)
+	{
+		int mask = keys.length-1;
+		for (int slot = slot(key, mask); values[slot]>=0; slot = (slot+1)&mask)
+		{
+			if(keys[slot]==key)
+				return values[slot];
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param key the key
+	 * @param value the value, must not be negative
+	 */
+	public void put(long key, int value)
+	{
+		if(value<0)
+			throw new IllegalArgumentException("negative value "+value);
+		if((size+1)*2>keys.length)
+			rehash();
+		
+		int mask = keys.length-1;
+		int slot = slot(key, mask);
+		while(values[slot]>=0)
+		{
+			if(keys[slot]==key)
+			{
+				values[slot] = value;
+				return;
+			}
+			slot = (slot+1)&mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+	}
+	
+	/**
+	 * @return number of keys in the map
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	private void rehash()
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length*2];
+		values = new int[oldValues.length*2];
+		Arrays.fill(values, -1);
+		size = 0;
+		for (int slot = 0; slot < oldKeys.length; slot++)
+		{
+			if(oldValues[slot]>=0)
+				put(oldKeys[slot], oldValues[slot]);
+		}
+	}
+	
+	private static int slot(long key, int mask)
+	{
+		// murmur3 finalizer, node ids are sequential file offsets
+		key ^= key>>>33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key>>>33;
+		return (int)key & mask;
+	}
+}
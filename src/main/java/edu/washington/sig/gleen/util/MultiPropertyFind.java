@@ -0,0 +1,96 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.washington.sig.gleen.util;
+
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphStatisticsHandler;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+/**
+ * Finds the triples of a node with any of several properties, the step taken by an 
+ * alternation of plain properties. A find per property costs one index probe each, while
+ * a single find(node, ANY, ANY) filtered on the property set costs one probe but reads 
+ * all of the node's triples. The scan is chosen when the node has at most SCAN_RATIO 
+ * triples per property looked up; for graphs that cannot tell a node's degree (e.g. TDB),
+ * when at least MIN_SCAN_PROPERTIES properties are looked up.
+ */
+public final class MultiPropertyFind
+{
+	/** scan while the node has at most this many triples per property */
+	private static final int SCAN_RATIO = 4;
+	/** without degree statistics, scan for at least this many properties */
+	private static final int MIN_SCAN_PROPERTIES = 8;
+	
+	private MultiPropertyFind()
+	{
+	}
+	
+	/**
+	 * @param g the graph
+	 * @param node the subject (or object) of the triples
+	 * @param properties the properties of the triples
+	 * @param forward true to find triples with node as subject, false for node as object
+	 * @return the triples with node as subject (or object) and any of the properties
+	 */
+	public static ExtendedIterator<Triple> find(Graph g, Node node, final Set<Node> properties, 
+			boolean forward)
+	{
+		if(isScanCheaper(g, node, properties.size(), forward))
+		{
+			ExtendedIterator<Triple> all = forward ? g.find(node, Node.ANY, Node.ANY) : 
+				g.find(Node.ANY, Node.ANY, node);
+			return all.filterKeep(new Filter<Triple>()
+			{
+				@Override
+				public boolean accept(Triple triple)
+				{
+					return properties.contains(triple.getPredicate());
+				}
+			});
+		}
+		
+		ExtendedIterator<Triple> triples = NullIterator.instance();
+		for(Node property : properties)
+		{
+			triples = triples.andThen(forward ? g.find(node, property, Node.ANY) : 
+				g.find(Node.ANY, property, node));
+		}
+		return triples;
+	}
+	
+	private static boolean isScanCheaper(Graph g, Node node, int numProperties, boolean forward)
+	{
+		// a null or ANY node leaves nothing to scan
+		if(numProperties<2 || node==null || !node.isConcrete())
+			return false;
+		GraphStatisticsHandler statistics = g.getStatisticsHandler();
+		long degree = -1;
+		if(statistics!=null)
+			degree = forward ? statistics.getStatistic(node, Node.ANY, Node.ANY) : 
+				statistics.getStatistic(Node.ANY, Node.ANY, node);
+		if(degree<0)
+			return numProperties>=MIN_SCAN_PROPERTIES;
+		return degree<=(long)numProperties*SCAN_RATIO;
+	}
+}
@@ -36,7 +36,8 @@ public class PathUtils
 	/**
 	 * Create a new set of paths by joining head paths and tail paths such that,
 	 * paths are joined when the last node on a head path is equivalent to the 
-	 * first node on the associated tail path.
+	 * first node on the associated tail path. Joined paths share the head and tail paths
+	 * (see Path.append) rather than copying them.
 	 * @param headPaths a set of path beginnings
 	 * @param tailPaths a set of path endings
 	 * @return a new set of complete paths
@@ -71,9 +72,7 @@ public class PathUtils
 			Set<Path>  matchingHeadPaths = tail2PathsMap.get(headNode);
 			for(Path currMatchHeadPath : matchingHeadPaths)
 			{
-				Path currResultPath = new Path(currMatchHeadPath);
-				currResultPath.addAll(currPath);
-				resultPaths.add(currResultPath);
+				resultPaths.add(currMatchHeadPath.append(currPath));
 			}
 		}
 		
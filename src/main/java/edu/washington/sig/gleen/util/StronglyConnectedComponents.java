@@ -0,0 +1,119 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Strongly connected components of a directed graph whose vertices are numbered 0..n-1 and
+ * whose edges are given as adjacency lists. Used both to order propagation over product 
+ * graphs and to condense graphs into DAGs for reachability labeling.
+ */
+public final class StronglyConnectedComponents
+{
+	private StronglyConnectedComponents()
+	{
+	}
+	
+	/**
+	 * Find the strongly connected components of a directed graph with Tarjan's algorithm
+	 * (iterative, to survive deep graphs)
+	 * @param successors adjacency lists
+	 * @param component filled with the component index of every vertex
+	 * @return the components, in reverse topological order (sinks first)
+	 */
+	public static List<int[]> compute(int[][] successors, int[] component)
+	{
+		int n = successors.length;
+		int[] index = new int[n];
+		int[] lowLink = new int[n];
+		boolean[] onStack = new boolean[n];
+		Arrays.fill(index, -1);
+		
+		int[] stack = new int[n];
+		int stackSize = 0;
+		int[] callStack = new int[n];
+		int[] edgePos = new int[n];
+		int nextIndex = 0;
+		List<int[]> components = new ArrayList<int[]>();
+		
+		for (int root = 0; root < n; root++)
+		{
+			if(index[root]>=0)
+				continue;
+			
+			int depth = 0;
+			callStack[0] = root;
+			edgePos[0] = 0;
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			
+			while(depth>=0)
+			{
+				int v = callStack[depth];
+				if(edgePos[depth]<successors[v].length)
+				{
+					int w = successors[v][edgePos[depth]++];
+					if(index[w]<0)
+					{
+						index[w] = lowLink[w] = nextIndex++;
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						depth++;
+						callStack[depth] = w;
+						edgePos[depth] = 0;
+					}
+					else if(onStack[w])
+					{
+						lowLink[v] = Math.min(lowLink[v], index[w]);
+					}
+					continue;
+				}
+				
+				// v is finished
+				if(lowLink[v]==index[v])
+				{
+					int size = 0;
+					while(stack[stackSize-1-size]!=v)
+					{
+						size++;
+					}
+					size++;
+					int[] members = new int[size];
+					for (int i = 0; i < size; i++)
+					{
+						int w = stack[--stackSize];
+						onStack[w] = false;
+						component[w] = components.size();
+						members[i] = w;
+					}
+					components.add(members);
+				}
+				depth--;
+				if(depth>=0)
+				{
+					int parent = callStack[depth];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+				}
+			}
+		}
+		return components;
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunction;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionFactory;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionRegistry;
+
+import edu.washington.sig.gleen.util.ContextUtil;
+
+/**
+ * Stress test of shared property function instances: one OnPath and one Subgraph serve
+ * queries from many threads at once, over graphs with different prefix mappings, with
+ * both engines and with and without batching, and every result must equal the result of
+ * running the same query alone
+ */
+public class ConcurrentEvaluationTest
+{
+	private static final String NS = "http://sig.biostr.washington.edu/gleen/test#";
+	private static final int THREADS = 32;
+	private static final int RUNS_PER_THREAD = 40;
+
+	private static final String[] EXPRESSIONS =
+		{"[ex:p]+", "([ex:p]/[ex:q])*", "[ex:p]|[ex:q]+", "([ex:q]?/[ex:p])+"};
+
+	@BeforeClass
+	public static void registerSharedInstances()
+	{
+		final PropertyFunction onPath = new OnPath();
+		final PropertyFunction subgraph = new Subgraph();
+		PropertyFunctionRegistry.get().put(NS+"OnPath", new PropertyFunctionFactory()
+		{
+			public PropertyFunction create(String uri)
+			{
+				return onPath;
+			}
+		});
+		PropertyFunctionRegistry.get().put(NS+"Subgraph", new PropertyFunctionFactory()
+		{
+			public PropertyFunction create(String uri)
+			{
+				return subgraph;
+			}
+		});
+	}
+
+	@AfterClass
+	public static void unregisterSharedInstances()
+	{
+		PropertyFunctionRegistry.get().remove(NS+"OnPath");
+		PropertyFunctionRegistry.get().remove(NS+"Subgraph");
+	}
+
+	@Test
+	public void sharedInstancesMatchSequentialRuns() throws Exception
+	{
+		Random random = new Random(7);
+		final List<Case> cases = new ArrayList<Case>();
+		for (int i = 0; i < 60; i++)
+		{
+			// graphs in different namespaces, so each query has its own prefix mapping
+			String ns = "http://g"+(i%4)+"/";
+			Model model = ModelFactory.createDefaultModel();
+			int numNodes = 30+random.nextInt(50);
+			for (int e = 0; e < numNodes*2; e++)
+			{
+				model.add(model.createResource(ns+"n"+random.nextInt(numNodes)),
+						model.createProperty(ns+(random.nextBoolean() ? "p" : "q")),
+						model.createResource(ns+"n"+random.nextInt(numNodes)));
+			}
+			String prologue = "PREFIX t: <"+NS+"> PREFIX ex: <"+ns+"> ";
+			String expr = EXPRESSIONS[random.nextInt(EXPRESSIONS.length)];
+			String query = random.nextBoolean()
+				? prologue+"SELECT ?y ?x WHERE { ?y ?pp ?w . ?y t:OnPath (\""+expr+"\" ?x) }"
+				: prologue+"SELECT ?a ?b ?c WHERE { (ex:n"+random.nextInt(numNodes)+" \""+expr+"\" ?z) t:Subgraph (?a ?b ?c) }";
+			String engine = random.nextBoolean() ? ContextUtil.ENGINE_AUTOMATON : ContextUtil.ENGINE_RECURSIVE;
+			Case c = new Case(model, query, engine, i%3==0 ? 16 : 0);
+			c.expected = c.run();
+			cases.add(c);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try
+		{
+			List<Future<String>> failures = new ArrayList<Future<String>>();
+			for (int t = 0; t < THREADS; t++)
+			{
+				final Random threadRandom = new Random(t);
+				failures.add(pool.submit(new Callable<String>()
+				{
+					public String call()
+					{
+						for (int k = 0; k < RUNS_PER_THREAD; k++)
+						{
+							Case c = cases.get(threadRandom.nextInt(cases.size()));
+							List<String> results = c.run();
+							if(!results.equals(c.expected))
+								return c.query+" ("+c.engine+", batch "+c.batchSize+") gave "+results
+									+" instead of "+c.expected;
+						}
+						return null;
+					}
+				}));
+			}
+			for(Future<String> failure : failures)
+			{
+				assertEquals(null, failure.get());
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * a query, the options it runs with and its result when run alone
+	 */
+	private static final class Case
+	{
+		final Model model;
+		final String query;
+		final String engine;
+		final int batchSize;
+		List<String> expected;
+
+		Case(Model model, String query, String engine, int batchSize)
+		{
+			this.model = model;
+			this.query = query;
+			this.engine = engine;
+			this.batchSize = batchSize;
+		}
+
+		List<String> run()
+		{
+			QueryExecution qe = QueryExecutionFactory.create(query, model);
+			try
+			{
+				ContextUtil.setEngine(qe, engine);
+				ContextUtil.setBatchSize(qe, batchSize);
+				List<String> solutions = new ArrayList<String>();
+				ResultSet results = qe.execSelect();
+				while(results.hasNext())
+				{
+					solutions.add(results.next().toString());
+				}
+				Collections.sort(solutions);
+				return solutions;
+			}
+			finally
+			{
+				qe.close();
+			}
+		}
+	}
+}
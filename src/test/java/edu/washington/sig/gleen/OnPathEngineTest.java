@@ -0,0 +1,194 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.util.Symbol;
+
+import edu.washington.sig.gleen.util.ContextUtil;
+
+/**
+ * Differential tests of OnPath: the automaton engine against the recursive engine, 
+ * whichever ends are bound, batched evaluation against evaluating one binding at a time
+ * with either engine, and parallel closures against serial ones
+ */
+public class OnPathEngineTest
+{
+	private static final Map<Symbol, Object> RECURSIVE =
+		RandomGraphs.option(ContextUtil.getEngineSymbol(), ContextUtil.ENGINE_RECURSIVE);
+	private static final Map<Symbol, Object> AUTOMATON =
+		RandomGraphs.option(ContextUtil.getEngineSymbol(), ContextUtil.ENGINE_AUTOMATON);
+
+	@Test
+	public void enginesAgreeOnRandomGraphs()
+	{
+		Random random = new Random(20080401L);
+		int nonEmpty = 0;
+		for (int iteration = 0; iteration < 150; iteration++)
+		{
+			int numNodes = 2+random.nextInt(10);
+			Model model = RandomGraphs.model(random, numNodes, random.nextInt(numNodes*3), 3);
+			String expr = RandomGraphs.expression(random, 1+random.nextInt(4), 3);
+			String s = "ex:n"+random.nextInt(numNodes);
+			String o = "ex:n"+random.nextInt(numNodes);
+
+			List<String> queries = new ArrayList<String>();
+			// one constant end
+			queries.add("SELECT ?x WHERE { "+s+" gleen:OnPath (\""+expr+"\" ?x) }");
+			queries.add("SELECT ?x WHERE { ?x gleen:OnPath (\""+expr+"\" "+o+") }");
+			// both ends bound by an earlier pattern, for every pair of nodes in the graph
+			queries.add("SELECT ?x ?y WHERE { ?x ?p1 ?a . ?b ?p2 ?y . ?x gleen:OnPath (\""+expr+"\" ?y) }");
+			// subject or object bound by an earlier pattern
+			queries.add("SELECT ?x ?y WHERE { ?x ?p ?w . ?x gleen:OnPath (\""+expr+"\" ?y) }");
+			queries.add("SELECT ?x ?y WHERE { ?w ?p ?y . ?x gleen:OnPath (\""+expr+"\" ?y) }");
+			// neither end bound, which has no results
+			queries.add("SELECT ?x ?y WHERE { ?x gleen:OnPath (\""+expr+"\" ?y) }");
+
+			for(String query : queries)
+			{
+				List<String> expected = RandomGraphs.select(model, query, RECURSIVE);
+				assertEquals(expr+" "+query, expected, RandomGraphs.select(model, query, AUTOMATON));
+				if(!expected.isEmpty())
+					nonEmpty++;
+			}
+
+			// both ends constant, an ASK style check
+			String ask = "ASK { "+s+" gleen:OnPath (\""+expr+"\" "+o+") }";
+			assertEquals(expr+" "+ask, RandomGraphs.ask(model, ask, RECURSIVE),
+					RandomGraphs.ask(model, ask, AUTOMATON));
+		}
+		assertTrue("too few non-empty results to compare", nonEmpty>100);
+	}
+
+	@Test
+	public void batchesMatchUnbatchedEvaluation()
+	{
+		Random random = new Random(20080406L);
+		int nonEmpty = 0;
+		for (int iteration = 0; iteration < 100; iteration++)
+		{
+			int numNodes = 2+random.nextInt(15);
+			Model model = RandomGraphs.model(random, numNodes, random.nextInt(numNodes*3), 3);
+			String expr = RandomGraphs.expression(random, 1+random.nextInt(4), 3);
+			String other = RandomGraphs.expression(random, 1+random.nextInt(3), 3);
+
+			List<String> queries = new ArrayList<String>();
+			// the subject or object bound by an earlier pattern, often repeated
+			queries.add("SELECT ?x ?y WHERE { ?x ?p ?w . ?x gleen:OnPath (\""+expr+"\" ?y) }");
+			queries.add("SELECT ?x ?y WHERE { ?w ?p ?y . ?x gleen:OnPath (\""+expr+"\" ?y) }");
+			// two expressions in one input stream, and calls with both ends bound
+			queries.add("SELECT ?x ?y ?e WHERE { ?x ?p ?w . VALUES ?e { \""+expr+"\" \""+other+"\" } "
+					+"?x gleen:OnPath (?e ?y) }");
+			queries.add("SELECT ?x ?y WHERE { ?x ?p1 ?a . ?b ?p2 ?y . ?x gleen:OnPath (\""+expr+"\" ?y) }");
+
+			for(String engine : new String[]{ContextUtil.ENGINE_RECURSIVE, ContextUtil.ENGINE_AUTOMATON})
+			{
+				Map<Symbol, Object> unbatched = RandomGraphs.option(ContextUtil.getEngineSymbol(), engine);
+				for(String query : queries)
+				{
+					List<String> expected = RandomGraphs.select(model, query, unbatched);
+					if(!expected.isEmpty())
+						nonEmpty++;
+					for(int batchSize : new int[]{1, 3, 64})
+					{
+						Map<Symbol, Object> batched = new HashMap<Symbol, Object>(unbatched);
+						batched.put(ContextUtil.getBatchSizeSymbol(), batchSize);
+						assertEquals(engine+" batch "+batchSize+" "+expr+" "+query, expected,
+								RandomGraphs.select(model, query, batched));
+					}
+				}
+			}
+		}
+		assertTrue("too few non-empty results to compare", nonEmpty>200);
+	}
+
+	@Test
+	public void parallelClosuresMatchSerialEvaluation()
+	{
+		Random random = new Random(20080407L);
+		int nonEmpty = 0;
+		for (int iteration = 0; iteration < 20; iteration++)
+		{
+			// larger graphs, so closure levels reach the thresholds and the largest are split
+			// between tasks (see OnPath.LevelTask)
+			int numNodes = 100+random.nextInt(400);
+			Model model = RandomGraphs.model(random, numNodes, numNodes*2+random.nextInt(numNodes*2), 3);
+			String expr = "("+RandomGraphs.expression(random, random.nextInt(3), 3)+")"
+				+(random.nextBoolean() ? "+" : "*");
+			String s = "ex:n"+random.nextInt(numNodes);
+			String o = "ex:n"+random.nextInt(numNodes);
+
+			List<String> queries = new ArrayList<String>();
+			queries.add("SELECT ?x WHERE { "+s+" gleen:OnPath (\""+expr+"\" ?x) }");
+			queries.add("SELECT ?x WHERE { ?x gleen:OnPath (\""+expr+"\" "+o+") }");
+			// closures nested in a closure, whose tasks run on a pool worker already
+			queries.add("SELECT ?x WHERE { "+s+" gleen:OnPath (\"("+expr+"/[ex:p0])+\" ?x) }");
+			queries.add("SELECT ?x ?y WHERE { ?x ?p ?w . ?x gleen:OnPath (\""+expr+"\" ?y) }");
+
+			for(String query : queries)
+			{
+				List<String> expected = RandomGraphs.select(model, query, RECURSIVE);
+				if(!expected.isEmpty())
+					nonEmpty++;
+				for(int threshold : new int[]{1, 5})
+				{
+					Map<Symbol, Object> parallel = new HashMap<Symbol, Object>(RECURSIVE);
+					parallel.put(ContextUtil.getParallelThresholdSymbol(), threshold);
+					parallel.put(ContextUtil.getParallelismSymbol(), 4);
+					assertEquals("threshold "+threshold+" "+query, expected,
+							RandomGraphs.select(model, query, parallel));
+				}
+			}
+		}
+		assertTrue("too few non-empty results to compare", nonEmpty>30);
+	}
+
+	@Test
+	public void constantEndsAreChecked()
+	{
+		Model model = ModelFactory.createDefaultModel();
+		model.getGraph().add(Triple.create(RandomGraphs.node(0), RandomGraphs.property(0), RandomGraphs.node(1)));
+		model.getGraph().add(Triple.create(RandomGraphs.node(1), RandomGraphs.property(1), RandomGraphs.node(2)));
+		checkConstantEnds(model, RECURSIVE);
+		checkConstantEnds(model, AUTOMATON);
+	}
+
+	private void checkConstantEnds(Model model, Map<Symbol, Object> engine)
+	{
+		assertTrue(RandomGraphs.ask(model, "ASK { ex:n0 gleen:OnPath (\"[ex:p0]/[ex:p1]\" ex:n2) }", engine));
+		assertTrue(RandomGraphs.ask(model, "ASK { ex:n0 gleen:OnPath (\"([ex:p0]|[ex:p1])+\" ex:n2) }", engine));
+		assertFalse(RandomGraphs.ask(model, "ASK { ex:n0 gleen:OnPath (\"[ex:p1]/[ex:p0]\" ex:n2) }", engine));
+		assertFalse(RandomGraphs.ask(model, "ASK { ex:n2 gleen:OnPath (\"([ex:p0]|[ex:p1])+\" ex:n0) }", engine));
+		// a variable bound before the call is checked, not bound again
+		assertEquals(1, RandomGraphs.select(model,
+				"SELECT ?x WHERE { BIND(ex:n2 AS ?x) ex:n0 gleen:OnPath (\"[ex:p0]/[ex:p1]\" ?x) }", engine).size());
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.util.Symbol;
+
+/**
+ * Random graphs and path expressions over the nodes ex:n0, ex:n1, ... and properties
+ * ex:p0, ex:p1, ..., and a helper to run queries over them, for the randomized tests
+ */
+public final class RandomGraphs
+{
+	public static final String NS = "http://ex/";
+
+	/** prefixes of the generated expressions */
+	public static final Map<String, String> PREFIXES = Collections.singletonMap("ex", NS);
+
+	/** SPARQL prologue declaring the gleen and ex prefixes */
+	public static final String PROLOGUE =
+		"PREFIX gleen: <java:edu.washington.sig.gleen.> PREFIX ex: <"+NS+"> ";
+
+	private RandomGraphs()
+	{
+	}
+
+	public static Node node(int i)
+	{
+		return NodeFactory.createURI(NS+"n"+i);
+	}
+
+	public static Node property(int i)
+	{
+		return NodeFactory.createURI(NS+"p"+i);
+	}
+
+	/**
+	 * @param random the source of randomness
+	 * @param numNodes number of nodes
+	 * @param numTriples number of triples to draw (repeats are dropped)
+	 * @param numProperties number of properties
+	 * @return a model with random triples between the nodes
+	 */
+	public static Model model(Random random, int numNodes, int numTriples, int numProperties)
+	{
+		Model model = ModelFactory.createDefaultModel();
+		fill(model.getGraph(), random, numNodes, numTriples, numProperties);
+		return model;
+	}
+
+	/**
+	 * add random triples between the nodes to a graph
+	 */
+	public static void fill(Graph graph, Random random, int numNodes, int numTriples, int numProperties)
+	{
+		for (int i = 0; i < numTriples; i++)
+		{
+			graph.add(Triple.create(node(random.nextInt(numNodes)),
+					property(random.nextInt(numProperties)), node(random.nextInt(numNodes))));
+		}
+	}
+
+	/**
+	 * @param random the source of randomness
+	 * @param depth the greatest nesting of operators
+	 * @param numProperties number of properties
+	 * @return a random path expression
+	 */
+	public static String expression(Random random, int depth, int numProperties)
+	{
+		int kind = depth<=0 ? 0 : random.nextInt(7);
+		switch (kind)
+		{
+			case 1:
+				return "("+expression(random, depth-1, numProperties)+")*";
+			case 2:
+				return "("+expression(random, depth-1, numProperties)+")+";
+			case 3:
+				return "("+expression(random, depth-1, numProperties)+")?";
+			case 4:
+				return "("+expression(random, depth-1, numProperties)+"|"
+					+expression(random, depth-1, numProperties)+")";
+			case 5:
+				return "("+expression(random, depth-1, numProperties)+"/"
+					+expression(random, depth-1, numProperties)+")";
+			default:
+				return "[ex:p"+random.nextInt(numProperties)+"]";
+		}
+	}
+
+	/**
+	 * Run a SELECT query
+	 * @param model the model to query
+	 * @param query the query, after PROLOGUE
+	 * @param options context settings for the execution
+	 * @return the sorted solutions, as strings
+	 */
+	public static List<String> select(Model model, String query, Map<Symbol, Object> options)
+	{
+		QueryExecution qe = QueryExecutionFactory.create(PROLOGUE+query, model);
+		try
+		{
+			for(Map.Entry<Symbol, Object> option : options.entrySet())
+			{
+				qe.getContext().set(option.getKey(), option.getValue());
+			}
+			List<String> solutions = new ArrayList<String>();
+			ResultSet results = qe.execSelect();
+			while(results.hasNext())
+			{
+				solutions.add(results.next().toString());
+			}
+			Collections.sort(solutions);
+			return solutions;
+		}
+		finally
+		{
+			qe.close();
+		}
+	}
+
+	/**
+	 * Run an ASK query
+	 * @param model the model to query
+	 * @param query the query, after PROLOGUE
+	 * @param options context settings for the execution
+	 * @return the answer
+	 */
+	public static boolean ask(Model model, String query, Map<Symbol, Object> options)
+	{
+		QueryExecution qe = QueryExecutionFactory.create(PROLOGUE+query, model);
+		try
+		{
+			for(Map.Entry<Symbol, Object> option : options.entrySet())
+			{
+				qe.getContext().set(option.getKey(), option.getValue());
+			}
+			return qe.execAsk();
+		}
+		finally
+		{
+			qe.close();
+		}
+	}
+
+	/**
+	 * @return a map holding one context setting
+	 */
+	public static Map<Symbol, Object> option(Symbol symbol, Object value)
+	{
+		Map<Symbol, Object> options = new HashMap<Symbol, Object>();
+		options.put(symbol, value);
+		return options;
+	}
+}
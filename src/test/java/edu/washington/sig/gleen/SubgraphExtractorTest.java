@@ -0,0 +1,228 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.sparql.graph.GraphFactory;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.sparql.util.Symbol;
+
+import edu.washington.sig.gleen.adjacency.SmallGraph;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.util.ContextUtil;
+
+/**
+ * Tests of SubgraphExtractor: on random graphs, with either engine, extracting to a 
+ * Graph, to a StreamRDF and as N-Triples or RDF Thrift gives the triples a Subgraph 
+ * query binds
+ */
+public class SubgraphExtractorTest
+{
+	private static final String[] ENGINES = {ContextUtil.ENGINE_RECURSIVE, ContextUtil.ENGINE_AUTOMATON};
+
+	@Test
+	public void extractionsMatchSubgraphQueries() throws ParseException
+	{
+		Random random = new Random(20080410L);
+		int nonEmpty = 0;
+		for (int iteration = 0; iteration < 100; iteration++)
+		{
+			int numNodes = 2+random.nextInt(10);
+			Model model = RandomGraphs.model(random, numNodes, random.nextInt(numNodes*3), 3);
+			String expr = RandomGraphs.expression(random, 1+random.nextInt(4), 3);
+			Node s = RandomGraphs.node(random.nextInt(numNodes));
+			Node o = RandomGraphs.node(random.nextInt(numNodes));
+			switch(random.nextInt(3))
+			{
+				case 0: s = null; break;
+				case 1: o = null; break;
+				default: break;
+			}
+			String ends = "("+(s==null ? "?a" : "<"+s.getURI()+">")+" \""+expr+"\" "
+					+(o==null ? "?b" : "<"+o.getURI()+">")+")";
+
+			for(String engine : ENGINES)
+			{
+				Map<Symbol, Object> options = RandomGraphs.option(ContextUtil.getEngineSymbol(), engine);
+				Set<Triple> expected = subgraph(model, "SELECT ?s ?p ?o WHERE { "+ends+" gleen:Subgraph (?s ?p ?o) }", options);
+				String message = engine+" "+ends;
+
+				Context context = ARQ.getContext().copy();
+				context.set(ContextUtil.getEngineSymbol(), engine);
+				SubgraphExtractor extractor = new SubgraphExtractor(model.getGraph(), prefixes(), context);
+
+				Graph graph = GraphFactory.createDefaultGraph();
+				assertEquals(message, expected.size(), extractor.extract(s, expr, o, graph));
+				assertEquals(message, expected, graph.find(Node.ANY, Node.ANY, Node.ANY).toSet());
+
+				CollectingSink sink = new CollectingSink();
+				assertEquals(message, expected.size(), extractor.extract(s, expr, o, sink));
+				assertEquals(message, expected.size(), sink.triples.size());
+				assertEquals(message, expected, new HashSet<Triple>(sink.triples));
+				assertEquals(message, 1, sink.starts);
+				assertEquals(message, 1, sink.finishes);
+
+				assertEquals(message, expected, write(extractor, s, expr, o, RDFFormat.NTRIPLES, Lang.NTRIPLES));
+				assertEquals(message, expected, write(extractor, s, expr, o, RDFFormat.RDF_THRIFT, Lang.RDFTHRIFT));
+				if(!expected.isEmpty())
+					nonEmpty++;
+			}
+		}
+		assertTrue("too few non-empty subgraphs to compare", nonEmpty>40);
+	}
+
+	@Test
+	public void writeRejectsNonStreamingFormats() throws ParseException
+	{
+		SubgraphExtractor extractor = new SubgraphExtractor(SmallGraph.graph(), prefixes());
+		for(RDFFormat format : new RDFFormat[]{RDFFormat.TURTLE_PRETTY, RDFFormat.RDFXML_PRETTY})
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try
+			{
+				extractor.write(SmallGraph.N0, "[ex:p0]+", null, out, format);
+				fail(format+" should be rejected");
+			}
+			catch(IllegalArgumentException e)
+			{
+				assertEquals(0, out.size());
+			}
+		}
+	}
+
+	@Test
+	public void extractRejectsMissingOrLiteralEnds() throws ParseException
+	{
+		SubgraphExtractor extractor = new SubgraphExtractor(SmallGraph.graph(), prefixes());
+		Node[][] ends = {{null, null}, {SmallGraph.LITERAL, null}, {SmallGraph.N0, SmallGraph.LITERAL}};
+		for(Node[] end : ends)
+		{
+			try
+			{
+				extractor.extract(end[0], "[ex:p0]+", end[1], GraphFactory.createDefaultGraph());
+				fail(end[0]+" "+end[1]+" should be rejected");
+			}
+			catch(IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+	}
+
+	private static PrefixMapping prefixes()
+	{
+		return PrefixMapping.Factory.create().setNsPrefixes(RandomGraphs.PREFIXES);
+	}
+
+	/**
+	 * @return the triples written by the extractor in the given format, read back
+	 */
+	private static Set<Triple> write(SubgraphExtractor extractor, Node s, String expr, Node o,
+			RDFFormat format, Lang lang) throws ParseException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long count = extractor.write(s, expr, o, out, format);
+		Graph graph = GraphFactory.createDefaultGraph();
+		RDFDataMgr.read(graph, new ByteArrayInputStream(out.toByteArray()), lang);
+		assertEquals(format.toString(), count, graph.size());
+		return graph.find(Node.ANY, Node.ANY, Node.ANY).toSet();
+	}
+
+	/**
+	 * @return the distinct triples bound by a Subgraph query
+	 */
+	private static Set<Triple> subgraph(Model model, String query, Map<Symbol, Object> options)
+	{
+		QueryExecution qe = QueryExecutionFactory.create(RandomGraphs.PROLOGUE+query, model);
+		try
+		{
+			for(Map.Entry<Symbol, Object> option : options.entrySet())
+			{
+				qe.getContext().set(option.getKey(), option.getValue());
+			}
+			Set<Triple> triples = new HashSet<Triple>();
+			ResultSet results = qe.execSelect();
+			while(results.hasNext())
+			{
+				QuerySolution solution = results.next();
+				triples.add(Triple.create(solution.get("s").asNode(), solution.get("p").asNode(), 
+						solution.get("o").asNode()));
+			}
+			return triples;
+		}
+		finally
+		{
+			qe.close();
+		}
+	}
+
+	/**
+	 * Keeps the triples sent to it, and counts the calls to start and finish
+	 */
+	private static class CollectingSink extends StreamRDFBase
+	{
+		private final List<Triple> triples = new ArrayList<Triple>();
+		private int starts = 0;
+		private int finishes = 0;
+
+		@Override
+		public void start()
+		{
+			starts++;
+		}
+
+		@Override
+		public void triple(Triple triple)
+		{
+			triples.add(triple);
+		}
+
+		@Override
+		public void finish()
+		{
+			finishes++;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N0;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N1;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N4;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N6;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.OTHER;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.P0;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.P1;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.P2;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+
+/**
+ * Tests of AdjacencySnapshot and AdjacencySnapshotCache: a snapshot gives the same answers
+ * as GraphAdjacency, and changes made through the Graph API drop the properties they touch
+ */
+public class AdjacencySnapshotTest
+{
+	@Test
+	public void snapshotMatchesGraphAdjacency() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		AdjacencySnapshot snapshot = AdjacencySnapshotCache.getInstance(g).getSnapshot(g, SmallGraph.PROPERTIES);
+		assertTrue(snapshot.covers(SmallGraph.PROPERTIES));
+		assertFalse(snapshot.covers(OTHER));
+		assertEquals(10, snapshot.getNumTriples());
+		SmallGraph.assertMatchesGraph(g, snapshot.createSource());
+	}
+
+	@Test
+	public void extendedSnapshotMatchesGraphAdjacency() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		AdjacencySnapshotCache cache = AdjacencySnapshotCache.getInstance(g);
+		AdjacencySnapshot first = cache.getSnapshot(g, Collections.singleton(P1));
+		assertSame(first, cache.getSnapshot(g, Collections.singleton(P1)));
+		AdjacencySnapshot extended = cache.getSnapshot(g, Arrays.asList(P0, P2));
+		assertTrue(extended.covers(SmallGraph.PROPERTIES));
+		assertSame(extended, cache.getSnapshot());
+		SmallGraph.assertMatchesGraph(g, extended.createSource());
+	}
+
+	@Test
+	public void addAndDeleteDropTheirProperty()
+	{
+		Graph g = SmallGraph.graph();
+		AdjacencySnapshotCache cache = AdjacencySnapshotCache.getInstance(g);
+		AdjacencySnapshot before = cache.getSnapshot(g, SmallGraph.PROPERTIES);
+
+		g.add(Triple.create(N6, P0, N4));
+		assertFalse(cache.getSnapshot().covers(P0));
+		assertTrue(cache.getSnapshot().covers(Arrays.asList(P1, P2)));
+		// the snapshot a search already holds does not change
+		assertTrue(before.covers(P0));
+		assertEquals(Collections.singletonList(N6.toString()),
+				SmallGraph.objects(before.createSource(), N6, P0));
+		// the property is copied again on next use
+		AdjacencySnapshot after = cache.getSnapshot(g, SmallGraph.PROPERTIES);
+		assertEquals(Arrays.asList(N4.toString(), N6.toString()), SmallGraph.objects(after.createSource(), N6, P0));
+
+		g.delete(Triple.create(N0, P0, N1));
+		assertFalse(cache.getSnapshot().covers(P0));
+		after = cache.getSnapshot(g, SmallGraph.PROPERTIES);
+		assertEquals(Collections.<String>emptyList(), SmallGraph.objects(after.createSource(), N0, P0));
+
+		// changes to properties the snapshot does not hold leave it as it is
+		g.add(Triple.create(N6, OTHER, N0));
+		assertSame(after, cache.getSnapshot());
+	}
+
+	@Test
+	public void bulkRemovesDropTheirProperties()
+	{
+		Graph g = SmallGraph.graph();
+		AdjacencySnapshotCache cache = AdjacencySnapshotCache.getInstance(g);
+		cache.getSnapshot(g, SmallGraph.PROPERTIES);
+
+		g.remove(Node.ANY, P1, Node.ANY);
+		assertFalse(cache.getSnapshot().covers(P1));
+		assertTrue(cache.getSnapshot().covers(Arrays.asList(P0, P2)));
+
+		g.clear();
+		assertFalse(cache.getSnapshot().covers(P0));
+		assertFalse(cache.getSnapshot().covers(P2));
+	}
+
+	@Test
+	public void oneCachePerGraph()
+	{
+		Graph g = SmallGraph.graph();
+		assertSame(AdjacencySnapshotCache.getInstance(g), AdjacencySnapshotCache.getInstance(g));
+		assertNotSame(AdjacencySnapshotCache.getInstance(g), AdjacencySnapshotCache.getInstance(SmallGraph.graph()));
+	}
+}
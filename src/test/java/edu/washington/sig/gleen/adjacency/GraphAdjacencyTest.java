@@ -0,0 +1,126 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import static edu.washington.sig.gleen.adjacency.SmallGraph.LITERAL;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N0;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N1;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N2;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N3;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N4;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N5;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N6;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.OTHER;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.P0;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.P1;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+import edu.washington.sig.gleen.RandomGraphs;
+import edu.washington.sig.gleen.automaton.ProductSearch;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+
+/**
+ * Tests of GraphAdjacency, the reference the other adjacency sources are checked against:
+ * its neighbours are those Graph.find gives, and searches over it reach the expected nodes
+ */
+public class GraphAdjacencyTest
+{
+	@Test
+	public void neighboursMatchGraphFind()
+	{
+		Graph g = SmallGraph.graph();
+		AdjacencySource adjacency = new GraphAdjacency(g);
+		List<Node> properties = new ArrayList<Node>(SmallGraph.PROPERTIES);
+		properties.add(OTHER);
+		for(Node node : SmallGraph.NODES)
+		{
+			for(Node property : properties)
+			{
+				List<String> objects = new ArrayList<String>();
+				for(Triple triple : g.find(node, property, Node.ANY).toList())
+				{
+					objects.add(triple.getObject().toString());
+				}
+				Collections.sort(objects);
+				assertEquals(objects, SmallGraph.objects(adjacency, node, property));
+
+				List<String> subjects = new ArrayList<String>();
+				for(Triple triple : g.find(Node.ANY, property, node).toList())
+				{
+					subjects.add(triple.getSubject().toString());
+				}
+				Collections.sort(subjects);
+				assertEquals(subjects, SmallGraph.subjects(adjacency, node, property));
+			}
+		}
+		// nodes need not be in the graph
+		assertEquals(Collections.<String>emptyList(), SmallGraph.objects(adjacency, RandomGraphs.node(99), P0));
+	}
+
+	@Test
+	public void idsDecodeBack()
+	{
+		AdjacencySource adjacency = new GraphAdjacency(SmallGraph.graph());
+		for(Node node : SmallGraph.NODES)
+		{
+			int id = adjacency.encode(node);
+			assertEquals(id, adjacency.encode(node));
+			assertEquals(node, adjacency.decode(id));
+		}
+	}
+
+	@Test
+	public void searchesReachTheExpectedNodes() throws ParseException
+	{
+		AdjacencySource adjacency = new GraphAdjacency(SmallGraph.graph());
+		assertEquals(nodes(N0, N1, N2), forward(adjacency, "[ex:p0]+", N0));
+		assertEquals(nodes(N0, N1, N2, N3, N4, N5, LITERAL), forward(adjacency, "([ex:p0]|[ex:p1])*", N0));
+		assertEquals(nodes(N6), forward(adjacency, "[ex:p0]+", N6));
+		assertEquals(nodes(N0), backward(adjacency, "[ex:p0]/[ex:p1]", N4));
+	}
+
+	private static Set<Node> forward(AdjacencySource adjacency, String expr, Node node) throws ParseException
+	{
+		return new ProductSearch(adjacency, CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES)
+				.getAutomaton()).forward(Collections.singleton(node));
+	}
+
+	private static Set<Node> backward(AdjacencySource adjacency, String expr, Node node) throws ParseException
+	{
+		return new ProductSearch(adjacency, CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES)
+				.getAutomaton()).backward(Collections.singleton(node));
+	}
+
+	private static Set<Node> nodes(Node... nodes)
+	{
+		return new HashSet<Node>(Arrays.asList(nodes));
+	}
+}
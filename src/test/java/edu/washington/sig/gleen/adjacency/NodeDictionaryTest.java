@@ -0,0 +1,71 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+
+import edu.washington.sig.gleen.RandomGraphs;
+
+/**
+ * Tests of NodeDictionary: ids are dense, in order of first use, and decode back
+ */
+public class NodeDictionaryTest
+{
+	@Test
+	public void idsAreDenseAndDecodeBack()
+	{
+		NodeDictionary dictionary = new NodeDictionary();
+		// past the initial capacity
+		for (int i = 0; i < 200; i++)
+		{
+			assertEquals(i, dictionary.encode(RandomGraphs.node(i)));
+		}
+		Node literal = NodeFactory.createLiteral("n0");
+		assertEquals(200, dictionary.encode(literal));
+		assertEquals(201, dictionary.size());
+
+		for (int i = 0; i < 200; i++)
+		{
+			assertEquals(i, dictionary.encode(RandomGraphs.node(i)));
+			assertEquals(i, dictionary.lookup(RandomGraphs.node(i)));
+			assertEquals(RandomGraphs.node(i), dictionary.decode(i));
+		}
+		assertEquals(literal, dictionary.decode(200));
+		assertEquals(201, dictionary.size());
+	}
+
+	@Test
+	public void lookupDoesNotAssign()
+	{
+		NodeDictionary dictionary = new NodeDictionary();
+		assertEquals(-1, dictionary.lookup(RandomGraphs.node(0)));
+		assertEquals(0, dictionary.size());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void unknownIdsAreRejected()
+	{
+		NodeDictionary dictionary = new NodeDictionary();
+		dictionary.encode(RandomGraphs.node(0));
+		dictionary.decode(1);
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.graph.GraphFactory;
+
+import edu.washington.sig.gleen.RandomGraphs;
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.automaton.ProductSearch;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+import edu.washington.sig.gleen.util.IntList;
+
+/**
+ * A small fixed graph with a cycle, a self loop, a literal and a property outside the
+ * indexed ones, and checks that an AdjacencySource over it gives the same neighbours and
+ * reachability answers as GraphAdjacency, for the tests of the adjacency backends
+ */
+public final class SmallGraph
+{
+	public static final Node N0 = RandomGraphs.node(0);
+	public static final Node N1 = RandomGraphs.node(1);
+	public static final Node N2 = RandomGraphs.node(2);
+	public static final Node N3 = RandomGraphs.node(3);
+	public static final Node N4 = RandomGraphs.node(4);
+	public static final Node N5 = RandomGraphs.node(5);
+	public static final Node N6 = RandomGraphs.node(6);
+	public static final Node LITERAL = NodeFactory.createLiteral("n7");
+
+	public static final Node P0 = RandomGraphs.property(0);
+	public static final Node P1 = RandomGraphs.property(1);
+	public static final Node P2 = RandomGraphs.property(2);
+	/** a property the backends are not asked to cover */
+	public static final Node OTHER = RandomGraphs.property(9);
+
+	/** the properties the backends cover */
+	public static final List<Node> PROPERTIES = Collections.unmodifiableList(Arrays.asList(P0, P1, P2));
+
+	public static final List<Node> NODES =
+		Collections.unmodifiableList(Arrays.asList(N0, N1, N2, N3, N4, N5, N6, LITERAL));
+
+	/** expressions over the covered properties whose reachability answers are compared */
+	public static final List<String> EXPRESSIONS = Collections.unmodifiableList(Arrays.asList(
+			"[ex:p0]+", "([ex:p0]|[ex:p1])*", "[ex:p1]/[ex:p0]", "([ex:p0]/[ex:p1])+", "[ex:p2]?/[ex:p1]+"));
+
+	private SmallGraph()
+	{
+	}
+
+	/**
+	 * @return a new graph holding the triples n0 p0 n1, n1 p0 n2, n2 p0 n0, n2 p1 n3,
+	 * n3 p1 n4, n1 p1 n4, n4 p0 n5, n5 p1 "n7", n6 p0 n6, n3 p2 n0 and n0 p9 n6
+	 */
+	public static Graph graph()
+	{
+		Graph g = GraphFactory.createGraphMem();
+		add(g, N0, P0, N1);
+		add(g, N1, P0, N2);
+		add(g, N2, P0, N0);
+		add(g, N2, P1, N3);
+		add(g, N3, P1, N4);
+		add(g, N1, P1, N4);
+		add(g, N4, P0, N5);
+		add(g, N5, P1, LITERAL);
+		add(g, N6, P0, N6);
+		add(g, N3, P2, N0);
+		add(g, N0, OTHER, N6);
+		return g;
+	}
+
+	private static void add(Graph g, Node s, Node p, Node o)
+	{
+		g.add(Triple.create(s, p, o));
+	}
+
+	/**
+	 * check that an adjacency source over the small graph (or a copy of it) gives the same
+	 * neighbours of every node under every covered property, and the same nodes reachable
+	 * forward and backward from every node under each of EXPRESSIONS, as GraphAdjacency
+	 * @param g the small graph
+	 * @param adjacency the source to check
+	 */
+	public static void assertMatchesGraph(Graph g, AdjacencySource adjacency) throws ParseException
+	{
+		AdjacencySource expected = new GraphAdjacency(g);
+		for(Node node : NODES)
+		{
+			for(Node property : PROPERTIES)
+			{
+				assertEquals("objects of "+node+" "+property, objects(expected, node, property),
+						objects(adjacency, node, property));
+				assertEquals("subjects of "+property+" "+node, subjects(expected, node, property),
+						subjects(adjacency, node, property));
+			}
+		}
+
+		for(String expr : EXPRESSIONS)
+		{
+			PathAutomaton automaton =
+				CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES).getAutomaton();
+			for(Node node : NODES)
+			{
+				assertEquals(expr+" forward from "+node,
+						new ProductSearch(expected, automaton).forward(Collections.singleton(node)),
+						new ProductSearch(adjacency, automaton).forward(Collections.singleton(node)));
+				assertEquals(expr+" backward from "+node,
+						new ProductSearch(expected, automaton).backward(Collections.singleton(node)),
+						new ProductSearch(adjacency, automaton).backward(Collections.singleton(node)));
+			}
+		}
+	}
+
+	/**
+	 * @return the objects of the triples with the given subject and property, as sorted strings
+	 */
+	public static List<String> objects(AdjacencySource adjacency, Node subject, Node property)
+	{
+		IntList ids = new IntList();
+		adjacency.getObjects(adjacency.encode(subject), adjacency.encode(property), ids);
+		return decode(adjacency, ids);
+	}
+
+	/**
+	 * @return the subjects of the triples with the given property and object, as sorted strings
+	 */
+	public static List<String> subjects(AdjacencySource adjacency, Node object, Node property)
+	{
+		IntList ids = new IntList();
+		adjacency.getSubjects(adjacency.encode(object), adjacency.encode(property), ids);
+		return decode(adjacency, ids);
+	}
+
+	private static List<String> decode(AdjacencySource adjacency, IntList ids)
+	{
+		List<String> nodes = new ArrayList<String>();
+		for (int i = 0; i < ids.size(); i++)
+		{
+			nodes.add(adjacency.decode(ids.get(i)).toString());
+		}
+		Collections.sort(nodes);
+		return nodes;
+	}
+}
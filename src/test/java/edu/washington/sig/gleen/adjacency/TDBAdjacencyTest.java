@@ -0,0 +1,121 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.adjacency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.tdb.TDBFactory;
+import com.hp.hpl.jena.tdb.store.GraphTDB;
+
+import edu.washington.sig.gleen.RandomGraphs;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+
+/**
+ * Tests of TDBAdjacency on an in-memory TDB dataset: the default graph and a named graph
+ * holding the small fixed graph give the same answers as GraphAdjacency over it
+ */
+public class TDBAdjacencyTest
+{
+	private static final Node GRAPH_NAME = NodeFactory.createURI(RandomGraphs.NS+"g");
+
+	private DatasetGraph dataset;
+
+	@Before
+	public void createDataset()
+	{
+		dataset = TDBFactory.createDatasetGraph();
+	}
+
+	@After
+	public void closeDataset()
+	{
+		dataset.close();
+	}
+
+	@Test
+	public void defaultGraphMatchesGraphAdjacency() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		for(Triple triple : g.find(Node.ANY, Node.ANY, Node.ANY).toList())
+		{
+			dataset.getDefaultGraph().add(triple);
+		}
+		// the triples of a named graph are not in the default graph
+		dataset.add(GRAPH_NAME, SmallGraph.N5, SmallGraph.P0, SmallGraph.N6);
+
+		Graph tdb = dataset.getDefaultGraph();
+		assertTrue(TDBAdjacency.isSupported(tdb));
+		SmallGraph.assertMatchesGraph(g, new TDBAdjacency((GraphTDB)tdb));
+	}
+
+	@Test
+	public void namedGraphMatchesGraphAdjacency() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		for(Triple triple : g.find(Node.ANY, Node.ANY, Node.ANY).toList())
+		{
+			dataset.add(GRAPH_NAME, triple.getSubject(), triple.getPredicate(), triple.getObject());
+		}
+		// nor are those of the default graph or of other named graphs in it
+		dataset.getDefaultGraph().add(Triple.create(SmallGraph.N5, SmallGraph.P0, SmallGraph.N6));
+		dataset.add(RandomGraphs.node(99), SmallGraph.N6, SmallGraph.P1, SmallGraph.N0);
+
+		Graph tdb = dataset.getGraph(GRAPH_NAME);
+		assertTrue(TDBAdjacency.isSupported(tdb));
+		SmallGraph.assertMatchesGraph(g, new TDBAdjacency((GraphTDB)tdb));
+	}
+
+	@Test
+	public void nodesNotInTheStoreHaveNoNeighbours()
+	{
+		dataset.getDefaultGraph().add(Triple.create(SmallGraph.N0, SmallGraph.P0, SmallGraph.N1));
+		TDBAdjacency adjacency = new TDBAdjacency((GraphTDB)dataset.getDefaultGraph());
+		Node absent = RandomGraphs.node(99);
+		int id = adjacency.encode(absent);
+		assertEquals(id, adjacency.encode(absent));
+		assertEquals(absent, adjacency.decode(id));
+		assertEquals(Collections.<String>emptyList(), SmallGraph.objects(adjacency, absent, SmallGraph.P0));
+		assertEquals(Collections.<String>emptyList(), SmallGraph.subjects(adjacency, SmallGraph.N1, absent));
+		assertEquals(Collections.singletonList(SmallGraph.N1.toString()),
+				SmallGraph.objects(adjacency, SmallGraph.N0, SmallGraph.P0));
+
+		// a named graph that is not in the store is empty
+		TDBAdjacency missing = new TDBAdjacency((GraphTDB)dataset.getGraph(GRAPH_NAME));
+		assertEquals(Collections.<String>emptyList(), SmallGraph.objects(missing, SmallGraph.N0, SmallGraph.P0));
+	}
+
+	@Test
+	public void onlyTDBDefaultAndNamedGraphsAreSupported()
+	{
+		assertFalse(TDBAdjacency.isSupported(SmallGraph.graph()));
+		assertFalse(TDBAdjacency.isSupported(dataset.getGraph(Quad.unionGraph)));
+	}
+}
@@ -0,0 +1,391 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N0;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N3;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N4;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N6;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.util.Symbol;
+
+import edu.washington.sig.gleen.RandomGraphs;
+import edu.washington.sig.gleen.adjacency.GraphAdjacency;
+import edu.washington.sig.gleen.adjacency.SmallGraph;
+import edu.washington.sig.gleen.iterator.QueryIterPaths;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.path.Path;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+import edu.washington.sig.gleen.util.ContextUtil;
+
+/**
+ * Tests of PathEnumerator and the Paths property function: the paths found on a small
+ * fixed graph, agreement with a depth first enumeration of simple paths on random graphs,
+ * the order paths come in, and the limits on their number, their length and the partial
+ * paths held
+ */
+public class PathEnumeratorTest
+{
+	private static final int NO_LIMIT = Integer.MAX_VALUE;
+
+	@Test
+	public void pathsEndAtTheirStart() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		// the cycle back to n0 ends there, rather than going round again
+		assertEquals(Arrays.asList("n0 p0 n1", "n0 p0 n1 / n1 p0 n2", "n0 p0 n1 / n1 p0 n2 / n2 p0 n0"),
+				enumerate(g, "[ex:p0]+", N0, null, NO_LIMIT));
+		assertEquals(Arrays.asList("n0 p0 n1 / n1 p0 n2 / n2 p0 n0"),
+				enumerate(g, "[ex:p0]+", N0, N0, NO_LIMIT));
+		assertEquals(Arrays.asList("n6 p0 n6"),
+				enumerate(g, "[ex:p0]+", N6, null, NO_LIMIT));
+		// the end is not passed through, and the empty path is never produced
+		assertEquals(Arrays.asList("n0 p0 n1 / n1 p1 n4", "n0 p0 n1 / n1 p0 n2 / n2 p1 n3 / n3 p1 n4"),
+				enumerate(g, "([ex:p0]|[ex:p1])+", N0, N4, NO_LIMIT));
+		assertEquals(Arrays.asList("n3 p1 n4", "n3 p2 n0 / n0 p0 n1 / n1 p1 n4"),
+				enumerate(g, "([ex:p0]|[ex:p1]|[ex:p2])+", N3, N4, NO_LIMIT));
+		assertEquals(Collections.<String>emptyList(),
+				enumerate(g, "[ex:p0]*", N3, N3, NO_LIMIT));
+	}
+
+	@Test
+	public void lengthLimitsPaths() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		assertEquals(Arrays.asList("n0 p0 n1", "n0 p0 n1 / n1 p0 n2"),
+				enumerate(g, "[ex:p0]+", N0, null, 2));
+		assertEquals(Arrays.asList("n0 p0 n1 / n1 p1 n4"),
+				enumerate(g, "([ex:p0]|[ex:p1])+", N0, N4, 3));
+		assertEquals(Collections.<String>emptyList(),
+				enumerate(g, "[ex:p0]+", N0, N0, 2));
+		assertEquals(Collections.<String>emptyList(),
+				enumerate(g, "[ex:p0]+", N0, null, 0));
+	}
+
+	@Test
+	public void matchesDepthFirstEnumerationOnRandomGraphs() throws ParseException
+	{
+		Random random = new Random(20080409L);
+		int found = 0;
+		for (int iteration = 0; iteration < 300; iteration++)
+		{
+			int numNodes = 2+random.nextInt(7);
+			Graph g = RandomGraphs.model(random, numNodes, numNodes+random.nextInt(numNodes*3), 3).getGraph();
+			String expr = RandomGraphs.expression(random, 1+random.nextInt(4), 3);
+			PathAutomaton automaton = CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES).getAutomaton();
+			for (int k = 0; k < 3; k++)
+			{
+				Node s = RandomGraphs.node(random.nextInt(numNodes));
+				Node o = random.nextBoolean() ? null : RandomGraphs.node(random.nextInt(numNodes));
+				int maxLength = random.nextInt(3)==0 ? NO_LIMIT : 1+random.nextInt(5);
+				String message = expr+" from "+s+" to "+o+" within "+maxLength;
+
+				List<String> expected = new ArrayList<String>();
+				depthFirst(g, automaton, s, o, maxLength, new ArrayList<Triple>(), 
+						Collections.singleton(PathAutomaton.START_STATE), expected);
+				Collections.sort(expected);
+
+				PathEnumerator paths = new PathEnumerator(new GraphAdjacency(g), automaton, s, o, maxLength, NO_LIMIT);
+				List<String> actual = new ArrayList<String>();
+				int length = 0;
+				while(paths.hasNext())
+				{
+					Path path = paths.next();
+					assertTrue(message+" "+path, path.size()>=length);
+					length = path.size();
+					actual.add(format(path.toList()));
+				}
+				assertFalse(message, paths.isQueueLimitReached());
+				Collections.sort(actual);
+				assertEquals(message, expected, actual);
+				found += actual.size();
+			}
+		}
+		assertTrue("too few paths to compare", found>500);
+	}
+
+	@Test
+	public void queueLimitStopsEnumeration() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		PathAutomaton automaton = CompiledPathExpression.compile("([ex:p0]|[ex:p1])+", 
+				RandomGraphs.PREFIXES).getAutomaton();
+
+		PathEnumerator paths = new PathEnumerator(new GraphAdjacency(g), automaton, N0, null, NO_LIMIT, 1);
+		assertEquals(Arrays.asList("n0 p0 n1"), list(paths));
+		assertTrue(paths.isQueueLimitReached());
+
+		// the distance table is capped too
+		paths = new PathEnumerator(new GraphAdjacency(g), automaton, N0, N4, NO_LIMIT, 1);
+		assertEquals(Collections.<String>emptyList(), list(paths));
+		assertTrue(paths.isQueueLimitReached());
+
+		paths = new PathEnumerator(new GraphAdjacency(g), automaton, N0, N4, NO_LIMIT, 100);
+		assertEquals(2, list(paths).size());
+		assertFalse(paths.isQueueLimitReached());
+	}
+
+	@Test
+	public void pathsBindsNumberedPathsWithinLimits()
+	{
+		Model model = ModelFactory.createModelForGraph(SmallGraph.graph());
+		Map<Symbol, Object> none = Collections.emptyMap();
+		String all = "SELECT * WHERE { (ex:n0 \"([ex:p0]|[ex:p1])+\" ex:n4) gleen:Paths (?path ?step ?s ?p ?o) }";
+		assertEquals(Arrays.asList("n0 p0 n1 / n1 p1 n4", "n0 p0 n1 / n1 p0 n2 / n2 p1 n3 / n3 p1 n4"),
+				paths(model, all, none));
+		// k paths
+		assertEquals(Arrays.asList("n0 p0 n1 / n1 p1 n4"),
+				paths(model, "SELECT * WHERE { (ex:n0 \"([ex:p0]|[ex:p1])+\" ex:n4 1) gleen:Paths (?path ?step ?s ?p ?o) }", none));
+		assertEquals(Collections.<String>emptyList(),
+				paths(model, "SELECT * WHERE { (ex:n0 \"([ex:p0]|[ex:p1])+\" ex:n4 0) gleen:Paths (?path ?step ?s ?p ?o) }", none));
+		// of at most L triples
+		assertEquals(Arrays.asList("n0 p0 n1 / n1 p1 n4"),
+				paths(model, "SELECT * WHERE { (ex:n0 \"([ex:p0]|[ex:p1])+\" ex:n4 10 3) gleen:Paths (?path ?step ?s ?p ?o) }", none));
+		assertEquals(2,
+				paths(model, "SELECT * WHERE { (ex:n0 \"([ex:p0]|[ex:p1])+\" ex:n4 10 4) gleen:Paths (?path ?step ?s ?p ?o) }", none).size());
+		// limits must be non-negative integers
+		assertEquals(Collections.<String>emptyList(),
+				paths(model, "SELECT * WHERE { (ex:n0 \"([ex:p0]|[ex:p1])+\" ex:n4 -1) gleen:Paths (?path ?step ?s ?p ?o) }", none));
+		assertEquals(Collections.<String>emptyList(),
+				paths(model, "SELECT * WHERE { (ex:n0 \"([ex:p0]|[ex:p1])+\" ex:n4 10 \"4\") gleen:Paths (?path ?step ?s ?p ?o) }", none));
+		// an unbound end takes paths ending anywhere, shortest first
+		assertEquals(Arrays.asList("n0 p0 n1", "n0 p0 n1 / n1 p0 n2", "n0 p0 n1 / n1 p0 n2 / n2 p0 n0"),
+				paths(model, "SELECT * WHERE { (ex:n0 \"[ex:p0]+\" ?b) gleen:Paths (?path ?step ?s ?p ?o) }", none));
+	}
+
+	@Test
+	public void pathLimitCapsThePaths()
+	{
+		Model model = ModelFactory.createModelForGraph(SmallGraph.graph());
+		Map<Symbol, Object> limit = RandomGraphs.option(ContextUtil.getPathLimitSymbol(), 2);
+		String query = "SELECT * WHERE { (ex:n0 \"[ex:p0]+\" ?b) gleen:Paths (?path ?step ?s ?p ?o) }";
+		assertEquals(Arrays.asList("n0 p0 n1", "n0 p0 n1 / n1 p0 n2"), paths(model, query, limit));
+		// the smaller of the option and k
+		assertEquals(Arrays.asList("n0 p0 n1"),
+				paths(model, "SELECT * WHERE { (ex:n0 \"[ex:p0]+\" ?b 1) gleen:Paths (?path ?step ?s ?p ?o) }", limit));
+		assertEquals(2,
+				paths(model, "SELECT * WHERE { (ex:n0 \"[ex:p0]+\" ?b 3) gleen:Paths (?path ?step ?s ?p ?o) }", limit).size());
+	}
+
+	@Test
+	public void pathQueueLimitStopsACallWithAWarning()
+	{
+		Model model = ModelFactory.createModelForGraph(SmallGraph.graph());
+		String query = "SELECT * WHERE { (ex:n0 \"([ex:p0]|[ex:p1])+\" ?b) gleen:Paths (?path ?step ?s ?p ?o) }";
+		WarningAppender warnings = new WarningAppender();
+		Logger logger = Logger.getLogger(QueryIterPaths.class);
+		logger.addAppender(warnings);
+		try
+		{
+			assertEquals(10, paths(model, query, Collections.<Symbol, Object>emptyMap()).size());
+			assertEquals(Collections.<String>emptyList(), warnings.messages);
+
+			assertEquals(Arrays.asList("n0 p0 n1"),
+					paths(model, query, RandomGraphs.option(ContextUtil.getPathQueueLimitSymbol(), 1)));
+			assertEquals(1, warnings.messages.size());
+			assertTrue(warnings.messages.get(0), warnings.messages.get(0).endsWith("too many partial paths, stopped after 1 paths"));
+		}
+		finally
+		{
+			logger.removeAppender(warnings);
+		}
+	}
+
+	/**
+	 * Collect every simple path matching the automaton from the path so far, following the
+	 * rules PathEnumerator gives: a path ends where it reaches its start or the given end,
+	 * passes no other node twice and has at most maxLength triples
+	 */
+	private static void depthFirst(Graph g, PathAutomaton automaton, Node subject, Node object,
+			int maxLength, List<Triple> path, Set<Integer> states, List<String> paths)
+	{
+		if(path.size()>=maxLength)
+			return;
+		Node node = path.isEmpty() ? subject : path.get(path.size()-1).getObject();
+		Set<Node> visited = new HashSet<Node>();
+		visited.add(subject);
+		for(Triple triple : path)
+		{
+			visited.add(triple.getObject());
+		}
+		for(Triple triple : g.find(node, Node.ANY, Node.ANY).toList())
+		{
+			Node next = triple.getObject();
+			Set<Integer> targets = new HashSet<Integer>();
+			for(int state : states)
+			{
+				Node[] properties = automaton.getOutProperties(state);
+				for (int i = 0; i < properties.length; i++)
+				{
+					if(!properties[i].equals(triple.getPredicate()))
+						continue;
+					for(int target : automaton.getOutTargets(state, i))
+					{
+						targets.add(target);
+					}
+				}
+			}
+			if(targets.isEmpty())
+				continue;
+			boolean accepting = false;
+			for(int target : targets)
+			{
+				accepting |= automaton.isAccepting(target);
+			}
+			boolean complete = (object==null || next.equals(object)) && accepting;
+			boolean end = next.equals(subject) || next.equals(object);
+			if(end && !complete)
+				continue;
+			if(!next.equals(subject) && visited.contains(next))
+				continue;
+			List<Triple> extended = new ArrayList<Triple>(path);
+			extended.add(triple);
+			if(complete)
+				paths.add(format(extended));
+			if(!end)
+				depthFirst(g, automaton, subject, object, maxLength, extended, targets, paths);
+		}
+	}
+
+	private static List<String> enumerate(Graph g, String expr, Node subject, Node object,
+			int maxLength) throws ParseException
+	{
+		PathAutomaton automaton = CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES).getAutomaton();
+		return list(new PathEnumerator(new GraphAdjacency(g), automaton, subject, object, maxLength, NO_LIMIT));
+	}
+
+	private static List<String> list(PathEnumerator paths)
+	{
+		List<String> list = new ArrayList<String>();
+		while(paths.hasNext())
+		{
+			list.add(format(paths.next().toList()));
+		}
+		return list;
+	}
+
+	/**
+	 * @return the triples as "s p o / s p o ...", with the nodes' local names
+	 */
+	private static String format(List<Triple> path)
+	{
+		StringBuilder s = new StringBuilder();
+		for(Triple triple : path)
+		{
+			if(s.length()>0)
+				s.append(" / ");
+			s.append(triple.getSubject().getLocalName()).append(' ')
+					.append(triple.getPredicate().getLocalName()).append(' ')
+					.append(triple.getObject().isLiteral() ? triple.getObject().getLiteralLexicalForm() 
+							: triple.getObject().getLocalName());
+		}
+		return s.toString();
+	}
+
+	/**
+	 * @return the paths bound by a Paths query, in path number order, each formatted as by
+	 * format(List)
+	 */
+	private static List<String> paths(Model model, String query, Map<Symbol, Object> options)
+	{
+		QueryExecution qe = QueryExecutionFactory.create(RandomGraphs.PROLOGUE+query+" ORDER BY ?path ?step", model);
+		try
+		{
+			for(Map.Entry<Symbol, Object> option : options.entrySet())
+			{
+				qe.getContext().set(option.getKey(), option.getValue());
+			}
+			List<String> paths = new ArrayList<String>();
+			List<Triple> path = new ArrayList<Triple>();
+			int pathNum = 0;
+			ResultSet results = qe.execSelect();
+			while(results.hasNext())
+			{
+				QuerySolution solution = results.next();
+				int num = solution.getLiteral("path").getInt();
+				if(num!=pathNum)
+				{
+					if(!path.isEmpty())
+						paths.add(format(path));
+					assertEquals("paths are numbered from 1", pathNum+1, num);
+					assertEquals("steps are numbered from 1", 1, solution.getLiteral("step").getInt());
+					path = new ArrayList<Triple>();
+					pathNum = num;
+				}
+				path.add(Triple.create(solution.get("s").asNode(), solution.get("p").asNode(), solution.get("o").asNode()));
+			}
+			if(!path.isEmpty())
+				paths.add(format(path));
+			return paths;
+		}
+		finally
+		{
+			qe.close();
+		}
+	}
+
+	/**
+	 * Keeps the warnings logged to it
+	 */
+	private static class WarningAppender extends AppenderSkeleton
+	{
+		private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		protected void append(LoggingEvent event)
+		{
+			if(event.getLevel().isGreaterOrEqual(Level.WARN))
+				messages.add(event.getRenderedMessage());
+		}
+
+		public void close()
+		{
+		}
+
+		public boolean requiresLayout()
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N0;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N1;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N2;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N3;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N4;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N6;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.P0;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.P1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+import edu.washington.sig.gleen.RandomGraphs;
+import edu.washington.sig.gleen.adjacency.SmallGraph;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+
+/**
+ * Tests of ShortestPathSearch and the ShortestPath property function: the paths found on
+ * a small fixed graph, agreement with a breadth first search of the product graph on 
+ * random graphs, and the rows ShortestPath binds
+ */
+public class ShortestPathSearchTest
+{
+	@Test
+	public void findsShortestPaths() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		assertEquals(Arrays.asList(Triple.create(N0, P0, N1), Triple.create(N1, P0, N2)),
+				search(g, "[ex:p0]+").find(N0, N2));
+		// around the cycle back to the start
+		assertEquals(Arrays.asList(Triple.create(N0, P0, N1), Triple.create(N1, P0, N2), Triple.create(N2, P0, N0)),
+				search(g, "[ex:p0]+").find(N0, N0));
+		// n0 p0 n1 p1 n4 rather than the longer n0 p0 n1 p0 n2 p1 n3 p1 n4
+		assertEquals(Arrays.asList(Triple.create(N0, P0, N1), Triple.create(N1, P1, N4)),
+				search(g, "([ex:p0]|[ex:p1])+").find(N0, N4));
+		// the expression decides, not the graph: the longer path is the only match
+		assertEquals(4, search(g, "[ex:p0]/[ex:p0]/[ex:p1]/[ex:p1]").find(N0, N4).size());
+		assertNull(search(g, "[ex:p1]+").find(N0, N4));
+		assertNull(search(g, "[ex:p0]+").find(N0, N6));
+	}
+
+	@Test
+	public void emptyPathIsFoundForTheSameNode() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		assertEquals(Collections.<Triple>emptyList(), search(g, "[ex:p0]*").find(N3, N3));
+		assertEquals(Collections.<Triple>emptyList(), search(g, "[ex:p1]?").find(N0, N0));
+		assertNull(search(g, "[ex:p0]?").find(N3, N0));
+	}
+
+	@Test
+	public void matchesBreadthFirstSearchOnRandomGraphs() throws ParseException
+	{
+		Random random = new Random(20080408L);
+		int found = 0;
+		for (int iteration = 0; iteration < 300; iteration++)
+		{
+			int numNodes = 2+random.nextInt(12);
+			Graph g = RandomGraphs.model(random, numNodes, random.nextInt(numNodes*3), 3).getGraph();
+			String expr = RandomGraphs.expression(random, 1+random.nextInt(4), 3);
+			PathAutomaton automaton = CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES).getAutomaton();
+			ShortestPathSearch search = new ShortestPathSearch(g, automaton);
+			for (int k = 0; k < 5; k++)
+			{
+				Node s = RandomGraphs.node(random.nextInt(numNodes));
+				Node o = RandomGraphs.node(random.nextInt(numNodes));
+				int expected = distance(g, automaton, s, o);
+				List<Triple> path = search.find(s, o);
+				String message = expr+" from "+s+" to "+o;
+				if(expected<0)
+				{
+					assertNull(message, path);
+					continue;
+				}
+				assertNotNull(message, path);
+				assertEquals(message, expected, path.size());
+				assertTrue(message+" "+path, matches(automaton, s, o, path));
+				found++;
+			}
+		}
+		assertTrue("too few paths to compare", found>200);
+	}
+
+	@Test
+	public void shortestPathBindsNumberedSteps()
+	{
+		Model model = ModelFactory.createModelForGraph(SmallGraph.graph());
+		assertEquals(Arrays.asList("1 n0 p0 n1", "2 n1 p1 n4"),
+				rows(model, "SELECT * WHERE { (ex:n0 \"([ex:p0]|[ex:p1])+\" ex:n4) gleen:ShortestPath (?step ?s ?p ?o) }"));
+		// ends bound by an earlier pattern, once per solution of it
+		assertEquals(Arrays.asList("1 n3 p2 n0", "2 n0 p0 n1"),
+				rows(model, "SELECT * WHERE { ?a ex:p2 ?b . (?a \"[ex:p2]/[ex:p0]\" ex:n1) gleen:ShortestPath (?step ?s ?p ?o) }"));
+	}
+
+	@Test
+	public void shortestPathHasNoRowsForEmptyPathsOrUnboundEnds()
+	{
+		Model model = ModelFactory.createModelForGraph(SmallGraph.graph());
+		// the empty path matches, but has no triples to bind
+		assertEquals(Collections.<String>emptyList(),
+				rows(model, "SELECT * WHERE { (ex:n0 \"[ex:p0]*\" ex:n0) gleen:ShortestPath (?step ?s ?p ?o) }"));
+		// no matching path
+		assertEquals(Collections.<String>emptyList(),
+				rows(model, "SELECT * WHERE { (ex:n0 \"[ex:p1]+\" ex:n4) gleen:ShortestPath (?step ?s ?p ?o) }"));
+		// both ends must be bound, and neither can be a literal
+		assertEquals(Collections.<String>emptyList(),
+				rows(model, "SELECT * WHERE { (?a \"[ex:p0]+\" ex:n2) gleen:ShortestPath (?step ?s ?p ?o) }"));
+		assertEquals(Collections.<String>emptyList(),
+				rows(model, "SELECT * WHERE { (ex:n0 \"[ex:p0]+\" ?b) gleen:ShortestPath (?step ?s ?p ?o) }"));
+		assertEquals(Collections.<String>emptyList(),
+				rows(model, "SELECT * WHERE { (ex:n4 \"[ex:p0]/[ex:p1]\" \"n7\") gleen:ShortestPath (?step ?s ?p ?o) }"));
+	}
+
+	private static ShortestPathSearch search(Graph g, String expr) throws ParseException
+	{
+		return new ShortestPathSearch(g, CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES).getAutomaton());
+	}
+
+	/**
+	 * @return the length of the shortest matching path from subject to object, by a plain
+	 * breadth first search of the product graph, or -1 if there is none
+	 */
+	private static int distance(Graph g, PathAutomaton automaton, Node subject, Node object)
+	{
+		Map<List<Object>, Integer> distances = new HashMap<List<Object>, Integer>();
+		List<List<Object>> queue = new ArrayList<List<Object>>();
+		List<Object> start = pair(subject, PathAutomaton.START_STATE);
+		distances.put(start, 0);
+		queue.add(start);
+		for (int head = 0; head < queue.size(); head++)
+		{
+			List<Object> pair = queue.get(head);
+			Node node = (Node)pair.get(0);
+			int state = (Integer)pair.get(1);
+			int distance = distances.get(pair);
+			if(node.equals(object) && automaton.isAccepting(state))
+				return distance;
+			Node[] properties = automaton.getOutProperties(state);
+			for (int i = 0; i < properties.length; i++)
+			{
+				for(Triple triple : g.find(node, properties[i], Node.ANY).toList())
+				{
+					for(int target : automaton.getOutTargets(state, i))
+					{
+						List<Object> next = pair(triple.getObject(), target);
+						if(!distances.containsKey(next))
+						{
+							distances.put(next, distance+1);
+							queue.add(next);
+						}
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if the triples form a path from subject to object whose properties the
+	 * automaton accepts
+	 */
+	private static boolean matches(PathAutomaton automaton, Node subject, Node object, List<Triple> path)
+	{
+		Node node = subject;
+		Set<Integer> states = Collections.singleton(PathAutomaton.START_STATE);
+		for(Triple triple : path)
+		{
+			if(!triple.getSubject().equals(node))
+				return false;
+			Set<Integer> next = new HashSet<Integer>();
+			for(int state : states)
+			{
+				Node[] properties = automaton.getOutProperties(state);
+				for (int i = 0; i < properties.length; i++)
+				{
+					if(!properties[i].equals(triple.getPredicate()))
+						continue;
+					for(int target : automaton.getOutTargets(state, i))
+					{
+						next.add(target);
+					}
+				}
+			}
+			states = next;
+			node = triple.getObject();
+		}
+		if(!node.equals(object))
+			return false;
+		for(int state : states)
+		{
+			if(automaton.isAccepting(state))
+				return true;
+		}
+		return false;
+	}
+
+	private static List<Object> pair(Node node, int state)
+	{
+		return Arrays.<Object>asList(node, state);
+	}
+
+	/**
+	 * @return the rows of a ShortestPath query as "step s p o", with the nodes' local names,
+	 * in step order
+	 */
+	private static List<String> rows(Model model, String query)
+	{
+		QueryExecution qe = QueryExecutionFactory.create(RandomGraphs.PROLOGUE+query+" ORDER BY ?step", model);
+		try
+		{
+			List<String> rows = new ArrayList<String>();
+			ResultSet results = qe.execSelect();
+			while(results.hasNext())
+			{
+				QuerySolution solution = results.next();
+				rows.add(solution.getLiteral("step").getInt()+" "+solution.getResource("s").getLocalName()
+						+" "+solution.getResource("p").getLocalName()+" "+solution.getResource("o").getLocalName());
+			}
+			return rows;
+		}
+		finally
+		{
+			qe.close();
+		}
+	}
+}
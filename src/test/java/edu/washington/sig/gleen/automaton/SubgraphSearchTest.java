@@ -0,0 +1,217 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.automaton;
+
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N0;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N1;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N2;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N3;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.N4;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.P0;
+import static edu.washington.sig.gleen.adjacency.SmallGraph.P1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+import edu.washington.sig.gleen.RandomGraphs;
+import edu.washington.sig.gleen.adjacency.SmallGraph;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+
+/**
+ * Tests of SubgraphSearch: the triples on matching paths of a small fixed graph, and
+ * agreement with the product graph definition on random graphs
+ */
+public class SubgraphSearchTest
+{
+	@Test
+	public void findsTheTriplesOnMatchingPaths() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		assertEquals(triples(Triple.create(N0, P0, N1), Triple.create(N1, P0, N2), Triple.create(N2, P0, N0)),
+				search(g, "[ex:p0]+").triples(N0, null));
+		assertEquals(triples(Triple.create(N2, P1, N3), Triple.create(N3, P1, N4)),
+				search(g, "[ex:p1]+").triples(N2, N4));
+		assertEquals(triples(Triple.create(N0, P0, N1), Triple.create(N1, P1, N4)),
+				search(g, "[ex:p0]/[ex:p1]").triples(null, N4));
+		assertEquals(triples(), search(g, "[ex:p1]/[ex:p0]").triples(N2, N4));
+	}
+
+	@Test
+	public void iteratorGivesEachTripleOnce() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		SubgraphSearch search = search(g, "([ex:p0]|[ex:p1])+");
+		Set<Triple> seen = new HashSet<Triple>();
+		Iterator<Triple> it = search.iterator(N0, null);
+		while(it.hasNext())
+		{
+			assertTrue(seen.add(it.next()));
+		}
+		assertEquals(search.triples(N0, null), seen);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void oneEndMustBeKnown() throws ParseException
+	{
+		search(SmallGraph.graph(), "[ex:p0]").iterator(null, null);
+	}
+
+	@Test
+	public void matchesTheProductGraphOnRandomGraphs() throws ParseException
+	{
+		Random random = new Random(20080403L);
+		int nonEmpty = 0;
+		for (int iteration = 0; iteration < 200; iteration++)
+		{
+			int numNodes = 2+random.nextInt(10);
+			Graph g = RandomGraphs.model(random, numNodes, random.nextInt(numNodes*3), 3).getGraph();
+			String expr = RandomGraphs.expression(random, 1+random.nextInt(4), 3);
+			PathAutomaton automaton = CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES).getAutomaton();
+			Node s = RandomGraphs.node(random.nextInt(numNodes));
+			Node o = RandomGraphs.node(random.nextInt(numNodes));
+			SubgraphSearch search = new SubgraphSearch(g, automaton);
+
+			Set<Triple> expected = productTriples(g, automaton, s, null);
+			assertEquals(expr+" from "+s, expected, search.triples(s, null));
+			if(!expected.isEmpty())
+				nonEmpty++;
+			assertEquals(expr+" to "+o, productTriples(g, automaton, null, o), search.triples(null, o));
+			assertEquals(expr+" from "+s+" to "+o, productTriples(g, automaton, s, o), search.triples(s, o));
+		}
+		assertTrue("too few non-empty subgraphs to compare", nonEmpty>50);
+	}
+
+	private static SubgraphSearch search(Graph g, String expr) throws ParseException
+	{
+		return new SubgraphSearch(g, CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES).getAutomaton());
+	}
+
+	private static Set<Triple> triples(Triple... triples)
+	{
+		return new HashSet<Triple>(Arrays.asList(triples));
+	}
+
+	/**
+	 * The triples on matching paths, straight from the definition: (u p v) is on one when
+	 * the product graph has an edge (u,q) -p-&gt; (v,q') with (u,q) reachable from a start
+	 * and an end reachable from (v,q')
+	 * @param subject the start, or null for any node
+	 * @param object the end, or null for any node
+	 */
+	private static Set<Triple> productTriples(Graph g, PathAutomaton automaton, Node subject, Node object)
+	{
+		Set<Node> nodes = new HashSet<Node>();
+		for(Triple triple : g.find(Node.ANY, Node.ANY, Node.ANY).toList())
+		{
+			nodes.add(triple.getSubject());
+			nodes.add(triple.getObject());
+		}
+		List<List<Object>> queue = new ArrayList<List<Object>>();
+
+		// pairs reachable from a start
+		Set<List<Object>> reached = new HashSet<List<Object>>();
+		for(Node node : subject==null ? nodes : Collections.singleton(subject))
+		{
+			queue.add(pair(node, PathAutomaton.START_STATE));
+		}
+		while(!queue.isEmpty())
+		{
+			List<Object> pair = queue.remove(queue.size()-1);
+			if(!reached.add(pair))
+				continue;
+			Node node = (Node)pair.get(0);
+			int state = (Integer)pair.get(1);
+			Node[] properties = automaton.getOutProperties(state);
+			for (int i = 0; i < properties.length; i++)
+			{
+				for(Triple triple : g.find(node, properties[i], Node.ANY).toList())
+				{
+					for(int target : automaton.getOutTargets(state, i))
+					{
+						queue.add(pair(triple.getObject(), target));
+					}
+				}
+			}
+		}
+
+		// pairs from which an end can be reached
+		Set<List<Object>> ending = new HashSet<List<Object>>();
+		for(Node node : object==null ? nodes : Collections.singleton(object))
+		{
+			for (int state = 0; state < automaton.getNumStates(); state++)
+			{
+				if(automaton.isAccepting(state))
+					queue.add(pair(node, state));
+			}
+		}
+		while(!queue.isEmpty())
+		{
+			List<Object> pair = queue.remove(queue.size()-1);
+			if(!ending.add(pair))
+				continue;
+			int state = (Integer)pair.get(1);
+			if(state==PathAutomaton.START_STATE)
+				continue;
+			for(Triple triple : g.find(Node.ANY, automaton.getStateProperty(state), (Node)pair.get(0)).toList())
+			{
+				for(int source : automaton.getPredecessors(state))
+				{
+					queue.add(pair(triple.getSubject(), source));
+				}
+			}
+		}
+
+		Set<Triple> triples = new HashSet<Triple>();
+		for(List<Object> pair : reached)
+		{
+			int state = (Integer)pair.get(1);
+			Node[] properties = automaton.getOutProperties(state);
+			for (int i = 0; i < properties.length; i++)
+			{
+				for(Triple triple : g.find((Node)pair.get(0), properties[i], Node.ANY).toList())
+				{
+					for(int target : automaton.getOutTargets(state, i))
+					{
+						if(ending.contains(pair(triple.getObject(), target)))
+							triples.add(triple);
+					}
+				}
+			}
+		}
+		return triples;
+	}
+
+	private static List<Object> pair(Node node, int state)
+	{
+		return Arrays.<Object>asList(node, state);
+	}
+}
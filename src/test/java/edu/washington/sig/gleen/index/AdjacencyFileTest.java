@@ -0,0 +1,233 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+import edu.washington.sig.gleen.RandomGraphs;
+import edu.washington.sig.gleen.adjacency.AdjacencySource;
+import edu.washington.sig.gleen.adjacency.GraphAdjacency;
+import edu.washington.sig.gleen.adjacency.SmallGraph;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.util.ContextUtil;
+
+/**
+ * Tests of AdjacencyFile: a written and mapped file covers the properties it was written
+ * with and gives the same answers as GraphAdjacency, is rejected once the graph changes,
+ * and is only searched by queries over the graph it was written from
+ */
+public class AdjacencyFileTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void mappedFileMatchesGraphAdjacency() throws IOException, ParseException
+	{
+		Graph g = SmallGraph.graph();
+		AdjacencyFile file = writeAndOpen(g, SmallGraph.PROPERTIES);
+
+		assertEquals(new HashSet<Node>(SmallGraph.PROPERTIES), file.getProperties());
+		assertTrue(file.covers(SmallGraph.PROPERTIES));
+		assertTrue(file.covers(Collections.singleton(SmallGraph.P1)));
+		assertFalse(file.covers(Arrays.asList(SmallGraph.P0, SmallGraph.OTHER)));
+		assertEquals(SmallGraph.NODES.size(), file.getNumNodes());
+		assertEquals(5, file.getTripleCount(SmallGraph.P0));
+		assertEquals(4, file.getTripleCount(SmallGraph.P1));
+		assertEquals(1, file.getTripleCount(SmallGraph.P2));
+		assertEquals(-1, file.getTripleCount(SmallGraph.OTHER));
+		assertTrue(file.isValidFor(g));
+
+		SmallGraph.assertMatchesGraph(g, file.createSource());
+	}
+
+	@Test
+	public void nodesNotInTheFileHaveNoNeighbours() throws IOException
+	{
+		AdjacencyFile file = writeAndOpen(SmallGraph.graph(), SmallGraph.PROPERTIES);
+		AdjacencySource source = file.createSource();
+		Node absent = RandomGraphs.node(99);
+		int id = source.encode(absent);
+		assertEquals(id, source.encode(absent));
+		assertEquals(absent, source.decode(id));
+		assertEquals(Collections.<String>emptyList(), SmallGraph.objects(source, absent, SmallGraph.P0));
+		assertEquals(Collections.<String>emptyList(), SmallGraph.subjects(source, absent, SmallGraph.P0));
+		// properties the file does not hold find nothing
+		assertEquals(Collections.<String>emptyList(), SmallGraph.objects(source, SmallGraph.N0, SmallGraph.OTHER));
+	}
+
+	@Test
+	public void changedGraphIsRejected() throws IOException
+	{
+		Graph g = SmallGraph.graph();
+		AdjacencyFile file = writeAndOpen(g, SmallGraph.PROPERTIES);
+		g.add(Triple.create(SmallGraph.N6, SmallGraph.OTHER, SmallGraph.N0));
+		assertTrue(file.isValidFor(g));
+		g.delete(Triple.create(SmallGraph.N3, SmallGraph.P2, SmallGraph.N0));
+		assertFalse(file.isValidFor(g));
+	}
+
+	@Test
+	public void randomGraphsRoundTrip() throws IOException
+	{
+		Random random = new Random(20080405L);
+		for (int iteration = 0; iteration < 5; iteration++)
+		{
+			int numNodes = 100+random.nextInt(400);
+			Graph g = RandomGraphs.model(random, numNodes, numNodes*3, 3).getGraph();
+			// blank nodes and literals of every kind among the objects
+			List<Node> others = Arrays.asList(
+					NodeFactory.createAnon(new AnonId("b"+iteration)),
+					NodeFactory.createLiteral("n1"),
+					NodeFactory.createLiteral("n1", "en", false),
+					NodeFactory.createLiteral("1", XSDDatatype.XSDinteger));
+			for(Node other : others)
+			{
+				g.add(Triple.create(RandomGraphs.node(random.nextInt(numNodes)), RandomGraphs.property(0), other));
+			}
+			g.add(Triple.create(others.get(0), RandomGraphs.property(1), RandomGraphs.node(0)));
+
+			List<Node> properties = Arrays.asList(RandomGraphs.property(0), RandomGraphs.property(1),
+					RandomGraphs.property(2));
+			AdjacencySource source = writeAndOpen(g, properties).createSource();
+			AdjacencySource expected = new GraphAdjacency(g);
+			Set<Node> nodes = new HashSet<Node>(others);
+			for (int n = 0; n < numNodes; n++)
+			{
+				nodes.add(RandomGraphs.node(n));
+			}
+			for(Node node : nodes)
+			{
+				for(Node property : properties)
+				{
+					assertEquals(SmallGraph.objects(expected, node, property), SmallGraph.objects(source, node, property));
+					assertEquals(SmallGraph.subjects(expected, node, property), SmallGraph.subjects(source, node, property));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void onPathOnlyUsesTheFileForItsGraph() throws IOException
+	{
+		// the file holds the whole small graph, the store one triple less of it and a 
+		// named graph of one other triple
+		Dataset dataset = TDBFactory.createDataset();
+		Graph defaultGraph = dataset.asDatasetGraph().getDefaultGraph();
+		for(Triple triple : SmallGraph.graph().find(Node.ANY, Node.ANY, Node.ANY).toList())
+		{
+			defaultGraph.add(triple);
+		}
+		defaultGraph.delete(Triple.create(SmallGraph.N1, SmallGraph.P0, SmallGraph.N2));
+		Node g2 = RandomGraphs.node(20);
+		dataset.asDatasetGraph().getGraph(g2).add(Triple.create(SmallGraph.N0, SmallGraph.P0, SmallGraph.N3));
+		AdjacencyFile file = writeAndOpen(SmallGraph.graph(), SmallGraph.PROPERTIES);
+
+		String query = "SELECT ?x WHERE { ex:n0 gleen:OnPath (\"[ex:p0]+\" ?x) }";
+		assertEquals(Arrays.asList("( ?x = <http://ex/n1> )"), select(dataset, query, null, null));
+		assertEquals(Arrays.asList("( ?x = <http://ex/n0> )", "( ?x = <http://ex/n1> )", "( ?x = <http://ex/n2> )"),
+				select(dataset, query, file, defaultGraph));
+
+		String named = "SELECT ?x WHERE { GRAPH ex:n20 { ex:n0 gleen:OnPath (\"[ex:p0]+\" ?x) } }";
+		assertEquals(Arrays.asList("( ?x = <http://ex/n3> )"), select(dataset, named, file, defaultGraph));
+		// nor is a file for another graph used
+		assertEquals(Arrays.asList("( ?x = <http://ex/n1> )"), select(dataset, query, file, SmallGraph.graph()));
+	}
+
+	@Test
+	public void hashTableSizeIsChecked() throws IOException
+	{
+		assertEquals(4, AdjacencyFile.getNumSlots(0));
+		assertEquals(32, AdjacencyFile.getNumSlots(12));
+		assertEquals(1<<30, AdjacencyFile.getNumSlots(AdjacencyFile.MAX_NODES));
+		for(int numNodes : new int[]{AdjacencyFile.MAX_NODES+1, 1<<30, Integer.MAX_VALUE})
+		{
+			try
+			{
+				AdjacencyFile.getNumSlots(numNodes);
+				fail(numNodes+" nodes accepted");
+			}
+			catch (IOException e)
+			{
+				assertTrue(e.getMessage(), e.getMessage().contains("too many"));
+			}
+		}
+	}
+
+	/**
+	 * @return the sorted solutions of an automaton engine query over the dataset, with the
+	 * given adjacency file if not null
+	 */
+	private static List<String> select(Dataset dataset, String query, AdjacencyFile file, Graph graph)
+	{
+		QueryExecution qe = QueryExecutionFactory.create(RandomGraphs.PROLOGUE+query, dataset);
+		try
+		{
+			ContextUtil.setEngine(qe, ContextUtil.ENGINE_AUTOMATON);
+			if(file!=null)
+				ContextUtil.setAdjacencyFile(qe, file, graph);
+			List<String> solutions = new ArrayList<String>();
+			ResultSet results = qe.execSelect();
+			while(results.hasNext())
+			{
+				solutions.add(results.next().toString());
+			}
+			Collections.sort(solutions);
+			return solutions;
+		}
+		finally
+		{
+			qe.close();
+		}
+	}
+
+	private AdjacencyFile writeAndOpen(Graph g, List<Node> properties) throws IOException
+	{
+		File file = folder.newFile();
+		AdjacencyFile.write(g, properties, file);
+		return AdjacencyFile.open(file);
+	}
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphUtil;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+import edu.washington.sig.gleen.RandomGraphs;
+import edu.washington.sig.gleen.adjacency.GraphAdjacency;
+import edu.washington.sig.gleen.adjacency.SmallGraph;
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.automaton.ProductSearch;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.plan.CompiledPathExpression;
+import edu.washington.sig.gleen.util.ContextUtil;
+
+/**
+ * Tests of ReachabilityIndex: its [p]+ and [p]* answers match a search of the graph, also
+ * after a save and load, it is dropped or rejected once the graph changes, and OnPath 
+ * queries over a TDB store use it
+ */
+public class ReachabilityIndexTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void matchesGraphSearchOnSmallGraph() throws ParseException
+	{
+		Graph g = SmallGraph.graph();
+		for(Node property : SmallGraph.PROPERTIES)
+		{
+			assertMatchesGraph(g, ReachabilityIndex.build(g, property), SmallGraph.NODES);
+		}
+	}
+
+	@Test
+	public void matchesGraphSearchOnRandomGraphs() throws ParseException
+	{
+		// sparse graphs of one property, so the condensed DAGs are deep and branching and
+		// need several intervals per label
+		Random random = new Random(20080404L);
+		for (int iteration = 0; iteration < 30; iteration++)
+		{
+			int numNodes = 10+random.nextInt(60);
+			Graph g = RandomGraphs.model(random, numNodes, numNodes+random.nextInt(numNodes), 1).getGraph();
+			List<Node> nodes = new ArrayList<Node>();
+			for (int n = 0; n < numNodes; n++)
+			{
+				nodes.add(RandomGraphs.node(n));
+			}
+			assertMatchesGraph(g, ReachabilityIndex.build(g, RandomGraphs.property(0)), nodes);
+		}
+	}
+
+	@Test
+	public void savedIndexIsCheckedAgainstTheGraph() throws IOException, ParseException
+	{
+		Graph g = SmallGraph.graph();
+		File file = new File(folder.getRoot(), ReachabilityIndex.getFileName(SmallGraph.P0));
+		ReachabilityIndex built = ReachabilityIndex.build(g, SmallGraph.P0);
+		built.save(file);
+
+		ReachabilityIndex loaded = ReachabilityIndex.load(file);
+		assertEquals(SmallGraph.P0, loaded.getProperty());
+		assertEquals(built.getNumNodes(), loaded.getNumNodes());
+		assertEquals(built.getTripleCount(), loaded.getTripleCount());
+		assertTrue(loaded.isValidFor(g));
+		assertMatchesGraph(g, loaded, SmallGraph.NODES);
+
+		// other properties do not matter, a triple of the property does
+		g.add(Triple.create(SmallGraph.N6, SmallGraph.P1, SmallGraph.N0));
+		assertTrue(loaded.isValidFor(g));
+		g.add(Triple.create(SmallGraph.N6, SmallGraph.P0, SmallGraph.N0));
+		assertFalse(loaded.isValidFor(g));
+	}
+
+	@Test
+	public void registryDropsChangedIndexes() throws IOException
+	{
+		Graph g = SmallGraph.graph();
+		ReachabilityIndexRegistry registry = new ReachabilityIndexRegistry(g);
+		ReachabilityIndex p0 = registry.build(SmallGraph.P0, folder.getRoot());
+		ReachabilityIndex p1 = registry.build(SmallGraph.P1);
+		assertSame(p0, registry.get(g, SmallGraph.P0));
+		assertNull(registry.get(SmallGraph.graph(), SmallGraph.P0));
+
+		g.delete(Triple.create(SmallGraph.N2, SmallGraph.P0, SmallGraph.N0));
+		assertNull(registry.get(g, SmallGraph.P0));
+		assertSame(p1, registry.get(g, SmallGraph.P1));
+
+		// the saved index no longer matches, a new one is built in its place
+		assertNull(registry.load(SmallGraph.P0, folder.getRoot()));
+		ReachabilityIndex rebuilt = registry.loadOrBuild(SmallGraph.P0, folder.getRoot());
+		assertNotNull(rebuilt);
+		assertFalse(rebuilt.reaches(SmallGraph.N2, SmallGraph.N0, false));
+		assertEquals(rebuilt.getTripleCount(), registry.load(SmallGraph.P0, folder.getRoot()).getTripleCount());
+	}
+
+	@Test
+	public void onPathUsesTheIndexOfATDBStore() throws IOException
+	{
+		Dataset dataset = TDBFactory.createDataset(folder.newFolder().getPath());
+		dataset.begin(ReadWrite.WRITE);
+		try
+		{
+			GraphUtil.addInto(dataset.asDatasetGraph().getDefaultGraph(), SmallGraph.graph());
+			dataset.commit();
+		}
+		finally
+		{
+			dataset.end();
+		}
+
+		CountingRegistry registry;
+		dataset.begin(ReadWrite.READ);
+		try
+		{
+			registry = new CountingRegistry(dataset.asDatasetGraph().getDefaultGraph());
+			registry.build(SmallGraph.P0);
+			assertOnPathUsesIndex(dataset, registry);
+		}
+		finally
+		{
+			dataset.end();
+		}
+		
+		// a later transaction queries a new view of the store
+		dataset.begin(ReadWrite.READ);
+		try
+		{
+			assertOnPathUsesIndex(dataset, registry);
+		}
+		finally
+		{
+			dataset.end();
+		}
+		TDBFactory.release(dataset);
+	}
+
+	@Test
+	public void onPathUsesTheIndexOfAnInMemoryTDBStore()
+	{
+		Dataset dataset = TDBFactory.createDataset();
+		GraphUtil.addInto(dataset.asDatasetGraph().getDefaultGraph(), SmallGraph.graph());
+		CountingRegistry registry = new CountingRegistry(dataset.asDatasetGraph().getDefaultGraph());
+		registry.build(SmallGraph.P0);
+		assertOnPathUsesIndex(dataset, registry);
+		
+		// nor is it used for another store, or another graph of the same store
+		Dataset other = TDBFactory.createDataset();
+		GraphUtil.addInto(other.asDatasetGraph().getDefaultGraph(), SmallGraph.graph());
+		assertFalse(registry.isFor(other.asDatasetGraph().getDefaultGraph()));
+		assertFalse(registry.isFor(dataset.asDatasetGraph().getGraph(SmallGraph.N0)));
+	}
+
+	/**
+	 * check that OnPath gives the same [p0]+ and [p0]* results over the dataset with and 
+	 * without the registry, and looks the index up in the registry for every query
+	 */
+	private static void assertOnPathUsesIndex(Dataset dataset, CountingRegistry registry)
+	{
+		for(String expr : new String[]{"[ex:p0]+", "[ex:p0]*"})
+		{
+			for(Node node : SmallGraph.NODES)
+			{
+				if(node.isLiteral())
+					continue;
+				String query = RandomGraphs.PROLOGUE+"SELECT ?x WHERE { <"+node.getURI()
+					+"> gleen:OnPath (\""+expr+"\" ?x) }";
+				int hits = registry.hits.get();
+				assertEquals(query, select(dataset, query, null), select(dataset, query, registry));
+				assertTrue(query+" did not use the index", registry.hits.get()>hits);
+			}
+		}
+	}
+
+	/**
+	 * @return the sorted solutions of a query over the dataset, with the given indexes
+	 */
+	private static List<String> select(Dataset dataset, String query, ReachabilityIndexRegistry registry)
+	{
+		QueryExecution qe = QueryExecutionFactory.create(query, dataset);
+		try
+		{
+			if(registry!=null)
+				ContextUtil.setReachabilityIndexes(qe, registry);
+			List<String> solutions = new ArrayList<String>();
+			ResultSet results = qe.execSelect();
+			while(results.hasNext())
+			{
+				solutions.add(results.next().toString());
+			}
+			Collections.sort(solutions);
+			return solutions;
+		}
+		finally
+		{
+			qe.close();
+		}
+	}
+
+	/**
+	 * a registry that counts the indexes it hands out
+	 */
+	private static final class CountingRegistry extends ReachabilityIndexRegistry
+	{
+		final AtomicInteger hits = new AtomicInteger();
+
+		CountingRegistry(Graph graph)
+		{
+			super(graph);
+		}
+
+		@Override
+		public ReachabilityIndex get(Graph g, Node property)
+		{
+			ReachabilityIndex index = super.get(g, property);
+			if(index!=null)
+				hits.incrementAndGet();
+			return index;
+		}
+	}
+
+	/**
+	 * check reaches, forward and backward against a search of the graph, for [p]+ and [p]*
+	 * between every pair of the given nodes
+	 */
+	private static void assertMatchesGraph(Graph g, ReachabilityIndex index, Collection<Node> nodes)
+		throws ParseException
+	{
+		String step = "[ex:"+index.getProperty().getURI().substring(RandomGraphs.NS.length())+"]";
+		for(boolean reflexive : new boolean[]{false, true})
+		{
+			String expr = step+(reflexive ? "*" : "+");
+			PathAutomaton automaton = CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES).getAutomaton();
+			ProductSearch search = new ProductSearch(new GraphAdjacency(g), automaton);
+			for(Node node : nodes)
+			{
+				Set<Node> forward = search.forward(Collections.singleton(node));
+				assertEquals(expr+" forward from "+node, forward, distinct(index.forward(node, reflexive)));
+				assertEquals(expr+" backward from "+node, search.backward(Collections.singleton(node)),
+						distinct(index.backward(node, reflexive)));
+				for(Node other : nodes)
+				{
+					assertEquals(expr+" from "+node+" to "+other, forward.contains(other),
+							index.reaches(node, other, reflexive));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the nodes of the iterator, which must be distinct
+	 */
+	private static Set<Node> distinct(Iterator<Node> it)
+	{
+		Set<Node> nodes = new HashSet<Node>();
+		while(it.hasNext())
+		{
+			Node node = it.next();
+			assertTrue("repeated "+node, nodes.add(node));
+		}
+		return nodes;
+	}
+}
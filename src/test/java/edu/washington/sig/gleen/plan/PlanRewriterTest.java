@@ -0,0 +1,243 @@
+/**
+ * Copyright 2008 University of Washington Structural Informatics Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.washington.sig.gleen.plan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+
+import edu.washington.sig.gleen.RandomGraphs;
+import edu.washington.sig.gleen.automaton.PathAutomaton;
+import edu.washington.sig.gleen.automaton.ProductSearch;
+import edu.washington.sig.gleen.javacc.grammar.ParseException;
+import edu.washington.sig.gleen.javacc.grammar.PathExpressionConstants;
+
+/**
+ * Tests of PlanRewriter: rewritten plans match the same paths as the plans as written,
+ * rewriting is idempotent, and each rewrite it lists gives the expected plan
+ */
+public class PlanRewriterTest
+{
+	private static final int NUM_PROPERTIES = 4;
+
+	private static final PlanNode A = property(0);
+	private static final PlanNode B = property(1);
+	private static final PlanNode C = property(2);
+	private static final PlanNode D = property(3);
+
+	/** recently generated expressions, reused so alternatives share steps to factor */
+	private final List<String> pool = new ArrayList<String>();
+
+	@Test
+	public void rewrittenPlansMatchTheSamePaths() throws ParseException
+	{
+		Random random = new Random(20080402L);
+		int smaller = 0;
+		for (int iteration = 0; iteration < 200; iteration++)
+		{
+			int numNodes = 2+random.nextInt(10);
+			Graph graph = RandomGraphs.model(random, numNodes, random.nextInt(numNodes*3),
+					NUM_PROPERTIES).getGraph();
+			for (int e = 0; e < 3; e++)
+			{
+				String expr = expression(random, 1+random.nextInt(4));
+				CompiledPathExpression compiled = CompiledPathExpression.compile(expr, RandomGraphs.PREFIXES);
+				PlanNode written = compiled.getWrittenPlan();
+				PlanNode plan = compiled.getPlan();
+				assertEquals(expr, plan, PlanRewriter.rewrite(plan));
+				if(size(plan)<size(written))
+					smaller++;
+
+				PathAutomaton writtenAutomaton = PathAutomaton.compile(written);
+				PathAutomaton automaton = compiled.getAutomaton();
+				for (int n = 0; n < numNodes; n++)
+				{
+					Node node = RandomGraphs.node(n);
+					assertEquals(expr+" forward from "+node,
+							new ProductSearch(graph, writtenAutomaton).forward(Collections.singleton(node)),
+							new ProductSearch(graph, automaton).forward(Collections.singleton(node)));
+					assertEquals(expr+" backward from "+node,
+							new ProductSearch(graph, writtenAutomaton).backward(Collections.singleton(node)),
+							new ProductSearch(graph, automaton).backward(Collections.singleton(node)));
+				}
+			}
+		}
+		assertTrue("too few plans simplified", smaller>100);
+	}
+
+	@Test
+	public void closuresCollapse() throws ParseException
+	{
+		PlanNode aStar = op(PathExpressionConstants.STAR, A);
+		assertRewrite("(a*)*", aStar);
+		assertRewrite("(a+)*", aStar);
+		assertRewrite("(a?)*", aStar);
+		assertRewrite("(a*)+", aStar);
+		assertRewrite("(a?)+", aStar);
+		assertRewrite("(a+)?", aStar);
+		assertRewrite("(a*)?", aStar);
+		assertRewrite("(a+)+", op(PathExpressionConstants.PLUS, A));
+		assertRewrite("(a?)?", op(PathExpressionConstants.OPT, A));
+		// operands already matching the empty path
+		PlanNode nullable = op(PathExpressionConstants.CONCAT, aStar, op(PathExpressionConstants.OPT, B));
+		assertRewrite("(a*/b?)?", nullable);
+		assertRewrite("(a*/b?)+", op(PathExpressionConstants.STAR, nullable));
+	}
+
+	@Test
+	public void concatenationsAndAlternationsFlatten() throws ParseException
+	{
+		assertRewrite("(a/b)/c", op(PathExpressionConstants.CONCAT, A, B, C));
+		assertRewrite("a/(b/c)", op(PathExpressionConstants.CONCAT, A, B, C));
+		assertRewrite("(a|b)|c", op(PathExpressionConstants.ALT, A, B, C));
+		assertRewrite("a|a", A);
+		assertRewrite("(a/b)|(a/b)", op(PathExpressionConstants.CONCAT, A, B));
+	}
+
+	@Test
+	public void sharedStepsAreFactored() throws ParseException
+	{
+		assertRewrite("(a/b)|(a/c)", op(PathExpressionConstants.CONCAT, A, op(PathExpressionConstants.ALT, B, C)));
+		assertRewrite("(b/a)|(c/a)", op(PathExpressionConstants.CONCAT, op(PathExpressionConstants.ALT, B, C), A));
+		assertRewrite("a|(a/b)", op(PathExpressionConstants.CONCAT, A, op(PathExpressionConstants.OPT, B)));
+	}
+
+	@Test
+	public void propertiesAreGathered() throws ParseException
+	{
+		assertRewrite("a|(b/c)|d", op(PathExpressionConstants.ALT,
+				op(PathExpressionConstants.ALT, A, D), op(PathExpressionConstants.CONCAT, B, C)));
+	}
+
+	/**
+	 * check that an expression, with the letters a to d standing for properties, is
+	 * rewritten to the expected plan, which is itself left as it is (in the grammar |
+	 * binds more tightly than /)
+	 */
+	private static void assertRewrite(String letters, PlanNode expected) throws ParseException
+	{
+		StringBuilder expr = new StringBuilder();
+		for(char c : letters.toCharArray())
+		{
+			if(c>='a' && c<='d')
+				expr.append("[ex:p").append(c-'a').append(']');
+			else
+				expr.append(c);
+		}
+		PlanNode plan = CompiledPathExpression.compile(expr.toString(), RandomGraphs.PREFIXES).getPlan();
+		assertEquals(letters, expected, plan);
+		assertEquals(letters, expected, PlanRewriter.rewrite(expected));
+	}
+
+	/**
+	 * @return a random path expression, with alternatives that often share a first or
+	 * last step
+	 */
+	private String expression(Random random, int depth)
+	{
+		if(depth>0 && !pool.isEmpty() && random.nextInt(4)==0)
+			return pool.get(random.nextInt(pool.size()));
+		int kind = depth<=0 ? 0 : random.nextInt(9);
+		String expr;
+		switch (kind)
+		{
+			case 1:
+				expr = "("+expression(random, depth-1)+")*";
+				break;
+			case 2:
+				expr = "("+expression(random, depth-1)+")+";
+				break;
+			case 3:
+				expr = "("+expression(random, depth-1)+")?";
+				break;
+			case 4:
+			{
+				StringBuilder sb = new StringBuilder("(").append(expression(random, depth-1));
+				int count = 1+random.nextInt(3);
+				for (int i = 0; i < count; i++)
+				{
+					sb.append('|').append(expression(random, depth-1));
+				}
+				expr = sb.append(')').toString();
+				break;
+			}
+			case 5:
+			{
+				// a shared first step
+				String shared = expression(random, depth-1);
+				expr = "(("+shared+"/"+expression(random, depth-1)+")|("
+					+shared+"/"+expression(random, depth-1)+"))";
+				break;
+			}
+			case 6:
+			{
+				// a shared last step, and an alternative that is only that step
+				String shared = expression(random, depth-1);
+				expr = "(("+expression(random, depth-1)+"/"+shared+")|("
+					+expression(random, depth-1)+"/"+shared+")|"+shared+")";
+				break;
+			}
+			case 7:
+			{
+				StringBuilder sb = new StringBuilder("(").append(expression(random, depth-1));
+				int count = 1+random.nextInt(2);
+				for (int i = 0; i < count; i++)
+				{
+					sb.append('/').append(expression(random, depth-1));
+				}
+				expr = sb.append(')').toString();
+				break;
+			}
+			default:
+				expr = "[ex:p"+random.nextInt(NUM_PROPERTIES)+"]";
+		}
+		if(pool.size()<50)
+			pool.add(expr);
+		else
+			pool.set(random.nextInt(pool.size()), expr);
+		return expr;
+	}
+
+	private static int size(PlanNode plan)
+	{
+		int size = 1;
+		for (int i = 0; i < plan.getNumChildren(); i++)
+		{
+			size += size(plan.getChild(i));
+		}
+		return size;
+	}
+
+	private static PlanNode property(int i)
+	{
+		return PlanNode.createProperty(RandomGraphs.property(i));
+	}
+
+	private static PlanNode op(int operatorType, PlanNode... children)
+	{
+		return PlanNode.createOperator(operatorType, children);
+	}
+}